@@ -28,8 +28,9 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyVetoException;
 import java.text.ParseException;
-import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -42,6 +43,7 @@ import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Transmitter;
 import javax.swing.SpinnerListModel;
 import org.jjazz.activesong.api.ActiveSongManager;
+import org.jjazz.harmony.api.ChordSymbol;
 import org.jjazz.harmony.api.ChordSymbolFinder;
 import org.jjazz.harmony.api.Note;
 import org.jjazz.leadsheet.chordleadsheet.api.UnsupportedEditException;
@@ -82,6 +84,7 @@ public class ArrangerPanel extends javax.swing.JPanel implements PropertyChangeL
     private MidiMix midiMix;
     private SongPart songPart;
     private final ChordSymbolFinder chordSymbolFinder;
+    private final ChordSymbol[] foundChordSymbols = new ChordSymbol[ChordSymbolFinder.MAX_CHORD_SYMBOLS];     // Reused by processIncomingChord()
     private Transmitter transmitterChordSymbolFinder;
     private ChordReceiver chordReceiver;
     private final Future<?> chordSymbolFinderBuildFuture;
@@ -105,9 +108,17 @@ public class ArrangerPanel extends javax.swing.JPanel implements PropertyChangeL
         }
         spn_splitNote.setModel(new SpinnerListModel(notes));
 
-        // Prepare the data
-        chordSymbolFinderBuildFuture = Executors.newSingleThreadExecutor().submit(() -> ChordSymbolFinder.buildStaticData());   // Can take a few seconds on slow computers
-        chordSymbolFinder = new ChordSymbolFinder(4);
+        // Prepare the data: mapping the precomputed tables is fast, building them can take a few seconds on slow computers
+        if (ChordSymbolFinder.mapStaticData())
+        {
+            chordSymbolFinderBuildFuture = CompletableFuture.completedFuture(null);
+        } else
+        {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            chordSymbolFinderBuildFuture = executor.submit(() -> ChordSymbolFinder.buildStaticData());
+            executor.shutdown();
+        }
+        chordSymbolFinder = new ChordSymbolFinder(ChordSymbolFinder.MAX_NOTES);
     }
 
     public void closing()
@@ -393,23 +404,26 @@ public class ArrangerPanel extends javax.swing.JPanel implements PropertyChangeL
 
     /**
      * Called by the ChordReceiver when a chord was changed.
+     * <p>
+     * Called on the Midi thread, the chord symbol recognition does not allocate objects.
      *
-     * @param notes
+     * @param pitchesLow Bit n is set if Midi pitch n is ON, for pitches 0 to 63.
+     * @param pitchesHigh Bit n is set if Midi pitch 64+n is ON, for pitches 64 to 127.
      */
-    protected void processIncomingChord(List<Note> notes)       // protected for testing, should be private
+    protected void processIncomingChord(long pitchesLow, long pitchesHigh)       // protected for testing, should be private
     {
-        LOGGER.log(Level.FINE, "processIncomingChord() -- notes={0} nanoTime()={1}", new Object[]
+        if (LOGGER.isLoggable(Level.FINE))
         {
-            notes, System.nanoTime()
-        });
-        if (notes.size() < 3 || notes.size() > chordSymbolFinder.getMaxNbNotes())
-        {
-            return;
+            LOGGER.log(Level.FINE, "processIncomingChord() -- pitchesLow={0} pitchesHigh={1} nanoTime()={2}", new Object[]
+            {
+                Long.toBinaryString(pitchesLow), Long.toBinaryString(pitchesHigh), System.nanoTime()
+            });
         }
-        var chordSymbols = chordSymbolFinder.find(notes);
-        if (chordSymbols != null)
+        int nbChordSymbols = chordSymbolFinder.find(pitchesLow, pitchesHigh, foundChordSymbols);
+        if (nbChordSymbols > 0)
         {
-            var chordSymbol = chordSymbolFinder.getChordSymbol(notes, chordSymbols, cb_lowerNoteIsBass.isSelected());
+            int lowestPitch = pitchesLow != 0 ? Long.numberOfTrailingZeros(pitchesLow) : 64 + Long.numberOfTrailingZeros(pitchesHigh);
+            var chordSymbol = chordSymbolFinder.getChordSymbol(lowestPitch, foundChordSymbols, nbChordSymbols, cb_lowerNoteIsBass.isSelected());
             if (chordSymbol != null)
             {
                 if (arranger != null)
@@ -23,7 +23,6 @@
 package org.jjazz.arranger;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -31,14 +30,13 @@ import java.util.prefs.Preferences;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Receiver;
 import javax.sound.midi.ShortMessage;
-import org.jjazz.harmony.api.Note;
 import org.jjazz.midi.api.JJazzMidiSystem;
 import org.jjazz.midi.api.MidiUtilities;
 import org.openide.util.NbPreferences;
 
 
 /**
- * A Midi receiver which updates the current list of notes ON.
+ * A Midi receiver which updates the current notes ON, stored as a 128-bit pitch bitmap.
  * <p>
  */
 public class ChordReceiver implements Receiver
@@ -55,13 +53,16 @@ public class ChordReceiver implements Receiver
          * <p>
          * Note: event handling should be as short as possible.
          *
-         * @param notes
+         * @param pitchesLow Bit n is set if Midi pitch n is ON, for pitches 0 to 63.
+         * @param pitchesHigh Bit n is set if Midi pitch 64+n is ON, for pitches 64 to 127.
+         * @see org.jjazz.harmony.api.ChordSymbolFinder#find(long, long, org.jjazz.harmony.api.ChordSymbol[])
          */
-        void chordChanged(List<Note> notes);
+        void chordChanged(long pitchesLow, long pitchesHigh);
     }
     private int splitNote;
     private final List<ChordListener> listeners = new ArrayList<>();
-    private final List<Note> notes = new LinkedList<>();
+    private long pitchesLow;
+    private long pitchesHigh;
     private static Preferences prefs = NbPreferences.forModule(JJazzMidiSystem.class);
     private static final Logger LOGGER = Logger.getLogger(ChordReceiver.class.getSimpleName());  //NOI18N
 
@@ -85,82 +86,66 @@ public class ChordReceiver implements Receiver
     {
         if (newSplitNote < this.splitNote)
         {
-            for (var it = notes.iterator(); it.hasNext();)
+            // Remove the notes above the new split note
+            if (newSplitNote < 63)
             {
-                if (it.next().getPitch() > newSplitNote)
-                {
-                    it.remove();
-                }
+                pitchesLow &= (1L << (newSplitNote + 1)) - 1;
+                pitchesHigh = 0;
+            } else
+            {
+                pitchesHigh &= newSplitNote == 127 ? -1L : (1L << (newSplitNote - 63)) - 1;
             }
         }
         this.splitNote = newSplitNote;
         prefs.putInt(PREF_SPLIT_NOTE, this.splitNote);
     }
 
-    public void reset()
+    public synchronized void reset()
     {
-        notes.clear();
+        pitchesLow = 0;
+        pitchesHigh = 0;
     }
 
     @Override
     public void send(MidiMessage msg, long timeStamp)
     {
-        ShortMessage noteMsg = MidiUtilities.getNoteOnShortMessage(msg);
-        if (noteMsg != null)
+        long low, high;
+        synchronized (this)
         {
-            // Note ON
-            int pitch = noteMsg.getData1();
-            int velocity = noteMsg.getData2();
-
-            if (pitch > getSplitNote())
+            boolean noteOn;
+            ShortMessage noteMsg = MidiUtilities.getNoteOnShortMessage(msg);
+            if (noteMsg != null)
+            {
+                noteOn = true;
+            } else if ((noteMsg = MidiUtilities.getNoteOffShortMessage(msg)) != null)
             {
-                noteMsg = null;
+                noteOn = false;
             } else
             {
-                // Add new Note ordered by pitch
-                Note newNote = new Note(pitch, 1, velocity);
-                var lIt = notes.listIterator();
-                while (lIt.hasNext())
-                {
-                    if (pitch <= lIt.next().getPitch())
-                    {
-                        lIt.previous();
-                        break;
-                    }
-                }
-                lIt.add(newNote);
+                return;
             }
-        } else if ((noteMsg = MidiUtilities.getNoteOffShortMessage(msg)) != null)
-        {
-            // Note OFF
+
             int pitch = noteMsg.getData1();
+            if (pitch > splitNote)
+            {
+                return;
+            }
 
-            if (pitch > getSplitNote())
+            long bit = 1L << (pitch & 63);
+            if (pitch < 64)
             {
-                noteMsg = null;
+                pitchesLow = noteOn ? pitchesLow | bit : pitchesLow & ~bit;
             } else
             {
-                // Remove Note
-                var it = notes.iterator();
-                while (it.hasNext())
-                {
-                    var n = it.next();
-                    if (n.getPitch() == pitch)
-                    {
-                        it.remove();
-                        break;
-                    }
-                }
+                pitchesHigh = noteOn ? pitchesHigh | bit : pitchesHigh & ~bit;
             }
+            low = pitchesLow;
+            high = pitchesHigh;
         }
 
 
-        if (noteMsg != null)
-        {
-            // Chord was updated
-            fireChordChanged(new ArrayList<>(notes));
-        }
-
+        // Chord was updated
+        fireChordChanged(low, high);
     }
 
     @Override
@@ -182,10 +167,19 @@ public class ChordReceiver implements Receiver
         listeners.remove(listener);
     }
 
-    private void fireChordChanged(List<Note> notes)
+    private void fireChordChanged(long low, long high)
     {
-        LOGGER.log(Level.FINE, "fireChordChanged() notes={0}", notes);
-        listeners.forEach(l -> l.chordChanged(notes));
+        if (LOGGER.isLoggable(Level.FINE))
+        {
+            LOGGER.log(Level.FINE, "fireChordChanged() low={0} high={1}", new Object[]
+            {
+                Long.toBinaryString(low), Long.toBinaryString(high)
+            });
+        }
+        for (int i = 0; i < listeners.size(); i++)        // No iterator allocation
+        {
+            listeners.get(i).chordChanged(low, high);
+        }
     }
 
 }
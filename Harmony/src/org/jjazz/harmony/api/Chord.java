@@ -108,6 +108,44 @@ public class Chord implements Cloneable
         return c;
     }
 
+    /**
+     * Get the pitch classes used by this chord.
+     *
+     * @return A 12-bit mask: bit n is set if a chord note has relative pitch n.
+     */
+    public int getPitchClassMask()
+    {
+        int mask = 0;
+        for (int i = 0; i < notes.size(); i++)
+        {
+            mask |= 1 << notes.get(i).getRelativePitch();
+        }
+        return mask;
+    }
+
+    /**
+     * The relative pitch of the lowest note.
+     *
+     * @return -1 if chord is empty.
+     */
+    public int getBassPitchClass()
+    {
+        return notes.isEmpty() ? -1 : notes.get(0).getRelativePitch();
+    }
+
+    /**
+     * Transpose a pitch class mask.
+     *
+     * @param mask A 12-bit mask as returned by getPitchClassMask()
+     * @param t The transposition in semitons, can be negative.
+     * @return
+     */
+    static public int transposePitchClassMask(int mask, int t)
+    {
+        int r = ((t % 12) + 12) % 12;
+        return ((mask << r) | (mask >>> (12 - r))) & 0xFFF;
+    }
+
     /**
      * Remove all notes from the chord.
      */
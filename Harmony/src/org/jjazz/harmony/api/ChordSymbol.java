@@ -23,6 +23,9 @@
 package org.jjazz.harmony.api;
 
 import java.text.ParseException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.logging.Logger;
 import org.openide.util.NbBundle.Messages;
@@ -68,6 +71,13 @@ public class ChordSymbol implements Cloneable
      */
     private ChordType chordType;
 
+    private static final int PARSE_CACHE_MAX_SIZE = 2000;
+    /**
+     * The parsed chord symbols, keyed by the trimmed string, least recently used first.
+     * <p>
+     * Replaced by a new map when the chord type aliases are changed.
+     */
+    private static volatile Map<String, ChordSymbol> parseCache = createParseCache();
     private static final Logger LOGGER = Logger.getLogger(ChordSymbol.class.getSimpleName());
 
     public ChordSymbol()
@@ -119,6 +129,8 @@ public class ChordSymbol implements Cloneable
 
     /**
      * Construct a ChordSymbol from a string.
+     * <p>
+     * Parsing results are cached: constructing a ChordSymbol from an already used string only copies the cached fields.
      *
      * @param str A string like "Cm7", "Abmaj7", "Bm7b5", "G#MAJ7", "C/F"
      * @throws ParseException
@@ -131,6 +143,59 @@ public class ChordSymbol implements Cloneable
         }
         str = str.trim();
 
+        // Get the cache before parsing: if aliases are changed in between, the result goes to the obsolete cache
+        var cache = parseCache;
+        ChordSymbol cs = cache.get(str);
+        if (cs == null)
+        {
+            parse(str);
+            cache.putIfAbsent(str, new ChordSymbol(rootNote, bassNote, chordType, originalName));
+        } else
+        {
+            // All immutable objects
+            originalName = cs.originalName;
+            name = cs.name;
+            rootNote = cs.rootNote;
+            bassNote = cs.bassNote;
+            chordType = cs.chordType;
+        }
+    }
+
+    /**
+     * Clear the parsing cache.
+     * <p>
+     * Must be called when chord type aliases are changed.
+     */
+    static void clearParseCache()
+    {
+        parseCache = createParseCache();
+    }
+
+    /**
+     * A thread-safe LRU map limited to PARSE_CACHE_MAX_SIZE entries.
+     *
+     * @return
+     */
+    static private Map<String, ChordSymbol> createParseCache()
+    {
+        return Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChordSymbol> eldest)
+            {
+                return size() > PARSE_CACHE_MAX_SIZE;
+            }
+        });
+    }
+
+    /**
+     * Parse str and set the fields.
+     *
+     * @param str Trimmed string
+     * @throws ParseException
+     */
+    private void parse(String str) throws ParseException
+    {
         // Save the original name of the chord symbol, making sure first letter is uppercase
         originalName = str.substring(0, 1).toUpperCase() + str.substring(1);
 
@@ -298,6 +363,19 @@ public class ChordSymbol implements Cloneable
         return c;
     }
 
+    /**
+     * The pitch classes of the chord symbol, bass note excluded.
+     * <p>
+     * Unlike getChord() no object is created.
+     *
+     * @return A 12-bit mask: bit n is set if relative pitch n is used, e.g. for D7 bits 2, 6, 9 and 0 are set.
+     * @see #getBassNote()
+     */
+    public int getPitchClassMask()
+    {
+        return Chord.transposePitchClassMask(chordType.getPitchClassMask(), rootNote.getRelativePitch());
+    }
+
     /**
      * @return E.g. for D7 return "[D, F#, A, C]"
      */
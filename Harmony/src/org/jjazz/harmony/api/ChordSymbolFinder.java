@@ -25,12 +25,16 @@ package org.jjazz.harmony.api;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import com.google.common.math.BigIntegerMath;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jjazz.util.api.Utilities;
+import org.openide.modules.InstalledFileLocator;
 
 /**
  * Find matching chord symbol(s) from individual notes.
@@ -39,11 +43,24 @@ public class ChordSymbolFinder
 {
 
 
-    static public final int MAX_NOTES = 5;
+    static public final int MAX_NOTES = 6;
+    /**
+     * The max. number of chord symbols which can match the same notes.
+     */
+    static public final int MAX_CHORD_SYMBOLS = 4;
+    /**
+     * Must be incremented when the content of the position tables changes for the same chord types, e.g. if
+     * buildPositionsDatabase() or the chord symbol encoding is modified: the tables file shipped with the module is then ignored
+     * until it is regenerated.
+     */
+    static final int TABLES_GENERATOR_VERSION = 1;
     static long[] positions3;
     static long[] positions4;
     static long[] positions5;
+    static PositionHashTable positions6;
+    static private ChordSymbolFinderTables mappedTables;
     static private List<ChordType> allChordTypes;
+    static private ChordSymbol[][] rootChordSymbols;
     private final int maxNbNotes;
     private static final Logger LOGGER = Logger.getLogger(ChordSymbolFinder.class.getSimpleName());  //NOI18N
 
@@ -51,7 +68,7 @@ public class ChordSymbolFinder
     /**
      * Create an instance.
      * 
-     * @param maxNbNotes The maximum number of chord notes supported : 3, 4 or 5.
+     * @param maxNbNotes The maximum number of chord notes supported : 3, 4, 5 or 6.
      */
     public ChordSymbolFinder(int maxNbNotes)
     {
@@ -60,7 +77,7 @@ public class ChordSymbolFinder
     }
 
     /**
-     * @return The maximum number of chord notes supported: 3, 4, or 5.
+     * @return The maximum number of chord notes supported: 3, 4, 5 or 6.
      */
     public int getMaxNbNotes()
     {
@@ -70,17 +87,36 @@ public class ChordSymbolFinder
     /**
      * This must be called once before using any ChordFinder instance.
      * <p>
-     * The method may take up to 2 or 3 seconds on very slow computers to complete. If called more than once, does nothing.
+     * The precomputed tables file shipped with the module is memory-mapped, which is very fast. If the file is not available or
+     * obsolete, tables are built at runtime: this may take up to 2 or 3 seconds on very slow computers. If called more than once,
+     * does nothing.
      */
-    static public void buildStaticData()
+    static synchronized public void buildStaticData()
     {
-        if (allChordTypes == null)
+        if (!mapStaticData())
         {
-            allChordTypes = Arrays.asList(ChordTypeDatabase.getInstance().getChordTypes());
             buildPositionsDatabase();
         }
     }
 
+    /**
+     * Try to initialize the static data only from the precomputed tables file shipped with the module.
+     * <p>
+     * This takes a few milliseconds, so it can be called from the EDT. If false is returned, buildStaticData() must be called,
+     * preferably in a background task.
+     *
+     * @return True if the static data is ready.
+     */
+    static synchronized public boolean mapStaticData()
+    {
+        if (allChordTypes == null)
+        {
+            initChordTypes();
+            mappedTables = mapTablesFile();
+        }
+        return mappedTables != null || positions3 != null;
+    }
+
     /**
      * Select one chord symbol from the provided chord symbols.
      * <p>
@@ -97,34 +133,61 @@ public class ChordSymbolFinder
         checkArgument(chordSymbols != null && notes != null && !notes.isEmpty(),
                 "notes=%s, chordSymbols=%s, lowerNoteIsBass=%s", notes, chordSymbols, lowerNoteIsBass);
 
-        ChordSymbol chordSymbol;
         Note firstNote = notes.get(0);
+        ChordSymbol chordSymbol = getChordSymbol(firstNote.getPitch(), chordSymbols.toArray(new ChordSymbol[0]), chordSymbols.size(), false);
 
-        if (chordSymbols.isEmpty())
-        {
-            return null;
-        } else if (chordSymbols.size() == 1)
+        if (lowerNoteIsBass && chordSymbol != null && !chordSymbol.getRootNote().equalsRelativePitch(firstNote))
         {
-            // Easy
-            chordSymbol = chordSymbols.get(0);
-        } else
+            chordSymbol = new ChordSymbol(chordSymbol.getRootNote(), firstNote, chordSymbol.getChordType());
+        }
+
+        return chordSymbol;
+    }
+
+    /**
+     * Select one chord symbol from the provided chord symbols.
+     * <p>
+     * Same as getChordSymbol(List, List, boolean) for the results of find(int[], int, ChordSymbol[]) or find(long, long,
+     * ChordSymbol[]). No object is allocated, unless a slash chord symbol must be created because of lowerNoteIsBass.
+     *
+     * @param lowestPitch The lowest pitch of the notes which led to the chordSymbols.
+     * @param chordSymbols The ChordSymbols to choose from.
+     * @param nbChordSymbols Use the first nbChordSymbols values of chordSymbols.
+     * @param lowerNoteIsBass For ex. G-C-E pitches will return C/G.
+     * @return Null if nbChordSymbols is 0.
+     * @see ChordSymbolFinder#find(long, long, org.jjazz.harmony.api.ChordSymbol[])
+     */
+    public ChordSymbol getChordSymbol(int lowestPitch, ChordSymbol[] chordSymbols, int nbChordSymbols, boolean lowerNoteIsBass)
+    {
+        checkArgument(nbChordSymbols >= 0 && nbChordSymbols <= chordSymbols.length, "nbChordSymbols=%s", nbChordSymbols);
+
+        if (nbChordSymbols == 0)
         {
-            // Search for a chord symbol with root matching
-            chordSymbol = chordSymbols.stream()
-                    .filter(cs -> cs.getRootNote().equalsRelativePitch(firstNote))
-                    .findAny()
-                    .orElse(null);
+            return null;
+        }
+
+        int lowestRelPitch = lowestPitch % 12;
+        ChordSymbol chordSymbol = null;
 
-            // Find most common chord symbol
-            if (chordSymbol == null)
+
+        // Search for a chord symbol with root matching
+        for (int i = 0; i < nbChordSymbols && chordSymbol == null; i++)
+        {
+            if (chordSymbols[i].getRootNote().getRelativePitch() == lowestRelPitch)
             {
-                chordSymbol = pick(chordSymbols);
+                chordSymbol = chordSymbols[i];
             }
         }
 
-        if (lowerNoteIsBass && !chordSymbol.getRootNote().equalsRelativePitch(firstNote))
+        // Find most common chord symbol
+        if (chordSymbol == null)
         {
-            chordSymbol = new ChordSymbol(chordSymbol.getRootNote(), firstNote, chordSymbol.getChordType());
+            chordSymbol = pick(chordSymbols, nbChordSymbols);
+        }
+
+        if (lowerNoteIsBass && chordSymbol.getRootNote().getRelativePitch() != lowestRelPitch)
+        {
+            chordSymbol = new ChordSymbol(chordSymbol.getRootNote(), new Note(lowestPitch), chordSymbol.getChordType());
         }
 
         return chordSymbol;
@@ -134,7 +197,7 @@ public class ChordSymbolFinder
      * Find the chord symbols which match the specified notes.
      *
      * @param notes
-     * @return Can return max 4 chord symbols (e.g. for dim7 notes like C Eb Gb A)
+     * @return Can return max MAX_CHORD_SYMBOLS chord symbols (e.g. for dim7 notes like C Eb Gb A)
      */
     public List<ChordSymbol> find(List<Note> notes)
     {
@@ -147,21 +210,7 @@ public class ChordSymbolFinder
         }
 
         int index = computeIndex(notes);
-        long value;
-        switch (notes.size())
-        {
-            case 3:
-                value = positions3[index];
-                break;
-            case 4:
-                value = positions4[index];
-                break;
-            case 5:
-                value = positions5[index];
-                break;
-            default:
-                throw new IllegalStateException("pitches.size()=" + notes.size());
-        }
+        long value = getValue(notes.size(), index);
         List<ChordSymbol> list = decodeChordSymbols(value);
         if (list != null)
         {
@@ -172,6 +221,89 @@ public class ChordSymbolFinder
     }
 
 
+    /**
+     * Find the chord symbols which match the specified pitches, without allocating any object.
+     * <p>
+     * Duplicate relative pitches are ignored (e.g. a C played by each hand), the lowest one keeps its position in the voicing.
+     *
+     * @param pitches Midi pitches ordered by ascending pitch.
+     * @param nbPitches Use the first nbPitches values of pitches.
+     * @param result Filled with the matching chord symbols. Length must be &gt;= MAX_CHORD_SYMBOLS.
+     * @return The number of chord symbols stored in result. 0 if less than 3 or more than getMaxNbNotes() distinct relative
+     * pitches.
+     */
+    public int find(int[] pitches, int nbPitches, ChordSymbol[] result)
+    {
+        checkArgument(nbPitches >= 0 && nbPitches <= pitches.length, "nbPitches=%s", nbPitches);
+        checkArgument(result.length >= MAX_CHORD_SYMBOLS, "result.length=%s", result.length);
+        checkStaticData();
+
+        int usedRelPitches = 0;         // 1 bit per relative pitch
+        int nbNotes = 0;
+        int index = 0;
+        int factor = 1;
+        for (int i = 0; i < nbPitches; i++)
+        {
+            int relPitch = pitches[i] % 12;
+            if ((usedRelPitches & (1 << relPitch)) == 0)
+            {
+                if (++nbNotes > maxNbNotes)
+                {
+                    return 0;
+                }
+                usedRelPitches |= 1 << relPitch;
+                index += relPitch * factor;
+                factor *= 12;
+            }
+        }
+
+        return nbNotes < 3 ? 0 : decodeChordSymbols(getValue(nbNotes, index), result);
+    }
+
+    /**
+     * Find the chord symbols which match the pitches of a 128-bit bitmap, without allocating any object.
+     * <p>
+     * Duplicate relative pitches are ignored (e.g. a C played by each hand), the lowest one keeps its position in the voicing.
+     *
+     * @param pitchesLow Bit n is set if Midi pitch n is ON, for pitches 0 to 63.
+     * @param pitchesHigh Bit n is set if Midi pitch 64+n is ON, for pitches 64 to 127.
+     * @param result Filled with the matching chord symbols. Length must be &gt;= MAX_CHORD_SYMBOLS.
+     * @return The number of chord symbols stored in result. 0 if less than 3 or more than getMaxNbNotes() distinct relative
+     * pitches.
+     */
+    public int find(long pitchesLow, long pitchesHigh, ChordSymbol[] result)
+    {
+        checkArgument(result.length >= MAX_CHORD_SYMBOLS, "result.length=%s", result.length);
+        checkStaticData();
+
+        int usedRelPitches = 0;         // 1 bit per relative pitch
+        int nbNotes = 0;
+        int index = 0;
+        int factor = 1;
+        for (int half = 0; half < 2; half++)
+        {
+            long bits = half == 0 ? pitchesLow : pitchesHigh;
+            while (bits != 0)
+            {
+                int pitch = half * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;       // Clear lowest bit
+                int relPitch = pitch % 12;
+                if ((usedRelPitches & (1 << relPitch)) == 0)
+                {
+                    if (++nbNotes > maxNbNotes)
+                    {
+                        return 0;
+                    }
+                    usedRelPitches |= 1 << relPitch;
+                    index += relPitch * factor;
+                    factor *= 12;
+                }
+            }
+        }
+
+        return nbNotes < 3 ? 0 : decodeChordSymbols(getValue(nbNotes, index), result);
+    }
+
     /**
      * Get the index in the positions database for the specified notes list.
      *
@@ -180,36 +312,143 @@ public class ChordSymbolFinder
      */
     static public int computeIndex(List<Note> notes)
     {
-        int index;
-        int p0 = notes.get(0).getRelativePitch();
-        int p1 = notes.get(1).getRelativePitch();
-        int p2 = notes.get(2).getRelativePitch();
-        int p3;
-        int p4;
-        switch (notes.size())
+        if (notes.size() < 3 || notes.size() > MAX_NOTES)
         {
-            case 3:
-                index = p0 + 12 * p1 + 12 * 12 * p2;
-                break;
-            case 4:
-                p3 = notes.get(3).getRelativePitch();
-                index = p0 + 12 * p1 + 12 * 12 * p2 + 12 * 12 * 12 * p3;
-                break;
-            case 5:
-                p3 = notes.get(3).getRelativePitch();
-                p4 = notes.get(4).getRelativePitch();
-                index = p0 + 12 * p1 + 12 * 12 * p2 + 12 * 12 * 12 * p3 + 12 * 12 * 12 * 12 * p4;
-                break;
-            default:
-                throw new IllegalStateException("pitches.size()=" + notes.size());
+            throw new IllegalStateException("pitches.size()=" + notes.size());
+        }
+        int index = 0;
+        int factor = 1;
+        for (Note n : notes)
+        {
+            index += n.getRelativePitch() * factor;
+            factor *= 12;
         }
         return index;
     }
 
 
+    /**
+     * The chord types used to encode the chord symbols in the position tables.
+     *
+     * @return
+     */
+    static List<ChordType> getChordTypes()
+    {
+        return allChordTypes;
+    }
+
+    /**
+     * Get the non-empty entries of the position tables built at runtime, building them if needed.
+     *
+     * @param indexes Indexed by the number of notes, store the sorted table indexes for each number of notes.
+     * @param values Indexed by the number of notes, store the corresponding table values.
+     */
+    static synchronized void getTableEntries(int[][] indexes, long[][] values)
+    {
+        if (positions3 == null)
+        {
+            if (allChordTypes == null)
+            {
+                initChordTypes();
+            }
+            buildPositionsDatabase();
+        }
+
+        for (int nbNotes = 3; nbNotes <= MAX_NOTES; nbNotes++)
+        {
+            int[] idx = nbNotes == 6 ? positions6.getSortedIndexes() : null;
+            if (idx == null)
+            {
+                long[] table = nbNotes == 3 ? positions3 : (nbNotes == 4 ? positions4 : positions5);
+                idx = IntStream.range(0, table.length).filter(i -> table[i] != 0).toArray();
+            }
+            indexes[nbNotes] = idx;
+            values[nbNotes] = new long[idx.length];
+            for (int i = 0; i < idx.length; i++)
+            {
+                values[nbNotes][i] = getRuntimeValue(nbNotes, idx[i]);
+            }
+        }
+    }
+
     // =====================================================================================
     // Private methods
     // =====================================================================================
+    /**
+     * Get the encoded chord symbols for a position.
+     *
+     * @param nbNotes
+     * @param index
+     * @return
+     */
+    static private long getValue(int nbNotes, int index)
+    {
+        return mappedTables != null ? mappedTables.get(nbNotes, index) : getRuntimeValue(nbNotes, index);
+    }
+
+    static private long getRuntimeValue(int nbNotes, int index)
+    {
+        switch (nbNotes)
+        {
+            case 3:
+                return positions3[index];
+            case 4:
+                return positions4[index];
+            case 5:
+                return positions5[index];
+            case 6:
+                return positions6.get(index);
+            default:
+                throw new IllegalStateException("nbNotes=" + nbNotes);
+        }
+    }
+
+    static private void initChordTypes()
+    {
+        allChordTypes = Arrays.asList(ChordTypeDatabase.getInstance().getChordTypes());
+
+        // Reuse the same immutable instances to avoid allocations when decoding chord symbols
+        rootChordSymbols = new ChordSymbol[12][allChordTypes.size()];
+        for (int rootPitch = 0; rootPitch < 12; rootPitch++)
+        {
+            Note rootNote = new Note(rootPitch);
+            for (int i = 0; i < allChordTypes.size(); i++)
+            {
+                rootChordSymbols[rootPitch][i] = new ChordSymbol(rootNote, allChordTypes.get(i));
+            }
+        }
+    }
+
+    /**
+     * Map the precomputed tables file shipped with the module.
+     *
+     * @return Null if file is not available or can't be used.
+     */
+    static private ChordSymbolFinderTables mapTablesFile()
+    {
+        long startTime = System.nanoTime();
+        File file = InstalledFileLocator.getDefault().locate(ChordSymbolFinderTables.FILE_PATH, "org.jjazz.harmony", false);   //NOI18N
+        if (file == null)
+        {
+            LOGGER.info("mapTablesFile() " + ChordSymbolFinderTables.FILE_PATH + " not found");   //NOI18N
+            return null;
+        }
+
+        ChordSymbolFinderTables res = null;
+        try
+        {
+            res = ChordSymbolFinderTables.map(file.toPath(), allChordTypes);
+        } catch (IOException ex)
+        {
+            LOGGER.warning("mapTablesFile() Can't map " + file.getAbsolutePath() + ". ex=" + ex.getMessage());   //NOI18N
+        }
+        if (res != null)
+        {
+            double durationInMs = (System.nanoTime() - startTime) / 1000000d;
+            LOGGER.info("mapTablesFile() complete in " + durationInMs + "ms");   //NOI18N
+        }
+        return res;
+    }
     /**
      * Build the internal database : all relative pitch permutations for each chord symbol.
      * <p>
@@ -228,6 +467,12 @@ public class ChordSymbolFinder
         {
             positions5 = new long[12 * 12 * 12 * 12 * 12];       // 248k
         }
+        if (MAX_NOTES > 5)
+        {
+            // A dense table would be 3M entries, use a hash table for the few 6-note chord types
+            int nbChordTypes6 = (int) allChordTypes.stream().filter(ct -> Integer.bitCount(ct.getPitchClassMask()) == 6).count();
+            positions6 = new PositionHashTable(nbChordTypes6 * 12 * 720);
+        }
 
 
         long positionCount = 0;
@@ -262,28 +507,28 @@ public class ChordSymbolFinder
                 // Each position                
                 for (Integer[] perm : pitchPermutations)
                 {
-                    int index;
-                    long value;
+                    int index = 0;
+                    int factor = 1;
+                    for (int p : perm)
+                    {
+                        index += p * factor;
+                        factor *= 12;
+                    }
+                    long value = encodeChordSymbol(cs, getRuntimeValue(nbNotes, index));
                     switch (nbNotes)
                     {
                         case 3:
-                            index = computeIndex(Arrays.asList(new Note(perm[0]), new Note(perm[1]), new Note(perm[2])));
-                            value = positions3[index];
-                            value = encodeChordSymbol(cs, value);
                             positions3[index] = value;
                             break;
                         case 4:
-                            index = computeIndex(Arrays.asList(new Note(perm[0]), new Note(perm[1]), new Note(perm[2]), new Note(perm[3])));
-                            value = positions4[index];
-                            value = encodeChordSymbol(cs, value);
                             positions4[index] = value;
                             break;
                         case 5:
-                            index = computeIndex(Arrays.asList(new Note(perm[0]), new Note(perm[1]), new Note(perm[2]), new Note(perm[3]), new Note(perm[4])));
-                            value = positions5[index];
-                            value = encodeChordSymbol(cs, value);
                             positions5[index] = value;
                             break;
+                        case 6:
+                            positions6.put(index, value);
+                            break;
                         default:
                             throw new IllegalStateException("nbNotes=" + nbNotes);
                     }
@@ -343,12 +588,21 @@ public class ChordSymbolFinder
      */
     private List<ChordSymbol> decodeChordSymbols(long value)
     {
-        if (value == 0)
-        {
-            return null;
-        }
-        List<ChordSymbol> res = new ArrayList<>();
+        ChordSymbol[] chordSymbols = new ChordSymbol[MAX_CHORD_SYMBOLS];
+        int nb = decodeChordSymbols(value, chordSymbols);
+        return nb == 0 ? null : new ArrayList<>(Arrays.asList(chordSymbols).subList(0, nb));
+    }
 
+    /**
+     * Retrieve up to 4 chord symbols from the long value.
+     *
+     * @param value
+     * @param res Store the chord symbols
+     * @return The number of chord symbols stored in res
+     * @see ChordSymbolFinder#encodeChordSymbol(org.jjazz.harmony.api.ChordSymbol, long)
+     */
+    private int decodeChordSymbols(long value, ChordSymbol[] res)
+    {
         // Loop on occupied slots
         int i = 0;
         while (i < 4 && (value & (0xFFFFL << (i * 16))) != 0)       // 0xFFFF MUST be a long too!
@@ -364,53 +618,56 @@ public class ChordSymbolFinder
             int ctIndex = (int) ((data2 & 0xFFF0) >>> 4);
             assert !(rootPitch < 0 || rootPitch > 11 || ctIndex < 0 || ctIndex >= allChordTypes.size()) : "rootPitch=" + rootPitch + " ctIndex=" + ctIndex + " value=b" + Long.toBinaryString(value) + " i=" + i
                     + " or " + value + "  data1=b" + Long.toBinaryString(data1) + " data2=b" + Long.toBinaryString(data2);
-            ChordType ct = allChordTypes.get(ctIndex);
-            res.add(new ChordSymbol(new Note(rootPitch), ct));
+            res[i] = rootChordSymbols[rootPitch][ctIndex];
 
             i++;
         }
 
 
-        return res;
+        return i;
     }
 
     /**
-     * Choose a chord symbol amongst a list.
+     * Choose a chord symbol amongst the candidates.
      * <p>
      * Rely on the actual possible chord type list (see test data at the bottom of the file in comments) to try to choose the most
-     * common chord symbol.
+     * common chord symbol. For 2 candidates, some known ambiguous pairs are resolved. For 3 candidates or more, the 69 or m69
+     * chord symbol is preferred. Otherwise, e.g. for symmetrical chords like C+ or Cdim7 whose candidates only differ by their root,
+     * the first candidate is returned.
      *
      * @param chordSymbols
+     * @param nbChordSymbols Must be &gt; 0
      * @return
      */
-    private ChordSymbol pick(List<ChordSymbol> chordSymbols)
+    private ChordSymbol pick(ChordSymbol[] chordSymbols, int nbChordSymbols)
     {
-        assert chordSymbols.size() == 2 || chordSymbols.size() == 3 : "chordSymbols=" + chordSymbols;
+        ChordSymbol cs0 = chordSymbols[0];
+        if (nbChordSymbols == 1)
+        {
+            return cs0;
+        }
 
         ChordSymbol res = null;
 
-        ChordSymbol cs0 = chordSymbols.get(0);
-        ChordSymbol cs1 = chordSymbols.get(1);
-        ChordType ct0 = cs0.getChordType();
-        ChordType ct1 = cs1.getChordType();
-
-        if (chordSymbols.size() == 2)
+        if (nbChordSymbols == 2)
         {
-
-            if (ct0.getName().equals("m+") //  G C E => [Em+, C]  => C
-                    || ct0.getName().equals("6") //  Eb F Ab C => [Ab6, Fm7]  => Fm7
-                    || ct0.getName().equals("M713") //  Eb F G Ab C => [Fm9, AbM713] => Fm9
-                    || ct0.getName().equals("m7b9") //  Eb F G A C => [Dm7b9, F13] => F13
-                    || ct0.getName().equals("bm6") //  Bb C En Gb => [Cm7b5, Ebm6]  => m7b5
+            ChordSymbol cs1 = chordSymbols[1];
+            String ct0Name = cs0.getChordType().getName();
+
+            if (ct0Name.equals("m+") //  G C E => [Em+, C]  => C
+                    || ct0Name.equals("6") //  Eb F Ab C => [Ab6, Fm7]  => Fm7
+                    || ct0Name.equals("M713") //  Eb F G Ab C => [Fm9, AbM713] => Fm9
+                    || ct0Name.equals("m7b9") //  Eb F G A C => [Dm7b9, F13] => F13
+                    || ct0Name.equals("bm6") //  Bb C En Gb => [Cm7b5, Ebm6]  => m7b5
                     )
             {
                 // Take the other one
                 res = cs1;
-            } else if (ct0.getName().equals("") //  G C E => [Em+, C]  => C
-                    || ct0.getName().equals("m7") //  Eb F Ab C => [Ab6, Fm7]  => Fm7
-                    || ct0.getName().equals("m9") //  Eb F G Ab C => [Fm9, AbM713] => Fm9
-                    || ct0.getName().equals("13") //  Eb F G A C => [Dm7b9, F13] => F13
-                    || ct0.getName().equals("m7b5") //  Bb C Eb Gb => [Cm7b5, Ebm6]  => m7b5                    
+            } else if (ct0Name.equals("") //  G C E => [Em+, C]  => C
+                    || ct0Name.equals("m7") //  Eb F Ab C => [Ab6, Fm7]  => Fm7
+                    || ct0Name.equals("m9") //  Eb F G Ab C => [Fm9, AbM713] => Fm9
+                    || ct0Name.equals("13") //  Eb F G A C => [Dm7b9, F13] => F13
+                    || ct0Name.equals("m7b5") //  Bb C Eb Gb => [Cm7b5, Ebm6]  => m7b5                    
                     )
             {
                 // Take this one
@@ -420,10 +677,13 @@ public class ChordSymbolFinder
         {
             // Bb69 => [Bb69, C9sus, Gm11]
             // Gm69 => [Em11b5, A7susb9, Gm69]
-            res = chordSymbols.stream()
-                    .filter(cs -> cs.getChordType().getName().contains("69")) // Take the 69 or m69
-                    .findAny()
-                    .orElse(null);
+            for (int i = 0; i < nbChordSymbols && res == null; i++)
+            {
+                if (chordSymbols[i].getChordType().getName().contains("69"))        // Take the 69 or m69
+                {
+                    res = chordSymbols[i];
+                }
+            }
         }
 
         return res == null ? cs0 : res;
@@ -431,7 +691,7 @@ public class ChordSymbolFinder
 
     static private void checkStaticData()
     {
-        if (positions3 == null)
+        if (mappedTables == null && positions3 == null)
         {
             throw new IllegalStateException("Static data not built yet!");
         }
@@ -440,6 +700,77 @@ public class ChordSymbolFinder
     // =====================================================================================
     // Private classes
     // =====================================================================================
+    /**
+     * An open-addressing hash table from a position index to its encoded chord symbols.
+     */
+    static class PositionHashTable
+    {
+
+        private final int[] keys;       // index+1, 0 means empty slot
+        private final long[] values;
+        private final int mask;
+        private int size;
+
+        /**
+         * @param maxSize The max. number of entries
+         */
+        PositionHashTable(int maxSize)
+        {
+            int capacity = Integer.highestOneBit(Math.max(16, maxSize * 2) - 1) << 1;     // Load factor <= 0.5
+            keys = new int[capacity];
+            values = new long[capacity];
+            mask = capacity - 1;
+        }
+
+        long get(int index)
+        {
+            int key = index + 1;
+            int slot = hash(key);
+            while (keys[slot] != 0)
+            {
+                if (keys[slot] == key)
+                {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return 0;
+        }
+
+        void put(int index, long value)
+        {
+            int key = index + 1;
+            int slot = hash(key);
+            while (keys[slot] != 0 && keys[slot] != key)
+            {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0)
+            {
+                if (size >= keys.length / 2)
+                {
+                    throw new IllegalStateException("Hash table is full, size=" + size);   //NOI18N
+                }
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] = value;
+        }
+
+        /**
+         * @return The indexes with a value, in ascending order.
+         */
+        int[] getSortedIndexes()
+        {
+            return Arrays.stream(keys).filter(k -> k != 0).map(k -> k - 1).sorted().toArray();
+        }
+
+        private int hash(int key)
+        {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
 
 }
 
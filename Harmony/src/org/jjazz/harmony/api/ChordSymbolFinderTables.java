@@ -0,0 +1,302 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.harmony.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.logging.Logger;
+
+/**
+ * The ChordSymbolFinder position tables stored in a binary file, accessed via a read-only memory mapping.
+ * <p>
+ * Only the non-empty table entries are stored, sorted by index, so that a lookup is a binary search in the mapped buffers.<br>
+ * File format (big endian): MAGIC, VERSION, generator inputs hash (long), CRC32 of the rest of the file (int), number of tables,
+ * then for each table: nbNotes, nbEntries, int[nbEntries] indexes, long[nbEntries] values.
+ * <p>
+ * The file shipped in the module is generated by main(): run "ant generate-chordsymbolfinder-tables" in the Harmony module. The
+ * generator inputs hash covers the built-in chord types, ChordSymbolFinder.TABLES_GENERATOR_VERSION and the table limits: if one
+ * of them changes without regenerating the file, or if the file is truncated or corrupted, map() returns null and
+ * ChordSymbolFinder falls back to building the tables at runtime.
+ */
+class ChordSymbolFinderTables
+{
+
+    /**
+     * The path of the shipped file, relative to the module cluster.
+     */
+    static final String FILE_PATH = "modules/data/ChordSymbolFinderTables.bin";
+    private static final int MAGIC = 0x4A4A4346;
+    private static final int VERSION = 3;
+    private final IntBuffer[] indexes = new IntBuffer[ChordSymbolFinder.MAX_NOTES + 1];
+    private final LongBuffer[] values = new LongBuffer[ChordSymbolFinder.MAX_NOTES + 1];
+    private static final Logger LOGGER = Logger.getLogger(ChordSymbolFinderTables.class.getSimpleName());
+
+    private ChordSymbolFinderTables()
+    {
+    }
+
+    /**
+     * Map the tables file.
+     *
+     * @param file
+     * @param chordTypes The chord types used to encode the table values
+     * @return Null if file format or generator inputs hash does not match, or if file is truncated or corrupted.
+     * @throws IOException If file could not be read
+     */
+    static ChordSymbolFinderTables map(Path file, List<ChordType> chordTypes) throws IOException
+    {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());      // Mapping remains valid after channel is closed
+        }
+
+        try
+        {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                LOGGER.warning("map() Invalid file format: " + file);   //NOI18N
+                return null;
+            }
+            if (buffer.getLong() != computeInputsHash(chordTypes))
+            {
+                LOGGER.warning("map() Generator inputs hash mismatch, file is obsolete: " + file);   //NOI18N
+                return null;
+            }
+            if (buffer.getInt() != computeCrc(buffer.duplicate()))
+            {
+                LOGGER.warning("map() CRC mismatch, file is corrupted: " + file);   //NOI18N
+                return null;
+            }
+
+            ChordSymbolFinderTables res = new ChordSymbolFinderTables();
+            int nbTables = buffer.getInt();
+            for (int i = 0; i < nbTables; i++)
+            {
+                int nbNotes = buffer.getInt();
+                int nbEntries = buffer.getInt();
+                if (nbNotes < 3 || nbNotes > ChordSymbolFinder.MAX_NOTES || nbEntries < 0 || nbEntries > buffer.remaining())
+                {
+                    LOGGER.warning("map() Invalid table nbNotes=" + nbNotes + " nbEntries=" + nbEntries + " file=" + file);   //NOI18N
+                    return null;
+                }
+                res.indexes[nbNotes] = slice(buffer, nbEntries * Integer.BYTES).asIntBuffer();
+                res.values[nbNotes] = slice(buffer, nbEntries * Long.BYTES).asLongBuffer();
+            }
+            if (buffer.hasRemaining())
+            {
+                LOGGER.warning("map() Unexpected data at the end of file: " + file);   //NOI18N
+                return null;
+            }
+            return res;
+
+        } catch (BufferUnderflowException ex)
+        {
+            LOGGER.warning("map() Unexpected end of file: " + file);   //NOI18N
+            return null;
+        }
+    }
+
+    /**
+     * Write the tables in the file format expected by map().
+     *
+     * @param out
+     * @param chordTypes The chord types used to encode the table values
+     * @param indexes Indexed by the number of notes, the sorted indexes of the non-empty entries. indexes[nbNotes] can be null.
+     * @param values Indexed by the number of notes, the corresponding values.
+     * @throws IOException
+     */
+    static void write(OutputStream out, List<ChordType> chordTypes, int[][] indexes, long[][] values) throws IOException
+    {
+        // Write the tables first to compute the CRC
+        ByteArrayOutputStream tablesOut = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(tablesOut);
+
+        int nbTables = 0;
+        for (int[] idx : indexes)
+        {
+            nbTables += idx != null ? 1 : 0;
+        }
+        dos.writeInt(nbTables);
+
+        for (int nbNotes = 0; nbNotes < indexes.length; nbNotes++)
+        {
+            if (indexes[nbNotes] == null)
+            {
+                continue;
+            }
+            dos.writeInt(nbNotes);
+            dos.writeInt(indexes[nbNotes].length);
+            for (int index : indexes[nbNotes])
+            {
+                dos.writeInt(index);
+            }
+            for (long v : values[nbNotes])
+            {
+                dos.writeLong(v);
+            }
+        }
+        dos.flush();
+        byte[] tables = tablesOut.toByteArray();
+
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeLong(computeInputsHash(chordTypes));
+        header.writeInt(computeCrc(ByteBuffer.wrap(tables)));
+        header.write(tables);
+        header.flush();
+    }
+
+    /**
+     * Get the encoded chord symbols for the specified position.
+     *
+     * @param nbNotes
+     * @param index
+     * @return 0 if no chord symbol
+     * @see ChordSymbolFinder#computeIndex(java.util.List)
+     */
+    long get(int nbNotes, int index)
+    {
+        IntBuffer idx = indexes[nbNotes];
+        if (idx == null)
+        {
+            return 0;
+        }
+        int low = 0;
+        int high = idx.limit() - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int midIndex = idx.get(mid);
+            if (midIndex < index)
+            {
+                low = mid + 1;
+            } else if (midIndex > index)
+            {
+                high = mid - 1;
+            } else
+            {
+                return values[nbNotes].get(mid);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Generate the tables file.
+     * <p>
+     * Called by the generate-chordsymbolfinder-tables target of the Harmony module build.xml.
+     *
+     * @param args The output file path, e.g. Harmony/release/modules/data/ChordSymbolFinderTables.bin
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Paths.get(args.length > 0 ? args[0] : "release/" + FILE_PATH);
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        int[][] indexes = new int[ChordSymbolFinder.MAX_NOTES + 1][];
+        long[][] values = new long[ChordSymbolFinder.MAX_NOTES + 1][];
+        ChordSymbolFinder.getTableEntries(indexes, values);
+        try (OutputStream out = Files.newOutputStream(file))
+        {
+            write(out, ChordSymbolFinder.getChordTypes(), indexes, values);
+        }
+        LOGGER.info("main() Tables written to " + file.toAbsolutePath() + ", size=" + Files.size(file));   //NOI18N
+    }
+
+    // =====================================================================================
+    // Private methods
+    // =====================================================================================
+
+    /**
+     * A value which changes if the inputs used to generate the tables change: the chord types (or their order), the generator
+     * version and the table limits.
+     *
+     * @param chordTypes
+     * @return
+     */
+    static private long computeInputsHash(List<ChordType> chordTypes)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(ChordSymbolFinder.TABLES_GENERATOR_VERSION).append(';')
+                .append(ChordSymbolFinder.MAX_NOTES).append(';')
+                .append(ChordSymbolFinder.MAX_CHORD_SYMBOLS).append(';');
+        for (ChordType ct : chordTypes)
+        {
+            sb.append(ct.getName()).append('=').append(ct.toDegreeString()).append(';');
+        }
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex)
+        {
+            // Should never happen, SHA-256 is supported by all Java platforms
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Compute the CRC32 of the remaining bytes of the buffer.
+     *
+     * @param buffer Its position is moved to its limit
+     * @return
+     */
+    static private int computeCrc(ByteBuffer buffer)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+
+    static private ByteBuffer slice(ByteBuffer buffer, int size)
+    {
+        if (buffer.remaining() < size)
+        {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer res = buffer.slice();
+        res.limit(size);
+        buffer.position(buffer.position() + size);
+        return res;
+    }
+}
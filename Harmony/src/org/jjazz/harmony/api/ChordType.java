@@ -97,6 +97,10 @@ final public class ChordType
      */
     private String degreeString;
 
+    private int pitchClassMask;
+
+    private int degreeMask;
+
     /**
      * Constructed from a factory.
      *
@@ -203,6 +207,9 @@ final public class ChordType
         sb.deleteCharAt(sb.length() - 1);
         sb.append("]");
         degreeString = sb.toString();
+
+        pitchClassMask = chord.getPitchClassMask();
+        degreeMask = computeDegreeMask(degrees);
     }
 
     /**
@@ -951,6 +958,43 @@ final public class ChordType
         return degreeString;
     }
 
+    /**
+     * The pitch classes of the chord type, with a C root.
+     * <p>
+     * Use Chord.transposePitchClassMask() to get the pitch classes for another root.
+     *
+     * @return A 12-bit mask: bit n is set if relative pitch n is used, e.g. 0b000010010001 for the major chord type.
+     * @see Chord#transposePitchClassMask(int, int)
+     */
+    public int getPitchClassMask()
+    {
+        return pitchClassMask;
+    }
+
+    /**
+     * @return A mask with bit n set if the Degree with ordinal n is used.
+     */
+    int getDegreeMask()
+    {
+        return degreeMask;
+    }
+
+    /**
+     * Compute a mask with bit n set if the Degree with ordinal n is used.
+     *
+     * @param degrees
+     * @return
+     */
+    static int computeDegreeMask(List<Degree> degrees)
+    {
+        int res = 0;
+        for (int i = 0; i < degrees.size(); i++)
+        {
+            res |= 1 << degrees.get(i).ordinal();
+        }
+        return res;
+    }
+
     /**
      * @return A corresponding Chord with a default C root.
      */
@@ -53,6 +53,10 @@ public class ChordTypeDatabase
 
     private static ChordTypeDatabase INSTANCE;
     private final List<ChordType> chordTypes = new ArrayList<>();
+    /**
+     * The chord types indexed by their pitch class mask (built-in chord types have distinct masks).
+     */
+    private final ChordType[] pitchClassMaskChordTypes = new ChordType[1 << 12];
     private final HashMap<ChordType, String> mapCtDefaultAliases = new HashMap<>();
     private HashMap<String, ChordType> mapAliasCt = new HashMap<>(450);     // Try to avoid rehash
     private final HashMap<String, Integer> mapExtensionIndex = new HashMap<>();
@@ -248,6 +252,7 @@ public class ChordTypeDatabase
         // Update model
         mapAliasCt.put(alias, ct);
         storeAliasesString(ct, newAliases);
+        ChordSymbol.clearParseCache();
     }
 
     public void resetAliases(ChordType ct)
@@ -361,15 +366,35 @@ public class ChordTypeDatabase
         {
             throw new IllegalArgumentException("degrees=" + degrees);   //NOI18N
         }
-        for (ChordType ct : chordTypes)
+        int pitchClassMask = 0;
+        for (int i = 0; i < degrees.size(); i++)
         {
-            var ctDegrees = ct.getDegrees();
-            if (ctDegrees.size() == degrees.size() && ctDegrees.containsAll(degrees))
-            {
-                return ct;
-            }
+            pitchClassMask |= 1 << degrees.get(i).getPitch();
+        }
+        ChordType ct = pitchClassMaskChordTypes[pitchClassMask];
+        if (ct == null)
+        {
+            return null;
+        }
+
+        // Different degrees can have the same pitch, e.g. FIFTH_FLAT and ELEVENTH_SHARP
+        int degreeMask = ChordType.computeDegreeMask(degrees);
+        return (ct.getDegreeMask() == degreeMask && Integer.bitCount(degreeMask) == degrees.size()) ? ct : null;
+    }
+
+    /**
+     * Get the ChordType which uses the specified pitch classes.
+     *
+     * @param pitchClassMask A 12-bit mask with a C root, see ChordType.getPitchClassMask().
+     * @return Can be null
+     */
+    public ChordType getChordTypeFromPitchClasses(int pitchClassMask)
+    {
+        if (pitchClassMask < 0 || pitchClassMask >= pitchClassMaskChordTypes.length)
+        {
+            throw new IllegalArgumentException("pitchClassMask=" + pitchClassMask);   //NOI18N
         }
-        return null;
+        return pitchClassMaskChordTypes[pitchClassMask];
     }
 
     /**
@@ -418,6 +443,12 @@ public class ChordTypeDatabase
 
         // Save in the database
         chordTypes.add(ct);
+        int mask = ct.getPitchClassMask();
+        if (pitchClassMaskChordTypes[mask] != null)
+        {
+            throw new IllegalStateException("Pitch class mask already used ! ct=" + ct + " existing_ct=" + pitchClassMaskChordTypes[mask]);   //NOI18N
+        }
+        pitchClassMaskChordTypes[mask] = ct;
 
         // Save the alias list
         mapCtDefaultAliases.put(ct, aliases);
@@ -451,6 +482,7 @@ public class ChordTypeDatabase
                 }
             }
         }
+        ChordSymbol.clearParseCache();
         if (!b)
         {
             throw new IllegalStateException("buildAliasMap() error(s) building the alias map, see log messages.");   //NOI18N
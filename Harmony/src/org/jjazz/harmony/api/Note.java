@@ -62,13 +62,9 @@ public class Note implements Comparable<Note>, Cloneable
         "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"
     };
     /**
-     * The pitch of the note (0-127).
+     * The pitch of the note (0-127), byte to reduce the memory footprint of large phrases.
      */
-    private int pitch;
-    /**
-     * The symbolic duration of the note.
-     */
-    private SymbolicDuration symbolicDuration;
+    private byte pitch;
     /**
      * The duration in beats of the note.
      */
@@ -77,7 +73,7 @@ public class Note implements Comparable<Note>, Cloneable
      * Sharp or flat
      */
     private Alteration alterationDisplay;
-    private int velocity;
+    private byte velocity;
 
     /**
      * Use MidiConst.PITCH_STD, Quarter duration, Alteration.Flat and standard velocity.
@@ -134,11 +130,10 @@ public class Note implements Comparable<Note>, Cloneable
         {
             throw new IllegalArgumentException("p=" + p + " bd=" + bd + " alt=" + alt + " v=" + v);   //NOI18N
         }
-        pitch = p;
+        pitch = (byte) p;
         beatDuration = bd;
-        symbolicDuration = SymbolicDuration.getSymbolicDuration(beatDuration);;
         alterationDisplay = alt;
-        velocity = v;
+        velocity = (byte) v;
     }
 
     /**
@@ -168,7 +163,7 @@ public class Note implements Comparable<Note>, Cloneable
      * <p>
      * Ex: "G", "Cb", "A#m6", "E7" will generate notes G, B, A#, E with Const.OCTAVE_STD for the octave id.<br>
      * Ex: "C!3", "Db!6", "A#dim!2" will generate notes C octave 3, Db octave 6, A# octave 2.<br>
-     * Important: note that the octave range is [0-10], unlike for toPianoOctaveString().
+     * Important: note that the octave range is [0-10] (up to "G!10" for octave 10), unlike for toPianoOctaveString().
      *
      * @param s A string
      *
@@ -271,15 +266,16 @@ public class Note implements Comparable<Note>, Cloneable
                 throw new ParseException(ResUtil.getString(getClass(), "Note.ERR_InvalidNote", str) + " : " + e.getLocalizedMessage(), 0);
             }
         }
-        if (!checkOctave(octave))
+        int p = octave * 12 + relPitch;
+        if (!checkOctave(octave) || !checkPitch(p))
         {
+            // Octave OCTAVE_MAX only goes up to G (pitch 127)
             throw new ParseException(ResUtil.getString(getClass(), "Note.ERR_InvalidNote", str), 0);
         }
 
         // Build the note
-        pitch = octave * 12 + relPitch;
+        pitch = (byte) p;
         beatDuration = SymbolicDuration.QUARTER.getBeatDuration();
-        symbolicDuration = SymbolicDuration.QUARTER;
         alterationDisplay = alt;
         velocity = VELOCITY_STD;
     }
@@ -308,9 +304,14 @@ public class Note implements Comparable<Note>, Cloneable
         return beatDuration;
     }
 
+    /**
+     * Computed from the duration in beats, it is not stored to save memory.
+     *
+     * @return
+     */
     public final SymbolicDuration getSymbolicDuration()
     {
-        return symbolicDuration;
+        return SymbolicDuration.getSymbolicDuration(beatDuration);
     }
 
     /**
@@ -23,7 +23,11 @@
 package org.jjazz.harmony.api;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 import static org.jjazz.harmony.api.Bundle.*;
 import org.openide.util.NbBundle;
 
@@ -105,6 +109,14 @@ public class ScaleManager
     );
 
     private static ArrayList<StandardScale> stdScales;
+    /**
+     * The indexes in stdScales of the scales matching each chord type.
+     */
+    private final Map<ChordType, int[]> mapChordTypeScaleIndexes;
+    /**
+     * The scale instances for each [scale index][start pitch].
+     */
+    private final StandardScaleInstance[][] scaleInstances;
 
     public static ScaleManager getInstance()
     {
@@ -138,6 +150,26 @@ public class ScaleManager
         stdScales.add(PENTATONIC_MAJOR);
         stdScales.add(PENTATONIC_MINOR);
         stdScales.add(BLUES);
+
+
+        // Precompute the scale instances for each start pitch
+        scaleInstances = new StandardScaleInstance[stdScales.size()][128];
+        for (int i = 0; i < stdScales.size(); i++)
+        {
+            for (int pitch = 0; pitch < 128; pitch++)
+            {
+                scaleInstances[i][pitch] = new StandardScaleInstance(stdScales.get(i), new Note(pitch));
+            }
+        }
+
+
+        // Precompute the matching scales of each chord type
+        HashMap<ChordType, int[]> map = new HashMap<>();
+        for (ChordType ct : ChordTypeDatabase.getInstance().getChordTypes())
+        {
+            map.put(ct, computeMatchingScaleIndexes(ct));
+        }
+        mapChordTypeScaleIndexes = Collections.unmodifiableMap(map);
     }
 
     /**
@@ -159,31 +191,46 @@ public class ScaleManager
      * Test all standard scales based on cs root note. A scale matches if each chord note is a scale note.<br>
      * Example: C7b5=C E Gb Bb, matching scales=ALTERED, LYDIAN_b7, WHOLE_TONE, DIMINISHED_HALF_WHOLE<br>
      * Example: C7b9b5=C Db E Gb Bb, matching scales=ALTERED, DIMINISHED_HALF_WHOLE<br>
+     * <p>
+     * The matching scales of each chord type are precomputed, returned StandardScaleInstances are shared instances.
      *
      * @param cs
      * @return
      */
     public List<StandardScaleInstance> getMatchingScales(ChordSymbol cs)
     {
-        ArrayList<StandardScaleInstance> ssis = new ArrayList<>();
-        for (StandardScale ss : stdScales)
+        ChordType ct = cs.getChordType();
+        int[] scaleIndexes = mapChordTypeScaleIndexes.get(ct);
+        if (scaleIndexes == null)
         {
-            boolean add = true;
-            for (Degree d : cs.getChordType().getDegrees())
-            {
-                // Don't use degree equality but pitch equality, more flexible (eg b5 and #11 can match)
-                if (ss.getDegree(d.getPitch()) == null)
-                {
-                    add = false;
-                    break;
-                }
-            }
-            if (add)
-            {
-                StandardScaleInstance ssi = new StandardScaleInstance(ss, cs.getRootNote());
-                ssis.add(ssi);
-            }
+            // Chord type not in the database
+            scaleIndexes = computeMatchingScaleIndexes(ct);
+        }
+
+        int pitch = cs.getRootNote().getPitch();
+        ArrayList<StandardScaleInstance> ssis = new ArrayList<>(scaleIndexes.length);
+        for (int scaleIndex : scaleIndexes)
+        {
+            ssis.add(scaleInstances[scaleIndex][pitch]);
         }
         return ssis;
     }
+
+    // =====================================================================================
+    // Private methods
+    // =====================================================================================
+    /**
+     * Compute the standard scales which contain all the chord type degrees.
+     *
+     * @param ct
+     * @return The indexes of the matching scales in stdScales
+     */
+    private int[] computeMatchingScaleIndexes(ChordType ct)
+    {
+        List<Degree> degrees = ct.getDegrees();
+        return IntStream.range(0, stdScales.size())
+                // Don't use degree equality but pitch equality, more flexible (eg b5 and #11 can match)
+                .filter(i -> degrees.stream().allMatch(d -> stdScales.get(i).getDegree(d.getPitch()) != null))
+                .toArray();
+    }
 }
@@ -22,6 +22,8 @@
  */
 package org.jjazz.harmony.api;
 
+import java.util.Arrays;
+
 public enum SymbolicDuration
 {
     UNKNOWN(0.0F),
@@ -39,6 +41,20 @@ public enum SymbolicDuration
     WHOLE(4.0F),
     WHOLE_DOTTED(6.0F);
     private final float beatDuration;
+    /**
+     * The values and their beat durations, in ascending beat duration order, see getSymbolicDuration(float).
+     */
+    private static final SymbolicDuration[] VALUES = values();
+    private static final float[] BEAT_DURATIONS = new float[VALUES.length];
+
+    static
+    {
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            BEAT_DURATIONS[i] = VALUES[i].beatDuration;
+            assert i == 0 || BEAT_DURATIONS[i] > BEAT_DURATIONS[i - 1] : "VALUES=" + Arrays.toString(VALUES);
+        }
+    }
 
     SymbolicDuration(float d)
     {
@@ -64,15 +80,17 @@ public enum SymbolicDuration
         return (this == EIGHTH_TRIPLET) || (this == QUARTER_TRIPLET) || (this == HALF_TRIPLET) || (this == WHOLE_TRIPLET);
     }
 
+    /**
+     * Get the SymbolicDuration which matches exactly the specified duration.
+     * <p>
+     * Uses a binary search without allocation, this is called for each Note.getSymbolicDuration().
+     *
+     * @param bd
+     * @return UNKNOWN if no match
+     */
     public static SymbolicDuration getSymbolicDuration(float bd)
     {
-        for (SymbolicDuration sd : SymbolicDuration.values())
-        {
-            if (sd.getBeatDuration() == bd)
-            {
-                return sd;
-            }
-        }
-        return SymbolicDuration.UNKNOWN;
+        int index = Arrays.binarySearch(BEAT_DURATIONS, bd);
+        return index >= 0 ? VALUES[index] : SymbolicDuration.UNKNOWN;
     }
 }
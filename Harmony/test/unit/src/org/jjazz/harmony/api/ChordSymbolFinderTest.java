@@ -22,13 +22,24 @@
  */
 package org.jjazz.harmony.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.junit.After;
 import org.junit.AfterClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -41,6 +52,10 @@ import org.openide.util.Exceptions;
 public class ChordSymbolFinderTest
 {
 
+    /**
+     * Optional system property: the Harmony module release directory, used to find the shipped tables file.
+     */
+    public static final String PROP_RELEASE_DIR = "jjazz.harmony.releaseDir";
     private Map<String, List<Note>> testDatabase = new HashMap<>();
 
     public ChordSymbolFinderTest()
@@ -129,6 +144,143 @@ public class ChordSymbolFinderTest
         }
     }
 
+    @Test
+    public void testMappedTables() throws IOException
+    {
+        System.out.println("\n\ntestMappedTables() ========================");
+        int[][] indexes = new int[ChordSymbolFinder.MAX_NOTES + 1][];
+        long[][] values = new long[ChordSymbolFinder.MAX_NOTES + 1][];
+        ChordSymbolFinder.getTableEntries(indexes, values);
+        Path file = Files.createTempFile("ChordSymbolFinderTables", ".bin");
+        try
+        {
+            try (OutputStream out = Files.newOutputStream(file))
+            {
+                ChordSymbolFinderTables.write(out, ChordSymbolFinder.getChordTypes(), indexes, values);
+            }
+            System.out.println("file size=" + Files.size(file));
+            ChordSymbolFinderTables mapped = ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes());
+            assertNotNull(mapped);
+            for (int nbNotes = 3; nbNotes <= ChordSymbolFinder.MAX_NOTES; nbNotes++)
+            {
+                for (int i = 0; i < indexes[nbNotes].length; i++)
+                {
+                    assertEquals(values[nbNotes][i], mapped.get(nbNotes, indexes[nbNotes][i]));
+                }
+                assertEquals(0, mapped.get(nbNotes, 0));       // All notes are C
+            }
+
+
+            // Truncated, corrupted or obsolete files must be rejected
+            byte[] data = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(data, data.length / 2));
+            assertNull(ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes()));
+            Files.write(file, Arrays.copyOf(data, 10));
+            assertNull(ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes()));
+            byte[] corrupted = data.clone();
+            corrupted[data.length - 3] ^= 1;
+            Files.write(file, corrupted);
+            assertNull(ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes()));
+            Files.write(file, data);
+            assertNull(ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes().subList(1, ChordSymbolFinder.getChordTypes().size())));
+        } finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * The tables file shipped with the module must be up to date.
+     */
+    @Test
+    public void testShippedTablesFile() throws IOException
+    {
+        System.out.println("\n\ntestShippedTablesFile() ========================");
+        Path file = getShippedTablesFile();
+        assertNotNull("Tables file not found, set -D" + PROP_RELEASE_DIR + "=<Harmony module release directory>", file);
+        assertNotNull("Run \"ant generate-chordsymbolfinder-tables\" in the Harmony module to regenerate " + file,
+                ChordSymbolFinderTables.map(file, ChordSymbolFinder.getChordTypes()));
+    }
+
+    @Test
+    public void testFindPrimitive()
+    {
+        System.out.println("\n\ntestFindPrimitive() ========================");
+        ChordSymbolFinder instance = new ChordSymbolFinder(6);
+        ChordSymbol[] result = new ChordSymbol[ChordSymbolFinder.MAX_CHORD_SYMBOLS];
+        for (var strTest : testDatabase.keySet())
+        {
+            List<Note> notes = testDatabase.get(strTest);
+            int[] pitches = notes.stream().mapToInt(n -> n.getPitch()).toArray();
+            List<ChordSymbol> expected = instance.find(notes);
+            int nb = instance.find(pitches, pitches.length, result);
+            assertEquals(strTest, expected, Arrays.asList(result).subList(0, nb));
+        }
+
+
+        // Two-handed CM13 voicing with a doubled C: C2 G2 B2 + C4 E4 A4 D5
+        int[] pitches = new int[]
+        {
+            36, 43, 47, 60, 64, 69, 74
+        };
+        int nb = instance.find(pitches, pitches.length, result);
+        System.out.println("CM13 voicing => " + Arrays.asList(result).subList(0, nb));
+        assertTrue(Arrays.asList(result).subList(0, nb).stream().anyMatch(cs -> cs.getName().equals("CM13")));
+
+
+        // Same with a 128-bit pitch bitmap
+        long low = 0;
+        long high = 0;
+        for (int p : pitches)
+        {
+            if (p < 64)
+            {
+                low |= 1L << p;
+            } else
+            {
+                high |= 1L << (p - 64);
+            }
+        }
+        ChordSymbol[] result2 = new ChordSymbol[ChordSymbolFinder.MAX_CHORD_SYMBOLS];
+        assertEquals(nb, instance.find(low, high, result2));
+        assertEquals(Arrays.asList(result).subList(0, nb), Arrays.asList(result2).subList(0, nb));
+    }
+
+    @Test
+    public void testGetChordSymbolPrimitive()
+    {
+        System.out.println("\n\ntestGetChordSymbolPrimitive() ========================");
+        ChordSymbolFinder instance = new ChordSymbolFinder(6);
+        ChordSymbol[] result = new ChordSymbol[ChordSymbolFinder.MAX_CHORD_SYMBOLS];
+        for (var strTest : testDatabase.keySet())
+        {
+            List<Note> notes = testDatabase.get(strTest);
+            int[] pitches = notes.stream().mapToInt(n -> n.getPitch()).toArray();
+            List<ChordSymbol> chordSymbols = instance.find(notes);
+            int nb = instance.find(pitches, pitches.length, result);
+            for (boolean lowerNoteIsBass : new boolean[]
+            {
+                false, true
+            })
+            {
+                ChordSymbol expected = chordSymbols.isEmpty() ? null : instance.getChordSymbol(notes, chordSymbols, lowerNoteIsBass);
+                ChordSymbol actual = instance.getChordSymbol(pitches[0], result, nb, lowerNoteIsBass);
+                assertEquals(strTest, expected == null ? null : expected.getName(), actual == null ? null : actual.getName());
+            }
+        }
+
+
+        // 4 candidates (diminished 7th) with a lowest note which is not a root: first candidate
+        int nb = instance.find(new int[]
+        {
+            60, 63, 66, 69
+        }, 4, result);
+        assertEquals(4, nb);
+        assertEquals(result[0], instance.getChordSymbol(62, result, nb, false));
+        assertEquals(0, instance.find(new int[0], 0, result));
+        assertNull(instance.getChordSymbol(60, result, 0, false));
+    }
+
     private void testPitches(ChordSymbolFinder instance, List<Note> data)
     {
         long startTime = System.nanoTime();
@@ -145,6 +297,41 @@ public class ChordSymbolFinderTest
         }
     }
 
+    /**
+     * Get the tables file shipped in the module release directory.
+     * <p>
+     * Use the PROP_RELEASE_DIR system property if set, otherwise search the module directory from the test classes location,
+     * e.g. Harmony/build/test/unit/classes.
+     *
+     * @return Null if not found
+     */
+    private Path getShippedTablesFile()
+    {
+        String releaseDir = System.getProperty(PROP_RELEASE_DIR);
+        if (releaseDir != null)
+        {
+            return Paths.get(releaseDir, ChordSymbolFinderTables.FILE_PATH);
+        }
+
+        Path dir;
+        try
+        {
+            dir = Paths.get(ChordSymbolFinderTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException ex)
+        {
+            return null;
+        }
+        for (; dir != null; dir = dir.getParent())
+        {
+            Path file = dir.resolve("release").resolve(ChordSymbolFinderTables.FILE_PATH);
+            if (Files.isRegularFile(file))
+            {
+                return file;
+            }
+        }
+        return null;
+    }
+
     private void addTestData(String s)
     {
         List<Note> res = new ArrayList<>();
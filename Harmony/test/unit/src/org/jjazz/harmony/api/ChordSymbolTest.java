@@ -0,0 +1,125 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.harmony.api;
+
+import java.text.ParseException;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check the ChordSymbol parse cache.
+ */
+public class ChordSymbolTest
+{
+
+    private static final String TEST_ALIAS = "zzTestAlias";
+
+    public ChordSymbolTest()
+    {
+    }
+
+    @Before
+    public void setUp() throws ParseException
+    {
+        new ChordSymbol("C");         // Make sure the ChordTypeDatabase is initialized
+    }
+
+    /**
+     * A cache hit shares the parsed immutable objects.
+     */
+    @Test
+    public void testParseCacheHit() throws ParseException
+    {
+        System.out.println("testParseCacheHit() --");
+        ChordSymbol cs1 = new ChordSymbol("Ebm7b5/A");
+        ChordSymbol cs2 = new ChordSymbol("Ebm7b5/A");
+        assertNotSame(cs1, cs2);
+        assertEquals(cs1, cs2);
+        assertEquals("Ebm7b5/A", cs2.getOriginalName());
+        assertSame(cs1.getRootNote(), cs2.getRootNote());
+        assertSame(cs1.getBassNote(), cs2.getBassNote());
+        assertSame(cs1.getChordType(), cs2.getChordType());
+    }
+
+    /**
+     * The cache key is the trimmed string.
+     */
+    @Test
+    public void testParseCacheTrimmedKey() throws ParseException
+    {
+        System.out.println("testParseCacheTrimmedKey() --");
+        ChordSymbol cs1 = new ChordSymbol("F#7b9");
+        ChordSymbol cs2 = new ChordSymbol("  F#7b9 ");
+        ChordSymbol cs3 = new ChordSymbol("\tF#7b9");
+        assertEquals("F#7b9", cs2.getOriginalName());
+        assertEquals(cs1, cs3);
+        assertSame(cs1.getRootNote(), cs2.getRootNote());
+        assertSame(cs1.getRootNote(), cs3.getRootNote());
+    }
+
+    /**
+     * Adding an alias must invalidate the cached results.
+     */
+    @Test
+    public void testParseCacheAliasChange() throws Exception
+    {
+        System.out.println("testParseCacheAliasChange() --");
+        ChordTypeDatabase ctdb = ChordTypeDatabase.getInstance();
+        ChordType ct = ctdb.getChordType("m7");
+        assertNotNull(ct);
+        ChordSymbol cs1 = new ChordSymbol("Dm7");
+        try
+        {
+            new ChordSymbol("D" + TEST_ALIAS);
+            fail("Unknown alias should not be parsed");
+        } catch (ParseException ex)
+        {
+            // OK
+        }
+
+        try
+        {
+            ctdb.addAlias(ct, TEST_ALIAS);
+            ChordSymbol cs2 = new ChordSymbol("D" + TEST_ALIAS);
+            assertSame(ct, cs2.getChordType());
+            ChordSymbol cs3 = new ChordSymbol("Dm7");
+            assertEquals(cs1, cs3);
+            assertNotSame("Cache was not cleared", cs1.getRootNote(), cs3.getRootNote());
+        } finally
+        {
+            ctdb.resetAliases(ct);
+        }
+
+
+        // Alias removed
+        try
+        {
+            new ChordSymbol("D" + TEST_ALIAS);
+            fail("Removed alias should not be parsed");
+        } catch (ParseException ex)
+        {
+            // OK
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.harmony.api;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Check the Chord pitch class masks.
+ */
+public class ChordTest
+{
+
+    public ChordTest()
+    {
+    }
+
+    @Test
+    public void testGetPitchClassMask()
+    {
+        System.out.println("testGetPitchClassMask() --");
+        Chord c = new Chord();
+        assertEquals(0, c.getPitchClassMask());
+        assertEquals(-1, c.getBassPitchClass());
+        c.add(new Note(62));    // D
+        c.add(new Note(77));    // F
+        c.add(new Note(81));    // A
+        c.add(new Note(84));    // C
+        assertEquals((1 << 2) | (1 << 5) | (1 << 9) | (1 << 0), c.getPitchClassMask());
+        assertEquals(2, c.getBassPitchClass());
+    }
+
+    @Test
+    public void testTransposePitchClassMask()
+    {
+        System.out.println("testTransposePitchClassMask() --");
+        assertEquals(0, Chord.transposePitchClassMask(0, 5));
+        assertEquals(0xFFF, Chord.transposePitchClassMask(0xFFF, -7));
+        assertEquals(1 << 11, Chord.transposePitchClassMask(1, -1));
+        assertEquals(1, Chord.transposePitchClassMask(1 << 11, 1));
+        assertEquals(1 << 4, Chord.transposePitchClassMask(1, 28));
+
+        for (ChordType ct : ChordTypeDatabase.getInstance().getChordTypes())
+        {
+            int mask = ct.getPitchClassMask();
+            for (int t = -25; t <= 25; t++)
+            {
+                Chord c = ct.getChord();
+                c.transpose(60 + t);     // Default chord root is pitch 0
+                int tMask = Chord.transposePitchClassMask(mask, t);
+                assertEquals(ct + " t=" + t, c.getPitchClassMask(), tMask);
+                assertEquals(ct + " t=" + t, mask, Chord.transposePitchClassMask(tMask, -t));
+                if (t % 12 == 0)
+                {
+                    assertEquals(mask, tMask);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.harmony.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Check the pitch class mask lookups against the previous containsAll() lookup.
+ */
+public class ChordTypeDatabaseTest
+{
+
+    public ChordTypeDatabaseTest()
+    {
+    }
+
+    @Test
+    public void testGetChordTypeFromDegreesBuiltin()
+    {
+        System.out.println("testGetChordTypeFromDegreesBuiltin() --");
+        ChordTypeDatabase ctdb = ChordTypeDatabase.getInstance();
+        Random rnd = new Random(1);
+        for (ChordType ct : ctdb.getChordTypes())
+        {
+            List<Degree> degrees = ct.getDegrees();
+            assertSame(ct.toString(), ct, ctdb.getChordType(degrees));
+            assertSame(ct.toString(), getChordTypeContainsAll(degrees), ctdb.getChordType(degrees));
+
+            // Degree order must not matter
+            Collections.shuffle(degrees, rnd);
+            assertSame(ct.toString(), ct, ctdb.getChordType(degrees));
+        }
+    }
+
+    /**
+     * Replace each degree by another degree with the same pitch, e.g. FIFTH_FLAT by ELEVENTH_SHARP: the pitch class mask is
+     * unchanged but the lookup must not match.
+     */
+    @Test
+    public void testGetChordTypeFromDegreesSamePitch()
+    {
+        System.out.println("testGetChordTypeFromDegreesSamePitch() --");
+        ChordTypeDatabase ctdb = ChordTypeDatabase.getInstance();
+
+        ChordType ct7b5 = ctdb.getChordType("7b5");
+        assertNotNull(ct7b5);
+        List<Degree> degrees = ct7b5.getDegrees();
+        degrees.set(degrees.indexOf(Degree.FIFTH_FLAT), Degree.ELEVENTH_SHARP);
+        assertNull(getChordTypeContainsAll(degrees));
+        assertNull(ctdb.getChordType(degrees));
+
+        int nbTested = 0;
+        for (ChordType ct : ctdb.getChordTypes())
+        {
+            for (int i = 0; i < ct.getDegrees().size(); i++)
+            {
+                Degree d = ct.getDegrees().get(i);
+                for (Degree d2 : Degree.values())
+                {
+                    if (d2 == d || d2.getPitch() != d.getPitch())
+                    {
+                        continue;
+                    }
+                    List<Degree> degrees2 = ct.getDegrees();
+                    degrees2.set(i, d2);
+                    assertSame(degrees2.toString(), getChordTypeContainsAll(degrees2), ctdb.getChordType(degrees2));
+                    nbTested++;
+                }
+            }
+        }
+        assertTrue(nbTested > 0);
+    }
+
+    /**
+     * Compare with the containsAll() lookup for all the sets of distinct degrees.
+     */
+    @Test
+    public void testGetChordTypeFromDegreesAllSets()
+    {
+        System.out.println("testGetChordTypeFromDegreesAllSets() --");
+        ChordTypeDatabase ctdb = ChordTypeDatabase.getInstance();
+        Degree[] allDegrees = Degree.values();
+        int nbFound = 0;
+        for (int set = 1; set < (1 << allDegrees.length); set++)
+        {
+            List<Degree> degrees = new ArrayList<>();
+            for (int i = 0; i < allDegrees.length; i++)
+            {
+                if ((set & (1 << i)) != 0)
+                {
+                    degrees.add(allDegrees[i]);
+                }
+            }
+            ChordType ct = ctdb.getChordType(degrees);
+            assertSame(degrees.toString(), getChordTypeContainsAll(degrees), ct);
+            if (ct != null)
+            {
+                nbFound++;
+            }
+        }
+        assertEquals(ctdb.getSize(), nbFound);
+    }
+
+    @Test
+    public void testGetChordTypeFromPitchClasses()
+    {
+        System.out.println("testGetChordTypeFromPitchClasses() --");
+        ChordTypeDatabase ctdb = ChordTypeDatabase.getInstance();
+        for (ChordType ct : ctdb.getChordTypes())
+        {
+            assertEquals(ct.toString(), ct.getChord().getPitchClassMask(), ct.getPitchClassMask());
+            assertSame(ct.toString(), ct, ctdb.getChordTypeFromPitchClasses(ct.getPitchClassMask()));
+        }
+
+        int nbFound = 0;
+        for (int mask = 0; mask < (1 << 12); mask++)
+        {
+            ChordType ct = ctdb.getChordTypeFromPitchClasses(mask);
+            if (ct != null)
+            {
+                assertEquals(mask, ct.getPitchClassMask());
+                nbFound++;
+            }
+        }
+        assertEquals(ctdb.getSize(), nbFound);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetChordTypeFromPitchClassesInvalid()
+    {
+        System.out.println("testGetChordTypeFromPitchClassesInvalid() --");
+        ChordTypeDatabase.getInstance().getChordTypeFromPitchClasses(1 << 12);
+    }
+
+    /**
+     * The getChordType(List&lt;Degree&gt;) implementation before pitch class masks were used.
+     */
+    private ChordType getChordTypeContainsAll(List<Degree> degrees)
+    {
+        for (ChordType ct : ChordTypeDatabase.getInstance().getChordTypes())
+        {
+            var ctDegrees = ct.getDegrees();
+            if (ctDegrees.size() == degrees.size() && ctDegrees.containsAll(degrees))
+            {
+                return ct;
+            }
+        }
+        return null;
+    }
+}
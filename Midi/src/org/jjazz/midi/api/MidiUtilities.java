@@ -26,6 +26,8 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -191,6 +193,26 @@ public class MidiUtilities
         }
     }
 
+    /**
+     * Add MidiEvents to a track in one pass.
+     * <p>
+     * Events are sorted once by tick position, then added in that order: each Track.add() appends the event at the end of the
+     * track instead of searching its insertion position, so time grows linearly with the number of events. Events with the same
+     * tick position keep their relative order, so the result is the same as adding the events one by one.
+     *
+     * @param track
+     * @param events
+     */
+    static public void addMidiEvents(Track track, List<MidiEvent> events)
+    {
+        MidiEvent[] sorted = events.toArray(new MidiEvent[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(MidiEvent::getTick));        // Stable sort
+        for (MidiEvent me : sorted)
+        {
+            track.add(me);
+        }
+    }
+
     /**
      * Get a clone copy of all MidiEvents found in track.
      * <p>
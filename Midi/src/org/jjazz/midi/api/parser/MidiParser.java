@@ -46,13 +46,17 @@
  */
 package org.jjazz.midi.api.parser;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MetaMessage;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
@@ -91,7 +95,12 @@ public class MidiParser
         public void parseUnhandledMidiEvent(MidiEvent me, MidiParser mp);
     }
 
-    private List<Map<Byte, TempNote>> noteCache;
+    private static final int CHUNK_MTHD = 0x4D546864;     // "MThd"
+    private static final int CHUNK_MTRK = 0x4D54726B;     // "MTrk"
+    /**
+     * The pending NoteOn per channel and pitch.
+     */
+    private final TempNote[][] noteCache = new TempNote[16][128];
     private int resolutionTicksPerBeat;
     private int tempoBPM = 120;
     private int currentChannel = -1;
@@ -130,11 +139,7 @@ public class MidiParser
             LOGGER.log(Level.SEVERE, "{0} - parse() sequence.getDivisionType() is not PPQ, can''t parse.", this.name);   //NOI18N
             return;
         }
-        this.resolutionTicksPerBeat = sequence.getResolution();
-
-        skipPitchError = false;
-        skipVelocityError = false;
-        skipUselessNoteError = false;
+        startParsing(sequence.getResolution());
 
         // Problem ! If multi-track file, noteCache can be wrong if NoteOn/Off
         // are not correct at the end and beginning of several tracks
@@ -154,18 +159,176 @@ public class MidiParser
         fireAfterParsingFinished();
     }
 
-    private void initNoteCache()
+    /**
+     * Parse a Standard Midi File stream and notifies the registered parsers.
+     * <p>
+     * Unlike parse(Sequence, String), the file is read chunk by chunk and events are dispatched as they are decoded: no Sequence
+     * or Track objects are built.
+     *
+     * @param in The Standard Midi File data. Stream is not closed.
+     * @param name Optional name use when logging errors. Can be null.
+     * @throws IOException
+     * @throws InvalidMidiDataException If stream is not a valid Standard Midi File, or if it does not use PPQ division.
+     */
+    public void parse(InputStream in, String name) throws IOException, InvalidMidiDataException
     {
-        noteCache = new ArrayList<Map<Byte, TempNote>>();
-        this.currentTimeInBeats = new double[16];
-        this.expectedTimeInBeats = new double[16];
+        this.name = (name == null) ? "" : name;
+        DataInputStream dis = new DataInputStream(in instanceof BufferedInputStream ? in : new BufferedInputStream(in));
+
+
+        // Header chunk
+        if (dis.readInt() != CHUNK_MTHD)
+        {
+            throw new InvalidMidiDataException("Invalid Midi file header");   //NOI18N
+        }
+        int headerLength = dis.readInt();
+        if (headerLength < 6)
+        {
+            throw new InvalidMidiDataException("Invalid Midi file header length=" + headerLength);   //NOI18N
+        }
+        dis.readUnsignedShort();        // Format, not used
+        int nbTracks = dis.readUnsignedShort();
+        int division = dis.readUnsignedShort();
+        dis.skipBytes(headerLength - 6);
+        if ((division & 0x8000) != 0 || division == 0)
+        {
+            throw new InvalidMidiDataException("Midi file does not use PPQ division");   //NOI18N
+        }
+
+
+        fireBeforeParsingStarts();
+        startParsing(division);
+
 
-        for (int i = 0; i < 16; i++)
+        // Track chunks, one at a time. Unknown chunks are skipped.
+        int trackIndex = 0;
+        while (trackIndex < nbTracks)
         {
-            noteCache.add(new HashMap<Byte, TempNote>());
-            this.currentTimeInBeats[i] = 0.0d;
-            this.expectedTimeInBeats[i] = 0.0d;
+            int chunkType;
+            try
+            {
+                chunkType = dis.readInt();
+            } catch (EOFException ex)
+            {
+                LOGGER.log(Level.WARNING, "{0} - parse() only {1} tracks found, {2} expected", new Object[]   //NOI18N
+                {
+                    this.name, trackIndex, nbTracks
+                });
+                break;
+            }
+            int length = dis.readInt();
+            if (length < 0)
+            {
+                throw new InvalidMidiDataException("Invalid Midi chunk length=" + length);   //NOI18N
+            }
+            byte[] chunk = new byte[length];
+            dis.readFully(chunk);
+            if (chunkType == CHUNK_MTRK)
+            {
+                initNoteCache();
+                parseTrackChunk(chunk);
+                trackIndex++;
+            }
         }
+
+        fireAfterParsingFinished();
+    }
+
+    private void startParsing(int resolution)
+    {
+        this.resolutionTicksPerBeat = resolution;
+        skipPitchError = false;
+        skipVelocityError = false;
+        skipUselessNoteError = false;
+    }
+
+    /**
+     * Decode the events of a MTrk chunk and parse them.
+     *
+     * @param data
+     * @throws InvalidMidiDataException
+     */
+    private void parseTrackChunk(byte[] data) throws InvalidMidiDataException
+    {
+        int[] pos = new int[1];
+        long tick = 0;
+        int runningStatus = 0;
+        try
+        {
+            while (pos[0] < data.length)
+            {
+                tick += readVariableLength(data, pos);
+                int b = data[pos[0]] & 0xFF;
+                MidiMessage mm;
+                if (b == 0xFF)
+                {
+                    // Meta event
+                    int type = data[pos[0] + 1] & 0xFF;
+                    pos[0] += 2;
+                    int length = readVariableLength(data, pos);
+                    mm = new MetaMessage(type, Arrays.copyOfRange(data, pos[0], pos[0] + length), length);
+                    pos[0] += length;
+                    runningStatus = 0;
+                } else if (b == SysexMessage.SYSTEM_EXCLUSIVE || b == SysexMessage.SPECIAL_SYSTEM_EXCLUSIVE)
+                {
+                    pos[0]++;
+                    int length = readVariableLength(data, pos);
+                    mm = new SysexMessage(b, Arrays.copyOfRange(data, pos[0], pos[0] + length), length);
+                    pos[0] += length;
+                    runningStatus = 0;
+                } else
+                {
+                    // Channel message, possibly with running status
+                    int status;
+                    if ((b & 0x80) != 0)
+                    {
+                        status = b;
+                        pos[0]++;
+                        runningStatus = status;
+                    } else if (runningStatus != 0)
+                    {
+                        status = runningStatus;
+                    } else
+                    {
+                        throw new InvalidMidiDataException("Missing status byte at offset " + pos[0]);   //NOI18N
+                    }
+                    int command = status & 0xF0;
+                    int data1 = data[pos[0]++] & 0xFF;
+                    int data2 = (command == ShortMessage.PROGRAM_CHANGE || command == ShortMessage.CHANNEL_PRESSURE) ? 0 : data[pos[0]++] & 0xFF;
+                    mm = new ShortMessage(status, data1, data2);
+                }
+                parseEvent(new MidiEvent(mm, tick));
+                if (mm instanceof MetaMessage && ((MetaMessage) mm).getType() == META_END_OF_TRACK)
+                {
+                    break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException ex)
+        {
+            throw new InvalidMidiDataException("Unexpected end of track chunk");   //NOI18N
+        }
+    }
+
+    private int readVariableLength(byte[] data, int[] pos)
+    {
+        int value = 0;
+        int b;
+        do
+        {
+            b = data[pos[0]++] & 0xFF;
+            value = (value << 7) | (b & 0x7F);
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void initNoteCache()
+    {
+        for (TempNote[] channelNotes : noteCache)
+        {
+            Arrays.fill(channelNotes, null);
+        }
+        this.currentTimeInBeats = new double[16];
+        this.expectedTimeInBeats = new double[16];
     }
 
     /**
@@ -201,6 +364,16 @@ public class MidiParser
         }
     }
 
+    /**
+     * The resolution of the sequence or file being parsed.
+     *
+     * @return The number of ticks per quarter, 0 if parsing has not started.
+     */
+    public int getResolution()
+    {
+        return resolutionTicksPerBeat;
+    }
+
     public void addParserListener(MidiParserListener listener)
     {
         parserListeners.add(listener);
@@ -339,8 +512,8 @@ public class MidiParser
 
     private boolean isNoteOnEvent(int command, int channel, MidiEvent event)
     {
-        return ((command == ShortMessage.NOTE_ON) && !((noteCache.get(channel).get(event.getMessage().getMessage()[1]) != null)
-                && (event.getMessage().getMessage()[2] == 0)));
+        return ((command == ShortMessage.NOTE_ON) && !((getPendingNote(channel, getData1(event)) != null)
+                && (getData2(event) == 0)));
     }
 
     private boolean isNoteOffEvent(int command, int channel, MidiEvent event)
@@ -349,13 +522,39 @@ public class MidiParser
         // or if it is a NoteOn event where the note has already been played and the attack velocity is 0. 
         return ((command == ShortMessage.NOTE_OFF)
                 || ((command == ShortMessage.NOTE_ON)
-                && (noteCache.get(channel).get(event.getMessage().getMessage()[1]) != null)
-                && (event.getMessage().getMessage()[2] == 0)));
+                && (getPendingNote(channel, getData1(event)) != null)
+                && (getData2(event) == 0)));
+    }
+
+    /**
+     * @param channel
+     * @param note
+     * @return Null if no pending NoteOn, or if note is invalid.
+     */
+    private TempNote getPendingNote(int channel, byte note)
+    {
+        return note < 0 ? null : noteCache[channel][note];
+    }
+
+    /**
+     * Same as event.getMessage().getMessage()[1], without copying the message bytes.
+     */
+    private byte getData1(MidiEvent event)
+    {
+        return (byte) ((ShortMessage) event.getMessage()).getData1();
+    }
+
+    /**
+     * Same as event.getMessage().getMessage()[2], without copying the message bytes.
+     */
+    private byte getData2(MidiEvent event)
+    {
+        return (byte) ((ShortMessage) event.getMessage()).getData2();
     }
 
     private void noteOff(int channel, MidiEvent event)
     {
-        byte note = event.getMessage().getMessage()[1];
+        byte note = getData1(event);
         if (note < 0)
         {
             // Robustness to corrupted Midi files
@@ -373,13 +572,13 @@ public class MidiParser
             return;
         }
 
-        TempNote tempNote = noteCache.get(channel).get(note);
+        TempNote tempNote = noteCache[channel][note];
         if (tempNote == null)
         {
             // A note was turned off when that note was never indicated as having been turned on
             return;
         }
-        noteCache.get(channel).remove(note);
+        noteCache[channel][note] = null;
         float startTime = getDurationInBeats(tempNote.startTick);
         this.currentTimeInBeats[this.currentChannel] = startTime;
 
@@ -406,7 +605,7 @@ public class MidiParser
             return;
         }
 
-        byte note = event.getMessage().getMessage()[1];
+        byte note = getData1(event);
         if (note < 0)
         {
             // Robustness to corrupted Midi files
@@ -423,7 +622,7 @@ public class MidiParser
             return;
         }
 
-        byte noteOnVelocity = event.getMessage().getMessage()[2];
+        byte noteOnVelocity = getData2(event);
         if (noteOnVelocity == 0)
         {
             // It's not a disguised NoteOFF because isNoteOffEvent() did not recognize it before.
@@ -455,12 +654,12 @@ public class MidiParser
             return;
         }
 
-        if (noteCache.get(channel).get(note) != null)
+        if (noteCache[channel][note] != null)
         {
             // The note already existed in the cache! Nothing to do about it now. This shouldn't happen.
         } else
         {
-            noteCache.get(channel).put(note, new TempNote(event.getTick(), noteOnVelocity));
+            noteCache[channel][note] = new TempNote(event.getTick(), noteOnVelocity);
         }
     }
 
@@ -23,15 +23,16 @@
 package org.jjazz.ui.mixconsole;
 
 import java.beans.PropertyVetoException;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiSystem;
-import javax.sound.midi.Sequence;
-import javax.sound.midi.Track;
 import org.jjazz.midi.api.JJazzMidiSystem;
 import org.jjazz.phrase.api.Phrase;
 import org.jjazz.rhythm.api.MusicGenerationException;
@@ -239,16 +240,12 @@ public class UserExtensionPanelController
         Phrase res = new Phrase(channel);
 
 
-        // Load file into a sequence
-        Sequence sequence = MidiSystem.getSequence(midiFile);       // Throws IOException, InvalidMidiDataException
-        if (sequence.getDivisionType() != Sequence.PPQ)
+        // Get our phrase, file is streamed without building a Sequence
+        List<Phrase> phrases;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(midiFile)))
         {
-            throw new InvalidMidiDataException("Midi file does not use PPQ division: midifile="+midiFile.getAbsolutePath());
+            phrases = Phrase.getPhrases(in, channel);       // Throws IOException, InvalidMidiDataException
         }
-        
-        // Get our phrase
-        Track[] tracks = sequence.getTracks();
-        List<Phrase> phrases = Phrase.getPhrases(sequence.getResolution(), tracks, channel);
         if (phrases.size() == 1)
         {
             res.addAll(phrases.get(0));
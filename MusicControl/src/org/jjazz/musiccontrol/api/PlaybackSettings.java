@@ -107,6 +107,7 @@ public class PlaybackSettings
     public static final String PROP_CLICK_PRECOUNT_MODE = "ClickPrecountMode";
     public static final String PROP_PLAYBACK_CLICK_ENABLED = "PlaybackClickEnabled";
     public static final String PROP_AUTO_UPDATE_ENABLED = "AutoUpdateEnabled";
+    public static final String PROP_PROGRESSIVE_PLAYBACK_START_ENABLED = "ProgressivePlaybackStartEnabled";
 
     private int loopCount = 0;
     private SwingPropertyChangeSupport pcs = new SwingPropertyChangeSupport(this);
@@ -209,6 +210,33 @@ public class PlaybackSettings
         return prefs.getBoolean(PROP_AUTO_UPDATE_ENABLED, true);
     }
 
+    /**
+     * Set if the play actions should start playback before the whole song is generated.
+     * <p>
+     * If true, the play actions use a ProgressiveSongSession: playback starts as soon as the first SongParts are generated, the
+     * other SongParts are generated in the background. Song changes are not applied in real-time to a progressive session, they
+     * are taken into account at the next playback start.
+     *
+     * @param b
+     * @see org.jjazz.musiccontrol.api.playbacksession.ProgressiveSongSession
+     */
+    public void setProgressivePlaybackStartEnabled(boolean b)
+    {
+        boolean old = isProgressivePlaybackStartEnabled();
+        prefs.putBoolean(PROP_PROGRESSIVE_PLAYBACK_START_ENABLED, b);
+        pcs.firePropertyChange(PROP_PROGRESSIVE_PLAYBACK_START_ENABLED, old, b);
+    }
+
+    /**
+     * True if the play actions should start playback before the whole song is generated.
+     *
+     * @return False by default
+     */
+    public boolean isProgressivePlaybackStartEnabled()
+    {
+        return prefs.getBoolean(PROP_PROGRESSIVE_PLAYBACK_START_ENABLED, false);
+    }
+
     /**
      * Enable the click during playback.
      * <p>
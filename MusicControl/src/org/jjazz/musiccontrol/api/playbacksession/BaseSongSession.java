@@ -51,6 +51,7 @@ import static org.jjazz.musiccontrol.api.playbacksession.PlaybackSession.PROP_ST
 import static org.jjazz.musiccontrol.api.playbacksession.PlaybackSession.PROP_TEMPO;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.api.SongPartGenerationCache;
 import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
 import org.jjazz.phrase.api.Phrase;
 import org.jjazz.songcontext.api.SongContext;
@@ -93,6 +94,7 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
     private Map<RhythmVoice, Integer> mapRvTrackId;
     private Map<RhythmVoice, Phrase> mapRvPhrase;
     private Map<Integer, Boolean> mapTrackIdMuted;
+    private final SongPartGenerationCache songPartCache = new SongPartGenerationCache();
     private final SwingPropertyChangeSupport pcs = new SwingPropertyChangeSupport(this);
     private static final Logger LOGGER = Logger.getLogger(BaseSongSession.class.getSimpleName());  //NOI18N
 
@@ -180,8 +182,7 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
 
 
         // Build the sequence
-        SongSequenceBuilder seqBuilder = new SongSequenceBuilder(workContext);
-        SongSequenceBuilder.SongSequence songSeq = seqBuilder.buildAll(silent); // Can raise MusicGenerationException
+        SongSequenceBuilder.SongSequence songSeq = buildSongSequence(workContext, silent); // Can raise MusicGenerationException
         if (songSeq == null)
         {
             // If unexpected error, assertion error etc.
@@ -349,6 +350,7 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
         PlaybackSettings.getInstance().removePropertyChangeListener(this);
         songContext.getSong().removePropertyChangeListener(this);
         songContext.getMidiMix().removePropertyChangeListener(this);
+        songPartCache.clear();
     }
 
     /**
@@ -543,6 +545,7 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
         {
             LOGGER.fine("setDirty() --");
             isDirty = true;
+            songPartCache.clear();      // Session must be regenerated from scratch, e.g. song parts or rhythms have changed
             pcs.firePropertyChange(PROP_DIRTY, false, true);
         }
     }
@@ -553,6 +556,39 @@ public class BaseSongSession implements PropertyChangeListener, PlaybackSession,
     }
 
 
+    /**
+     * Create a SongSequenceBuilder for the specified context which uses the SongPartGenerationCache of this session.
+     * <p>
+     * Subclasses must use this method to create their builders so that the phrases generated for a SongPart can be reused by the
+     * next generations of the session.
+     *
+     * @param context
+     * @return
+     */
+    protected SongSequenceBuilder createSongSequenceBuilder(SongContext context)
+    {
+        SongSequenceBuilder res = new SongSequenceBuilder(context);
+        res.setSongPartCache(songPartCache);
+        return res;
+    }
+
+    /**
+     * Build the song sequence used by generate(boolean).
+     * <p>
+     * Default implementation uses SongSequenceBuilder.buildAll(boolean). Subclasses can override this method to change how the
+     * song tracks are built, e.g. to build only a part of the song.
+     *
+     * @param workContext The context to render, possibly a transposed copy of getSongContext()
+     * @param silent
+     * @return
+     * @throws MusicGenerationException
+     */
+    protected SongSequenceBuilder.SongSequence buildSongSequence(SongContext workContext, boolean silent) throws MusicGenerationException
+    {
+        SongSequenceBuilder seqBuilder = createSongSequenceBuilder(workContext);
+        return seqBuilder.buildAll(silent);
+    }
+
     protected int preparePlaybackClickTrack(Sequence sequence, SongContext context)
     {
         // Add the click track
@@ -1011,7 +1011,7 @@ public class DynamicSongSession extends BaseSongSession implements UpdatableSong
 
             // Recompute the RhythmVoice phrases
             Map<RhythmVoice, Phrase> mapRvPhrases;
-            SongSequenceBuilder sgBuilder = new SongSequenceBuilder(songContext);
+            SongSequenceBuilder sgBuilder = createSongSequenceBuilder(songContext);
             try
             {
                 mapRvPhrases = sgBuilder.buildMapRvPhrase(true);
@@ -0,0 +1,609 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.musiccontrol.api.playbacksession;
+
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.musiccontrol.api.MusicController;
+import org.jjazz.musiccontrol.api.PlaybackListenerAdapter;
+import org.jjazz.musiccontrol.api.PlaybackSettings;
+import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.Update;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.song.api.Song;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.util.api.IntRange;
+import org.openide.awt.StatusDisplayer;
+
+/**
+ * A BaseSongSession which builds its sequence progressively so that playback can start before the whole song is generated.
+ * <p>
+ * generate() only generates the SongParts at the playback start bar (at least MIN_PREFIX_NB_BARS bars if possible), the sequence
+ * has the size of the whole context but the following bars are empty. The remaining SongParts are then generated in a background
+ * thread, one by one in playback order (from the start bar to the end, then the SongParts before the start bar). Each time a
+ * SongPart is generated an update containing all the phrases generated so far is made available.
+ * <p>
+ * Use UpdatableSongSession.getSession(progressiveSession) to get the updates applied to the playing sequence.
+ * <p>
+ * While the background generation is not complete, a playhead guard pauses the MusicController if the playback reaches a bar which
+ * is not generated yet, and resumes playback as soon as it is available.
+ * <p>
+ * Each bar range is generated with SongSequenceBuilder.buildMapRvPhrase(IntRange): rhythms also get the first bar of the next
+ * range so that notes can ring past the range end and the next chord can be anticipated. The result may still differ from a
+ * whole-song generation for a rhythm whose music depends on the previous bars (e.g. a pattern spanning several SongParts). The
+ * session becomes dirty as soon as the SongContext has changed, background generation is then stopped.
+ * <p>
+ * The Play and Play From Here actions use this session instead of a DynamicSongSession when
+ * PlaybackSettings.isProgressivePlaybackStartEnabled() is true.
+ *
+ * @see UpdatableSongSession
+ */
+public class ProgressiveSongSession extends BaseSongSession implements UpdatableSongSession.UpdateProvider
+{
+
+    /**
+     * The minimum number of bars generated before generate() returns, if context is large enough.
+     */
+    public static final int MIN_PREFIX_NB_BARS = 8;
+    private static final List<ProgressiveSongSession> sessions = new ArrayList<>();
+    private final int startBarIndex;
+    private SongContext workContext;
+    private List<IntRange> barRanges;
+    private boolean[] generatedBars;
+    private final Map<RhythmVoice, Phrase> mapRvPhrases = new HashMap<>();
+    private Update update;
+    private volatile boolean complete;
+    private volatile boolean pausedByGuard;
+    private ExecutorService executorService;
+    private final PlayheadGuard playheadGuard = new PlayheadGuard();
+    private static final Logger LOGGER = Logger.getLogger(ProgressiveSongSession.class.getSimpleName());  //NOI18N
+
+
+    /**
+     * Create or reuse a session for the specified parameters.
+     * <p>
+     * Sessions are cached: if a non-dirty session in the NEW or GENERATED state already exists for the same parameters then
+     * return it, otherwise a new session is created.
+     *
+     * @param sgContext
+     * @param startBarIndex The bar from which playback is expected to start. If not in the context bar range, the context start
+     * bar is used.
+     * @param enablePlaybackTransposition If true apply the playback transposition
+     * @param includeClickTrack If true add the click track, and its muted/unmuted state will depend on the PlaybackSettings
+     * @param includePrecountTrack If true add the precount track, and loopStartTick will depend on the PlaybackSettings
+     * @param includeControlTrack if true add a control track (beat positions + chord symbol markers)
+     * @param loopCount See Sequencer.setLoopCount(). Use PLAYBACK_SETTINGS_LOOP_COUNT to rely on the PlaybackSettings instance
+     * value.
+     * @param endOfPlaybackAction Action executed when playback is stopped. Can be null.
+     * @return A session in the NEW or GENERATED state.
+     */
+    static public ProgressiveSongSession getSession(SongContext sgContext, int startBarIndex,
+            boolean enablePlaybackTransposition, boolean includeClickTrack, boolean includePrecountTrack, boolean includeControlTrack,
+            int loopCount,
+            ActionListener endOfPlaybackAction)
+    {
+        if (sgContext == null)
+        {
+            throw new IllegalArgumentException("sgContext=" + sgContext);
+        }
+        ProgressiveSongSession session = findSession(sgContext, startBarIndex,
+                enablePlaybackTransposition, includeClickTrack, includePrecountTrack, includeControlTrack,
+                loopCount,
+                endOfPlaybackAction);
+        if (session == null)
+        {
+            session = new ProgressiveSongSession(sgContext, startBarIndex,
+                    enablePlaybackTransposition, includeClickTrack, includePrecountTrack, includeControlTrack,
+                    loopCount,
+                    endOfPlaybackAction);
+            sessions.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * Same as getSession(sgContext, startBarIndex, true, true, true, true, PLAYBACK_SETTINGS_LOOP_COUNT, null);
+     *
+     * @param sgContext
+     * @param startBarIndex
+     * @return A session in the NEW or GENERATED state.
+     */
+    static public ProgressiveSongSession getSession(SongContext sgContext, int startBarIndex)
+    {
+        return getSession(sgContext, startBarIndex, true, true, true, true, PLAYBACK_SETTINGS_LOOP_COUNT, null);
+    }
+
+    private ProgressiveSongSession(SongContext sgContext, int startBarIndex,
+            boolean enablePlaybackTransposition, boolean enableClickTrack, boolean enablePrecountTrack, boolean enableControlTrack,
+            int loopCount,
+            ActionListener endOfPlaybackAction)
+    {
+        super(sgContext, enablePlaybackTransposition, enableClickTrack, enablePrecountTrack, enableControlTrack, loopCount, endOfPlaybackAction);
+        this.startBarIndex = startBarIndex;
+    }
+
+    @Override
+    public ProgressiveSongSession getFreshCopy()
+    {
+        var res = new ProgressiveSongSession(getSongContext().clone(), startBarIndex,
+                isPlaybackTranspositionEnabled(),
+                isClickTrackIncluded(),
+                isPrecountTrackIncluded(),
+                isControlTrackIncluded(),
+                loopCount,
+                getEndOfPlaybackAction());
+        sessions.add(res);
+        return res;
+    }
+
+    /**
+     * Generate the sequence for the first SongParts, then start the background generation of the other SongParts.
+     *
+     * @param silent Not used, the first SongParts are always generated silently.
+     * @throws MusicGenerationException
+     */
+    @Override
+    public void generate(boolean silent) throws MusicGenerationException
+    {
+        super.generate(silent);
+
+
+        if (barRanges.size() == 1)
+        {
+            complete = true;
+            return;
+        }
+
+
+        MusicController.getInstance().addPlaybackListener(playheadGuard);
+        executorService = Executors.newSingleThreadExecutor();
+        executorService.submit(() -> generateRemainingBarRanges());
+    }
+
+    public int getStartBarIndex()
+    {
+        return startBarIndex;
+    }
+
+    /**
+     * Check if all the bars have been generated.
+     *
+     * @return
+     */
+    public boolean isComplete()
+    {
+        return complete;
+    }
+
+    /**
+     * Check if the specified bar has been generated.
+     *
+     * @param barIndex
+     * @return False if session is not generated or if barIndex is not in the bar range.
+     */
+    public synchronized boolean isBarGenerated(int barIndex)
+    {
+        if (generatedBars == null || !getSongContext().getBarRange().contains(barIndex))
+        {
+            return false;
+        }
+        return generatedBars[barIndex - getSongContext().getBarRange().from];
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        sessions.remove(this);
+        MusicController.getInstance().removePlaybackListener(playheadGuard);
+        if (executorService != null)
+        {
+            executorService.shutdownNow();
+        }
+    }
+
+    // ==========================================================================================================
+    // UpdatableSongSession.UpdateProvider implementation
+    // ==========================================================================================================
+    /**
+     * The last update: it contains all the phrases generated so far.
+     *
+     * @return Null if no SongPart was generated in the background yet
+     */
+    @Override
+    public synchronized Update getUpdate()
+    {
+        return update;
+    }
+
+    // ==========================================================================================================
+    // PropertyChangeListener implementation
+    // ==========================================================================================================
+    @Override
+    public void propertyChange(PropertyChangeEvent e)
+    {
+        super.propertyChange(e);
+
+        if (!getState().equals(PlaybackSession.State.GENERATED))
+        {
+            return;
+        }
+
+        boolean dirty = false;
+
+        if (e.getSource() == getSongContext().getSong())
+        {
+            if (e.getPropertyName().equals(Song.PROP_MODIFIED_OR_SAVED) && (Boolean) e.getNewValue() == true)
+            {
+                dirty = true;
+            }
+        } else if (e.getSource() == getSongContext().getMidiMix())
+        {
+            switch (e.getPropertyName())
+            {
+                case MidiMix.PROP_CHANNEL_INSTRUMENT_MIX:
+                case MidiMix.PROP_CHANNEL_DRUMS_REROUTED:
+                case MidiMix.PROP_INSTRUMENT_TRANSPOSITION:
+                case MidiMix.PROP_INSTRUMENT_VELOCITY_SHIFT:
+                case MidiMix.PROP_DRUMS_INSTRUMENT_KEYMAP:
+                    dirty = true;
+                    break;
+                default:
+                    // Do nothing
+                    break;
+            }
+        } else if (e.getSource() == PlaybackSettings.getInstance())
+        {
+            switch (e.getPropertyName())
+            {
+                case PlaybackSettings.PROP_PLAYBACK_KEY_TRANSPOSITION:
+                case PlaybackSettings.PROP_CLICK_PRECOUNT_MODE:
+                case PlaybackSettings.PROP_CLICK_PRECOUNT_ENABLED:
+                    dirty = true;
+                    break;
+                default:
+                    // Do nothing
+                    break;
+            }
+        }
+
+        if (dirty)
+        {
+            // Background generation will stop
+            setDirty();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ProgressiveSongSession=[startBarIndex=" + startBarIndex + ", complete=" + complete + ", " + super.toString() + "]";
+    }
+
+    // ==========================================================================================================
+    // Protected methods
+    // ==========================================================================================================
+    /**
+     * Overridden to generate only the first bar range, the other bars of the sequence are empty.
+     *
+     * @param workContext
+     * @param silent
+     * @return
+     * @throws MusicGenerationException
+     */
+    @Override
+    protected SongSequenceBuilder.SongSequence buildSongSequence(SongContext workContext, boolean silent) throws MusicGenerationException
+    {
+        this.workContext = workContext;
+        List<IntRange> ranges = computeBarRanges(workContext);
+
+        SongSequenceBuilder seqBuilder = createSongSequenceBuilder(workContext);
+        Map<RhythmVoice, Phrase> rvPhrases = seqBuilder.buildMapRvPhrase(ranges.get(0));         // throws MusicGenerationException
+        SongSequenceBuilder.SongSequence res = seqBuilder.buildSongSequence(rvPhrases, true);
+
+
+        // Save the phrases (with empty phrases for RhythmVoices not used in the first range)
+        synchronized (this)
+        {
+            barRanges = ranges;
+            generatedBars = new boolean[workContext.getBarRange().size()];
+            res.mapRvPhrase.forEach((rv, p) -> mapRvPhrases.put(rv, p.clone()));
+            setGenerated(ranges.get(0));
+        }
+
+        LOGGER.log(Level.FINE, "buildSongSequence() first range={0} barRanges={1}", new Object[]
+        {
+            ranges.get(0), ranges
+        });
+
+        return res;
+    }
+
+    // ==========================================================================================================
+    // Private methods
+    // ==========================================================================================================
+    /**
+     * Split the context bar range in the playback order.
+     *
+     * @param context
+     * @return The first range contains the SongPart of startBarIndex plus the following SongParts until MIN_PREFIX_NB_BARS is
+     * reached. Then one range per SongPart.
+     */
+    private List<IntRange> computeBarRanges(SongContext context)
+    {
+        List<SongPart> spts = context.getSongParts();
+        int startBar = context.getBarRange().contains(startBarIndex) ? startBarIndex : context.getBarRange().from;
+        int startIndex = 0;
+        while (!context.getSptBarRange(spts.get(startIndex)).contains(startBar))
+        {
+            startIndex++;
+        }
+
+
+        // First range
+        List<IntRange> res = new ArrayList<>();
+        IntRange first = context.getSptBarRange(spts.get(startIndex));
+        int index = startIndex + 1;
+        while (first.size() < MIN_PREFIX_NB_BARS && index < spts.size())
+        {
+            first = new IntRange(first.from, context.getSptBarRange(spts.get(index)).to);
+            index++;
+        }
+        res.add(first);
+
+
+        // Next song parts until the end, then the song parts before the start bar
+        for (int i = index; i < spts.size(); i++)
+        {
+            res.add(context.getSptBarRange(spts.get(i)));
+        }
+        for (int i = 0; i < startIndex; i++)
+        {
+            res.add(context.getSptBarRange(spts.get(i)));
+        }
+
+        return res;
+    }
+
+    /**
+     * The background task.
+     */
+    private void generateRemainingBarRanges()
+    {
+        SongSequenceBuilder seqBuilder = createSongSequenceBuilder(workContext);
+
+        for (IntRange barRange : barRanges.subList(1, barRanges.size()))
+        {
+            if (Thread.currentThread().isInterrupted() || !getState().equals(PlaybackSession.State.GENERATED) || isDirty())
+            {
+                LOGGER.log(Level.FINE, "generateRemainingBarRanges() generation stopped before barRange={0}", barRange);
+                return;
+            }
+
+
+            Map<RhythmVoice, Phrase> rvPhrases;
+            try
+            {
+                rvPhrases = seqBuilder.buildMapRvPhrase(barRange);
+            } catch (MusicGenerationException ex)
+            {
+                LOGGER.log(Level.WARNING, "generateRemainingBarRanges() barRange={0} ex={1}", new Object[]
+                {
+                    barRange, ex.getMessage()
+                });
+                StatusDisplayer.getDefault().setStatusText(ex.getMessage());
+                if (pausedByGuard)
+                {
+                    pausedByGuard = false;
+                    SwingUtilities.invokeLater(() -> MusicController.getInstance().stop());
+                }
+                return;
+            }
+
+
+            // Add the new notes and prepare the update
+            synchronized (this)
+            {
+                for (RhythmVoice rv : rvPhrases.keySet())
+                {
+                    Phrase pDest = mapRvPhrases.get(rv);
+                    if (pDest == null)
+                    {
+                        LOGGER.log(Level.WARNING, "generateRemainingBarRanges() Unexpected rv={0}, ignored", rv);
+                        continue;
+                    }
+                    appendPhrase(pDest, rvPhrases.get(rv));
+                }
+                setGenerated(barRange);
+
+                // UpdatableSongSession keeps the update phrases: give it copies
+                Map<RhythmVoice, Phrase> mapCopy = new HashMap<>();
+                mapRvPhrases.forEach((rv, p) -> mapCopy.put(rv, p.clone()));
+                update = new Update(mapCopy, null);
+            }
+
+            LOGGER.log(Level.FINE, "generateRemainingBarRanges() barRange={0} generated, firing update", barRange);
+            firePropertyChange(UpdatableSongSession.UpdateProvider.PROP_UPDATE_AVAILABLE, false, true);
+
+
+            // Resume playback if it was waiting for these bars
+            if (pausedByGuard)
+            {
+                int bar = MusicController.getInstance().getCurrentBeatPosition().getBar();
+                if (!isPlayheadTooClose(bar))
+                {
+                    pausedByGuard = false;
+                    SwingUtilities.invokeLater(() -> resumePlayback());
+                }
+            }
+        }
+
+        complete = true;
+        MusicController.getInstance().removePlaybackListener(playheadGuard);
+    }
+
+    /**
+     * Add the notes of p to pDest.
+     * <p>
+     * Use the fast path when p is after pDest, which is the case except for the SongParts before the start bar.
+     *
+     * @param pDest
+     * @param p
+     */
+    private void appendPhrase(Phrase pDest, Phrase p)
+    {
+        if (p.isEmpty())
+        {
+            return;
+        }
+        if (pDest.isEmpty() || p.getFirst().getPositionInBeats() >= pDest.getLast().getPositionInBeats())
+        {
+            pDest.addAll(p);
+        } else
+        {
+            pDest.add(p);
+        }
+    }
+
+    private void setGenerated(IntRange barRange)
+    {
+        int offset = getSongContext().getBarRange().from;
+        for (int bar = barRange.from; bar <= barRange.to; bar++)
+        {
+            generatedBars[bar - offset] = true;
+        }
+    }
+
+    /**
+     * True if the current bar or the next one is not generated yet.
+     *
+     * @param bar
+     * @return
+     */
+    private boolean isPlayheadTooClose(int bar)
+    {
+        IntRange br = getSongContext().getBarRange();
+        return !isBarGenerated(bar) || (br.contains(bar + 1) && !isBarGenerated(bar + 1));
+    }
+
+    /**
+     * Check if this session is the one played by the MusicController, possibly via an UpdatableSongSession.
+     *
+     * @return
+     */
+    private boolean isMusicControllerSession()
+    {
+        PlaybackSession session = MusicController.getInstance().getPlaybackSession();
+        return session == this
+                || (session instanceof UpdatableSongSession && ((UpdatableSongSession) session).getBaseSession() == this);
+    }
+
+    private void resumePlayback()
+    {
+        MusicController mc = MusicController.getInstance();
+        if (!mc.getState().equals(MusicController.State.PAUSED) || !isMusicControllerSession())
+        {
+            return;
+        }
+        try
+        {
+            mc.resume();
+        } catch (MusicGenerationException ex)
+        {
+            LOGGER.log(Level.WARNING, "resumePlayback() ex={0}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Find an identical existing session in state NEW or GENERATED and non-dirty.
+     *
+     * @return Null if not found
+     */
+    static private ProgressiveSongSession findSession(SongContext sgContext, int startBarIndex,
+            boolean includePlaybackTransposition, boolean includeClickTrack, boolean includePrecount, boolean includeControlTrack,
+            int loopCount,
+            ActionListener endOfPlaybackAction)
+    {
+        for (var session : sessions)
+        {
+            if ((session.getState().equals(PlaybackSession.State.GENERATED) || session.getState().equals(PlaybackSession.State.NEW))
+                    && !session.isDirty()
+                    && sgContext.equals(session.getSongContext())
+                    && startBarIndex == session.getStartBarIndex()
+                    && includePlaybackTransposition == session.isPlaybackTranspositionEnabled()
+                    && includeClickTrack == session.isClickTrackIncluded()
+                    && includePrecount == session.isPrecountTrackIncluded()
+                    && includeControlTrack == session.isControlTrackIncluded()
+                    && loopCount == session.getLoopCount()
+                    && endOfPlaybackAction == session.getEndOfPlaybackAction())
+            {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    // ==========================================================================================================
+    // Inner classes
+    // ==========================================================================================================
+    /**
+     * Pause the playback if the playhead reaches a bar which is not generated yet.
+     * <p>
+     * Called on the EDT by the MusicController. The pause is posted with invokeLater() to not change the MusicController state
+     * while it notifies its listeners.
+     */
+    private class PlayheadGuard extends PlaybackListenerAdapter
+    {
+
+        @Override
+        public void barChanged(int oldBar, int newBar)
+        {
+            if (complete || pausedByGuard
+                    || !MusicController.getInstance().getState().equals(MusicController.State.PLAYING)
+                    || !isMusicControllerSession())
+            {
+                return;
+            }
+
+            if (isPlayheadTooClose(newBar))
+            {
+                LOGGER.log(Level.FINE, "barChanged() newBar={0} not generated yet, pausing playback", newBar);
+                pausedByGuard = true;
+                SwingUtilities.invokeLater(() -> MusicController.getInstance().pause());
+            }
+        }
+    }
+}
@@ -565,8 +565,7 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
                     && (baseSongSession instanceof UpdateProvider)
                     && getState().equals(State.GENERATED))
             {
-                var update = ((UpdateProvider) (baseSongSession)).getUpdate();
-                updateSequence(update);
+                applyUpdate();
 
             } else if (e.getPropertyName().equals(PlaybackSession.PROP_MUTED_TRACKS))
             {
@@ -608,8 +607,10 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
 
     /**
      * Save data from the original session and prepare the trackSet for future updates.
+     * <p>
+     * If the original session is an UpdateProvider, apply its last update if it was produced before we were ready.
      */
-    private void prepareData()
+    private synchronized void prepareData()
     {
 
         sequence = baseSongSession.getSequence();
@@ -635,6 +636,28 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
         LOGGER.log(Level.FINE, "generate() mapTrackIdMuted={0}", mapTrackIdMuted);
         LOGGER.log(Level.FINE, "generate() mapRvTrackId={0}", baseSongSession.getRvTrackIdMap());
         LOGGER.log(Level.FINE, "generate() trackSet={0}", trackSet);
+
+
+        if (baseSongSession instanceof UpdateProvider && ((UpdateProvider) baseSongSession).getUpdate() != null)
+        {
+            updateSequence(((UpdateProvider) baseSongSession).getUpdate());
+        }
+    }
+
+    /**
+     * Apply the last update of the original session.
+     * <p>
+     * Do nothing if prepareData() was not called yet: the update will be applied by prepareData().
+     */
+    private synchronized void applyUpdate()
+    {
+        if (trackSet == null)
+        {
+            LOGGER.fine("applyUpdate() data not ready yet, update postponed");
+            return;
+        }
+        var update = ((UpdateProvider) (baseSongSession)).getUpdate();
+        updateSequence(update);
     }
 
 
@@ -661,8 +684,8 @@ public class UpdatableSongSession implements PropertyChangeListener, PlaybackSes
             {
                 throw new IllegalArgumentException("me=" + MidiUtilities.toString(me.getMessage(), me.getTick()) + " originalTrackTickSize=" + originalTrackTickSize);
             }
-            bufferTrack.add(me);
         }
+        MidiUtilities.addMidiEvents(bufferTrack, newEvents);
 
 
         // Make sure size is not changed
@@ -39,8 +39,10 @@ import org.jjazz.midimix.api.MidiMix;
 import org.jjazz.midimix.api.MidiMixManager;
 import org.jjazz.musiccontrol.api.MusicController;
 import org.jjazz.musiccontrol.api.PlaybackSettings;
+import org.jjazz.musiccontrol.api.playbacksession.BaseSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.DynamicSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.PlaybackSession;
+import org.jjazz.musiccontrol.api.playbacksession.ProgressiveSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession;
 import org.jjazz.songcontext.api.SongContext;
 import org.jjazz.rhythm.api.MusicGenerationException;
@@ -164,8 +166,10 @@ public class Play extends BooleanStateAction implements PropertyChangeListener,
 
 
                         // Prepare the session
-                        DynamicSongSession dynSession = DynamicSongSession.getSession(context);
-                        session = UpdatableSongSession.getSession(dynSession);
+                        BaseSongSession baseSession = PlaybackSettings.getInstance().isProgressivePlaybackStartEnabled()
+                                ? ProgressiveSongSession.getSession(context, context.getBarRange().from)
+                                : DynamicSongSession.getSession(context);
+                        session = UpdatableSongSession.getSession(baseSession);
                         if (session.getState().equals(PlaybackSession.State.NEW))
                         {
                             session.generate(false);        // can raise MusicGenerationException
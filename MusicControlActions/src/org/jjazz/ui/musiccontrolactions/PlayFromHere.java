@@ -38,8 +38,10 @@ import org.jjazz.midimix.api.MidiMix;
 import org.jjazz.midimix.api.MidiMixManager;
 import org.jjazz.musiccontrol.api.MusicController;
 import org.jjazz.musiccontrol.api.PlaybackSettings;
+import org.jjazz.musiccontrol.api.playbacksession.BaseSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.DynamicSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.PlaybackSession;
+import org.jjazz.musiccontrol.api.playbacksession.ProgressiveSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession;
 import org.jjazz.songcontext.api.SongContext;
 import org.jjazz.rhythm.api.MusicGenerationException;
@@ -186,7 +188,10 @@ public class PlayFromHere extends AbstractAction
             // Check that all listeners are OK to start playback     
             PlaybackSettings.getInstance().firePlaybackStartVetoableChange(context);  // can raise PropertyVetoException
 
-            session = UpdatableSongSession.getSession(DynamicSongSession.getSession(context));
+            BaseSongSession baseSession = PlaybackSettings.getInstance().isProgressivePlaybackStartEnabled()
+                    ? ProgressiveSongSession.getSession(context, playFromBar)
+                    : DynamicSongSession.getSession(context);
+            session = UpdatableSongSession.getSession(baseSession);
             if (session.getState().equals(PlaybackSession.State.NEW))
             {
                 session.generate(false);        // can raise MusicGenerationException
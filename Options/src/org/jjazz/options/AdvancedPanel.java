@@ -33,6 +33,7 @@ import org.jjazz.base.api.actions.ShowLogWindow;
 import org.jjazz.midi.api.JJazzMidiSystem;
 import org.jjazz.midi.api.device.MidiFilter;
 import org.jjazz.musiccontrol.api.MusicController;
+import org.jjazz.musiccontrol.api.PlaybackSettings;
 import org.jjazz.ui.utilities.api.Utilities;
 import org.jjazz.util.api.ResUtil;
 import org.openide.DialogDisplayer;
@@ -84,6 +85,7 @@ public final class AdvancedPanel extends javax.swing.JPanel
         cb_debugBuiltSequence = new javax.swing.JCheckBox();
         btn_resetSettings = new javax.swing.JButton();
         cb_noAnalytics = new javax.swing.JCheckBox();
+        cb_progressivePlaybackStart = new javax.swing.JCheckBox();
         jScrollPane1 = new javax.swing.JScrollPane();
         helpTextArea = new org.jjazz.ui.utilities.api.HelpTextArea();
 
@@ -222,6 +224,9 @@ public final class AdvancedPanel extends javax.swing.JPanel
         org.openide.awt.Mnemonics.setLocalizedText(cb_noAnalytics, ResUtil.getString(getClass(),"AdvancedPanel.cb_noAnalytics.text", new Object[] {})); // NOI18N
         cb_noAnalytics.setToolTipText(ResUtil.getString(getClass(),"AdvancedPanel.cb_noAnalytics.toolTipText", new Object[] {})); // NOI18N
 
+        org.openide.awt.Mnemonics.setLocalizedText(cb_progressivePlaybackStart, ResUtil.getString(getClass(),"AdvancedPanel.cb_progressivePlaybackStart.text", new Object[] {})); // NOI18N
+        cb_progressivePlaybackStart.setToolTipText(ResUtil.getString(getClass(),"AdvancedPanel.cb_progressivePlaybackStart.toolTipText", new Object[] {})); // NOI18N
+
         jScrollPane1.setBackground(null);
         jScrollPane1.setBorder(null);
 
@@ -243,7 +248,9 @@ public final class AdvancedPanel extends javax.swing.JPanel
                         .addComponent(btn_resetSettings)
                         .addGap(0, 0, Short.MAX_VALUE))
                     .addGroup(layout.createSequentialGroup()
-                        .addComponent(cb_noAnalytics)
+                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+                            .addComponent(cb_noAnalytics)
+                            .addComponent(cb_progressivePlaybackStart))
                         .addGap(18, 18, 18)
                         .addComponent(jScrollPane1)))
                 .addContainerGap())
@@ -257,7 +264,9 @@ public final class AdvancedPanel extends javax.swing.JPanel
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(cb_noAnalytics)
-                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 73, Short.MAX_VALUE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(cb_progressivePlaybackStart)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 46, Short.MAX_VALUE)
                         .addComponent(panel_Debug, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                     .addGroup(layout.createSequentialGroup()
                         .addComponent(jScrollPane1, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -351,6 +360,7 @@ public final class AdvancedPanel extends javax.swing.JPanel
         cb_logMidiOut.setSelected(JJazzMidiSystem.getInstance().getMidiOutLogConfig().contains(MidiFilter.ConfigLog.LOG_PASSED_MESSAGES));
         cb_debugBuiltSequence.setSelected(MusicController.getInstance().isDebugPlayedSequence());
         cb_noAnalytics.setSelected(!Analytics.getInstance().isEnabled());
+        cb_progressivePlaybackStart.setSelected(PlaybackSettings.getInstance().isProgressivePlaybackStartEnabled());
 
     }
 
@@ -373,6 +383,7 @@ public final class AdvancedPanel extends javax.swing.JPanel
         MusicController.getInstance().setDebugPlayedSequence(cb_debugBuiltSequence.isSelected());
 
         Analytics.getInstance().setEnabled(!cb_noAnalytics.isSelected());
+        PlaybackSettings.getInstance().setProgressivePlaybackStartEnabled(cb_progressivePlaybackStart.isSelected());
     }
 
     boolean valid()
@@ -425,6 +436,7 @@ public final class AdvancedPanel extends javax.swing.JPanel
     private javax.swing.JCheckBox cb_logMidiOut;
     private javax.swing.JComboBox<Level> cb_loggerLevel;
     private javax.swing.JCheckBox cb_noAnalytics;
+    private javax.swing.JCheckBox cb_progressivePlaybackStart;
     private org.jjazz.ui.utilities.api.HelpTextArea helpTextArea;
     private javax.swing.JLabel jLabel1;
     private javax.swing.JPanel jPanel2;
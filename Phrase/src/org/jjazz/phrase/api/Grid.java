@@ -23,10 +23,12 @@
 package org.jjazz.phrase.api;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Logger;
@@ -45,7 +47,8 @@ import org.openide.util.Exceptions;
  * <p>
  * To accomodate real time playing, notes starting just before a cell are included in that cell, see PRE_CELL_BEAT_WINDOW.
  * <p>
- * The refresh() method must be called whenever the phrase is modified outside this Grid object.
+ * Notes are stored in a per-cell array. Modifications done via the Grid methods only update the impacted cells. Modifications done
+ * on the phrase outside of this Grid are detected and trigger a full refresh when the Grid is accessed.
  */
 public class Grid implements Cloneable
 {
@@ -62,7 +65,14 @@ public class Grid implements Cloneable
     private int cellsPerBeat;
     private float cellDuration;
     private Predicate<NoteEvent> predicate;
-    private HashMap<Integer, List<NoteEvent>> mapCellNotes = new HashMap<>();
+    /**
+     * The notes of each cell, in the phrase order. Null if no note.
+     */
+    private List<NoteEvent>[] cellNotes;
+    /**
+     * The phrase change count when cellNotes was last updated.
+     */
+    private int phraseChangeCount;
     protected static final Logger LOGGER = Logger.getLogger(Grid.class.getSimpleName());
 
     private Grid()
@@ -75,7 +85,7 @@ public class Grid implements Cloneable
      * <p>
      * The first cell starts at range.from (range bounds must be integer values). <>
      * The filter parameter can be used to accept only specific Phrase notes.<p>
-     * If the caller modifies p outside of this grid it must then call Grid.refresh() to keep it up to date.
+     * If the caller modifies p outside of this grid, the grid is automatically refreshed on next access.
      *
      * @param p Time signature must not change in the phrase.
      * @param beatRange Grid will contain notes from this beat range, excluding upper bound. Bounds must be integer values.
@@ -101,6 +111,9 @@ public class Grid implements Cloneable
         this.adjustedBeatRange = this.originalBeatRange.getTransformed(originalBeatRange.from == 0 ? 0 : -preCellBeatWindow, -preCellBeatWindow);
         this.cellRange = new IntRange(0, (int) (this.originalBeatRange.size() * this.cellsPerBeat) - 1);
         this.predicate = (filter != null) ? filter : ne -> true;
+        @SuppressWarnings("unchecked")
+        List<NoteEvent>[] tmp = (List<NoteEvent>[]) new List<?>[cellRange.size()];
+        cellNotes = tmp;
         refresh();
     }
 
@@ -115,10 +128,15 @@ public class Grid implements Cloneable
         {
             Exceptions.printStackTrace(ex);
         }
-        // Everything OK with a shallow clone copy, except the mapCellNotes 
-        @SuppressWarnings("unchecked")
-        HashMap<Integer, List<NoteEvent>> tmp = (HashMap<Integer, List<NoteEvent>>) mapCellNotes.clone();
-        newGrid.mapCellNotes = tmp;
+        // Everything OK with a shallow clone copy, except the cellNotes
+        newGrid.cellNotes = cellNotes.clone();
+        for (int i = 0; i < cellNotes.length; i++)
+        {
+            if (cellNotes[i] != null)
+            {
+                newGrid.cellNotes[i] = new ArrayList<>(cellNotes[i]);
+            }
+        }
         return newGrid;
     }
 
@@ -134,15 +152,16 @@ public class Grid implements Cloneable
      */
     public int getCellWithMaxNotes()
     {
+        checkPhrase();
         int cellMax = -1;
         int maxSize = 0;
-        for (int index : mapCellNotes.keySet())
+        for (int i = 0; i < cellNotes.length; i++)
         {
-            List<NoteEvent> nes = mapCellNotes.get(index);
+            List<NoteEvent> nes = cellNotes[i];
             if (nes != null && nes.size() > maxSize)
             {
                 maxSize = nes.size();
-                cellMax = index;
+                cellMax = i;
             }
         }
         return cellMax;
@@ -259,13 +278,7 @@ public class Grid implements Cloneable
                 return cellRange.to;
             }
         }
-        int cell = (int) Math.floor((posInBeats - originalBeatRange.from) / cellDuration);
-        float nextCellStartPos = originalBeatRange.from + (cell + 1) * cellDuration;
-        if (nextCellStartPos - posInBeats <= getPreCellBeatWindow())
-        {
-            cell++;
-        }
-        return cell;
+        return getNoteCell(posInBeats);
     }
 
     /**
@@ -275,8 +288,15 @@ public class Grid implements Cloneable
      */
     public List<Integer> getNonEmptyCells()
     {
-        ArrayList<Integer> res = new ArrayList<>(mapCellNotes.keySet());
-        Collections.sort(res);
+        checkPhrase();
+        ArrayList<Integer> res = new ArrayList<>();
+        for (int i = 0; i < cellNotes.length; i++)
+        {
+            if (cellNotes[i] != null)
+            {
+                res.add(i);
+            }
+        }
         return res;
     }
 
@@ -284,12 +304,16 @@ public class Grid implements Cloneable
      * True if no note in the specified cell.
      *
      * @param cell
-     * @return
+     * @return True if cell is outside of the grid cell range.
      */
     public boolean isEmpty(int cell)
     {
-        List<NoteEvent> nes = mapCellNotes.get(cell);
-        return nes == null ? true : nes.isEmpty();
+        if (!cellRange.contains(cell))
+        {
+            return true;
+        }
+        checkPhrase();
+        return cellNotes[cell] == null;
     }
 
     /**
@@ -326,22 +350,20 @@ public class Grid implements Cloneable
 
             if (usedPitches.contains(ne.getPitch()))
             {
-                phrase.remove(ne);
+                phrase.remove(indexOfNote(ne));
+                removeFromCell(ne);
 
             } else if ((longerOk && rg.to < cellOff) || (shorterOk && rg.to > cellOff))
             {
                 float newDur = ne.getDurationInBeats() + (cellOff - rg.to) * cellDuration;
                 newDur = Math.max(cellDuration, newDur);
                 NoteEvent newNe = new NoteEvent(ne, newDur);       // This clone also the clientProperties
-                phrase.set(phrase.indexOf(ne), newNe);
+                setNote(ne, newNe);
                 usedPitches.add(newNe.getPitch());
 
             }
         }
-        if (!usedPitches.isEmpty())
-        {
-            refresh();
-        }
+        phraseChangeCount = phrase.getChangeCount();
     }
 
     /**
@@ -367,12 +389,9 @@ public class Grid implements Cloneable
         {
             int newVelocity = MidiUtilities.limit(f.apply(ne.getVelocity()));
             NoteEvent tNe = new NoteEvent(ne, ne.getPitch(), ne.getDurationInBeats(), newVelocity);       // This clone also the clientProperties
-            phrase.set(phrase.indexOf(ne), tNe);
-        }
-        if (!nes.isEmpty())
-        {
-            refresh();
+            setNote(ne, tNe);
         }
+        phraseChangeCount = phrase.getChangeCount();
     }
 
     /**
@@ -402,11 +421,12 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("range=" + range + " cellRange=" + cellRange);   //NOI18N
         }
+        checkPhrase();
 
         List<NoteEvent> res = new ArrayList<>();
         for (int i = range.from; i <= range.to; i++)
         {
-            List<NoteEvent> nes = mapCellNotes.get(i);
+            List<NoteEvent> nes = cellNotes[i];
             if (nes != null)
             {
                 res.addAll(nes);
@@ -427,9 +447,10 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("cell=" + cell);   //NOI18N
         }
+        checkPhrase();
         NoteEvent res = null;
 
-        List<NoteEvent> nes = mapCellNotes.get(cell);
+        List<NoteEvent> nes = cellNotes[cell];
         if (nes != null)
         {
             res = nes.get(0);
@@ -453,10 +474,11 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("range=" + range);   //NOI18N
         }
+        checkPhrase();
         int res = -1;
         for (int i = range.from; i <= range.to; i++)
         {
-            List<NoteEvent> nes = mapCellNotes.get(i);
+            List<NoteEvent> nes = cellNotes[i];
             if (nes != null)
             {
                 res = i;
@@ -478,9 +500,10 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("cell=" + cell);   //NOI18N
         }
+        checkPhrase();
         NoteEvent res = null;
 
-        List<NoteEvent> nes = mapCellNotes.get(cell);
+        List<NoteEvent> nes = cellNotes[cell];
         if (nes != null)
         {
             res = nes.get(nes.size() - 1);
@@ -504,10 +527,11 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("range=" + range);   //NOI18N
         }
+        checkPhrase();
         int res = -1;
         for (int i = range.to; i >= range.from; i--)
         {
-            List<NoteEvent> nes = mapCellNotes.get(i);
+            List<NoteEvent> nes = cellNotes[i];
             if (nes != null)
             {
                 res = i;
@@ -545,15 +569,24 @@ public class Grid implements Cloneable
             throw new IllegalArgumentException("range=" + range);   //NOI18N
         }
         List<NoteEvent> nes = getCellNotes(range);
-        phrase.removeAll(nes);
-        refresh();
+        if (!nes.isEmpty())
+        {
+            Set<NoteEvent> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            removed.addAll(nes);
+            phrase.removeIf(ne -> removed.contains(ne));
+            for (int i = range.from; i <= range.to; i++)
+            {
+                cellNotes[i] = null;
+            }
+            phraseChangeCount = phrase.getChangeCount();
+        }
         return nes;
     }
 
     /**
      * Add a new NoteEvent from the parameters.
      * <p>
-     * Convenience method that add the note to the grid's phrase and calls refresh().
+     * Convenience method that add the note to the grid's phrase and updates the grid.
      *
      * @param cell
      * @param n Pitch, duration and velocity are reused to create the NoteEvent.
@@ -567,30 +600,34 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("cellIndex=" + cell + " relPosInCell=" + relPosInCell);   //NOI18N
         }
+        checkPhrase();
         float posInBeats = getStartPos(cell) + relPosInCell;
         NoteEvent ne = new NoteEvent(n.getPitch(), n.getDurationInBeats(), n.getVelocity(), posInBeats);
         phrase.addOrdered(ne);
-        refresh();
+        addToCell(ne);
+        phraseChangeCount = phrase.getChangeCount();
         return ne;
     }
 
     /**
      * Replace a note by another one at same position.
      * <p>
-     * The 2 notes must have the same position.
+     * The 2 notes must have the same position. Like Phrase.indexOf(), oldNote is searched using equals(): the first phrase note
+     * equal to oldNote is replaced.
      *
      * @param oldNote
      * @param newNote
      */
     public void replaceNote(NoteEvent oldNote, NoteEvent newNote)
     {
-        int index = phrase.indexOf(oldNote);
-        if (oldNote.getPositionInBeats() != newNote.getPositionInBeats() || index == -1)
+        checkPhrase();
+        int index = oldNote.getPositionInBeats() != newNote.getPositionInBeats() ? -1 : indexOfNote(oldNote, false);
+        if (index == -1)
         {
             throw new IllegalArgumentException("oldNote=" + oldNote + " newNote=" + newNote);   //NOI18N
         }
-        phrase.set(index, newNote);
-        refresh();
+        setNote(phrase.get(index), newNote);
+        phraseChangeCount = phrase.getChangeCount();
     }
 
 
@@ -629,10 +666,9 @@ public class Grid implements Cloneable
                     durationInBeats = ne.getPositionInBeats() + ne.getDurationInBeats() - newPosInBeats;
                 }
                 NoteEvent movedNe = new NoteEvent(ne, durationInBeats, newPosInBeats);
-                phrase.remove(ne);
-                phrase.addOrdered(movedNe);
+                moveNote(ne, movedNe);
             }
-            refresh();
+            phraseChangeCount = phrase.getChangeCount();
         }
         return nes.size();
     }
@@ -666,9 +702,8 @@ public class Grid implements Cloneable
                 durationInBeats = ne.getPositionInBeats() + ne.getDurationInBeats() - newPosInBeats;
             }
             NoteEvent movedNe = new NoteEvent(ne, durationInBeats, newPosInBeats);
-            phrase.remove(ne);
-            phrase.addOrdered(movedNe);
-            refresh();
+            moveNote(ne, movedNe);
+            phraseChangeCount = phrase.getChangeCount();
         }
         return ne != null;
     }
@@ -686,15 +721,16 @@ public class Grid implements Cloneable
         {
             throw new IllegalArgumentException("cell=" + cell);   //NOI18N
         }
+        checkPhrase();
         float pos = getStartPos(cell) - preCellBeatWindow;
         List<NoteEvent> nes = phrase.getCrossingNotes(pos, true);
         for (NoteEvent ne : nes)
         {
             float newDuration = pos - ne.getPositionInBeats();
             NoteEvent newNe = new NoteEvent(ne, newDuration);
-            phrase.set(phrase.indexOf(ne), newNe);
+            setNote(ne, newNe);
         }
-        refresh();
+        phraseChangeCount = phrase.getChangeCount();
         return nes.size();
     }
 
@@ -748,53 +784,33 @@ public class Grid implements Cloneable
     }
 
     /**
-     * Update the internal data structure: should be called whenever Phrase is modified externally.
+     * Rebuild the internal data structure from the phrase.
      * <p>
      * Manage the fact that a note can be included in a cell if its start position is just before the cell.
+     * <p>
+     * Calling this method is not required anymore: modifications of the phrase outside of this Grid are automatically detected.
      *
      * @see getPreCellBeatWindow()
      */
     public final void refresh()
     {
-        mapCellNotes.clear();
-        for (NoteEvent ne : phrase)
+        Arrays.fill(cellNotes, null);
+        for (NoteEvent ne : phrase.getNotes(ne -> true, adjustedBeatRange, true))
         {
-            float posInBeats = ne.getPositionInBeats();
-            if (adjustedBeatRange.contains(posInBeats, true))
+            if (!predicate.test(ne))
             {
-                if (!predicate.test(ne))
-                {
-                    continue;
-                }
-                float relPosInBeats = posInBeats - originalBeatRange.from;
-                int cellIndex;
-                if (relPosInBeats < 0)
-                {
-                    // Special case: the note is just before startPos (but still in the preCellBeatWindow)
-                    cellIndex = 0;
-                } else
-                {
-                    // Normal case
-                    cellIndex = (int) Math.floor(relPosInBeats / cellDuration);
-                    if (((cellIndex + 1) * cellDuration - relPosInBeats) <= preCellBeatWindow)
-                    {
-                        // We're in the preCellBeatWindow of next cell
-                        cellIndex++;
-                    }
-                }
-                List<NoteEvent> nes = mapCellNotes.get(cellIndex);
-                if (nes == null)
-                {
-                    nes = new ArrayList<>();
-                    mapCellNotes.put(cellIndex, nes);
-                }
-                nes.add(ne);
-            } else if (posInBeats >= adjustedBeatRange.to)
+                continue;
+            }
+            int cellIndex = getNoteCell(ne.getPositionInBeats());
+            List<NoteEvent> nes = cellNotes[cellIndex];
+            if (nes == null)
             {
-                // Stopped if we past the last note
-                break;
+                nes = new ArrayList<>();
+                cellNotes[cellIndex] = nes;
             }
+            nes.add(ne);
         }
+        phraseChangeCount = phrase.getChangeCount();
     }
 
     /**
@@ -816,9 +832,10 @@ public class Grid implements Cloneable
         {
             sb.append("|");
         }
+        checkPhrase();
         for (int i = cellFrom; i <= cellTo; i++)
         {
-            List<NoteEvent> nes = mapCellNotes.get(i);
+            List<NoteEvent> nes = cellNotes[i];
             sb.append(nes == null ? "." : nes.size());
             if ((i + 1) % cellsPerBeat == 0)
             {
@@ -853,4 +870,194 @@ public class Grid implements Cloneable
     // =================================================================================
     // Private methods
     // ================================================================================= 
+    /**
+     * Refresh if phrase was modified outside of this grid.
+     */
+    private void checkPhrase()
+    {
+        if (phrase.getChangeCount() != phraseChangeCount)
+        {
+            refresh();
+        }
+    }
+
+    /**
+     * The cell of a note position, taking into account the pre-cell beat window.
+     *
+     * @param posInBeats
+     * @return -1 if posInBeats is outside of the adjusted beat range.
+     */
+    private int getNoteCell(float posInBeats)
+    {
+        if (!adjustedBeatRange.contains(posInBeats, true))
+        {
+            return -1;
+        }
+        float relPosInBeats = posInBeats - originalBeatRange.from;
+        int cellIndex;
+        if (relPosInBeats < 0)
+        {
+            // Special case: the note is just before startPos (but still in the preCellBeatWindow)
+            cellIndex = 0;
+        } else
+        {
+            // Normal case
+            cellIndex = (int) Math.floor(relPosInBeats / cellDuration);
+            if (((cellIndex + 1) * cellDuration - relPosInBeats) <= preCellBeatWindow)
+            {
+                // We're in the preCellBeatWindow of next cell
+                cellIndex++;
+            }
+        }
+        return cellIndex;
+    }
+
+    /**
+     * Get the phrase index of a note instance.
+     * <p>
+     * Use a binary search on the position: O(log n). Notes from the cells are phrase instances, so identity is used.
+     *
+     * @param ne
+     * @return -1 if not found
+     */
+    private int indexOfNote(NoteEvent ne)
+    {
+        return indexOfNote(ne, true);
+    }
+
+    /**
+     * Get the phrase index of a note.
+     *
+     * @param ne
+     * @param identity If true search the ne instance, otherwise the first note equal to ne
+     * @return -1 if not found
+     */
+    private int indexOfNote(NoteEvent ne, boolean identity)
+    {
+        float pos = ne.getPositionInBeats();
+        int low = 0;
+        int high = phrase.size();
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (phrase.get(mid).getPositionInBeats() < pos)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid;
+            }
+        }
+        for (int i = low; i < phrase.size() && phrase.get(i).getPositionInBeats() == pos; i++)
+        {
+            if (identity ? phrase.get(i) == ne : phrase.get(i).equals(ne))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replace a note in the phrase and in the cells.
+     * <p>
+     * The 2 notes must have the same position.
+     *
+     * @param oldNe
+     * @param newNe
+     */
+    private void setNote(NoteEvent oldNe, NoteEvent newNe)
+    {
+        assert oldNe.getPositionInBeats() == newNe.getPositionInBeats() : "oldNe=" + oldNe + " newNe=" + newNe;   //NOI18N
+        phrase.set(indexOfNote(oldNe), newNe);
+        int cell = getNoteCell(oldNe.getPositionInBeats());
+        if (cell == -1)
+        {
+            return;
+        }
+        List<NoteEvent> nes = cellNotes[cell];
+        int index = nes == null ? -1 : indexOfInstance(nes, oldNe);
+        if (index != -1 && predicate.test(newNe))
+        {
+            nes.set(index, newNe);
+        } else
+        {
+            removeFromCell(oldNe);
+            addToCell(newNe);
+        }
+    }
+
+    /**
+     * Remove a note from the phrase and add another one, update the cells.
+     *
+     * @param oldNe
+     * @param newNe
+     */
+    private void moveNote(NoteEvent oldNe, NoteEvent newNe)
+    {
+        phrase.remove(indexOfNote(oldNe));
+        removeFromCell(oldNe);
+        phrase.addOrdered(newNe);
+        addToCell(newNe);
+    }
+
+    /**
+     * Add a note, which must be already in the phrase, to its cell if it's in the grid range and accepted by the predicate.
+     *
+     * @param ne
+     */
+    private void addToCell(NoteEvent ne)
+    {
+        int cell = getNoteCell(ne.getPositionInBeats());
+        if (cell == -1 || !predicate.test(ne))
+        {
+            return;
+        }
+        List<NoteEvent> nes = cellNotes[cell];
+        if (nes == null)
+        {
+            nes = new ArrayList<>();
+            cellNotes[cell] = nes;
+        }
+
+        // Keep the phrase order, cells contain only a few notes
+        int phraseIndex = indexOfNote(ne);
+        int index = 0;
+        while (index < nes.size() && indexOfNote(nes.get(index)) < phraseIndex)
+        {
+            index++;
+        }
+        nes.add(index, ne);
+    }
+
+    private void removeFromCell(NoteEvent ne)
+    {
+        int cell = getNoteCell(ne.getPositionInBeats());
+        if (cell == -1 || cellNotes[cell] == null)
+        {
+            return;
+        }
+        List<NoteEvent> nes = cellNotes[cell];
+        int index = indexOfInstance(nes, ne);
+        if (index != -1)
+        {
+            nes.remove(index);
+            if (nes.isEmpty())
+            {
+                cellNotes[cell] = null;
+            }
+        }
+    }
+
+    static private int indexOfInstance(List<NoteEvent> nes, NoteEvent ne)
+    {
+        for (int i = 0; i < nes.size(); i++)
+        {
+            if (nes.get(i) == ne)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
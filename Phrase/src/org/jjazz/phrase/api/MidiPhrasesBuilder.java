@@ -0,0 +1,161 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.ShortMessage;
+import org.jjazz.midi.api.MidiConst;
+import org.jjazz.midi.api.parser.MidiParser;
+
+/**
+ * A MidiParser auxilliary parser which builds one Phrase per channel from the parsed NoteON/OFF events.
+ * <p>
+ * Events are processed as in Phrase.getPhrases(int, Track[], Integer...): ticks are converted to MidiConst.PPQ_RESOLUTION, and
+ * NoteON/OFF are paired per track like Phrase.add(List&lt;MidiEvent&gt;, float, boolean). The MidiParser own note pairing is not used.
+ */
+class MidiPhrasesBuilder implements MidiParser.AuxilliaryMidiParser
+{
+
+    private final boolean[] selectedChannels = new boolean[16];
+    private final Phrase[] phrases = new Phrase[16];
+    /**
+     * The pending NoteON tick per channel and pitch in the current track, -1 if none.
+     */
+    private final long[][] noteOnTicks = new long[16][128];
+    private final int[][] noteOnVelocities = new int[16][128];
+
+    /**
+     * @param channels Build phrases only for the specified channels. If empty, build phrases for all channels.
+     */
+    MidiPhrasesBuilder(Integer... channels)
+    {
+        for (int i = 0; i < 16; i++)
+        {
+            selectedChannels[i] = channels.length == 0;
+        }
+        for (int c : channels)
+        {
+            selectedChannels[c] = true;
+        }
+        resetNoteOns();
+    }
+
+    /**
+     * @return The phrases ordered by channel. A phrase is created for each channel used by a Midi channel message.
+     */
+    List<Phrase> getPhrases()
+    {
+        List<Phrase> res = new ArrayList<>();
+        for (Phrase p : phrases)
+        {
+            if (p != null)
+            {
+                res.add(p);
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public void parseHandledMidiEvent(MidiEvent me, MidiParser mp)
+    {
+        MidiMessage mm = me.getMessage();
+        if (mm instanceof MetaMessage)
+        {
+            if (((MetaMessage) mm).getType() == MidiParser.META_END_OF_TRACK)
+            {
+                // NoteON/OFF are paired per track
+                resetNoteOns();
+            }
+            return;
+        } else if (!(mm instanceof ShortMessage))
+        {
+            return;
+        }
+
+        ShortMessage sm = (ShortMessage) mm;
+        int channel = sm.getChannel();
+        if (!selectedChannels[channel])
+        {
+            return;
+        }
+        Phrase p = phrases[channel];
+        if (p == null)
+        {
+            p = new Phrase(channel);
+            phrases[channel] = p;
+        }
+
+
+        int command = sm.getCommand();
+        if (command != ShortMessage.NOTE_ON && command != ShortMessage.NOTE_OFF)
+        {
+            return;
+        }
+        int pitch = sm.getData1();
+        int velocity = sm.getData2();
+        long tick = Math.round((double) MidiConst.PPQ_RESOLUTION / mp.getResolution() * me.getTick());
+
+
+        if (command == ShortMessage.NOTE_ON && velocity > 0)
+        {
+            // NOTE_ON: an overlapping NOTE_ON on the same pitch replaces the pending one
+            noteOnTicks[channel][pitch] = tick;
+            noteOnVelocities[channel][pitch] = velocity;
+        } else if (noteOnTicks[channel][pitch] >= 0)
+        {
+            // NOTE_OFF
+            long tickOn = noteOnTicks[channel][pitch];
+            noteOnTicks[channel][pitch] = -1;
+            if (tick > tickOn)
+            {
+                float duration = (float) (tick - tickOn) / MidiConst.PPQ_RESOLUTION;
+                float posInBeats = (float) tickOn / MidiConst.PPQ_RESOLUTION;
+                p.addOrdered(new NoteEvent(pitch, duration, noteOnVelocities[channel][pitch], posInBeats));
+            }
+        }
+    }
+
+    @Override
+    public void parseUnhandledMidiEvent(MidiEvent me, MidiParser mp)
+    {
+        // Channel messages not handled by MidiParser still make the channel used
+        parseHandledMidiEvent(me, mp);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void resetNoteOns()
+    {
+        for (long[] channelTicks : noteOnTicks)
+        {
+            Arrays.fill(channelTicks, -1);
+        }
+    }
+}
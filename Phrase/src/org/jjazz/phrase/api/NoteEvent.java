@@ -25,6 +25,8 @@ package org.jjazz.phrase.api;
 import com.google.common.base.Preconditions;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,12 +43,22 @@ import org.openide.util.Exceptions;
  * A Note with a position and optional client properties.
  * <p>
  * This is an immutable class except for the client properties.
+ * <p>
+ * Client properties are stored in a copy-on-write array of key/value pairs: no storage is allocated for the (most frequent) notes
+ * without client properties, and copies of a note share the same storage until a property is modified.
+ * <p>
+ * API change: the protected <code>Map&lt;String, Object&gt; clientProperties</code> field has been removed. Subclasses must use
+ * getClientProperties(), getClientProperty() and putClientProperty() instead.
  */
 public class NoteEvent extends Note implements Cloneable, Comparable<Note>
 {
 
+    private static final Object[] NO_PROPERTIES = new Object[0];
     private float position;
-    protected Map<String, Object> clientProperties;
+    /**
+     * Key/value pairs, never modified once assigned.
+     */
+    private Object[] clientProperties = NO_PROPERTIES;
     private static final Logger LOGGER = Logger.getLogger(NoteEvent.class.getSimpleName());
 
     public NoteEvent(int pitch, float duration, int velocity, float posInBeats)
@@ -63,7 +75,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     /**
      * Create a MidiNoteEvent from an existing one but using the specified pitch.
      * <p>
-     * Client properties are cloned from ne.
+     * Client properties are copied from ne (the storage is shared until a property is modified).
      *
      * @param ne
      * @param pitch
@@ -77,7 +89,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     /**
      * Create a MidiNoteEvent from an existing one but using the specified duration.
      * <p>
-     * Client properties are cloned from ne.
+     * Client properties are copied from ne (the storage is shared until a property is modified).
      *
      * @param ne
      * @param durationInBeats
@@ -91,7 +103,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     /**
      * Create a MidiNoteEvent from an existing one but using the specified duration and position.
      * <p>
-     * Client properties are cloned from ne.
+     * Client properties are copied from ne (the storage is shared until a property is modified).
      *
      * @param ne
      * @param durationInBeats
@@ -106,7 +118,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     /**
      * Create a MidiNoteEvent from an existing one but using the specified pitch, duration and position.
      * <p>
-     * Client properties are cloned from ne.
+     * Client properties are copied from ne (the storage is shared until a property is modified).
      *
      * @param ne
      * @param pitch
@@ -122,7 +134,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     /**
      * Create a MidiNoteEvent from an existing one but using the specified pitch, duration, velocity.
      * <p>
-     * Client properties are cloned from ne.
+     * Client properties are copied from ne (the storage is shared until a property is modified).
      *
      * @param ne
      * @param pitch
@@ -143,7 +155,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
      */
     public final void setClientProperties(NoteEvent ne)
     {
-        clientProperties = (ne.clientProperties == null) ? null : new HashMap<>(ne.clientProperties);
+        clientProperties = ne.clientProperties;        // Copy-on-write, can be shared
     }
 
     /**
@@ -154,20 +166,50 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
      */
     public void putClientProperty(String propertyName, Object value)
     {
+        int index = indexOfClientProperty(propertyName);
         if (value == null)
         {
-            if (clientProperties != null)
+            if (index != -1)
             {
-                clientProperties.remove(propertyName);
+                Object[] newProperties = new Object[clientProperties.length - 2];
+                System.arraycopy(clientProperties, 0, newProperties, 0, index);
+                System.arraycopy(clientProperties, index + 2, newProperties, index, clientProperties.length - index - 2);
+                clientProperties = newProperties.length == 0 ? NO_PROPERTIES : newProperties;
             }
+        } else if (index != -1)
+        {
+            Object[] newProperties = clientProperties.clone();
+            newProperties[index + 1] = value;
+            clientProperties = newProperties;
         } else
         {
-            if (clientProperties == null)
-            {
-                clientProperties = new HashMap<>();
-            }
-            clientProperties.put(propertyName, value);
+            Object[] newProperties = Arrays.copyOf(clientProperties, clientProperties.length + 2);
+            newProperties[clientProperties.length] = propertyName;
+            newProperties[clientProperties.length + 1] = value;
+            clientProperties = newProperties;
+        }
+    }
+
+    /**
+     * Get all the client properties.
+     * <p>
+     * Replaces the reading of the removed protected clientProperties field. Use putClientProperty() to modify a property.
+     *
+     * @return An unmodifiable copy, empty if no client property.
+     */
+    public Map<String, Object> getClientProperties()
+    {
+        Object[] properties = clientProperties;
+        if (properties.length == 0)
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, Object> res = new HashMap<>();
+        for (int i = 0; i < properties.length; i += 2)
+        {
+            res.put((String) properties[i], properties[i + 1]);
         }
+        return Collections.unmodifiableMap(res);
     }
 
     /**
@@ -178,7 +220,8 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
      */
     public Object getClientProperty(String propertyName)
     {
-        return clientProperties != null ? clientProperties.get(propertyName) : null;
+        int index = indexOfClientProperty(propertyName);
+        return index != -1 ? clientProperties[index + 1] : null;
     }
 
     /**
@@ -334,7 +377,7 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
     }
 
     /**
-     * Also clone the client properties.
+     * The clone has the same client properties, their storage is shared until a property is modified on one of the notes.
      *
      * @return
      */
@@ -406,4 +449,23 @@ public class NoteEvent extends Note implements Cloneable, Comparable<Note>
         return ne;
     }
 
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * @param propertyName
+     * @return The index of the key in clientProperties, -1 if not found.
+     */
+    private int indexOfClientProperty(String propertyName)
+    {
+        for (int i = 0; i < clientProperties.length; i += 2)
+        {
+            if (clientProperties[i].equals(propertyName))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
 }
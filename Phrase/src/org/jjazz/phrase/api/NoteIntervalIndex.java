@@ -0,0 +1,173 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable index of the start/end positions of a list of NoteEvents sorted by start position.
+ * <p>
+ * Start positions are used for binary searches. End positions are stored in a max-end segment tree over the list indexes, so that
+ * the notes ending after a position can be found without visiting the notes which ended before.
+ */
+final class NoteIntervalIndex
+{
+
+    private final int modCount;
+    private final float[] starts;
+    private final float[] ends;
+    private final int leafCount;
+    /**
+     * Segment tree (node 1 is the root, children of node i are 2i and 2i+1): max end position of the notes of each node.
+     */
+    private final float[] maxEnds;
+
+    /**
+     * @param notes Must be sorted by start position
+     * @param modCount The modCount of the list when the index is built
+     */
+    NoteIntervalIndex(List<NoteEvent> notes, int modCount)
+    {
+        this.modCount = modCount;
+        int n = notes.size();
+        starts = new float[n];
+        ends = new float[n];
+        int i = 0;
+        for (NoteEvent ne : notes)
+        {
+            float pos = ne.getPositionInBeats();
+            starts[i] = pos;
+            ends[i] = pos + ne.getDurationInBeats();
+            i++;
+        }
+
+        int lc = 1;
+        while (lc < n)
+        {
+            lc <<= 1;
+        }
+        leafCount = lc;
+        maxEnds = new float[2 * leafCount];
+        Arrays.fill(maxEnds, Float.NEGATIVE_INFINITY);
+        System.arraycopy(ends, 0, maxEnds, leafCount, n);
+        for (int node = leafCount - 1; node >= 1; node--)
+        {
+            maxEnds[node] = Math.max(maxEnds[2 * node], maxEnds[2 * node + 1]);
+        }
+    }
+
+    int getModCount()
+    {
+        return modCount;
+    }
+
+    int size()
+    {
+        return starts.length;
+    }
+
+    /**
+     * @param pos
+     * @return The index of the first note whose start position is &gt;= pos, or size() if none.
+     */
+    int indexOfFirstFrom(float pos)
+    {
+        int low = 0;
+        int high = starts.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < pos)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param pos
+     * @return The index of the first note whose start position is &gt; pos, or size() if none.
+     */
+    int indexOfFirstAfter(float pos)
+    {
+        int low = 0;
+        int high = starts.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= pos)
+            {
+                low = mid + 1;
+            } else
+            {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the notes ringing at the specified position.
+     *
+     * @param pos
+     * @param strict If true, notes starting or ending at pos are excluded.
+     * @param consumer Called with the index of each matching note, in ascending order.
+     */
+    void forEachCrossing(float pos, boolean strict, IntConsumer consumer)
+    {
+        int toExclusive = strict ? indexOfFirstFrom(pos) : indexOfFirstAfter(pos);
+        if (toExclusive > 0)
+        {
+            collectEndingAfter(1, 0, leafCount, toExclusive, pos, strict, consumer);
+        }
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Visit the notes of the [nodeFrom;nodeTo[ node range which are before toExclusive and end after pos.
+     */
+    private void collectEndingAfter(int node, int nodeFrom, int nodeTo, int toExclusive, float pos, boolean strict, IntConsumer consumer)
+    {
+        float maxEnd = maxEnds[node];
+        if (nodeFrom >= toExclusive || (strict ? maxEnd <= pos : maxEnd < pos))
+        {
+            return;
+        }
+        if (nodeTo - nodeFrom == 1)
+        {
+            consumer.accept(nodeFrom);
+            return;
+        }
+        int mid = (nodeFrom + nodeTo) >>> 1;
+        collectEndingAfter(2 * node, nodeFrom, mid, toExclusive, pos, strict, consumer);
+        collectEndingAfter(2 * node + 1, mid, nodeTo, toExclusive, pos, strict, consumer);
+    }
+}
@@ -23,6 +23,8 @@
 package org.jjazz.phrase.api;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamException;
@@ -36,15 +38,16 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.StringJoiner;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.ShortMessage;
 import javax.sound.midi.Track;
@@ -54,6 +57,7 @@ import org.jjazz.harmony.api.ScaleManager;
 import org.jjazz.harmony.api.TimeSignature;
 import org.jjazz.midi.api.MidiConst;
 import org.jjazz.midi.api.MidiUtilities;
+import org.jjazz.midi.api.parser.MidiParser;
 import org.jjazz.util.api.FloatRange;
 import org.jjazz.util.api.LongRange;
 
@@ -63,16 +67,29 @@ import org.jjazz.util.api.LongRange;
  * Use addOrdered() to add a NoteEvent: this will ensure NoteEvents are kept ordered. Use of other add()/addAll() methods should be used
  * for optimization only when you are sure it will not break the NoteEvents order.
  * <p>
- * LinkedList implementation to speed up item insertion/remove rather than random access.
+ * ArrayList implementation: NoteEvents are stored in a sorted array. Ordered insertion is a binary search plus an array shift,
+ * random access and position-based queries don't need to walk the list. Bulk removals are done in one pass.
+ * <p>
+ * getCrossingNotes() uses an interval index of the notes start/end positions, which is rebuilt on the first call after a
+ * modification of the phrase.
  */
-public class Phrase extends LinkedList<NoteEvent> implements Serializable
+public class Phrase extends ArrayList<NoteEvent> implements Serializable
 {
 
     /**
      * NoteEvent client property set when new NoteEvents are created from existing ones.
      */
     public static final String PARENT_NOTE = "PARENT_NOTE";
+    /**
+     * Below this size a linear scan is faster than building the interval index.
+     */
+    private static final int INTERVAL_INDEX_MIN_SIZE = 32;
     private final int channel;
+    private transient volatile NoteIntervalIndex intervalIndex;
+    /**
+     * Incremented by set() and replaceAll() which do not update modCount.
+     */
+    private transient int setCount;
     private static final Logger LOGGER = Logger.getLogger(Phrase.class.getSimpleName());
 
     /**
@@ -105,7 +122,8 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     /**
      * Add NoteEvents from a list of NOTE_ON/OFF Midi events at MidiConst.PPQ_RESOLUTION.
      * <p>
-     * NOTE_ON events without a corresponding NOTE_OFF event are ignored.
+     * NOTE_ON events without a corresponding NOTE_OFF event are ignored. If several NOTE_ON events on the same pitch precede a
+     * NOTE_OFF event, only the last one is used. Zero-length notes are ignored.
      *
      * @param midiEvents MidiEvents which are not ShortMessage.Note_ON/OFF are ignored. Must be ordered by tick position, resolution must be MidiConst.PPQ_RESOLUTION.
      * @param posInBeatsOffset The position in natural beats of the first tick of the track.
@@ -153,11 +171,14 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
                 {
                     // Create the NoteEvent
                     long tickOn = meOn.getTick();
-                    ShortMessage smOn = (ShortMessage) meOn.getMessage();
-                    float duration = ((float) tick - tickOn) / MidiConst.PPQ_RESOLUTION;
-                    float posInBeats = posInBeatsOffset + ((float) tickOn / MidiConst.PPQ_RESOLUTION);
-                    NoteEvent ne = new NoteEvent(pitch, duration, smOn.getData2(), posInBeats);
-                    addOrdered(ne);
+                    if (tick > tickOn)
+                    {
+                        ShortMessage smOn = (ShortMessage) meOn.getMessage();
+                        float duration = (float) (tick - tickOn) / MidiConst.PPQ_RESOLUTION;
+                        float posInBeats = posInBeatsOffset + ((float) tickOn / MidiConst.PPQ_RESOLUTION);
+                        NoteEvent ne = new NoteEvent(pitch, duration, smOn.getData2(), posInBeats);
+                        addOrdered(ne);
+                    }
 
                     // Clean the last NoteOn
                     lastNoteOn[pitch] = null;
@@ -177,6 +198,13 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
      */
     public void addOrdered(NoteEvent mne)
     {
+        if (isEmpty() || get(size() - 1).compareTo(mne) <= 0)
+        {
+            // Most common case, phrases are usually built in position order
+            add(mne);
+            return;
+        }
+
         int res = Collections.binarySearch(this, mne);
 
         int index;
@@ -195,6 +223,111 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
         add(index, mne);
     }
         
+    /**
+     * Overridden to invalidate the interval index, ArrayList.set() does not update modCount.
+     *
+     * @param index
+     * @param ne
+     * @return
+     */
+    @Override
+    public NoteEvent set(int index, NoteEvent ne)
+    {
+        NoteEvent res = super.set(index, ne);
+        intervalIndex = null;
+        setCount++;
+        return res;
+    }
+
+    /**
+     * Overridden to invalidate the interval index.
+     *
+     * @param operator
+     */
+    @Override
+    public void replaceAll(UnaryOperator<NoteEvent> operator)
+    {
+        super.replaceAll(operator);
+        intervalIndex = null;
+        setCount++;
+    }
+
+    /**
+     * @return The first NoteEvent
+     * @throws NoSuchElementException If phrase is empty
+     */
+    public NoteEvent getFirst()
+    {
+        if (isEmpty())
+        {
+            throw new NoSuchElementException();
+        }
+        return get(0);
+    }
+
+    /**
+     * @return The last NoteEvent
+     * @throws NoSuchElementException If phrase is empty
+     */
+    public NoteEvent getLast()
+    {
+        if (isEmpty())
+        {
+            throw new NoSuchElementException();
+        }
+        return get(size() - 1);
+    }
+
+    /**
+     * Insert the NoteEvent at first position.
+     * <p>
+     * Should be used for optimization only when you are sure it will not break the NoteEvents order.
+     *
+     * @param ne
+     */
+    public void addFirst(NoteEvent ne)
+    {
+        add(0, ne);
+    }
+
+    /**
+     * Append the NoteEvent.
+     * <p>
+     * Should be used for optimization only when you are sure it will not break the NoteEvents order.
+     *
+     * @param ne
+     */
+    public void addLast(NoteEvent ne)
+    {
+        add(ne);
+    }
+
+    /**
+     * @return The removed first NoteEvent
+     * @throws NoSuchElementException If phrase is empty
+     */
+    public NoteEvent removeFirst()
+    {
+        if (isEmpty())
+        {
+            throw new NoSuchElementException();
+        }
+        return remove(0);
+    }
+
+    /**
+     * @return The removed last NoteEvent
+     * @throws NoSuchElementException If phrase is empty
+     */
+    public NoteEvent removeLast()
+    {
+        if (isEmpty())
+        {
+            throw new NoSuchElementException();
+        }
+        return remove(size() - 1);
+    }
+
     /**
      * A deep clone: returned phrase contains clones of the original NoteEvents.
      *
@@ -423,22 +556,19 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
      */
     public void silenceAfter(float posInBeats)
     {
-        // Use an iterator to avoid using get(i) which is O(n) for a linkedlist
-        ListIterator<NoteEvent> it = listIterator(size());
-        while (it.hasPrevious())
+        // Remove notes after posInBeats in one pass
+        removeIf(ne -> ne.getPositionInBeats() >= posInBeats);
+
+        // Shorten notes before posInBeats but ending after posInBeats
+        for (int i = 0; i < size(); i++)
         {
-            NoteEvent ne = it.previous();
+            NoteEvent ne = get(i);
             float pos = ne.getPositionInBeats();
-            if (pos >= posInBeats)
+            if (pos + ne.getDurationInBeats() > posInBeats)
             {
-                // Remove notes after posInBeats
-                it.remove();
-            } else if (pos + ne.getDurationInBeats() > posInBeats)
-            {
-                // Shorten notes before posInBeats but ending after posInBeats
                 float newDuration = posInBeats - pos;
                 NoteEvent ne2 = new NoteEvent(ne, newDuration);
-                it.set(ne2);
+                set(i, ne2);
             }
         }
     }
@@ -463,15 +593,14 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     {
         ArrayList<NoteEvent> toBeAdded = new ArrayList<>();
 
-        ListIterator<NoteEvent> it = listIterator();
-        while (it.hasNext())
+        for (int i = 0; i < size(); i++)
         {
-            NoteEvent ne = it.next();
+            NoteEvent ne = get(i);
             float nePosFrom = ne.getPositionInBeats();
             float nePosTo = nePosFrom + ne.getDurationInBeats();
             if (nePosFrom < startPos)
             {
-                it.remove();
+                // Note is removed below
                 if (keepLeft && nePosTo > startPos)
                 {
                     if (cutRight && nePosTo > endPos)
@@ -488,15 +617,17 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
                 {
                     float newDur = endPos - nePosFrom;
                     NoteEvent newNe = new NoteEvent(ne, newDur, nePosFrom);
-                    it.set(newNe);
+                    set(i, newNe);
                 }
             } else
             {
-                // nePosFrom is after endPost
-                it.remove();
+                // nePosFrom is after endPost: note is removed below
             }
         }
 
+        // Remove notes outside of the range in one pass
+        removeIf(ne -> ne.getPositionInBeats() < startPos || ne.getPositionInBeats() >= endPos);
+
         // Add the new NoteEvents
         for (NoteEvent ne : toBeAdded)
         {
@@ -524,10 +655,9 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     {
         ArrayList<NoteEvent> toBeAdded = new ArrayList<>();
 
-        ListIterator<NoteEvent> it = listIterator();
-        while (it.hasNext())
+        for (int i = 0; i < size(); i++)
         {
-            NoteEvent ne = it.next();
+            NoteEvent ne = get(i);
             float nePosFrom = ne.getPositionInBeats();
             float nePosTo = nePosFrom + ne.getDurationInBeats();
             if (nePosFrom < range.from)
@@ -542,11 +672,11 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
                     }
                     float newDur = range.from - nePosFrom;
                     NoteEvent newNe = new NoteEvent(ne, newDur, nePosFrom);
-                    it.set(newNe);
+                    set(i, newNe);
                 }
             } else if (nePosFrom < range.to)
             {
-                it.remove();
+                // Note is removed below
                 if (keepRight && nePosTo > range.to)
                 {
                     float newDur = nePosTo - range.to;
@@ -560,6 +690,9 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
             }
         }
 
+        // Remove notes inside the range in one pass
+        removeIf(ne -> ne.getPositionInBeats() >= range.from && ne.getPositionInBeats() < range.to);
+
         // Add the new NoteEvents
         for (NoteEvent ne : toBeAdded)
         {
@@ -578,16 +711,33 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     public List<NoteEvent> getNotes(Predicate<NoteEvent> tester, FloatRange range, boolean excludeUpperBound)
     {
         var res = new ArrayList<NoteEvent>();
-        for (NoteEvent ne : this)
+
+        // Binary search of the first note starting at range.from or after
+        int low = 0;
+        int high = size();
+        while (low < high)
         {
-            if (tester.test(ne) && range.contains(ne.getPositionInBeats(), excludeUpperBound))
+            int mid = (low + high) >>> 1;
+            if (get(mid).getPositionInBeats() < range.from)
             {
-                res.add(ne);
+                low = mid + 1;
+            } else
+            {
+                high = mid;
             }
-            if (ne.getPositionInBeats() > range.to)
+        }
+
+        for (int i = low; i < size(); i++)
+        {
+            NoteEvent ne = get(i);
+            if (!range.contains(ne.getPositionInBeats(), excludeUpperBound))
             {
                 break;
             }
+            if (tester.test(ne))
+            {
+                res.add(ne);
+            }
         }
         return res;
     }
@@ -603,6 +753,12 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     public List<NoteEvent> getCrossingNotes(float posInBeats, boolean strict)
     {
         ArrayList<NoteEvent> res = new ArrayList<>();
+        if (size() >= INTERVAL_INDEX_MIN_SIZE)
+        {
+            getIntervalIndex().forEachCrossing(posInBeats, strict, i -> res.add(get(i)));
+            return res;
+        }
+
         var it = listIterator();
         while (it.hasNext())
         {
@@ -623,13 +779,13 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
     /**
      * Create MidiEvents for each note and add it to the specified track.
      * <p>
-     * Tick resolution used is MidiConst.PPQ_RESOLUTION.
+     * Tick resolution used is MidiConst.PPQ_RESOLUTION. Events are added in one pass, see MidiUtilities.addMidiEvents().
      *
      * @param track
      */
     public void fillTrack(Track track)
     {
-        toMidiEvents().forEach(me -> track.add(me));
+        MidiUtilities.addMidiEvents(track, toMidiEvents());
     }
 
     /**
@@ -909,6 +1065,36 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
         return p;
     }
 
+    /**
+     * Save the specified Phrase in a compact binary format.
+     * <p>
+     * Positions are delta-encoded and durations are varint-encoded in Midi ticks when possible, pitch and velocity use one byte
+     * each. The encoding is lossless. NOTE: client properties are NOT saved.
+     * <p>
+     * This format is not used by the Phrase serialization (song files), which keeps the saveAsString() format.
+     *
+     * @param p
+     * @return
+     * @see loadAsBytes(byte[])
+     */
+    static public byte[] saveAsBytes(Phrase p)
+    {
+        return PhraseBinaryCodec.encode(p);
+    }
+
+    /**
+     * Create a Phrase from data produced by saveAsBytes().
+     *
+     * @param data
+     * @return
+     * @throws ParseException If data is not valid.
+     * @see saveAsBytes(Phrase)
+     */
+    static public Phrase loadAsBytes(byte[] data) throws ParseException
+    {
+        return PhraseBinaryCodec.decode(data);
+    }
+
 
     /**
      * Build a Phrase with 12 notes C-D-E-F-G-A-B-C that fit into nbBeats.
@@ -1055,6 +1241,65 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
         return new ArrayList<>(mapRes.values());
     }
 
+    /**
+     * Read a Standard Midi File stream to build one phrase per used channel.
+     * <p>
+     * The stream is parsed in one pass, without building the Midi Sequence and Tracks: use this method for large files.
+     * The result is the same as getPhrases(int, Track[], Integer...) on the Sequence read from the stream: tick positions are
+     * converted to MidiConst.PPQ_RESOLUTION, and NoteON/OFF events are paired per track like add(List, float, boolean).
+     *
+     * @param midiStream Stream is not closed.
+     * @param channels Get phrases only for the specified channels. If empty, get phrases for all channels.
+     * @return The phrases ordered by channel.
+     * @throws IOException
+     * @throws InvalidMidiDataException If stream is not a valid Standard Midi File using PPQ division.
+     * @see MidiParser#parse(java.io.InputStream, java.lang.String)
+     */
+    static public List<Phrase> getPhrases(InputStream midiStream, Integer... channels) throws IOException, InvalidMidiDataException
+    {
+        MidiPhrasesBuilder builder = new MidiPhrasesBuilder(channels);
+        MidiParser parser = new MidiParser();
+        parser.addAuxilliaryMidiParser(builder);
+        parser.parse(midiStream, null);
+        return builder.getPhrases();
+    }
+
+
+    // --------------------------------------------------------------------- 
+    // Package private methods
+    // --------------------------------------------------------------------- 
+    /**
+     * A value which changes each time the phrase is modified.
+     * <p>
+     * Modifications made via subList() views are not detected.
+     *
+     * @return
+     */
+    int getChangeCount()
+    {
+        return modCount + setCount;
+    }
+
+    // --------------------------------------------------------------------- 
+    // Private methods
+    // --------------------------------------------------------------------- 
+    /**
+     * Get the interval index, rebuild it if phrase was modified since last build.
+     * <p>
+     * Concurrent readers might rebuild the index at the same time, result is the same.
+     *
+     * @return
+     */
+    private NoteIntervalIndex getIntervalIndex()
+    {
+        NoteIntervalIndex index = intervalIndex;
+        if (index == null || index.getModCount() != modCount)
+        {
+            index = new NoteIntervalIndex(this, modCount);
+            intervalIndex = index;
+        }
+        return index;
+    }
 
     // --------------------------------------------------------------------- 
     // Serialization
@@ -1073,7 +1318,10 @@ public class Phrase extends LinkedList<NoteEvent> implements Serializable
 
 
     /**
-     * Rely on loadFromString()/saveAsString() methods.
+     * Rely on saveAsString()/loadAsString() methods.
+     * <p>
+     * The saveAsBytes() form is not used: song files must remain readable by previous JJazzLab versions, and XStream (used for
+     * the song files) rejects unknown fields.
      */
     private static class SerializationProxy implements Serializable
     {
@@ -0,0 +1,217 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.io.ByteArrayOutputStream;
+import java.text.ParseException;
+import org.jjazz.midi.api.MidiConst;
+
+/**
+ * A compact binary encoding of a Phrase.
+ * <p>
+ * Format: magic byte, format version byte, channel byte, varint number of notes, then for each note:<br>
+ * - pitch byte: bit 7 set if position is stored as raw float bits<br>
+ * - velocity byte: bit 7 set if duration is stored as raw float bits<br>
+ * - position: zigzag varint delta in ticks from the previous note position, or 4 bytes float bits<br>
+ * - duration: varint in ticks, or 4 bytes float bits
+ * <p>
+ * A position or duration is stored in ticks (MidiConst.PPQ_RESOLUTION per beat) only if the float value can be rebuilt exactly
+ * from the tick value, so that the encoding is lossless. Client properties and alteration display are not saved, like
+ * Phrase.saveAsString().
+ */
+final class PhraseBinaryCodec
+{
+
+    private static final int MAGIC = 0x50;      // 'P'
+    private static final int FORMAT_VERSION = 1;
+    private static final int RAW_FLAG = 0x80;
+
+    private PhraseBinaryCodec()
+    {
+    }
+
+    static byte[] encode(Phrase p)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + 4 * p.size());
+        out.write(MAGIC);
+        out.write(FORMAT_VERSION);
+        out.write(p.getChannel());
+        writeVarint(out, p.size());
+
+        long prevTicks = 0;
+        for (NoteEvent ne : p)
+        {
+            float pos = ne.getPositionInBeats();
+            float dur = ne.getDurationInBeats();
+            long posTicks = Math.round((double) pos * MidiConst.PPQ_RESOLUTION);
+            long durTicks = Math.round((double) dur * MidiConst.PPQ_RESOLUTION);
+            boolean rawPos = toBeats(posTicks) != pos;
+            boolean rawDur = durTicks <= 0 || toBeats(durTicks) != dur;
+
+            out.write(ne.getPitch() | (rawPos ? RAW_FLAG : 0));
+            out.write(ne.getVelocity() | (rawDur ? RAW_FLAG : 0));
+            if (rawPos)
+            {
+                writeInt(out, Float.floatToIntBits(pos));
+            } else
+            {
+                long delta = posTicks - prevTicks;
+                writeVarint(out, (delta << 1) ^ (delta >> 63));     // Zigzag
+            }
+            prevTicks = posTicks;
+            if (rawDur)
+            {
+                writeInt(out, Float.floatToIntBits(dur));
+            } else
+            {
+                writeVarint(out, durTicks);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static Phrase decode(byte[] data) throws ParseException
+    {
+        if (data.length < 2 || (data[0] & 0xFF) != MAGIC)
+        {
+            throw new ParseException("Invalid phrase data header", 0);   //NOI18N
+        }
+        if (data[1] != FORMAT_VERSION)
+        {
+            throw new ParseException("Unsupported phrase data version=" + data[1], 1);   //NOI18N
+        }
+        Reader in = new Reader(data);
+        in.offset = 2;
+        Phrase p;
+        try
+        {
+            p = new Phrase(in.readByte());
+            long nbNotes = in.readVarint();
+            long prevTicks = 0;
+            for (long i = 0; i < nbNotes; i++)
+            {
+                int pitchByte = in.readByte();
+                int velocityByte = in.readByte();
+                float pos;
+                long posTicks;
+                if ((pitchByte & RAW_FLAG) != 0)
+                {
+                    pos = Float.intBitsToFloat(in.readInt());
+                    posTicks = Math.round((double) pos * MidiConst.PPQ_RESOLUTION);
+                } else
+                {
+                    long zigzag = in.readVarint();
+                    posTicks = prevTicks + ((zigzag >>> 1) ^ -(zigzag & 1));
+                    pos = toBeats(posTicks);
+                }
+                prevTicks = posTicks;
+                float dur = (velocityByte & RAW_FLAG) != 0 ? Float.intBitsToFloat(in.readInt()) : toBeats(in.readVarint());
+                p.addOrdered(new NoteEvent(pitchByte & ~RAW_FLAG, dur, velocityByte & ~RAW_FLAG, pos));
+            }
+        } catch (IllegalArgumentException ex)
+        {
+            throw new ParseException("Invalid phrase data at offset=" + in.offset + ": " + ex.getMessage(), in.offset);   //NOI18N
+        }
+        if (in.offset != data.length)
+        {
+            throw new ParseException("Unexpected phrase data at offset=" + in.offset, in.offset);   //NOI18N
+        }
+        return p;
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Same computation than Phrase.add(List&lt;MidiEvent&gt;...) so that notes from Midi recordings are stored as ticks.
+     */
+    static private float toBeats(long ticks)
+    {
+        return (float) ticks / MidiConst.PPQ_RESOLUTION;
+    }
+
+    static private void writeVarint(ByteArrayOutputStream out, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static private void writeInt(ByteArrayOutputStream out, int value)
+    {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    // =================================================================================================
+    // Private classes
+    // =================================================================================================
+    /**
+     * Read primitive values from a byte array, throw IllegalArgumentException if end of data is reached.
+     */
+    static private class Reader
+    {
+
+        private final byte[] data;
+        private int offset;
+
+        Reader(byte[] data)
+        {
+            this.data = data;
+        }
+
+        int readByte()
+        {
+            if (offset >= data.length)
+            {
+                throw new IllegalArgumentException("Unexpected end of phrase data");   //NOI18N
+            }
+            return data[offset++] & 0xFF;
+        }
+
+        int readInt()
+        {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        long readVarint()
+        {
+            long res = 0;
+            for (int shift = 0; shift < 64; shift += 7)
+            {
+                int b = readByte();
+                res |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                {
+                    return res;
+                }
+            }
+            throw new IllegalArgumentException("Invalid varint");   //NOI18N
+        }
+    }
+}
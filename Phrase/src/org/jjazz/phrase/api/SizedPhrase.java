@@ -82,38 +82,30 @@ public class SizedPhrase extends Phrase
     /**
      * Overridden to check NoteEvent position.
      * <p>
+     * @param index
      * @param ne
      */
     @Override
-    public void addFirst(NoteEvent ne)
-    {
-        checkNoteEvent(ne);
-        super.addFirst(ne);
-    }
-
-    /**
-     * Overridden to check NoteEvent position.
-     * <p>
-     * @param ne
-     */
-    @Override
-    public void addLast(NoteEvent ne)
+    public void add(int index, NoteEvent ne)
     {
         checkNoteEvent(ne);
-        super.addLast(ne);
+        super.add(index, ne);
     }
 
     /**
-     * Overridden to check NoteEvent position.
-     * <p>
-     * @param index
-     * @param ne
+     * Overridden to check NoteEvent positions.
+     *
+     * @param nes
+     * @return
      */
     @Override
-    public void add(int index, NoteEvent ne)
+    public boolean addAll(Collection<? extends NoteEvent> nes)
     {
-        checkNoteEvent(ne);
-        super.add(index, ne);
+        for (var ne : nes)
+        {
+            checkNoteEvent(ne);
+        }
+        return super.addAll(nes);
     }
 
     /**
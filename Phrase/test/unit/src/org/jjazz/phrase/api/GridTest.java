@@ -0,0 +1,204 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.List;
+import java.util.Random;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.util.api.FloatRange;
+import org.jjazz.util.api.IntRange;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check that the Grid cells maintained incrementally are identical to the cells of a new Grid.
+ */
+public class GridTest
+{
+
+    private static final int NB_BEATS = 16;
+    private static final int NB_CELLS_PER_BEAT = 4;
+    private static final FloatRange BEAT_RANGE = new FloatRange(4, 4 + NB_BEATS);
+
+    @Test
+    public void testGridEdits()
+    {
+        System.out.println("testGridEdits() --");
+        Random rnd = new Random(1);
+        Phrase p = getRandomPhrase(rnd);
+        Grid grid = new Grid(p, BEAT_RANGE, NB_CELLS_PER_BEAT, null);
+        int lastCell = grid.getCellRange().to;
+
+        for (int i = 0; i < 300; i++)
+        {
+            int cell = rnd.nextInt(lastCell + 1);
+            int cell2 = rnd.nextInt(lastCell + 1);
+            switch (rnd.nextInt(7))
+            {
+                case 0:
+                    grid.addNote(cell, new Note(40 + rnd.nextInt(40), 0.5f, 64), 0.1f);
+                    break;
+                case 1:
+                    grid.removeNotes(new IntRange(Math.min(cell, cell2), Math.max(cell, cell2)));
+                    break;
+                case 2:
+                    grid.moveNotes(cell, cell2, rnd.nextBoolean());
+                    break;
+                case 3:
+                    grid.changeVelocity(new IntRange(Math.min(cell, cell2), Math.max(cell, cell2)), v -> Math.max(1, v - 1));
+                    break;
+                case 4:
+                    grid.stopNotesBefore(cell);
+                    break;
+                case 5:
+                    grid.changeDuration(new IntRange(Math.min(cell, cell2), Math.max(cell, cell2)), Math.max(cell, cell2), true, true);
+                    break;
+                case 6:
+                    NoteEvent ne = grid.getFirstNote(cell);
+                    if (ne != null)
+                    {
+                        grid.replaceNote(ne, new NoteEvent(ne, ne.getPitch() + 1));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            assertSameCells(p, grid);
+        }
+    }
+
+    @Test
+    public void testPhraseModifiedOutsideGrid()
+    {
+        System.out.println("testPhraseModifiedOutsideGrid() --");
+        Random rnd = new Random(2);
+        Phrase p = getRandomPhrase(rnd);
+        Grid grid = new Grid(p, BEAT_RANGE, NB_CELLS_PER_BEAT, null);
+
+        for (int i = 0; i < 100; i++)
+        {
+            int changeCount = p.getChangeCount();
+            switch (rnd.nextInt(3))
+            {
+                case 0:
+                    p.addOrdered(new NoteEvent(40 + rnd.nextInt(40), 0.25f, 64, BEAT_RANGE.from + rnd.nextFloat() * NB_BEATS));
+                    break;
+                case 1:
+                    if (!p.isEmpty())
+                    {
+                        p.remove(rnd.nextInt(p.size()));
+                    }
+                    break;
+                case 2:
+                    if (!p.isEmpty())
+                    {
+                        // set() does not change ArrayList.modCount
+                        int index = rnd.nextInt(p.size());
+                        NoteEvent ne = p.get(index);
+                        p.set(index, new NoteEvent(ne, ne.getPitch() + 1));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException();
+            }
+            assertTrue(p.isEmpty() || p.getChangeCount() != changeCount);
+
+            // No refresh() needed
+            assertSameCells(p, grid);
+        }
+    }
+
+    @Test
+    public void testReplaceNoteEquals()
+    {
+        System.out.println("testReplaceNoteEquals() --");
+        Phrase p = new Phrase(0);
+        NoteEvent ne = new NoteEvent(60, 0.5f, 64, 5);
+        p.add(ne);
+        Grid grid = new Grid(p, BEAT_RANGE, NB_CELLS_PER_BEAT, null);
+
+        // An equal note can be used to designate the phrase note
+        NoteEvent newNe = new NoteEvent(ne, 62);
+        grid.replaceNote(ne.clone(), newNe);
+        assertSame(newNe, p.get(0));
+        assertSameCells(p, grid);
+
+        try
+        {
+            grid.replaceNote(ne, new NoteEvent(ne, 64));
+            fail("Note not in the phrase");
+        } catch (IllegalArgumentException ex)
+        {
+            // OK
+        }
+    }
+
+    @Test
+    public void testIsEmpty()
+    {
+        System.out.println("testIsEmpty() --");
+        Phrase p = new Phrase(0);
+        p.add(new NoteEvent(60, 0.5f, 64, 5));
+        Grid grid = new Grid(p, BEAT_RANGE, NB_CELLS_PER_BEAT, null);
+        IntRange cellRange = grid.getCellRange();
+        int cell = grid.getCell(5, true);
+        assertFalse(grid.isEmpty(cell));
+        assertTrue(grid.isEmpty(cell + 1));
+
+        // Cells outside of the grid are empty
+        assertTrue(grid.isEmpty(-1));
+        assertTrue(grid.isEmpty(cellRange.to + 1));
+        assertTrue(grid.isEmpty(Integer.MAX_VALUE));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void assertSameCells(Phrase p, Grid grid)
+    {
+        Grid expected = new Grid(p, BEAT_RANGE, NB_CELLS_PER_BEAT, null);
+        for (int cell = expected.getCellRange().from; cell <= expected.getCellRange().to; cell++)
+        {
+            List<NoteEvent> expectedNotes = expected.getCellNotes(cell);
+            List<NoteEvent> notes = grid.getCellNotes(cell);
+            assertEquals("cell=" + cell, expectedNotes.size(), notes.size());
+            assertEquals("cell=" + cell, notes.isEmpty(), grid.isEmpty(cell));
+            for (int i = 0; i < notes.size(); i++)
+            {
+                // Cells must contain the phrase instances
+                assertSame("cell=" + cell, expectedNotes.get(i), notes.get(i));
+            }
+        }
+    }
+
+    private Phrase getRandomPhrase(Random rnd)
+    {
+        Phrase p = new Phrase(0);
+        for (int i = 0; i < 40; i++)
+        {
+            float pos = rnd.nextFloat() * (NB_BEATS + 6);
+            p.addOrdered(new NoteEvent(40 + rnd.nextInt(40), 0.1f + rnd.nextFloat(), 30 + rnd.nextInt(90), pos));
+        }
+        return p;
+    }
+}
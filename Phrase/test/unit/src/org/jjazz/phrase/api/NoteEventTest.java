@@ -24,8 +24,10 @@ package org.jjazz.phrase.api;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.ShortMessage;
+import org.jjazz.harmony.api.SymbolicDuration;
 import org.jjazz.midi.api.MidiConst;
 import org.jjazz.util.api.FloatRange;
 import org.junit.After;
@@ -107,5 +109,54 @@ public class NoteEventTest
         }
     }
 
+    @Test
+    public void testClientProperties()
+    {
+        System.out.println("testClientProperties() --");
+        NoteEvent ne = new NoteEvent(60, 1f, 64, 0);
+        assertNull(ne.getClientProperty("a"));
+        assertTrue(ne.getClientProperties().isEmpty());
+        ne.putClientProperty("a", 1);
+        ne.putClientProperty("b", 2);
+        NoteEvent ne2 = ne.clone();
+        NoteEvent ne3 = new NoteEvent(ne, 62);
+        ne2.putClientProperty("a", 3);
+        ne2.putClientProperty("b", null);
+        assertEquals(1, ne.getClientProperty("a"));
+        assertEquals(2, ne.getClientProperty("b"));
+        assertEquals(3, ne2.getClientProperty("a"));
+        assertNull(ne2.getClientProperty("b"));
+        assertEquals(Map.of("a", 1, "b", 2), ne.getClientProperties());
+        assertEquals(Map.of("a", 3), ne2.getClientProperties());
+        assertEquals(Map.of("a", 1, "b", 2), ne3.getClientProperties());
+
+
+        // Phrase clone keeps the client properties
+        Phrase p = new Phrase(0);
+        p.add(ne);
+        p.add(ne2);
+        Phrase pClone = p.clone();
+        assertEquals(p, pClone);
+        for (int i = 0; i < p.size(); i++)
+        {
+            assertEquals(p.get(i).getClientProperties(), pClone.get(i).getClientProperties());
+        }
+    }
+
+    @Test
+    public void testGetSymbolicDuration()
+    {
+        System.out.println("testGetSymbolicDuration() --");
+        for (SymbolicDuration sd : SymbolicDuration.values())
+        {
+            if (sd != SymbolicDuration.UNKNOWN)
+            {
+                assertEquals(sd, new NoteEvent(60, sd.getBeatDuration(), 64, 0).getSymbolicDuration());
+            }
+        }
+        assertEquals(SymbolicDuration.UNKNOWN, new NoteEvent(60, 0.26f, 64, 0).getSymbolicDuration());
+        assertEquals(SymbolicDuration.UNKNOWN, new NoteEvent(60, 10f, 64, 0).getSymbolicDuration());
+    }
+
 
 }
@@ -0,0 +1,202 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check the NoteIntervalIndex used by Phrase.getCrossingNotes() against a linear scan of the notes.
+ */
+public class NoteIntervalIndexTest
+{
+
+    /**
+     * Phrase sizes around the Phrase threshold (32) above which the index is used.
+     */
+    private static final int[] SIZES =
+    {
+        0, 1, 2, 3, 31, 32, 33, 63, 64, 65, 200, 1000
+    };
+    /**
+     * A duration so small that the note end position is equal to its start position as a float: like a zero-length note.
+     */
+    private static final float TINY_DURATION = 1e-9f;
+
+    public NoteIntervalIndexTest()
+    {
+    }
+
+    @Test
+    public void testForEachCrossing()
+    {
+        System.out.println("testForEachCrossing() --");
+        Random rnd = new Random(1);
+        for (int size : SIZES)
+        {
+            Phrase p = getRandomPhrase(rnd, size);
+            NoteIntervalIndex index = new NoteIntervalIndex(p, 0);
+            assertEquals(size, index.size());
+            for (float pos : getQueryPositions(rnd, p))
+            {
+                for (boolean strict : new boolean[]
+                {
+                    false, true
+                })
+                {
+                    List<NoteEvent> res = new ArrayList<>();
+                    index.forEachCrossing(pos, strict, i -> res.add(p.get(i)));
+                    assertEquals("size=" + size + " pos=" + pos + " strict=" + strict, getCrossingNotesLinear(p, pos, strict), res);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGetCrossingNotes()
+    {
+        System.out.println("testGetCrossingNotes() --");
+        Random rnd = new Random(2);
+        for (int size : SIZES)
+        {
+            Phrase p = getRandomPhrase(rnd, size);
+            for (float pos : getQueryPositions(rnd, p))
+            {
+                assertEquals("size=" + size + " pos=" + pos, getCrossingNotesLinear(p, pos, false), p.getCrossingNotes(pos, false));
+                assertEquals("size=" + size + " pos=" + pos, getCrossingNotesLinear(p, pos, true), p.getCrossingNotes(pos, true));
+            }
+        }
+    }
+
+    /**
+     * The index must be rebuilt after the phrase is modified.
+     */
+    @Test
+    public void testGetCrossingNotesAfterModification()
+    {
+        System.out.println("testGetCrossingNotesAfterModification() --");
+        Random rnd = new Random(3);
+        Phrase p = getRandomPhrase(rnd, 40);
+        p.getCrossingNotes(10, false);         // Build the index
+
+
+        NoteEvent ne = new NoteEvent(60, 20, 64, 5);
+        p.addOrdered(ne);
+        assertTrue(p.getCrossingNotes(10, false).contains(ne));
+        assertEquals(getCrossingNotesLinear(p, 10, false), p.getCrossingNotes(10, false));
+
+
+        p.remove(ne);
+        assertFalse(p.getCrossingNotes(10, false).contains(ne));
+        assertEquals(getCrossingNotesLinear(p, 10, false), p.getCrossingNotes(10, false));
+
+
+        // Back under the threshold: linear scan
+        while (p.size() > 20)
+        {
+            p.remove(p.size() - 1);
+        }
+        assertEquals(getCrossingNotesLinear(p, 3, true), p.getCrossingNotes(3, true));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * The Phrase.getCrossingNotes() algorithm used before the interval index.
+     */
+    private List<NoteEvent> getCrossingNotesLinear(Phrase p, float posInBeats, boolean strict)
+    {
+        List<NoteEvent> res = new ArrayList<>();
+        for (NoteEvent ne : p)
+        {
+            float pos = ne.getPositionInBeats();
+            if ((strict && pos >= posInBeats) || (!strict && pos > posInBeats))
+            {
+                break;
+            }
+            if ((strict && pos + ne.getDurationInBeats() > posInBeats) || (!strict && pos + ne.getDurationInBeats() >= posInBeats))
+            {
+                res.add(ne);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Notes on a quarter beat grid in [0;size/2[ beats, so that many notes share the same start position. Durations vary from
+     * TINY_DURATION to 16 beats, and some notes end exactly on grid positions.
+     */
+    private Phrase getRandomPhrase(Random rnd, int size)
+    {
+        Phrase p = new Phrase(0);
+        int nbPositions = Math.max(1, size * 2);
+        for (int i = 0; i < size; i++)
+        {
+            float pos = rnd.nextInt(nbPositions) * 0.25f;
+            float dur;
+            switch (rnd.nextInt(4))
+            {
+                case 0:
+                    dur = TINY_DURATION;
+                    break;
+                case 1:
+                    dur = (1 + rnd.nextInt(8)) * 0.25f;       // Ends on the grid
+                    break;
+                case 2:
+                    dur = 16 * rnd.nextFloat() + 0.01f;     // Long notes
+                    break;
+                default:
+                    dur = rnd.nextFloat() + 0.01f;
+            }
+            p.addOrdered(new NoteEvent(30 + rnd.nextInt(60), dur, 64, pos));
+        }
+        return p;
+    }
+
+    /**
+     * The note start and end positions, random positions, and positions before and after all the notes.
+     */
+    private List<Float> getQueryPositions(Random rnd, Phrase p)
+    {
+        List<Float> res = new ArrayList<>();
+        res.add(-1f);
+        res.add(0f);
+        float lastEnd = 0;
+        for (NoteEvent ne : p)
+        {
+            res.add(ne.getPositionInBeats());
+            res.add(ne.getPositionInBeats() + ne.getDurationInBeats());
+            lastEnd = Math.max(lastEnd, ne.getPositionInBeats() + ne.getDurationInBeats());
+        }
+        for (int i = 0; i < 50; i++)
+        {
+            res.add(rnd.nextFloat() * (lastEnd + 1));
+        }
+        res.add(lastEnd + 1);
+        return res;
+    }
+}
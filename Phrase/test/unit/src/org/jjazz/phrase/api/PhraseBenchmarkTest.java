@@ -0,0 +1,403 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.jjazz.harmony.api.Note;
+import org.jjazz.harmony.api.SymbolicDuration;
+import org.jjazz.util.api.FloatRange;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * The Phrase module benchmarks, skipped unless the "jjazz.benchmarks" system property is true.
+ * <p>
+ * Example: ant -Dtest.run.args=-Djjazz.benchmarks=true test
+ * <p>
+ * Timings (best of NB_RUNS runs) and approximate heap measures are printed, they are compared with the previous implementations:
+ * LinkedList-based Phrase storage, NoteEvent layout with a HashMap per note with client properties, Phrase string format. The
+ * functional checks are done by the unit tests PhraseStorageTest, NoteEventTest and PhraseBinaryCodecTest.
+ */
+public class PhraseBenchmarkTest
+{
+
+    public static final String PROP_BENCHMARKS = "jjazz.benchmarks";
+    private static final int NB_RUNS = 5;
+    private static final int NB_BARS = 1000;
+    private static final int[] DRUM_PITCHES =
+    {
+        36, 38, 42, 46
+    };
+    private static final int NB_RECORDED_NOTES = 20000;
+
+    public PhraseBenchmarkTest()
+    {
+    }
+
+    @BeforeClass
+    public static void setUpClass()
+    {
+        Assume.assumeTrue("Benchmarks skipped, set -D" + PROP_BENCHMARKS + "=true to run them", Boolean.getBoolean(PROP_BENCHMARKS));
+    }
+
+    // =================================================================================================
+    // Phrase storage
+    // =================================================================================================
+    @Test
+    public void benchmarkAddOrdered()
+    {
+        System.out.println("benchmarkAddOrdered() --");
+        List<NoteEvent> notes = PhraseStorageTest.getRandomNotes(1);
+
+        long tArray = Long.MAX_VALUE, tList = Long.MAX_VALUE;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            long t = System.nanoTime();
+            Phrase p = new Phrase(0);
+            for (NoteEvent ne : notes)
+            {
+                p.addOrdered(ne);
+            }
+            tArray = Math.min(tArray, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            LinkedList<NoteEvent> ll = new LinkedList<>();
+            for (NoteEvent ne : notes)
+            {
+                PhraseStorageTest.linkedListAddOrdered(ll, ne);
+            }
+            tList = Math.min(tList, System.nanoTime() - t);
+        }
+
+        printTimings("addOrdered x" + PhraseStorageTest.NB_NOTES, "array", tArray, "linkedList", tList);
+    }
+
+    @Test
+    public void benchmarkRandomAccess()
+    {
+        System.out.println("benchmarkRandomAccess() --");
+        Phrase p = PhraseStorageTest.getPhrase(2);
+        LinkedList<NoteEvent> ll = new LinkedList<>(p);
+        Random rnd = new Random(2);
+        int[] indexes = new int[PhraseStorageTest.NB_NOTES];
+        for (int i = 0; i < indexes.length; i++)
+        {
+            indexes[i] = rnd.nextInt(p.size());
+        }
+
+        long tArray = Long.MAX_VALUE, tList = Long.MAX_VALUE;
+        float sumArray = 0, sumList = 0;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            sumArray = 0;
+            long t = System.nanoTime();
+            for (int index : indexes)
+            {
+                sumArray += p.get(index).getPositionInBeats();
+            }
+            tArray = Math.min(tArray, System.nanoTime() - t);
+
+            sumList = 0;
+            t = System.nanoTime();
+            for (int index : indexes)
+            {
+                sumList += ll.get(index).getPositionInBeats();
+            }
+            tList = Math.min(tList, System.nanoTime() - t);
+        }
+
+        assertEquals(sumList, sumArray, 0);         // Also prevents dead code elimination
+        printTimings("get(i) x" + PhraseStorageTest.NB_NOTES, "array", tArray, "linkedList", tList);
+    }
+
+    @Test
+    public void benchmarkGetNotes()
+    {
+        System.out.println("benchmarkGetNotes() --");
+        Phrase p = PhraseStorageTest.getPhrase(3);
+        LinkedList<NoteEvent> ll = new LinkedList<>(p);
+        int nbQueries = 1000;
+
+        long tArray = Long.MAX_VALUE, tList = Long.MAX_VALUE;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            long t = System.nanoTime();
+            for (int i = 0; i < nbQueries; i++)
+            {
+                float from = i * PhraseStorageTest.NB_BEATS / nbQueries;
+                p.getNotes(ne -> true, new FloatRange(from, from + 4), true);
+            }
+            tArray = Math.min(tArray, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            for (int i = 0; i < nbQueries; i++)
+            {
+                float from = i * PhraseStorageTest.NB_BEATS / nbQueries;
+                PhraseStorageTest.linkedListGetNotes(ll, new FloatRange(from, from + 4));
+            }
+            tList = Math.min(tList, System.nanoTime() - t);
+        }
+
+        printTimings("getNotes x" + nbQueries, "array", tArray, "linkedList", tList);
+    }
+
+    @Test
+    public void benchmarkSlice()
+    {
+        System.out.println("benchmarkSlice() --");
+        Phrase p0 = PhraseStorageTest.getPhrase(4);
+        float startPos = PhraseStorageTest.NB_BEATS / 4;
+        float endPos = 3 * PhraseStorageTest.NB_BEATS / 4;
+
+        long tArray = Long.MAX_VALUE, tList = Long.MAX_VALUE;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            Phrase p = new Phrase(0);
+            p.addAll(p0);
+            long t = System.nanoTime();
+            p.slice(startPos, endPos, true, true);
+            tArray = Math.min(tArray, System.nanoTime() - t);
+
+            LinkedList<NoteEvent> ll = new LinkedList<>(p0);
+            t = System.nanoTime();
+            PhraseStorageTest.linkedListSlice(ll, startPos, endPos);
+            tList = Math.min(tList, System.nanoTime() - t);
+        }
+
+        printTimings("slice", "array", tArray, "linkedList", tList);
+    }
+
+    // =================================================================================================
+    // NoteEvent layout
+    // =================================================================================================
+    /**
+     * Heap used by a dense drums phrase where half of the notes have a PARENT_NOTE client property, like the notes produced when
+     * adapting source phrases to chord symbols.
+     */
+    @Test
+    public void benchmarkNoteEventMemory()
+    {
+        System.out.println("benchmarkNoteEventMemory() --");
+        long bytesCompact = measureHeap(() -> getDrumsPhrase());
+        long bytesLegacy = measureHeap(() -> getLegacyDrumsNotes());
+        int nbNotes = getDrumsPhrase().size();
+        System.out.println(String.format("  %d notes: compact=%d bytes/note  previous=%d bytes/note", nbNotes, bytesCompact / nbNotes,
+                bytesLegacy / nbNotes));
+    }
+
+    @Test
+    public void benchmarkNoteEventClone()
+    {
+        System.out.println("benchmarkNoteEventClone() --");
+        Phrase p = getDrumsPhrase();
+        List<LegacyNoteEvent> legacyNotes = getLegacyDrumsNotes();
+
+        long tCompact = Long.MAX_VALUE, tLegacy = Long.MAX_VALUE;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            long t = System.nanoTime();
+            p.clone();
+            tCompact = Math.min(tCompact, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            List<LegacyNoteEvent> legacyClone = new ArrayList<>(legacyNotes.size());
+            for (LegacyNoteEvent ne : legacyNotes)
+            {
+                legacyClone.add(ne.clone());
+            }
+            tLegacy = Math.min(tLegacy, System.nanoTime() - t);
+        }
+
+        printTimings("clone " + p.size() + " notes", "compact", tCompact, "previous", tLegacy);
+    }
+
+    // =================================================================================================
+    // Phrase binary codec
+    // =================================================================================================
+    @Test
+    public void benchmarkBinaryCodec() throws ParseException
+    {
+        System.out.println("benchmarkBinaryCodec() --");
+        Phrase p = PhraseBinaryCodecTest.getRecordedPhrase(NB_RECORDED_NOTES);
+
+        long tSaveString = Long.MAX_VALUE, tLoadString = Long.MAX_VALUE, tSaveBytes = Long.MAX_VALUE, tLoadBytes = Long.MAX_VALUE;
+        String str = null;
+        String base64 = null;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            long t = System.nanoTime();
+            str = Phrase.saveAsString(p);
+            tSaveString = Math.min(tSaveString, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            Phrase.loadAsString(str);
+            tLoadString = Math.min(tLoadString, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            base64 = Base64.getEncoder().encodeToString(Phrase.saveAsBytes(p));
+            tSaveBytes = Math.min(tSaveBytes, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            Phrase.loadAsBytes(Base64.getDecoder().decode(base64));
+            tLoadBytes = Math.min(tLoadBytes, System.nanoTime() - t);
+        }
+
+        System.out.println(String.format("  %d notes: string=%d chars save=%.1fms load=%.1fms", NB_RECORDED_NOTES, str.length(),
+                tSaveString / 1000000f, tLoadString / 1000000f));
+        System.out.println(String.format("  %d notes: base64 binary=%d chars save=%.1fms load=%.1fms", NB_RECORDED_NOTES,
+                base64.length(), tSaveBytes / 1000000f, tLoadBytes / 1000000f));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void printTimings(String operation, String name1, long t1, String name2, long t2)
+    {
+        System.out.println(String.format("  %s: %s=%.3fms %s=%.3fms", operation, name1, t1 / 1000000d, name2, t2 / 1000000d));
+    }
+
+    /**
+     * 16th notes on 4 drums, 4/4 bars.
+     */
+    private Phrase getDrumsPhrase()
+    {
+        Phrase p = new Phrase(9);
+        NoteEvent parent = new NoteEvent(36, 0.25f, 100, 0);
+        for (int bar = 0; bar < NB_BARS; bar++)
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                for (int pitch : DRUM_PITCHES)
+                {
+                    NoteEvent ne = new NoteEvent(pitch, 0.25f, 64 + i, bar * 4 + i * 0.25f);
+                    if (i % 2 == 1)
+                    {
+                        ne.putClientProperty(Phrase.PARENT_NOTE, parent);
+                    }
+                    p.add(ne);
+                }
+            }
+        }
+        return p;
+    }
+
+    private List<LegacyNoteEvent> getLegacyDrumsNotes()
+    {
+        List<LegacyNoteEvent> res = new ArrayList<>();
+        LegacyNoteEvent parent = new LegacyNoteEvent(36, 0.25f, 100, 0);
+        for (int bar = 0; bar < NB_BARS; bar++)
+        {
+            for (int i = 0; i < 16; i++)
+            {
+                for (int pitch : DRUM_PITCHES)
+                {
+                    LegacyNoteEvent ne = new LegacyNoteEvent(pitch, 0.25f, 64 + i, bar * 4 + i * 0.25f);
+                    if (i % 2 == 1)
+                    {
+                        ne.putClientProperty(Phrase.PARENT_NOTE, parent);
+                    }
+                    res.add(ne);
+                }
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return The approximate number of heap bytes retained by the object returned by supplier.
+     */
+    private long measureHeap(Supplier<?> supplier)
+    {
+        long before = getUsedHeap();
+        Object o = supplier.get();
+        long after = getUsedHeap();
+        assertNotNull(o);       // Keep o reachable until after the measure
+        return after - before;
+    }
+
+    private long getUsedHeap()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // =================================================================================================
+    // Private classes
+    // =================================================================================================
+    /**
+     * Same fields than the previous Note/NoteEvent layout.
+     */
+    private static class LegacyNoteEvent
+    {
+
+        private final int pitch;
+        private final SymbolicDuration symbolicDuration;
+        private final float beatDuration;
+        private final Note.Alteration alterationDisplay;
+        private final int velocity;
+        private final float position;
+        private Map<String, Object> clientProperties;
+
+        LegacyNoteEvent(int pitch, float duration, int velocity, float posInBeats)
+        {
+            this.pitch = pitch;
+            this.beatDuration = duration;
+            this.symbolicDuration = SymbolicDuration.getSymbolicDuration(duration);
+            this.alterationDisplay = Note.Alteration.FLAT;
+            this.velocity = velocity;
+            this.position = posInBeats;
+        }
+
+        void putClientProperty(String propertyName, Object value)
+        {
+            if (clientProperties == null)
+            {
+                clientProperties = new HashMap<>();
+            }
+            clientProperties.put(propertyName, value);
+        }
+
+        @Override
+        public LegacyNoteEvent clone()
+        {
+            LegacyNoteEvent ne = new LegacyNoteEvent(pitch, beatDuration, velocity, position);
+            ne.clientProperties = clientProperties == null ? null : new HashMap<>(clientProperties);
+            assert ne.symbolicDuration == symbolicDuration && ne.alterationDisplay == alterationDisplay;
+            return ne;
+        }
+    }
+}
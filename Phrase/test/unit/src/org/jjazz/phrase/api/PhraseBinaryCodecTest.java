@@ -0,0 +1,167 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Random;
+import org.jjazz.midi.api.MidiConst;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check the Phrase binary codec round-trip and the Phrase serialization.
+ * <p>
+ * The comparison with the string format timings is done by PhraseBenchmarkTest.
+ */
+public class PhraseBinaryCodecTest
+{
+
+    public PhraseBinaryCodecTest()
+    {
+    }
+
+    @Test
+    public void testRoundTrip() throws ParseException
+    {
+        System.out.println("testRoundTrip() --");
+        Random rnd = new Random(1);
+        for (int t = 0; t < 100; t++)
+        {
+            Phrase p = new Phrase(rnd.nextInt(16));
+            int n = rnd.nextInt(200);
+            for (int i = 0; i < n; i++)
+            {
+                float pos, dur;
+                if (rnd.nextBoolean())
+                {
+                    // Tick-based values
+                    pos = (float) rnd.nextInt(200 * MidiConst.PPQ_RESOLUTION) / MidiConst.PPQ_RESOLUTION;
+                    dur = (float) (1 + rnd.nextInt(4 * MidiConst.PPQ_RESOLUTION)) / MidiConst.PPQ_RESOLUTION;
+                } else
+                {
+                    // Any values
+                    pos = rnd.nextFloat() * 200;
+                    dur = 0.0001f + rnd.nextFloat() * 4;
+                }
+                p.addOrdered(new NoteEvent(rnd.nextInt(128), dur, rnd.nextInt(128), pos));
+            }
+            Phrase p2 = Phrase.loadAsBytes(Phrase.saveAsBytes(p));
+            assertEquals(p.getChannel(), p2.getChannel());
+            assertEquals(p, p2);
+        }
+    }
+
+    @Test
+    public void testInvalidData()
+    {
+        System.out.println("testInvalidData() --");
+        Phrase p = getRecordedPhrase(100);
+        byte[] data = Phrase.saveAsBytes(p);
+        for (byte[] invalid : new byte[][]
+        {
+            new byte[0], Arrays.copyOf(data, data.length - 1), Arrays.copyOf(data, data.length + 1)
+        })
+        {
+            try
+            {
+                Phrase.loadAsBytes(invalid);
+                fail("invalid data accepted, length=" + invalid.length);
+            } catch (ParseException ex)
+            {
+                // OK
+            }
+        }
+    }
+
+    /**
+     * The written proxy uses the text form, as expected by previous JJazzLab versions.
+     */
+    @Test
+    public void testSerializationProxyV1() throws Exception
+    {
+        System.out.println("testSerializationProxyV1() --");
+        Phrase p = getRecordedPhrase(1000);
+        Object proxy = getSerializationProxy(p);
+        String saveString = (String) getProxyField(proxy, "spSaveString").get(proxy);
+        assertNotNull(saveString);
+        assertEquals(p, Phrase.loadAsString(saveString));
+        assertEquals(p, serializeAndRead(p));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private Object serializeAndRead(Object o) throws IOException, ClassNotFoundException
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bos))
+        {
+            oos.writeObject(o);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())))
+        {
+            return ois.readObject();
+        }
+    }
+
+    private Object getSerializationProxy(Phrase p) throws ReflectiveOperationException
+    {
+        Method m = Phrase.class.getDeclaredMethod("writeReplace");
+        m.setAccessible(true);
+        return m.invoke(p);
+    }
+
+    private Field getProxyField(Object proxy, String name) throws NoSuchFieldException
+    {
+        Field f = proxy.getClass().getDeclaredField(name);
+        f.setAccessible(true);
+        return f;
+    }
+
+    /**
+     * A phrase like the ones obtained from a Midi recording: tick-based positions and durations.
+     */
+    static Phrase getRecordedPhrase(int nbNotes)
+    {
+        Random rnd = new Random(2);
+        Phrase p = new Phrase(0);
+        long tick = 0;
+        for (int i = 0; i < nbNotes; i++)
+        {
+            tick += rnd.nextInt(MidiConst.PPQ_RESOLUTION / 2);
+            long durTicks = 10 + rnd.nextInt(2 * MidiConst.PPQ_RESOLUTION);
+            float pos = (float) tick / MidiConst.PPQ_RESOLUTION;
+            float dur = (float) durTicks / MidiConst.PPQ_RESOLUTION;
+            p.addOrdered(new NoteEvent(36 + rnd.nextInt(60), dur, 20 + rnd.nextInt(100), pos));
+        }
+        return p;
+    }
+}
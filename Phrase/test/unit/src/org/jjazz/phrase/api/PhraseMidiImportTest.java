@@ -0,0 +1,163 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compare the streaming Midi file import with the Sequence-based import on a large multi-track file.
+ */
+public class PhraseMidiImportTest
+{
+
+    private static final int PPQ = 960;
+    private static final int NB_TRACKS = 8;
+    private static final int NB_NOTES_PER_TRACK = 25000;
+    private static final int NB_RUNS = 3;
+
+    public PhraseMidiImportTest()
+    {
+    }
+
+    @Test
+    public void testStreamingImport() throws IOException, InvalidMidiDataException
+    {
+        System.out.println("testStreamingImport() --");
+        byte[] midiFile = getMidiFile();
+
+        long tSequence = Long.MAX_VALUE, tStreaming = Long.MAX_VALUE;
+        List<Phrase> phrasesSequence = null, phrasesStreaming = null;
+        for (int run = 0; run < NB_RUNS; run++)
+        {
+            long t = System.nanoTime();
+            Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(midiFile));
+            phrasesSequence = Phrase.getPhrases(sequence.getResolution(), sequence.getTracks());
+            tSequence = Math.min(tSequence, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            phrasesStreaming = Phrase.getPhrases(new ByteArrayInputStream(midiFile));
+            tStreaming = Math.min(tStreaming, System.nanoTime() - t);
+        }
+
+        phrasesSequence.sort((p1, p2) -> Integer.compare(p1.getChannel(), p2.getChannel()));
+        assertEquals(phrasesSequence.size(), phrasesStreaming.size());
+        for (int i = 0; i < phrasesSequence.size(); i++)
+        {
+            assertEquals(phrasesSequence.get(i).getChannel(), phrasesStreaming.get(i).getChannel());
+            assertEquals(phrasesSequence.get(i), phrasesStreaming.get(i));
+        }
+        System.out.println(String.format("  %d notes: sequence=%.1fms streaming=%.1fms", NB_TRACKS * NB_NOTES_PER_TRACK, tSequence / 1000000f,
+                tStreaming / 1000000f));
+    }
+
+    @Test
+    public void testChannelSelection() throws IOException, InvalidMidiDataException
+    {
+        System.out.println("testChannelSelection() --");
+        List<Phrase> phrases = Phrase.getPhrases(new ByteArrayInputStream(getMidiFile()), 3);
+        assertEquals(1, phrases.size());
+        assertEquals(3, phrases.get(0).getChannel());
+    }
+
+    @Test
+    public void testOverlappingNotesPPQ480() throws IOException, InvalidMidiDataException
+    {
+        System.out.println("testOverlappingNotesPPQ480() --");
+        Sequence sequence = new Sequence(Sequence.PPQ, 480);
+        Track track = sequence.createTrack();
+        addNote(track, 0, 60, 100, 0, 480);           // Overlapped by the next NoteON on the same pitch
+        addNote(track, 0, 60, 90, 240, 720);
+        addNote(track, 0, 62, 80, 960, 960);          // Zero-length note
+        addNote(track, 0, 64, 70, 1001, 1333);        // Ticks not multiple of the PPQ ratio
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, 0, 65, 60), 1440));      // No NoteOFF in this track
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, 5, 10, 0), 0));   // Channel used without notes
+        Track track2 = sequence.createTrack();
+        track2.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, 0, 65, 0), 1920));     // NoteOFF of a NoteON in another track
+        addNote(track2, 0, 60, 50, 1920, 2400);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MidiSystem.write(sequence, 1, bos);
+        byte[] midiFile = bos.toByteArray();
+
+
+        List<Phrase> phrasesSequence = Phrase.getPhrases(sequence.getResolution(), MidiSystem.getSequence(new ByteArrayInputStream(midiFile)).getTracks());
+        phrasesSequence.sort((p1, p2) -> Integer.compare(p1.getChannel(), p2.getChannel()));
+        List<Phrase> phrasesStreaming = Phrase.getPhrases(new ByteArrayInputStream(midiFile));
+        assertEquals(phrasesSequence, phrasesStreaming);
+
+
+        assertEquals(2, phrasesStreaming.size());
+        assertTrue(phrasesStreaming.get(1).isEmpty());
+        Phrase p = phrasesStreaming.get(0);
+        assertEquals(3, p.size());
+        assertEquals(new NoteEvent(60, 0.5f, 90, 0.5f), p.get(0));
+        assertEquals(new NoteEvent(64, 332 / 480f, 70, 1001 / 480f), p.get(1));
+        assertEquals(new NoteEvent(60, 1f, 50, 4f), p.get(2));
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void addNote(Track track, int channel, int pitch, int velocity, long tickOn, long tickOff) throws InvalidMidiDataException
+    {
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, velocity), tickOn));
+        track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_OFF, channel, pitch, 0), tickOff));
+    }
+
+    /**
+     * A multi-track file, track i uses channel i, NoteOFF sent as NoteON with velocity 0 (running status).
+     */
+    private byte[] getMidiFile() throws InvalidMidiDataException, IOException
+    {
+        Random rnd = new Random(1);
+        Sequence sequence = new Sequence(Sequence.PPQ, PPQ);
+        for (int channel = 0; channel < NB_TRACKS; channel++)
+        {
+            Track track = sequence.createTrack();
+            long tick = 0;
+            for (int i = 0; i < NB_NOTES_PER_TRACK; i++)
+            {
+                tick += 1 + rnd.nextInt(PPQ);
+                int pitch = 30 + rnd.nextInt(60);
+                long tickOff = tick + 1 + rnd.nextInt(PPQ / 2);
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, 1 + rnd.nextInt(126)), tick));
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, channel, pitch, 0), tickOff));
+                tick = tickOff;     // No overlapping notes
+            }
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MidiSystem.write(sequence, 1, bos);
+        return bos.toByteArray();
+    }
+}
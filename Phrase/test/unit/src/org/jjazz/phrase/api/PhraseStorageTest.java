@@ -0,0 +1,178 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrase.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import org.jjazz.util.api.FloatRange;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check the array-backed Phrase against the previous LinkedList-based storage algorithms on 10k-note phrases.
+ * <p>
+ * The LinkedList reference methods are also used by PhraseBenchmarkTest.
+ */
+public class PhraseStorageTest
+{
+
+    static final int NB_NOTES = 10000;
+    static final float NB_BEATS = 4000;
+
+    public PhraseStorageTest()
+    {
+    }
+
+    @Test
+    public void testAddOrdered()
+    {
+        System.out.println("testAddOrdered() --");
+        Phrase p = new Phrase(0);
+        LinkedList<NoteEvent> ll = new LinkedList<>();
+        for (NoteEvent ne : getRandomNotes(1))
+        {
+            p.addOrdered(ne);
+            linkedListAddOrdered(ll, ne);
+        }
+        assertEquals(ll, p);
+    }
+
+    @Test
+    public void testGetNotes()
+    {
+        System.out.println("testGetNotes() --");
+        Phrase p = getPhrase(3);
+        LinkedList<NoteEvent> ll = new LinkedList<>(p);
+        int nbQueries = 1000;
+        for (int i = 0; i < nbQueries; i++)
+        {
+            float from = i * NB_BEATS / nbQueries;
+            FloatRange range = new FloatRange(from, from + 4);
+            assertEquals(range.toString(), linkedListGetNotes(ll, range), p.getNotes(ne -> true, range, true));
+        }
+    }
+
+    @Test
+    public void testSlice()
+    {
+        System.out.println("testSlice() --");
+        Phrase p = getPhrase(4);
+        LinkedList<NoteEvent> ll = new LinkedList<>(p);
+        float startPos = NB_BEATS / 4;
+        float endPos = 3 * NB_BEATS / 4;
+        p.slice(startPos, endPos, true, true);
+        linkedListSlice(ll, startPos, endPos);
+        assertEquals(ll, p);
+    }
+
+    // =================================================================================================
+    // Package methods
+    // =================================================================================================
+    static List<NoteEvent> getRandomNotes(long seed)
+    {
+        Random rnd = new Random(seed);
+        List<NoteEvent> res = new ArrayList<>();
+        for (int i = 0; i < NB_NOTES; i++)
+        {
+            int pitch = 40 + rnd.nextInt(40);
+            float pos = Math.round(rnd.nextFloat() * NB_BEATS * 4) / 4f;
+            float dur = 0.25f + rnd.nextInt(8) / 4f;
+            res.add(new NoteEvent(pitch, dur, 64, pos));
+        }
+        return res;
+    }
+
+    static Phrase getPhrase(long seed)
+    {
+        Phrase p = new Phrase(0);
+        getRandomNotes(seed).forEach(ne -> p.addOrdered(ne));
+        return p;
+    }
+
+    /**
+     * Previous Phrase.addOrdered() implementation.
+     */
+    static void linkedListAddOrdered(LinkedList<NoteEvent> ll, NoteEvent mne)
+    {
+        int res = Collections.binarySearch(ll, mne);
+        int index = res >= 0 ? res : -(res + 1);
+        ll.add(index, mne);
+    }
+
+    /**
+     * Previous Phrase.getNotes() implementation.
+     */
+    static List<NoteEvent> linkedListGetNotes(LinkedList<NoteEvent> ll, FloatRange range)
+    {
+        var res = new ArrayList<NoteEvent>();
+        for (NoteEvent ne : ll)
+        {
+            if (range.contains(ne.getPositionInBeats(), true))
+            {
+                res.add(ne);
+            }
+            if (ne.getPositionInBeats() > range.to)
+            {
+                break;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Previous Phrase.slice(startPos, endPos, true, true) implementation.
+     */
+    static void linkedListSlice(LinkedList<NoteEvent> ll, float startPos, float endPos)
+    {
+        ArrayList<NoteEvent> toBeAdded = new ArrayList<>();
+        ListIterator<NoteEvent> it = ll.listIterator();
+        while (it.hasNext())
+        {
+            NoteEvent ne = it.next();
+            float nePosFrom = ne.getPositionInBeats();
+            float nePosTo = nePosFrom + ne.getDurationInBeats();
+            if (nePosFrom < startPos)
+            {
+                it.remove();
+                if (nePosTo > startPos)
+                {
+                    toBeAdded.add(new NoteEvent(ne, Math.min(nePosTo, endPos) - startPos, startPos));
+                }
+            } else if (nePosFrom < endPos)
+            {
+                if (nePosTo > endPos)
+                {
+                    it.set(new NoteEvent(ne, endPos - nePosFrom, nePosFrom));
+                }
+            } else
+            {
+                it.remove();
+            }
+        }
+        toBeAdded.forEach(ne -> linkedListAddOrdered(ll, ne));
+    }
+}
@@ -139,6 +139,12 @@ public class AddDrumsMidiPhraseTransform implements PhraseTransform
         return PhraseTransforms.getRhythmVoice(inPhrase, context).isDrums() ? 100 : 0;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
     public int getVelocityOffset()
     {
         return properties.getPropertyAsInteger(PROP_VELOCITY_OFFSET);
@@ -132,6 +132,12 @@ public class DrumsAccentsTransform implements PhraseTransform
         return PhraseTransforms.getRhythmVoice(inPhrase, context).isDrums() ? 100 : 0;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
     public int getAccentVelocityOffset()
     {
         return properties.getPropertyAsInteger(PROP_VELOCITY_OFFSET);
@@ -109,6 +109,12 @@ public class HiHatToRideTransform implements PhraseTransform
         return PhraseTransforms.getRhythmVoice(inPhrase, context).isDrums() ? 100 : 0;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
 
     @Override
     public int hashCode()
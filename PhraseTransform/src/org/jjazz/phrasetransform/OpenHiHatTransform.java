@@ -98,6 +98,12 @@ public class OpenHiHatTransform implements PhraseTransform
         return PhraseTransforms.getRhythmVoice(inPhrase, context).isDrums() ? 100 : 0;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
 
     @Override
     public int hashCode()
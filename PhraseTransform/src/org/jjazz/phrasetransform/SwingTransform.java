@@ -151,6 +151,12 @@ public class SwingTransform implements PhraseTransform
         return 100;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
     @Override
     public int hashCode()
     {
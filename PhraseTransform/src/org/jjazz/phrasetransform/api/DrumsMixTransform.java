@@ -196,6 +196,12 @@ public class DrumsMixTransform implements PhraseTransform
         return PhraseTransforms.getRhythmVoice(inPhrase, context).isDrums() ? 100 : 0;
     }
 
+    @Override
+    public boolean isConcurrentFitScoreSupported()
+    {
+        return true;
+    }
+
     /**
      * Get a string representing the property values in a user-oriented way.
      *
@@ -0,0 +1,75 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrasetransform.api;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared executor used by PhraseTransformManager to compute fit scores concurrently.
+ * <p>
+ * Created upon first use, with at most 4 daemon threads which are stopped when idle.
+ */
+class FitScoreExecutor
+{
+
+    static final int NB_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private FitScoreExecutor()
+    {
+    }
+
+    /**
+     * @return The shared executor
+     */
+    static ExecutorService getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+    // =================================================================================================
+    // Private classes
+    // =================================================================================================
+    private static class Holder
+    {
+
+        private static final ExecutorService INSTANCE = createExecutor();
+
+        private static ExecutorService createExecutor()
+        {
+            AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor res = new ThreadPoolExecutor(NB_THREADS, NB_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r ->
+            {
+                Thread t = new Thread(r, "PhraseTransform-FitScore-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            res.allowCoreThreadTimeOut(true);
+            return res;
+        }
+    }
+}
@@ -71,6 +71,8 @@ public interface PhraseTransform extends Comparable<PhraseTransform>
      * Return a [0-100] value which indicates how much this transform is adapted for the specified parameters.
      * <p>
      * A PhraseTransform which can not work without a context should return 0 if context is null.
+     * <p>
+     * This method is called from a different thread if isConcurrentFitScoreSupported() returns true.
      *
      * @param inPhrase
      * @param context Can be null. An optional context to provide additional information about inPhrase.
@@ -79,6 +81,24 @@ public interface PhraseTransform extends Comparable<PhraseTransform>
      */
     public int getFitScore(SizedPhrase inPhrase, SongPartContext context);
 
+    /**
+     * Tell the framework if getFitScore() can be called while the getFitScore() methods of other PhraseTransforms are running in
+     * other threads.
+     * <p>
+     * If true, PhraseTransformManager.getRecommendedPhraseTransforms() may call getFitScore() in a dedicated thread, with the same
+     * inPhrase and context than the other PhraseTransforms. The implementation must not modify inPhrase or context, and must not
+     * share unsynchronized mutable state with other PhraseTransform instances.
+     * <p>
+     * The built-in implementations return true: their getFitScore() only read the phrase channel RhythmVoice from the context
+     * MidiMix, or return a constant.
+     *
+     * @return False by default
+     */
+    default public boolean isConcurrentFitScoreSupported()
+    {
+        return false;
+    }
+
 
     /**
      * Get a copy of this PhraseTransform instance.
@@ -0,0 +1,272 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrasetransform.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Section;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.SizedPhrase;
+import org.jjazz.songcontext.api.SongPartContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.util.api.IntRange;
+
+/**
+ * A cache of results computed by PhraseTransforms on a phrase.
+ * <p>
+ * An entry is identified by the PhraseTransforms used (unique ids and property values), the input phrase (channel, beat range,
+ * time signature and a fingerprint of the notes pitch/velocity/duration/position) and the parts of the context which can impact a transform: the SongPart rhythm and size (and start
+ * offset if context starts in the middle of the SongPart), the chord symbols of the SongPart relative to its start, and the
+ * RhythmVoice/Instrument used for the phrase channel.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @param <V> The type of the cached values
+ */
+class PhraseTransformCache<V>
+{
+
+    public static final int DEFAULT_MAX_SIZE = 200;
+    /**
+     * The results of PhraseTransformChain.transform().
+     */
+    static final PhraseTransformCache<SizedPhrase> CHAIN_RESULTS = new PhraseTransformCache<>(DEFAULT_MAX_SIZE, sp -> new SizedPhrase(sp));
+    /**
+     * The PhraseTransformManager.getRecommendedPhraseTransforms() rankings: indexes of the ranked PhraseTransforms.
+     */
+    static final PhraseTransformCache<int[]> RANKINGS = new PhraseTransformCache<>(DEFAULT_MAX_SIZE, indexes -> indexes.clone());
+    private final int maxSize;
+    private final UnaryOperator<V> copier;
+    private final LinkedHashMap<Key, V> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * @param maxSize The max. number of entries. When reached the least recently used entries are removed.
+     * @param copier Used to copy the values stored in or returned by the cache
+     */
+    PhraseTransformCache(int maxSize, UnaryOperator<V> copier)
+    {
+        if (maxSize < 1 || copier == null)
+        {
+            throw new IllegalArgumentException("maxSize=" + maxSize + " copier=" + copier);   //NOI18N
+        }
+        this.maxSize = maxSize;
+        this.copier = copier;
+        cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest)
+            {
+                return size() > PhraseTransformCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached value.
+     *
+     * @param key
+     * @return Null if key is not in the cache. The returned value is a new copy.
+     */
+    V get(Key key)
+    {
+        V v;
+        synchronized (cache)
+        {
+            v = cache.get(key);
+        }
+        if (v == null)
+        {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return copier.apply(v);
+    }
+
+    /**
+     * Store a value.
+     *
+     * @param key
+     * @param value A copy is stored
+     */
+    void put(Key key, V value)
+    {
+        V v = copier.apply(value);
+        synchronized (cache)
+        {
+            cache.put(key, v);
+        }
+    }
+
+    void clear()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        int size;
+        synchronized (cache)
+        {
+            size = cache.size();
+        }
+        return "PhraseTransformCache[size=" + size + "/" + maxSize + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    static class Key
+    {
+
+        private final Object transformsContent;
+        private final int channel;
+        private final float beatFrom;
+        private final float beatTo;
+        private final TimeSignature timeSignature;
+        private final long[] notesFingerprint;
+        private final List<Object> contextContent;
+        private final int hashCode;
+
+        /**
+         *
+         * @param transformsContent Identify the PhraseTransforms used and how they are used. Must be immutable and implement
+         * equals/hashCode.
+         * @param inPhrase Only a fingerprint of the notes is kept, inPhrase is not copied
+         * @param context Can be null
+         */
+        Key(Object transformsContent, SizedPhrase inPhrase, SongPartContext context)
+        {
+            this.transformsContent = transformsContent;
+            this.channel = inPhrase.getChannel();
+            this.beatFrom = inPhrase.getBeatRange().from;
+            this.beatTo = inPhrase.getBeatRange().to;
+            this.timeSignature = inPhrase.getTimeSignature();
+            notesFingerprint = new long[inPhrase.size() * 2];
+            int i = 0;
+            for (NoteEvent ne : inPhrase)
+            {
+                notesFingerprint[i++] = ((long) ne.getPitch() << 40) | ((long) ne.getVelocity() << 32)
+                        | (Float.floatToIntBits(ne.getDurationInBeats()) & 0xFFFFFFFFL);
+                notesFingerprint[i++] = Float.floatToIntBits(ne.getPositionInBeats());
+            }
+            this.contextContent = getContextContent(channel, context);
+            this.hashCode = Objects.hash(transformsContent, channel, beatFrom, beatTo, timeSignature, Arrays.hashCode(notesFingerprint),
+                    contextContent);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && transformsContent.equals(other.transformsContent)
+                    && channel == other.channel
+                    && beatFrom == other.beatFrom
+                    && beatTo == other.beatTo
+                    && timeSignature == other.timeSignature
+                    && Arrays.equals(notesFingerprint, other.notesFingerprint)
+                    && contextContent.equals(other.contextContent);
+        }
+
+        private static List<Object> getContextContent(int channel, SongPartContext context)
+        {
+            List<Object> res = new ArrayList<>();
+            if (context == null)
+            {
+                return res;
+            }
+
+            SongPart spt = context.getSongPart();
+            res.add(spt.getRhythm());
+
+
+            // Size and start offset, context might start or end in the middle of the song part
+            IntRange barRange = context.getBarRange();
+            res.add(barRange.from - spt.getStartBarIndex());
+            res.add(barRange.size());
+
+
+            // Phrase instrument
+            MidiMix mix = context.getMidiMix();
+            res.add(mix.getRhythmVoice(channel));
+            var insMix = mix.getInstrumentMixFromChannel(channel);
+            res.add(insMix == null ? null : insMix.getInstrument());
+
+
+            // Chord symbols relative to the section start
+            CLI_Section section = spt.getParentSection();
+            int sectionBar = section.getPosition().getBar();
+            for (CLI_ChordSymbol cliCs : context.getSong().getChordLeadSheet().getItems(section, CLI_ChordSymbol.class))
+            {
+                Position pos = cliCs.getPosition();
+                res.add(new Position(pos.getBar() - sectionBar, pos.getBeat()));
+                res.add(cliCs.getData());
+            }
+
+            return res;
+        }
+    }
+}
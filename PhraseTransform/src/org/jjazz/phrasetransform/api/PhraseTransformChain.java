@@ -72,14 +72,52 @@ public class PhraseTransformChain extends ArrayList<PhraseTransform>
 
     /**
      * Run all the transforms in the chain.
-     *
+     * <p>
+     * Results are cached: if the same chain (same PhraseTransforms with the same property values) was already run on the same
+     * input phrase with an equivalent context, a copy of the previous result is returned.
      *
      * @param inPhrase
      * @param context
      * @return
      * @throws IllegalStateException If a transformed phrase has a different beat range than inPhrase.
+     * @see #clearCache()
      */
     public SizedPhrase transform(SizedPhrase inPhrase, SongPartContext context)
+    {
+        if (isEmpty())
+        {
+            return new SizedPhrase(inPhrase);
+        }
+
+        var key = new PhraseTransformCache.Key(saveAsString(this), inPhrase, context);
+        SizedPhrase res = PhraseTransformCache.CHAIN_RESULTS.get(key);
+        if (res == null)
+        {
+            res = transformNoCache(inPhrase, context);
+            PhraseTransformCache.CHAIN_RESULTS.put(key, res);
+        }
+        return res;
+    }
+
+    /**
+     * Remove all the cached results of the transform() method.
+     * <p>
+     * Should be called when a PhraseTransform changes its behavior without a property value change.
+     */
+    static public void clearCache()
+    {
+        PhraseTransformCache.CHAIN_RESULTS.clear();
+    }
+
+    /**
+     * Run all the transforms in the chain without using the result cache.
+     *
+     * @param inPhrase
+     * @param context
+     * @return
+     * @throws IllegalStateException If a transformed phrase has a different beat range than inPhrase.
+     */
+    public SizedPhrase transformNoCache(SizedPhrase inPhrase, SongPartContext context)
     {
         SizedPhrase sp = new SizedPhrase(inPhrase);
         for (var pt : this)
@@ -22,9 +22,14 @@
  */
 package org.jjazz.phrasetransform.api;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jjazz.phrase.api.SizedPhrase;
 import org.jjazz.phrasetransform.PhraseTransformManagerImpl;
 import org.jjazz.songcontext.api.SongPartContext;
@@ -101,39 +106,127 @@ public interface PhraseTransformManager
 
     /**
      * Get the available PhraseTransforms sorted by "fit score" for the specified parameters.
+     * <p>
+     * The fit scores of the PhraseTransforms which support it are computed concurrently by a few shared threads, see
+     * PhraseTransform.isConcurrentFitScoreSupported(). The other fit scores are computed first in the calling thread. The ranking
+     * is cached: it is computed only once for a given set of available PhraseTransforms,
+     * input phrase and context.
      *
      * @param inPhrase
      * @param context
      * @param exclude0score if true PhraseTransforms with a fit score==0 are ignored.
      * @return First PhraseTransform is the most adapted to the specified parameters (highest fit score, last PhraseTransform is
      * the less adapted.
-     * @see PhraseTransform#getFitScore(org.jjazz.phrase.api.SizedPhrase, org.jjazz.midi.api.Instrument)
+     * @see PhraseTransform#getFitScore(org.jjazz.phrase.api.SizedPhrase, org.jjazz.songcontext.api.SongPartContext)
      */
     default public List<PhraseTransform> getRecommendedPhraseTransforms(SizedPhrase inPhrase, SongPartContext context, boolean exclude0score)
     {
         var pts = getPhraseTransforms();
 
 
-        // Compute score for all transforms
-        HashMap<PhraseTransform, Integer> mapPtScore = new HashMap<>();
-        for (var it = pts.iterator(); it.hasNext();)
+        // The ranking depends on the available transforms and their settings
+        List<Object> transformsContent = new ArrayList<>();
+        transformsContent.add(exclude0score);
+        pts.forEach(pt -> transformsContent.add(PhraseTransform.saveAsString(pt)));
+        var key = new PhraseTransformCache.Key(Collections.unmodifiableList(transformsContent), inPhrase, context);
+
+
+        int[] ranking = PhraseTransformCache.RANKINGS.get(key);
+        if (ranking == null)
+        {
+            // Compute score for all transforms
+            int[] scores = computeFitScores(pts, inPhrase, context);
+
+
+            // Sort, stable for equal scores
+            ranking = IntStream.range(0, pts.size())
+                    .filter(i -> !pts.get(i).getInfo().getUniqueId().contains(PhraseTransform.HIDDEN_ID_TOKEN) && !(scores[i] == 0 && exclude0score))
+                    .boxed()
+                    .sorted((i1, i2) -> Integer.compare(scores[i2], scores[i1]))
+                    .mapToInt(i -> i)
+                    .toArray();
+            PhraseTransformCache.RANKINGS.put(key, ranking);
+        }
+
+
+        List<PhraseTransform> res = new ArrayList<>(ranking.length);
+        for (int i : ranking)
+        {
+            res.add(pts.get(i));
+        }
+        return res;
+    }
+
+    /**
+     * Compute the fit scores of the PhraseTransforms.
+     * <p>
+     * The PhraseTransforms which do not support concurrent calls are processed first in the calling thread, then the other ones
+     * are processed by the shared FitScoreExecutor.
+     *
+     * @param pts
+     * @param inPhrase
+     * @param context
+     * @return The fit score of each PhraseTransform, in the pts order.
+     */
+    private static int[] computeFitScores(List<PhraseTransform> pts, SizedPhrase inPhrase, SongPartContext context)
+    {
+        int[] scores = new int[pts.size()];
+        List<Integer> concurrentIndexes = new ArrayList<>();
+        for (int i = 0; i < scores.length; i++)
         {
-            var pt = it.next();
-            int score = pt.getFitScore(inPhrase, context);
-            if (pt.getInfo().getUniqueId().contains(PhraseTransform.HIDDEN_ID_TOKEN) || (score == 0 && exclude0score))
+            PhraseTransform pt = pts.get(i);
+            if (pt.isConcurrentFitScoreSupported())
             {
-                it.remove();
+                concurrentIndexes.add(i);
             } else
             {
-                mapPtScore.put(pt, score);
+                scores[i] = pt.getFitScore(inPhrase, context);
+            }
+        }
+        if (concurrentIndexes.size() <= 1 || FitScoreExecutor.NB_THREADS <= 1)
+        {
+            for (int i : concurrentIndexes)
+            {
+                scores[i] = pts.get(i).getFitScore(inPhrase, context);
             }
+            return scores;
         }
 
 
-        // Sort
-        pts.sort((pt1, pt2) -> Integer.compare(mapPtScore.get(pt2), mapPtScore.get(pt1)));
-        return pts;
+        ExecutorService executor = FitScoreExecutor.getInstance();
+        List<Future<Integer>> futures = new ArrayList<>();
+        try
+        {
+            for (int i : concurrentIndexes)
+            {
+                PhraseTransform pt = pts.get(i);
+                futures.add(executor.submit(() -> pt.getFitScore(inPhrase, context)));
+            }
+            for (int k = 0; k < futures.size(); k++)
+            {
+                scores[concurrentIndexes.get(k)] = futures.get(k).get();
+            }
+        } catch (ExecutionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);   //NOI18N
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Fit score computation was interrupted", ex);   //NOI18N
+        } finally
+        {
+            // No effect on completed tasks
+            futures.forEach(f -> f.cancel(true));
+        }
+        return scores;
     }
 
-
 }
@@ -0,0 +1,373 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.phrasetransform.api;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.midi.MidiUnavailableException;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheet;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheetFactory;
+import org.jjazz.leadsheet.chordleadsheet.api.UnsupportedEditException;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Factory;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.midimix.api.MidiMixManager;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.SizedPhrase;
+import org.jjazz.rhythm.stubs.api.DummyRhythm;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongFactory;
+import org.jjazz.songcontext.api.SongPartContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.songstructure.api.SongStructure;
+import org.jjazz.util.api.FloatRange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test the PhraseTransformChain.transform() results cache.
+ */
+public class PhraseTransformCacheTest
+{
+
+    private static final int CHANNEL = 11;      // DummyRhythm bass channel
+    private Song song;
+
+    @Before
+    public void setUp()
+    {
+        PhraseTransformChain.clearCache();
+        PhraseTransformCache.RANKINGS.clear();
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (song != null)
+        {
+            song.close(false);
+            song = null;
+        }
+    }
+
+    @Test
+    public void testChainCache()
+    {
+        System.out.println("testChainCache() --");
+        var cache = PhraseTransformCache.CHAIN_RESULTS;
+        SizedPhrase inPhrase = createPhrase();
+        var chain = new PhraseTransformChain(List.of(new TestTransform(2)));
+
+
+        SizedPhrase res = chain.transform(inPhrase, null);
+        assertEquals(chain.transformNoCache(inPhrase, null), res);
+        assertEquals(1, cache.getMissCount());
+
+
+        // Same chain on an equal phrase: hit, a new copy is returned
+        res.add(new NoteEvent(70, 1f, 64, 0f));
+        SizedPhrase res2 = chain.transform(new SizedPhrase(inPhrase), null);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(chain.transformNoCache(inPhrase, null), res2);
+        assertNotSame(res, res2);
+
+
+        // Different note position
+        SizedPhrase inPhrase2 = new SizedPhrase(inPhrase);
+        inPhrase2.set(0, new NoteEvent(inPhrase2.get(0), 0.4f, 0.25f));
+        assertEquals(chain.transformNoCache(inPhrase2, null), chain.transform(inPhrase2, null));
+        assertEquals(2, cache.getMissCount());
+
+
+        // Different transform property value
+        var chain2 = new PhraseTransformChain(List.of(new TestTransform(3)));
+        assertEquals(chain2.transformNoCache(inPhrase, null), chain2.transform(inPhrase, null));
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * SongParts 1 and 2 have the same chord symbols, SongPart 3 has different chord symbols.
+     */
+    @Test
+    public void testChainCacheContext() throws UnsupportedEditException, ParseException, MidiUnavailableException
+    {
+        System.out.println("testChainCacheContext() --");
+        var cache = PhraseTransformCache.CHAIN_RESULTS;
+        song = createSong();
+        MidiMix mix = MidiMixManager.getInstance().createMix(song);
+        List<SongPart> spts = song.getSongStructure().getSongParts();
+        SizedPhrase inPhrase = createPhrase();
+        var chain = new PhraseTransformChain(List.of(new TestTransform(0)));
+
+
+        var context0 = new SongPartContext(song, mix, spts.get(2));
+        assertEquals(chain.transformNoCache(inPhrase, context0), chain.transform(inPhrase, context0));
+        assertEquals(1, cache.getMissCount());
+
+
+        // Equivalent context
+        var context1 = new SongPartContext(song, mix, spts.get(2));
+        assertEquals(chain.transformNoCache(inPhrase, context1), chain.transform(inPhrase, context1));
+        assertEquals(1, cache.getHitCount());
+
+
+        // Different chord symbols
+        var context2 = new SongPartContext(song, mix, spts.get(3));
+        SizedPhrase res2 = chain.transform(inPhrase, context2);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(chain.transformNoCache(inPhrase, context2), res2);
+        assertNotEquals(chain.transformNoCache(inPhrase, context0), res2);
+    }
+
+    @Test
+    public void testRankingCache()
+    {
+        System.out.println("testRankingCache() --");
+        var cache = PhraseTransformCache.RANKINGS;
+        SizedPhrase inPhrase = createPhrase();
+        var pt0 = new TestTransform(0);
+        var pt10 = new TestTransform(10);
+        var pt20 = new TestTransform(20);
+        var ptHidden = new TestTransform("Test" + PhraseTransform.HIDDEN_ID_TOKEN + "Id", 50);
+        var ptm = new TestPhraseTransformManager(pt10, pt0, ptHidden, pt20);
+
+
+        TestTransform.FIT_SCORE_COUNT.set(0);
+        assertEquals(List.of(pt20, pt10, pt0), ptm.getRecommendedPhraseTransforms(inPhrase, null, false));
+        assertEquals(4, TestTransform.FIT_SCORE_COUNT.get());
+        assertEquals(1, cache.getMissCount());
+
+
+        // Hit: fit scores are not computed again
+        assertEquals(List.of(pt20, pt10, pt0), ptm.getRecommendedPhraseTransforms(new SizedPhrase(inPhrase), null, false));
+        assertEquals(4, TestTransform.FIT_SCORE_COUNT.get());
+        assertEquals(1, cache.getHitCount());
+
+
+        // exclude0score, changed phrase, changed transforms: misses
+        assertEquals(List.of(pt20, pt10), ptm.getRecommendedPhraseTransforms(inPhrase, null, true));
+        SizedPhrase inPhrase2 = new SizedPhrase(inPhrase);
+        inPhrase2.remove(0);
+        assertEquals(List.of(pt20, pt10, pt0), ptm.getRecommendedPhraseTransforms(inPhrase2, null, false));
+        var pt30 = new TestTransform(30);
+        ptm.pts.add(pt30);
+        assertEquals(List.of(pt30, pt20, pt10, pt0), ptm.getRecommendedPhraseTransforms(inPhrase, null, false));
+        assertEquals(4, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(4 + 4 + 4 + 5, TestTransform.FIT_SCORE_COUNT.get());
+    }
+
+    @Test
+    public void testConcurrentFitScores()
+    {
+        System.out.println("testConcurrentFitScores() --");
+        SizedPhrase inPhrase = createPhrase();
+        var pt0 = new TestTransform(0);
+        var pt10 = new TestTransform(10);
+        var pt20 = new TestTransform(20);
+        var pt30 = new TestTransform(30);
+        pt10.concurrentFitScore = true;
+        pt30.concurrentFitScore = true;
+        var ptm = new TestPhraseTransformManager(pt10, pt0, pt30, pt20);
+
+
+        // Only the calling thread
+        TestTransform.FIT_SCORE_THREADS.clear();
+        var ptm2 = new TestPhraseTransformManager(pt0, pt20);
+        assertEquals(List.of(pt20, pt0), ptm2.getRecommendedPhraseTransforms(inPhrase, null, false));
+        assertEquals(Set.of(Thread.currentThread()), TestTransform.FIT_SCORE_THREADS);
+
+
+        // Same ranking when some transforms support concurrent calls, which run in daemon threads
+        TestTransform.FIT_SCORE_THREADS.clear();
+        assertEquals(List.of(pt30, pt20, pt10, pt0), ptm.getRecommendedPhraseTransforms(inPhrase, null, false));
+        assertTrue(TestTransform.FIT_SCORE_THREADS.contains(Thread.currentThread()));
+        if (Runtime.getRuntime().availableProcessors() > 1)
+        {
+            assertTrue(TestTransform.FIT_SCORE_THREADS.stream().anyMatch(t -> t != Thread.currentThread() && t.isDaemon()));
+        }
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private SizedPhrase createPhrase()
+    {
+        SizedPhrase sp = new SizedPhrase(CHANNEL, new FloatRange(0, 8f), TimeSignature.FOUR_FOUR);
+        for (int i = 0; i < 16; i++)
+        {
+            sp.addOrdered(new NoteEvent(40 + (i % 5), 0.4f, 60 + i, i * 0.5f));
+        }
+        return sp;
+    }
+
+    /**
+     * A song with 4 sections of 2 bars, the first section keeps the default chord symbols.
+     */
+    private Song createSong() throws UnsupportedEditException, ParseException
+    {
+        TimeSignature ts = TimeSignature.FOUR_FOUR;
+        CLI_Factory clif = CLI_Factory.getDefault();
+        ChordLeadSheet cls = ChordLeadSheetFactory.getDefault().createEmptyLeadSheet("A", ts, 8);
+        cls.addSection(clif.createSection(cls, "B", ts, 2));
+        cls.addSection(clif.createSection(cls, "C", ts, 4));
+        cls.addSection(clif.createSection(cls, "D", ts, 6));
+        String[] chords =
+        {
+            "C", "F7", "C", "F7", "D", "G7"
+        };
+        for (int i = 0; i < chords.length; i++)
+        {
+            cls.addItem(clif.createChordSymbol(cls, new ExtChordSymbol(chords[i]), new Position(2 + i, 0)));
+        }
+
+        Song sg = SongFactory.getInstance().createSong("PhraseTransformCacheTest", cls);
+        SongStructure sgs = sg.getSongStructure();
+        List<SongPart> oldSpts = sgs.getSongParts();
+        List<SongPart> newSpts = new ArrayList<>();
+        var rhythm = new DummyRhythm("DummyRhythm", ts);
+        for (SongPart spt : oldSpts)
+        {
+            newSpts.add(spt.clone(rhythm, spt.getStartBarIndex(), spt.getNbBars(), spt.getParentSection()));
+        }
+        sgs.replaceSongParts(oldSpts, newSpts);
+
+        return sg;
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * Transpose notes by the "shift" property value, plus the root pitch class of the first chord symbol of the context
+     * section.
+     */
+    private static class TestTransform implements PhraseTransform
+    {
+
+        private static final String PROP_SHIFT = "shift";
+        private static final AtomicInteger FIT_SCORE_COUNT = new AtomicInteger();
+        private static final Set<Thread> FIT_SCORE_THREADS = ConcurrentHashMap.newKeySet();
+        private final Info info;
+        private final PtProperties properties;
+        private boolean concurrentFitScore;
+
+        public TestTransform(int shift)
+        {
+            this("TestTransformId", shift);
+        }
+
+        public TestTransform(String id, int shift)
+        {
+            info = new Info(id, "Test transform", "Test transform description", PhraseTransformCategory.DEFAULT, null);
+            Properties defaults = new Properties();
+            defaults.setProperty(PROP_SHIFT, "0");
+            properties = new PtProperties(defaults);
+            properties.setProperty(PROP_SHIFT, shift);
+        }
+
+        @Override
+        public Info getInfo()
+        {
+            return info;
+        }
+
+        @Override
+        public SizedPhrase transform(SizedPhrase inPhrase, SongPartContext context)
+        {
+            int shift = properties.getPropertyAsInteger(PROP_SHIFT);
+            if (context != null)
+            {
+                var section = context.getSongPart().getParentSection();
+                var cliCs = context.getSong().getChordLeadSheet().getItems(section, CLI_ChordSymbol.class).get(0);
+                shift += cliCs.getData().getRootNote().getRelativePitch();
+            }
+            SizedPhrase res = new SizedPhrase(inPhrase.getChannel(), inPhrase.getBeatRange(), inPhrase.getTimeSignature());
+            for (var ne : inPhrase)
+            {
+                res.addOrdered(new NoteEvent(ne, ne.getPitch() + shift));
+            }
+            return res;
+        }
+
+        @Override
+        public int getFitScore(SizedPhrase inPhrase, SongPartContext context)
+        {
+            FIT_SCORE_COUNT.incrementAndGet();
+            FIT_SCORE_THREADS.add(Thread.currentThread());
+            return properties.getPropertyAsInteger(PROP_SHIFT);
+        }
+
+        @Override
+        public boolean isConcurrentFitScoreSupported()
+        {
+            return concurrentFitScore;
+        }
+
+        @Override
+        public PhraseTransform getCopy()
+        {
+            return this;
+        }
+
+        @Override
+        public PtProperties getProperties()
+        {
+            return properties;
+        }
+    }
+
+    private static class TestPhraseTransformManager implements PhraseTransformManager
+    {
+
+        private final List<PhraseTransform> pts = new ArrayList<>();
+
+        public TestPhraseTransformManager(PhraseTransform... pts)
+        {
+            this.pts.addAll(List.of(pts));
+        }
+
+        @Override
+        public void refresh()
+        {
+            // Nothing
+        }
+
+        @Override
+        public List<PhraseTransform> getPhraseTransforms()
+        {
+            return pts;
+        }
+    }
+}
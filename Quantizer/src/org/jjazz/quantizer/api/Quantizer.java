@@ -138,6 +138,163 @@ public class Quantizer
         return res;
     }
 
+    /**
+     * Quantize in place an array of beat positions, e.g. the note positions of a recorded phrase.
+     * <p>
+     * Positions are relative to the start of bar 0, bar i uses barTimeSignatures[i]. A quantized position can not go beyond the
+     * last bar, as with quantize(Quantization, Position, TimeSignature, int) with maxBarIndex=barTimeSignatures.length-1.
+     * <p>
+     * Processing is done with plain loops on primitive arrays, no object is allocated per position.
+     *
+     * @param q
+     * @param positions The beat positions, quantized in place. Positions do not need to be sorted but processing is faster if
+     * they are.
+     * @param from Index of the first position to quantize
+     * @param to Index of the last position to quantize (excluded)
+     * @param barTimeSignatures The time signature of each bar
+     * @param strengthPercent [0;100] 100 moves the positions onto the quantization grid, 50 moves them half-way.
+     * @param swingPercent [50;75] Move the off-beat grid points of HALF_BEAT and ONE_QUARTER_BEAT quantizations, e.g. with
+     * HALF_BEAT: 50 is straight (0.5), 66 is close to ternary (0.66). For HALF_BAR a value above 50 uses the swing half-bar
+     * position of the time signature. Ignored for the other quantizations.
+     * @param movedIndices If not null, used to store the indexes of the positions which were modified. Length must be &gt;=
+     * to-from.
+     * @return The number of positions which were modified.
+     * @throws IllegalArgumentException If a position is negative or beyond the last bar. In this case positions and movedIndices
+     * are left unchanged.
+     * @see TimeSignature#getHalfBarBeat(boolean)
+     */
+    static public int quantize(Quantization q, float[] positions, int from, int to, TimeSignature[] barTimeSignatures,
+            int strengthPercent, int swingPercent, int[] movedIndices)
+    {
+        checkNotNull(q);
+        checkNotNull(positions);
+        checkNotNull(barTimeSignatures);
+        checkArgument(from >= 0 && from <= to && to <= positions.length, "from=%s to=%s positions.length=%s", from, to, positions.length);
+        checkArgument(barTimeSignatures.length > 0, "barTimeSignatures.length=%s", barTimeSignatures.length);
+        checkArgument(strengthPercent >= 0 && strengthPercent <= 100, "strengthPercent=%s", strengthPercent);
+        checkArgument(swingPercent >= 50 && swingPercent <= 75, "swingPercent=%s", swingPercent);
+        checkArgument(movedIndices == null || movedIndices.length >= to - from, "movedIndices.length=%s", movedIndices == null ? 0 : movedIndices.length);
+
+        if (q == Quantization.OFF || strengthPercent == 0)
+        {
+            return 0;
+        }
+
+
+        // Bar start positions and bar sizes
+        int nbBars = barTimeSignatures.length;
+        float[] barStarts = new float[nbBars + 1];
+        float[] barSizes = new float[nbBars];
+        float[] halfBars = new float[nbBars];
+        for (int i = 0; i < nbBars; i++)
+        {
+            barSizes[i] = barTimeSignatures[i].getNbNaturalBeats();
+            halfBars[i] = barTimeSignatures[i].getHalfBarBeat(swingPercent > 50);
+            barStarts[i + 1] = barStarts[i] + barSizes[i];
+        }
+
+
+        // Check all positions first so that nothing is modified if one is invalid
+        float end = barStarts[nbBars];
+        for (int index = from; index < to; index++)
+        {
+            float pos = positions[index];
+            if (!(pos >= 0 && pos < end))
+            {
+                throw new IllegalArgumentException("index=" + index + " pos=" + pos + " end=" + end);   //NOI18N
+            }
+        }
+
+
+        // The quantization grid within a beat, with swing
+        float[] points = q.getBeats().clone();
+        int nbPoints = points.length;
+        if (swingPercent > 50 && (nbPoints == 3 || nbPoints == 5))
+        {
+            float swing = swingPercent / 100f;
+            for (int i = 1; i < nbPoints - 1; i += 2)
+            {
+                points[i] = points[i - 1] + (points[i + 1] - points[i - 1]) * swing;
+            }
+        }
+        float[] thresholds = new float[Math.max(0, nbPoints - 1)];
+        for (int i = 0; i < thresholds.length; i++)
+        {
+            thresholds[i] = (points[i] + points[i + 1]) / 2;
+        }
+
+
+        float strength = strengthPercent / 100f;
+        int nbMoved = 0;
+        int bar = 0;
+        for (int index = from; index < to; index++)
+        {
+            float pos = positions[index];
+
+            // Find the bar, fast if positions are sorted
+            while (pos >= barStarts[bar + 1])
+            {
+                bar++;
+            }
+            while (pos < barStarts[bar])
+            {
+                bar--;
+            }
+            float barStart = barStarts[bar];
+            float beat = pos - barStart;
+            float qPos;
+
+
+            if (q == Quantization.HALF_BAR)
+            {
+                float half = halfBars[bar];
+                if (beat < half / 2)
+                {
+                    qPos = barStart;
+                } else if (beat < 3 * half / 2 || bar == nbBars - 1)
+                {
+                    qPos = barStart + half;         // Stay on last half-bar if we can't go to next bar
+                } else
+                {
+                    qPos = barStarts[bar + 1];
+                }
+            } else
+            {
+                float beatInt = (float) Math.floor(beat);
+                float beatDecimal = beat - beatInt;
+                float qDecimal = points[0];
+                for (int i = 0; i < thresholds.length; i++)
+                {
+                    qDecimal = beatDecimal >= thresholds[i] ? points[i + 1] : qDecimal;
+                }
+                if (beatInt + qDecimal < barSizes[bar])
+                {
+                    qPos = barStart + beatInt + qDecimal;
+                } else if (bar < nbBars - 1)
+                {
+                    qPos = barStarts[bar + 1];      // Go to next bar
+                } else
+                {
+                    qPos = barStart + beatInt + points[nbPoints - 2];     // Can't go to next bar, stick to last possible position
+                }
+            }
+
+
+            float newPos = strengthPercent == 100 ? qPos : pos + (qPos - pos) * strength;
+            if (newPos != pos)
+            {
+                positions[index] = newPos;
+                if (movedIndices != null)
+                {
+                    movedIndices[nbMoved] = index;
+                }
+                nbMoved++;
+            }
+        }
+
+        return nbMoved;
+    }
+
     public void setQuantizationValue(Quantization q)
     {
         qValue = q;
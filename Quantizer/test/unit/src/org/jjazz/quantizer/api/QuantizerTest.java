@@ -24,7 +24,9 @@ package org.jjazz.quantizer.api;
 
 import org.jjazz.harmony.api.TimeSignature;
 import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import org.junit.*;
 
 public class QuantizerTest
@@ -193,4 +195,101 @@ public class QuantizerTest
         Position result = instance.quantize(pos, ts, maxBarIndex);
         assertEquals(expResult, result);   //NOI18N
     }
+
+    @Test
+    public void testQuantizeArraySameAsPosition()
+    {
+        System.out.println("quantizeArraySameAsPosition");
+        TimeSignature[] tss = new TimeSignature[]
+        {
+            TimeSignature.FOUR_FOUR, TimeSignature.THREE_FOUR, TimeSignature.FOUR_FOUR
+        };
+        float[] barStarts = new float[]
+        {
+            0, 4, 7, 11
+        };
+        for (Quantization q : new Quantization[]
+        {
+            Quantization.HALF_BAR, Quantization.BEAT, Quantization.HALF_BEAT, Quantization.ONE_THIRD_BEAT, Quantization.ONE_QUARTER_BEAT
+        })
+        {
+            for (int bar = 0; bar < tss.length; bar++)
+            {
+                for (int i = 0; i < tss[bar].getNbNaturalBeats() * 10; i++)
+                {
+                    float beat = i / 10f + 0.01f;       // Avoid exact midpoints between grid points, subject to float rounding
+                    Position p = Quantizer.quantize(q, new Position(bar, beat), tss[bar], tss.length - 1);
+                    float[] positions = new float[]
+                    {
+                        barStarts[bar] + beat
+                    };
+                    Quantizer.quantize(q, positions, 0, 1, tss, 100, 50, null);
+                    assertEquals(q + " bar=" + bar + " beat=" + beat, barStarts[p.getBar()] + p.getBeat(), positions[0], 0.0001f);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizeArrayStrengthSwing()
+    {
+        System.out.println("quantizeArrayStrengthSwing");
+        TimeSignature[] tss = new TimeSignature[]
+        {
+            TimeSignature.FOUR_FOUR, TimeSignature.FOUR_FOUR
+        };
+        float[] positions = new float[]
+        {
+            0.1f, 1.5f, 2.6f, 7.9f
+        };
+        int[] moved = new int[positions.length];
+        int nbMoved = Quantizer.quantize(Quantization.HALF_BEAT, positions, 0, positions.length, tss, 50, 50, moved);
+        assertArrayEquals(new float[]
+        {
+            0.05f, 1.5f, 2.55f, 7.7f
+        }, positions, 0.0001f);
+        assertEquals(3, nbMoved);
+        assertArrayEquals(new int[]
+        {
+            0, 2, 3
+        }, java.util.Arrays.copyOf(moved, nbMoved));
+
+        positions = new float[]
+        {
+            0.5f, 1.7f, 2.3f
+        };
+        Quantizer.quantize(Quantization.HALF_BEAT, positions, 0, positions.length, tss, 100, 66, null);
+        assertArrayEquals(new float[]
+        {
+            0.66f, 1.66f, 2f
+        }, positions, 0.0001f);
+    }
+
+    @Test
+    public void testQuantizeArrayInvalidPosition()
+    {
+        System.out.println("quantizeArrayInvalidPosition");
+        TimeSignature[] tss = new TimeSignature[]
+        {
+            TimeSignature.FOUR_FOUR
+        };
+        float[] positions = new float[]
+        {
+            0.1f, 1.2f, 4.5f
+        };
+        int[] moved = new int[positions.length];
+        try
+        {
+            Quantizer.quantize(Quantization.HALF_BEAT, positions, 0, positions.length, tss, 100, 50, moved);
+            fail("Position beyond the last bar was accepted");
+        } catch (IllegalArgumentException ex)
+        {
+            // Expected
+        }
+        assertArrayEquals(new float[]
+        {
+            0.1f, 1.2f, 4.5f
+        }, positions, 0f);
+        assertArrayEquals(new int[positions.length], moved);
+    }
 }
@@ -39,6 +39,9 @@ import org.jjazz.util.api.IntRange;
  * A convenience class to manipulate chord symbols sequences.
  * <p>
  * User is responsible to ensure CLI_ChordSymbols are added in the right position order and in the startBar/nbBars range.
+ * <p>
+ * Position-based queries use an index (bar =&gt; first chord index, sorted positions) which is rebuilt on the first query after a
+ * modification of the list. Changing the position of a CLI_ChordSymbol already in the list is not detected.
  */
 public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Comparable<ChordSequence>, Cloneable
 {
@@ -47,6 +50,7 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
     private int hashCode;
     private int startBar;
     private int nbBars;
+    private transient volatile BarIndex barIndex;
 
     protected static final Logger LOGGER = Logger.getLogger(ChordSequence.class.getSimpleName());
 
@@ -77,6 +81,21 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
         return cSeq;
     }
 
+    /**
+     * Overridden to invalidate the position index, ArrayList.set() does not update modCount.
+     *
+     * @param index
+     * @param cliCs
+     * @return
+     */
+    @Override
+    public CLI_ChordSymbol set(int index, CLI_ChordSymbol cliCs)
+    {
+        CLI_ChordSymbol res = super.set(index, cliCs);
+        barIndex = null;
+        return res;
+    }
+
     public final int getNbBars()
     {
         return nbBars;
@@ -188,15 +207,25 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
      */
     public CLI_ChordSymbol getChordSymbol(Position pos)
     {
-        for (int i = size() - 1; i >= 0; i--)
+        Position[] positions = getBarIndex().positions;
+
+        // Binary search of the last chord whose position is <= pos
+        int low = 0;
+        int high = positions.length - 1;
+        int index = -1;
+        while (low <= high)
         {
-            CLI_ChordSymbol cliCs = get(i);
-            if (cliCs.getPosition().compareTo(pos) <= 0)
+            int mid = (low + high) >>> 1;
+            if (positions[mid].compareTo(pos) <= 0)
+            {
+                index = mid;
+                low = mid + 1;
+            } else
             {
-                return cliCs;
+                high = mid - 1;
             }
         }
-        return null;
+        return index == -1 ? null : get(index);
     }
 
     /**
@@ -216,18 +245,14 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
             throw new IllegalArgumentException("subStartBar=" + subStartBar + " subEndBar=" + subEndBar + " this=" + this);   //NOI18N
         }
         ChordSequence cSeq = new ChordSequence(subStartBar, subEndBar - subStartBar + 1);
-        for (CLI_ChordSymbol cs : this)
+        int firstIndex = indexOfFirstFromBar(subStartBar);
+        if (firstIndex != -1)
         {
-            int bar = cs.getPosition().getBar();
-            if (bar < subStartBar)
+            int[] bars = getBarIndex().bars;
+            for (int i = firstIndex; i < bars.length && bars[i] <= subEndBar; i++)
             {
-                continue;
+                cSeq.add(get(i));
             }
-            if (bar > subEndBar)
-            {
-                break;
-            }
-            cSeq.add(cs);
         }
         // LOGGER.severe("subSequence()   cSeq=" + cSeq);
         if (subStartBar > startBar && (cSeq.isEmpty() || !cSeq.get(0).getPosition().equals(new Position(subStartBar, 0))))
@@ -251,14 +276,29 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
      */
     public int indexOfFirstFromBar(int absoluteBarIndex)
     {
-        for (int i = 0; i < size(); i++)
+        BarIndex bi = getBarIndex();
+        int relBar = absoluteBarIndex - startBar;
+        if (relBar >= 0 && relBar < bi.firstIndexFromBar.length)
         {
-            if (get(i).getPosition().getBar() >= absoluteBarIndex)
+            return bi.firstIndexFromBar[relBar];
+        }
+
+        // Bar is outside of the sequence range: binary search of the first chord whose bar is >= absoluteBarIndex
+        int[] bars = bi.bars;
+        int low = 0;
+        int high = bars.length;
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+            if (bars[mid] < absoluteBarIndex)
             {
-                return i;
+                low = mid + 1;
+            } else
+            {
+                high = mid;
             }
         }
-        return -1;
+        return low < bars.length ? low : -1;
     }
 
     /**
@@ -347,4 +387,71 @@ public class ChordSequence extends ArrayList<CLI_ChordSymbol> implements Compara
         return res;
     }
 
+    /**
+     * Get the position index, rebuild it if list was modified since last build.
+     * <p>
+     * Concurrent readers might rebuild the index at the same time, result is the same.
+     *
+     * @return
+     */
+    private BarIndex getBarIndex()
+    {
+        BarIndex bi = barIndex;
+        if (bi == null || bi.modCount != modCount)
+        {
+            bi = new BarIndex();
+            barIndex = bi;
+        }
+        return bi;
+    }
+
+    // ====================================================================================
+    // Inner classes
+    // ====================================================================================
+    /**
+     * The chord positions at the time of the index build.
+     */
+    private class BarIndex
+    {
+
+        private final int modCount;
+        /**
+         * Chord bars, in list order.
+         */
+        private final int[] bars;
+        /**
+         * Chord positions, in list order.
+         */
+        private final Position[] positions;
+        /**
+         * firstIndexFromBar[i] is the index of the first chord whose bar is &gt;= startBar+i, or -1. Size is nbBars+1.
+         */
+        private final int[] firstIndexFromBar;
+
+        private BarIndex()
+        {
+            modCount = ChordSequence.this.modCount;
+            int n = size();
+            bars = new int[n];
+            positions = new Position[n];
+            for (int i = 0; i < n; i++)
+            {
+                positions[i] = get(i).getPosition();
+                bars[i] = positions[i].getBar();
+            }
+
+            firstIndexFromBar = new int[nbBars + 1];
+            int index = 0;
+            for (int i = 0; i <= nbBars; i++)
+            {
+                int bar = startBar + i;
+                while (index < n && bars[index] < bar)
+                {
+                    index++;
+                }
+                firstIndexFromBar[i] = index < n ? index : -1;
+            }
+        }
+    }
+
 }
@@ -110,6 +110,28 @@ public class DummyGenerator implements MusicGenerator
         return res;
     }
 
+    /**
+     * The generation only depends on the context and on the rhythm voices.
+     *
+     * @return True
+     */
+    @Override
+    public boolean isConcurrentGenerationSupported()
+    {
+        return true;
+    }
+
+    /**
+     * The generation of a bar only depends on the bar chord symbols.
+     *
+     * @return True
+     */
+    @Override
+    public boolean isSongPartGenerationSupported()
+    {
+        return true;
+    }
+
     /**
      * Get a basic bass phrase.
      *
@@ -0,0 +1,411 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *  as published by the Free Software Foundation, either version 3 of the License,
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *  Contributor(s):
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+import org.jjazz.harmony.api.ChordType;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ChordRenderingInfo;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import static org.jjazz.phrase.api.Phrase.PARENT_NOTE;
+
+/**
+ * An optional bounded memoization cache for the Phrases.fitXXXPhrase2ChordSymbol() methods.
+ * <p>
+ * The fit methods are pure functions of the source phrase and of the destination chord symbol: a generator which repeatedly fits the
+ * same source phrases on the same chord symbols (e.g. for repeated choruses) can use this cache to avoid recomputing the same
+ * results.
+ * <p>
+ * Cache key is made of the source phrase notes (pitch, velocity, duration, position), the source chord symbol and the destination
+ * chord symbol (root and bass pitch class, chord type, rendering info). A cached result only stores the destination pitch of each
+ * source note, so the cache content is immutable and a new Phrase is returned on each call. The returned phrase is identical to the
+ * one returned by the Phrases method, including the PARENT_NOTE client properties which refer to the notes of the passed source
+ * phrase.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @see Phrases
+ */
+public class PhraseFitCache
+{
+
+    public static final int DEFAULT_MAX_SIZE = 2000;
+
+    private enum FitType
+    {
+        MELODY, MELODY_CHORD_MODE, BASS, CHORD
+    }
+    private final int maxSize;
+    private final LinkedHashMap<Key, int[]> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private static final Logger LOGGER = Logger.getLogger(PhraseFitCache.class.getSimpleName());
+
+    /**
+     * Create a cache with DEFAULT_MAX_SIZE entries.
+     */
+    public PhraseFitCache()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSize The max. number of entries. When reached the least recently used entries are removed.
+     */
+    public PhraseFitCache(int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("maxSize=" + maxSize);   //NOI18N
+        }
+        this.maxSize = maxSize;
+        cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest)
+            {
+                return size() > PhraseFitCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Cached version of Phrases.fitMelodyPhrase2ChordSymbol().
+     *
+     * @param pSrc
+     * @param ecsDest
+     * @param chordMode
+     * @return A new phrase
+     * @see Phrases#fitMelodyPhrase2ChordSymbol(org.jjazz.rhythmmusicgeneration.api.SourcePhrase,
+     * org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol, boolean)
+     */
+    public Phrase fitMelodyPhrase2ChordSymbol(SourcePhrase pSrc, ExtChordSymbol ecsDest, boolean chordMode)
+    {
+        return fit(chordMode ? FitType.MELODY_CHORD_MODE : FitType.MELODY, pSrc, ecsDest,
+                () -> Phrases.fitMelodyPhrase2ChordSymbol(pSrc, ecsDest, chordMode));
+    }
+
+    /**
+     * Cached version of Phrases.fitBassPhrase2ChordSymbol().
+     *
+     * @param pSrc
+     * @param ecsDest
+     * @return A new phrase
+     * @see Phrases#fitBassPhrase2ChordSymbol(org.jjazz.rhythmmusicgeneration.api.SourcePhrase,
+     * org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol)
+     */
+    public Phrase fitBassPhrase2ChordSymbol(SourcePhrase pSrc, ExtChordSymbol ecsDest)
+    {
+        return fit(FitType.BASS, pSrc, ecsDest, () -> Phrases.fitBassPhrase2ChordSymbol(pSrc, ecsDest));
+    }
+
+    /**
+     * Cached version of Phrases.fitChordPhrase2ChordSymbol().
+     *
+     * @param pSrc
+     * @param ecsDest
+     * @return A new phrase
+     * @see Phrases#fitChordPhrase2ChordSymbol(org.jjazz.rhythmmusicgeneration.api.SourcePhrase,
+     * org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol)
+     */
+    public Phrase fitChordPhrase2ChordSymbol(SourcePhrase pSrc, ExtChordSymbol ecsDest)
+    {
+        return fit(FitType.CHORD, pSrc, ecsDest, () -> Phrases.fitChordPhrase2ChordSymbol(pSrc, ecsDest));
+    }
+
+    /**
+     * @return The max. number of entries of the cache.
+     */
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * @return The current number of entries of the cache.
+     */
+    public int size()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * @return The number of fit requests served from the cache.
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * @return The number of fit requests which required a computation.
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * @return A value between 0 and 1. 0 if no request was done.
+     */
+    public float getHitRate()
+    {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (float) hits / total;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PhraseFitCache[size=%d/%d, hits=%d, misses=%d, hitRate=%.1f%%]", size(), maxSize, getHitCount(),
+                getMissCount(), getHitRate() * 100);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private Phrase fit(FitType fitType, SourcePhrase pSrc, ExtChordSymbol ecsDest, Supplier<Phrase> fitter)
+    {
+        if (pSrc == null || ecsDest == null)
+        {
+            throw new IllegalArgumentException("pSrc=" + pSrc + " ecsDest=" + ecsDest);   //NOI18N
+        }
+
+        NoteEvent[] srcNotes = pSrc.toArray(new NoteEvent[0]);
+        Key key = new Key(fitType, pSrc, srcNotes, ecsDest);
+
+        int[] data;
+        synchronized (cache)
+        {
+            data = cache.get(key);
+        }
+
+        if (data != null)
+        {
+            hitCount.incrementAndGet();
+            return buildPhrase(pSrc.getChannel(), srcNotes, data);
+        }
+
+
+        missCount.incrementAndGet();
+        Phrase res = fitter.get();
+        data = buildData(srcNotes, res);
+        if (data != null)
+        {
+            synchronized (cache)
+            {
+                cache.put(key, data);
+            }
+        }
+
+        return res;
+    }
+
+    /**
+     * Rebuild the destination phrase from the cached data.
+     *
+     * @param channel
+     * @param srcNotes
+     * @param data
+     * @return
+     */
+    private Phrase buildPhrase(int channel, NoteEvent[] srcNotes, int[] data)
+    {
+        Phrase res = new Phrase(channel);
+        for (int d : data)
+        {
+            NoteEvent srcNote = srcNotes[d >>> 8];
+            NoteEvent destNote = new NoteEvent(srcNote, d & 0xFF);
+            destNote.putClientProperty(PARENT_NOTE, srcNote);
+            res.add(destNote);       // Don't need addOrdered here, destination notes are in the source notes order
+        }
+        return res;
+    }
+
+    /**
+     * Compute the data to be cached: for each destination note, the index of the source note and the destination pitch.
+     *
+     * @param srcNotes
+     * @param pDest
+     * @return Null if pDest can not be rebuilt from srcNotes.
+     */
+    private int[] buildData(NoteEvent[] srcNotes, Phrase pDest)
+    {
+        IdentityHashMap<NoteEvent, Integer> mapNoteIndex = new IdentityHashMap<>();
+        for (int i = 0; i < srcNotes.length; i++)
+        {
+            mapNoteIndex.put(srcNotes[i], i);
+        }
+
+        int[] res = new int[pDest.size()];
+        int i = 0;
+        for (NoteEvent destNote : pDest)
+        {
+            Integer index = mapNoteIndex.get(destNote.getClientProperty(PARENT_NOTE));
+            if (index == null || !destNote.equals(new NoteEvent(srcNotes[index], destNote.getPitch())))
+            {
+                // Can happen when the source phrase was reworked by the fit method, don't cache
+                LOGGER.fine("buildData() can't cache result for destNote=" + destNote);   //NOI18N
+                return null;
+            }
+            res[i++] = (index << 8) | destNote.getPitch();
+        }
+        return res;
+    }
+
+    // =================================================================================================
+    // Private classes
+    // =================================================================================================
+    /**
+     * The cache key: the fit type, the source phrase fingerprint and the chord symbols signature.
+     */
+    private static class Key
+    {
+
+        private final FitType fitType;
+        private final int channel;
+        private final long[] notesFingerprint;
+        private final ChordSignature srcChord;
+        private final ChordSignature destChord;
+        private final int hashCode;
+
+        private Key(FitType fitType, SourcePhrase pSrc, NoteEvent[] srcNotes, ExtChordSymbol ecsDest)
+        {
+            this.fitType = fitType;
+            this.channel = pSrc.getChannel();
+            this.srcChord = new ChordSignature(pSrc.getSourceChordSymbol());
+            this.destChord = new ChordSignature(ecsDest);
+            notesFingerprint = new long[srcNotes.length * 2];
+            int i = 0;
+            for (NoteEvent ne : srcNotes)
+            {
+                notesFingerprint[i++] = ((long) ne.getPitch() << 40) | ((long) ne.getVelocity() << 32)
+                        | (Float.floatToIntBits(ne.getDurationInBeats()) & 0xFFFFFFFFL);
+                notesFingerprint[i++] = Float.floatToIntBits(ne.getPositionInBeats());
+            }
+            hashCode = Objects.hash(fitType, channel, srcChord, destChord, Arrays.hashCode(notesFingerprint));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && fitType == other.fitType
+                    && channel == other.channel
+                    && srcChord.equals(other.srcChord)
+                    && destChord.equals(other.destChord)
+                    && Arrays.equals(notesFingerprint, other.notesFingerprint);
+        }
+    }
+
+    /**
+     * The chord symbol data used by the fit methods.
+     */
+    private static class ChordSignature
+    {
+
+        private final int rootPitchClass;
+        private final int bassPitchClass;
+        private final ChordType chordType;
+        private final ChordRenderingInfo renderingInfo;
+
+        private ChordSignature(ExtChordSymbol ecs)
+        {
+            rootPitchClass = ecs.getRootNote().getRelativePitch();
+            bassPitchClass = ecs.getBassNote().getRelativePitch();
+            chordType = ecs.getChordType();
+            renderingInfo = ecs.getRenderingInfo();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = 5;
+            hash = 47 * hash + rootPitchClass;
+            hash = 47 * hash + bassPitchClass;
+            hash = 47 * hash + System.identityHashCode(chordType);
+            hash = 47 * hash + Objects.hashCode(renderingInfo);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof ChordSignature))
+            {
+                return false;
+            }
+            final ChordSignature other = (ChordSignature) obj;
+            return rootPitchClass == other.rootPitchClass
+                    && bassPitchClass == other.bassPitchClass
+                    && chordType == other.chordType
+                    && Objects.equals(renderingInfo, other.renderingInfo);
+        }
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *  as published by the Free Software Foundation, either version 3 of the License,
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *  Contributor(s):
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.phrase.api.SizedPhrase;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.util.api.FloatRange;
+import org.jjazz.util.api.Utilities;
+
+/**
+ * A chain of SongPart-based processing stages applied to RhythmVoice phrases.
+ * <p>
+ * Each phrase is walked once: its notes are dispatched per SongPart, then each SongPart slice goes through all the applicable
+ * stages. Notes of SongParts which are not processed are reused as is, no copy of the whole phrase is done.
+ * <p>
+ * The result is identical to applying each stage on the whole phrase, SongPart per SongPart, with the following operations: the
+ * stage input is obtained with <code>Phrase.slice(sptRange.from, sptRange.to, false, true)</code>, and the stage output replaces
+ * the SongPart notes after a <code>Phrase.split(sptRange, true, false)</code>.
+ * <p>
+ * SongParts are independent: they can be processed in parallel, see setMaxThreads(int). The result is identical to a sequential
+ * processing.
+ * <p>
+ * Processing time of each stage is recorded.
+ */
+public class PhrasePipeline
+{
+
+    /**
+     * A processing stage for the notes of a SongPart.
+     */
+    public interface SongPartStage
+    {
+
+        /**
+         * @return The name used to report the processing time of this stage.
+         */
+        String getName();
+
+        /**
+         * Check if this stage needs to process the specified RhythmVoice for the specified SongPart.
+         *
+         * @param rv
+         * @param spt
+         * @return
+         */
+        boolean isApplicable(RhythmVoice rv, SongPart spt);
+
+        /**
+         * Process the notes of a SongPart.
+         *
+         * @param rv
+         * @param spt
+         * @param sptPhrase The notes starting in the SongPart beat range, cut to not extend beyond the SongPart. The channel is the
+         * channel of the processed phrase. Must not be modified.
+         * <p>
+         * Note that this method might be called concurrently for different SongParts.
+         * @return The notes which replace the SongPart notes. Notes must start in the SongPart beat range. Notes of previous SongParts
+         * which are still ringing at the start of a processed SongPart are shortened.
+         */
+        Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase);
+    }
+
+    /**
+     * Name used to report the time spent dispatching and merging notes.
+     */
+    public static final String DISPATCH_MERGE_STAGE_NAME = "Pipeline dispatch/merge";
+    private final SongContext songContext;
+    private final List<SongPartStage> stages;
+    private final List<SongPart> songParts;
+    private final FloatRange[] sptRanges;
+    private final TimeSignature[] sptTimeSignatures;
+    private final float[] boundaries;
+    private int maxThreads = 1;
+    private final Map<String, Long> stageTimings = new LinkedHashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(PhrasePipeline.class.getSimpleName());
+
+    /**
+     *
+     * @param context
+     * @param stages The stages are applied in this order
+     */
+    public PhrasePipeline(SongContext context, List<SongPartStage> stages)
+    {
+        this(context, context == null ? null : context.getSongParts(),
+                context == null ? null : context.getSongParts().stream().map(spt -> context.getSptBeatRange(spt)).toArray(FloatRange[]::new),
+                context == null ? null : context.getSongParts().stream().map(spt -> spt.getRhythm().getTimeSignature()).toArray(TimeSignature[]::new),
+                stages);
+    }
+
+    /**
+     * Constructor used for unit tests.
+     *
+     * @param context Can be null
+     * @param songParts Contiguous SongParts
+     * @param sptRanges The beat range of each SongPart
+     * @param sptTimeSignatures The time signature of each SongPart
+     * @param stages
+     */
+    PhrasePipeline(SongContext context, List<SongPart> songParts, FloatRange[] sptRanges, TimeSignature[] sptTimeSignatures, List<SongPartStage> stages)
+    {
+        if (songParts == null || sptRanges == null || sptTimeSignatures == null || stages == null
+                || sptRanges.length != songParts.size() || sptTimeSignatures.length != songParts.size())
+        {
+            throw new IllegalArgumentException("context=" + context + " songParts=" + songParts + " stages=" + stages);   //NOI18N
+        }
+        this.songContext = context;
+        this.stages = new ArrayList<>(stages);
+        this.songParts = new ArrayList<>(songParts);
+        this.sptRanges = sptRanges.clone();
+        this.sptTimeSignatures = sptTimeSignatures.clone();
+
+
+        // Song parts are contiguous: boundaries[i] is the start of SongPart i, last value is the end of the last SongPart
+        int n = this.songParts.size();
+        boundaries = new float[n + 1];
+        for (int i = 0; i < n; i++)
+        {
+            boundaries[i] = this.sptRanges[i].from;
+        }
+        boundaries[n] = n > 0 ? this.sptRanges[n - 1].to : 0;
+
+        this.stages.forEach(st -> stageTimings.put(st.getName(), 0L));
+        stageTimings.put(DISPATCH_MERGE_STAGE_NAME, 0L);
+    }
+
+    public SongContext getSongContext()
+    {
+        return songContext;
+    }
+
+    public List<SongPartStage> getStages()
+    {
+        return Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * Set the max. number of threads used to process the SongParts in parallel.
+     *
+     * @param n If 1 (default) SongParts are processed sequentially in the calling thread.
+     */
+    public void setMaxThreads(int n)
+    {
+        if (n < 1)
+        {
+            throw new IllegalArgumentException("n=" + n);   //NOI18N
+        }
+        maxThreads = n;
+    }
+
+    /**
+     * @return 1 by default
+     * @see #setMaxThreads(int)
+     */
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+    /**
+     * Process all the phrases.
+     *
+     * @param rvPhrases The phrases are replaced by the processed phrases.
+     */
+    public void process(Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        List<PhraseJob> jobs = new ArrayList<>();
+        for (RhythmVoice rv : rvPhrases.keySet())
+        {
+            PhraseJob job = createJob(rv, rvPhrases.get(rv));
+            if (job != null)
+            {
+                jobs.add(job);
+            }
+        }
+        runJobs(jobs);
+        for (PhraseJob job : jobs)
+        {
+            rvPhrases.put(job.rv, merge(job));
+        }
+    }
+
+    /**
+     * Process one phrase.
+     *
+     * @param rv
+     * @param p
+     * @return p if no stage was applicable, otherwise a new phrase.
+     */
+    public Phrase process(RhythmVoice rv, Phrase p)
+    {
+        PhraseJob job = createJob(rv, p);
+        if (job == null)
+        {
+            return p;
+        }
+        runJobs(Arrays.asList(job));
+        return merge(job);
+    }
+
+    /**
+     * Get the processing time of each stage.
+     * <p>
+     * When SongParts are processed in parallel, the processing times of the different threads are added.
+     *
+     * @return A map stage name =&gt; processing time in nanoseconds, in the stages order.
+     */
+    public Map<String, Long> getStageTimings()
+    {
+        synchronized (stageTimings)
+        {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(stageTimings));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PhrasePipeline" + stages.stream().map(st -> st.getName()).collect(Collectors.toList());
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void addTiming(String stageName, long durationNs)
+    {
+        synchronized (stageTimings)
+        {
+            stageTimings.merge(stageName, durationNs, Long::sum);
+        }
+    }
+
+    /**
+     * Dispatch the phrase notes per SongPart.
+     *
+     * @param rv
+     * @param p
+     * @return Null if no stage is applicable for this phrase.
+     */
+    private PhraseJob createJob(RhythmVoice rv, Phrase p)
+    {
+        int n = songParts.size();
+        if (n == 0 || stages.isEmpty())
+        {
+            return null;
+        }
+
+
+        // Which song parts need a processing ?
+        boolean[] applicable = new boolean[n];
+        boolean any = false;
+        for (int i = 0; i < n; i++)
+        {
+            SongPart spt = songParts.get(i);
+            for (SongPartStage stage : stages)
+            {
+                if (stage.isApplicable(rv, spt))
+                {
+                    applicable[i] = true;
+                    any = true;
+                    break;
+                }
+            }
+        }
+        if (!any)
+        {
+            return null;
+        }
+
+
+        // Dispatch notes: bucket 0 before first song part, bucket i+1 for song part i, bucket n+1 after last song part
+        long t = System.nanoTime();
+        PhraseJob job = new PhraseJob(rv, p, applicable);
+        for (NoteEvent ne : p)
+        {
+            job.buckets.get(getBucketIndex(ne.getPositionInBeats())).add(ne);
+        }
+        addTiming(DISPATCH_MERGE_STAGE_NAME, System.nanoTime() - t);
+
+        return job;
+    }
+
+    /**
+     * Process the applicable song parts of each job, possibly in parallel.
+     *
+     * @param jobs
+     */
+    private void runJobs(List<PhraseJob> jobs)
+    {
+        List<Runnable> tasks = new ArrayList<>();
+        for (PhraseJob job : jobs)
+        {
+            for (int i = 0; i < songParts.size(); i++)
+            {
+                if (job.applicable[i])
+                {
+                    final int sptIndex = i;
+                    tasks.add(() -> processSongPart(job, sptIndex));
+                }
+            }
+        }
+
+        int nbThreads = Math.min(maxThreads, tasks.size());
+        if (nbThreads <= 1)
+        {
+            tasks.forEach(task -> task.run());
+            return;
+        }
+
+
+        LOGGER.log(Level.FINE, "runJobs() nbThreads={0} nbTasks={1}", new Object[]
+        {
+            nbThreads, tasks.size()
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<?>> futures = new ArrayList<>();
+        try
+        {
+            tasks.forEach(task -> futures.add(executor.submit(task)));
+
+            // Wait in the submission order so that the reported exception is always the same
+            for (Future<?> f : futures)
+            {
+                try
+                {
+                    f.get();
+                } catch (ExecutionException ex)
+                {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof RuntimeException)
+                    {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error)
+                    {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Phrase processing was interrupted");   //NOI18N
+                }
+            }
+        } finally
+        {
+            futures.forEach(f -> f.cancel(true));
+            Utilities.shutdownAndAwaitTermination(executor, 1000, 100);
+        }
+    }
+
+    /**
+     * Apply the applicable stages on a song part of a job.
+     *
+     * @param job
+     * @param sptIndex
+     */
+    private void processSongPart(PhraseJob job, int sptIndex)
+    {
+        SongPart spt = songParts.get(sptIndex);
+        FloatRange sptRange = sptRanges[sptIndex];
+        List<NoteEvent> bucket = job.buckets.get(sptIndex + 1);
+        for (SongPartStage stage : stages)
+        {
+            if (!stage.isApplicable(job.rv, spt))
+            {
+                continue;
+            }
+            long t = System.nanoTime();
+            SizedPhrase sptPhrase = buildSptPhrase(job.phrase.getChannel(), sptRange, sptTimeSignatures[sptIndex], bucket);
+            addTiming(DISPATCH_MERGE_STAGE_NAME, System.nanoTime() - t);
+
+            t = System.nanoTime();
+            Phrase pOut = stage.process(job.rv, spt, sptPhrase);
+            addTiming(stage.getName(), System.nanoTime() - t);
+
+            bucket = new ArrayList<>(pOut);
+            job.replaced[sptIndex] = true;
+        }
+        job.buckets.set(sptIndex + 1, bucket);       // No structural modification, safe from different threads
+    }
+
+    /**
+     * Merge the buckets of a processed job. Notes ringing at the start of a replaced song part are shortened.
+     *
+     * @param job
+     * @return
+     */
+    private Phrase merge(PhraseJob job)
+    {
+        long t = System.nanoTime();
+        int n = songParts.size();
+        float[] nextReplacedStart = new float[n + 2];
+        float next = Float.MAX_VALUE;
+        nextReplacedStart[n + 1] = next;
+        for (int i = n; i >= 0; i--)
+        {
+            if (i < n && job.replaced[i])
+            {
+                next = sptRanges[i].from;
+            }
+            nextReplacedStart[i] = next;      // Start of the first replaced song part after bucket i
+        }
+        Phrase res = new Phrase(job.phrase.getChannel());
+        for (int b = 0; b < n + 2; b++)
+        {
+            float cutPos = nextReplacedStart[b];
+            for (NoteEvent ne : job.buckets.get(b))
+            {
+                float pos = ne.getPositionInBeats();
+                if (pos < cutPos && pos + ne.getDurationInBeats() > cutPos)
+                {
+                    ne = new NoteEvent(ne, cutPos - pos, pos);
+                }
+                res.add(ne);        // Buckets are ordered, no need for addOrdered()
+            }
+        }
+        addTiming(DISPATCH_MERGE_STAGE_NAME, System.nanoTime() - t);
+
+        return res;
+    }
+
+    /**
+     * Get the index of the bucket for a note position.
+     *
+     * @param pos
+     * @return 0 to songParts.size()+1
+     */
+    private int getBucketIndex(float pos)
+    {
+        int index = Arrays.binarySearch(boundaries, pos);
+        if (index >= 0)
+        {
+            // Position is on a boundary, several boundaries can't be equal
+            return index + 1;
+        }
+        return -(index + 1);      // Insertion point
+    }
+
+    /**
+     * Build the input phrase for a stage: same result than a slice(sptRange.from, sptRange.to, false, true).
+     */
+    private SizedPhrase buildSptPhrase(int channel, FloatRange sptRange, TimeSignature ts, List<NoteEvent> bucket)
+    {
+        SizedPhrase res = new SizedPhrase(channel, sptRange, ts);
+        for (NoteEvent ne : bucket)
+        {
+            float pos = ne.getPositionInBeats();
+            if (pos < sptRange.from || pos >= sptRange.to)
+            {
+                continue;
+            }
+            if (pos + ne.getDurationInBeats() > sptRange.to)
+            {
+                ne = new NoteEvent(ne, sptRange.to - pos, pos);
+            } else
+            {
+                ne = ne.clone();
+            }
+            res.add(ne);
+        }
+        return res;
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * The processing state of one phrase.
+     */
+    private class PhraseJob
+    {
+
+        private final RhythmVoice rv;
+        private final Phrase phrase;
+        private final boolean[] applicable;
+        private final boolean[] replaced;
+        /**
+         * Bucket 0 before first song part, bucket i+1 for song part i, bucket n+1 after last song part.
+         */
+        private final List<List<NoteEvent>> buckets;
+
+        private PhraseJob(RhythmVoice rv, Phrase p, boolean[] applicable)
+        {
+            this.rv = rv;
+            this.phrase = p;
+            this.applicable = applicable;
+            int n = songParts.size();
+            replaced = new boolean[n];
+            buckets = new ArrayList<>(n + 2);
+            for (int i = 0; i < n + 2; i++)
+            {
+                buckets.add(new ArrayList<>());
+            }
+        }
+    }
+}
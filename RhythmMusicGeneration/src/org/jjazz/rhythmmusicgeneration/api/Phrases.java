@@ -45,6 +45,8 @@ import org.jjazz.rhythmmusicgeneration.api.SourcePhrase.ChordMode;
 
 /**
  * Phrase manipulation methods.
+ *
+ * @see PhraseFitCache
  */
 public class Phrases
 {
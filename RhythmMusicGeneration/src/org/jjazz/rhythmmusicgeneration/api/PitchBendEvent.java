@@ -24,7 +24,6 @@ package org.jjazz.rhythmmusicgeneration.api;
 
 import org.jjazz.phrase.api.NoteEvent;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.logging.Logger;
 import javax.sound.midi.MidiEvent;
@@ -68,7 +67,7 @@ public class PitchBendEvent extends NoteEvent
     public PitchBendEvent clone()
     {
         PitchBendEvent pbe = new PitchBendEvent(this, fromPitch);
-        clientProperties = (pbe.clientProperties == null) ? null : new HashMap<>(pbe.clientProperties);
+        pbe.setClientProperties(this);
         return pbe;
     }
 
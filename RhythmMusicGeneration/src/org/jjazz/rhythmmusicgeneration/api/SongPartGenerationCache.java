@@ -0,0 +1,317 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3)
+ *  as published by the Free Software Foundation, either version 3 of the License,
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ *
+ *  Contributor(s):
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheet;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Section;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.jjazz.midi.api.Instrument;
+import org.jjazz.midi.api.InstrumentMix;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmParameter;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythm.api.RhythmVoiceDelegate;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.util.api.IntRange;
+
+/**
+ * A cache of the phrases generated by a rhythm for a SongPart.
+ * <p>
+ * The cache key is the content of the SongPart: rhythm, rhythm parameter values, chord symbols relative to the SongPart start,
+ * SongPart size (and start offset if context range starts in the middle of the SongPart), song tempo, Midi channels and
+ * instruments (including the drum kit), and the content of the first bar of the next SongPart (rhythm, rhythm parameter values,
+ * chord symbols). SongParts with identical content (e.g. repeated choruses) share the same entry, so phrases generated once can be
+ * time-shifted and reused for the other SongParts of the same generation, and across regenerations of the same song if the cache
+ * instance is kept.
+ * <p>
+ * The cache is used only by a SongSequenceBuilder on which it was set, and only for the rhythms which support a SongPart by
+ * SongPart generation, see MusicGenerator.isSongPartGenerationSupported(). The JJazzLab playback sessions use one cache per
+ * session, which is cleared when the session becomes dirty or is closed.
+ * <p>
+ * Phrases are stored as copies starting at beat 0. This class is thread-safe.
+ *
+ * @see SongSequenceBuilder#setSongPartCache(org.jjazz.rhythmmusicgeneration.api.SongPartGenerationCache)
+ */
+public class SongPartGenerationCache
+{
+
+    public static final int DEFAULT_MAX_SIZE = 200;
+    private final int maxSize;
+    private final LinkedHashMap<Key, Map<RhythmVoice, Phrase>> cache;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private static final Logger LOGGER = Logger.getLogger(SongPartGenerationCache.class.getSimpleName());
+
+    /**
+     * Create a cache with DEFAULT_MAX_SIZE entries.
+     */
+    public SongPartGenerationCache()
+    {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxSize The max. number of SongPart entries. When reached the least recently used entries are removed.
+     */
+    public SongPartGenerationCache(int maxSize)
+    {
+        if (maxSize < 1)
+        {
+            throw new IllegalArgumentException("maxSize=" + maxSize);   //NOI18N
+        }
+        this.maxSize = maxSize;
+        cache = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Map<RhythmVoice, Phrase>> eldest)
+            {
+                return size() > SongPartGenerationCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get the cached phrases for the specified key.
+     *
+     * @param key
+     * @param startPosInBeats The returned phrases are shifted to start at this position.
+     * @return Null if key is not in the cache. Returned phrases are new copies.
+     */
+    public Map<RhythmVoice, Phrase> get(Key key, float startPosInBeats)
+    {
+        Map<RhythmVoice, Phrase> rvPhrases;
+        synchronized (cache)
+        {
+            rvPhrases = cache.get(key);
+        }
+        if (rvPhrases == null)
+        {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+        for (RhythmVoice rv : rvPhrases.keySet())
+        {
+            Phrase p = rvPhrases.get(rv).clone();
+            p.shiftEvents(startPosInBeats);
+            res.put(rv, p);
+        }
+        return res;
+    }
+
+    /**
+     * Store the phrases generated for a SongPart.
+     *
+     * @param key
+     * @param startPosInBeats The start position of the SongPart in the phrases.
+     * @param rvPhrases A copy of the phrases is stored
+     */
+    public void put(Key key, float startPosInBeats, Map<RhythmVoice, Phrase> rvPhrases)
+    {
+        Map<RhythmVoice, Phrase> mapCopy = new HashMap<>();
+        for (RhythmVoice rv : rvPhrases.keySet())
+        {
+            Phrase p = rvPhrases.get(rv).clone();
+            p.shiftEvents(-startPosInBeats);
+            mapCopy.put(rv, p);
+        }
+        synchronized (cache)
+        {
+            cache.put(key, mapCopy);
+        }
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear()
+    {
+        synchronized (cache)
+        {
+            cache.clear();
+        }
+        hitCount.set(0);
+        missCount.set(0);
+    }
+
+    /**
+     * @return The current number of entries of the cache.
+     */
+    public int size()
+    {
+        synchronized (cache)
+        {
+            return cache.size();
+        }
+    }
+
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SongPartGenerationCache[size=" + size() + "/" + maxSize + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * The content of a SongPart which impacts the music generated for it.
+     */
+    static public class Key
+    {
+
+        private final Rhythm rhythm;
+        private final List<Object> content;
+        private final int hashCode;
+
+        /**
+         * Compute the key of a SongPart in the specified context.
+         *
+         * @param context
+         * @param spt Must belong to context
+         */
+        public Key(SongContext context, SongPart spt)
+        {
+            if (context == null || spt == null || !context.contains(spt))
+            {
+                throw new IllegalArgumentException("context=" + context + " spt=" + spt);   //NOI18N
+            }
+
+            rhythm = spt.getRhythm();
+            content = new ArrayList<>();
+
+
+            // Size and start offset, context might start or end in the middle of the song part
+            IntRange sptBarRange = context.getSptBarRange(spt);
+            content.add(sptBarRange.from - spt.getStartBarIndex());
+            content.add(sptBarRange.size());
+            content.add(context.getSong().getTempo());
+
+
+            // Rhythm parameters values
+            for (RhythmParameter<?> rp : rhythm.getRhythmParameters())
+            {
+                content.add(spt.getRPValue(rp));
+            }
+
+
+            // Midi channels and instruments (a generator may adapt the drums notes to the drum kit key map)
+            for (RhythmVoice rv : rhythm.getRhythmVoices())
+            {
+                RhythmVoice rvSrc = (rv instanceof RhythmVoiceDelegate) ? ((RhythmVoiceDelegate) rv).getSource() : rv;
+                content.add(context.getMidiMix().getChannel(rvSrc));
+                InstrumentMix insMix = context.getMidiMix().getInstrumentMixFromKey(rvSrc);
+                Instrument ins = insMix == null ? null : insMix.getInstrument();
+                content.add(ins);
+                content.add(ins == null ? null : ins.getDrumKit());
+            }
+
+
+            // Chord symbols relative to the section start
+            ChordLeadSheet cls = context.getSong().getChordLeadSheet();
+            CLI_Section section = spt.getParentSection();
+            addChordSymbols(cls.getItems(section, CLI_ChordSymbol.class), section.getPosition().getBar());
+
+
+            // The generation also uses the first bar after the SongPart if it is in the context, see SongSequenceBuilder
+            int nextBar = sptBarRange.to + 1;
+            SongPart nextSpt = context.getBarRange().contains(nextBar) ? context.getSong().getSongStructure().getSongPart(nextBar) : null;
+            content.add(nextSpt != null);
+            if (nextSpt != null && nextSpt != spt)
+            {
+                content.add(nextSpt.getRhythm());
+                if (nextSpt.getRhythm() == rhythm)
+                {
+                    for (RhythmParameter<?> rp : rhythm.getRhythmParameters())
+                    {
+                        content.add(nextSpt.getRPValue(rp));
+                    }
+                }
+                int nextSectionBar = nextSpt.getParentSection().getPosition().getBar();
+                addChordSymbols(cls.getItems(nextSectionBar, nextSectionBar, CLI_ChordSymbol.class), nextSectionBar);
+            }
+
+            hashCode = 31 * System.identityHashCode(rhythm) + content.hashCode();
+        }
+
+        public Rhythm getRhythm()
+        {
+            return rhythm;
+        }
+
+        private void addChordSymbols(List<? extends CLI_ChordSymbol> cliChordSymbols, int refBar)
+        {
+            for (CLI_ChordSymbol cliCs : cliChordSymbols)
+            {
+                Position pos = cliCs.getPosition();
+                content.add(new Position(pos.getBar() - refBar, pos.getBeat()));
+                content.add(cliCs.getData());
+            }
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode == other.hashCode && rhythm == other.rhythm && content.equals(other.content);
+        }
+    }
+}
@@ -28,12 +28,19 @@ import org.jjazz.phrase.api.NoteEvent;
 import org.jjazz.songcontext.api.SongContext;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -41,7 +48,6 @@ import javax.sound.midi.InvalidMidiDataException;
 import javax.sound.midi.MidiEvent;
 import javax.sound.midi.MidiMessage;
 import javax.sound.midi.Sequence;
-import javax.sound.midi.ShortMessage;
 import javax.sound.midi.SysexMessage;
 import javax.sound.midi.Track;
 import org.jjazz.harmony.api.TimeSignature;
@@ -81,6 +87,7 @@ import org.jjazz.songstructure.api.SongStructure;
 import org.jjazz.util.api.FloatRange;
 import org.jjazz.util.api.IntRange;
 import org.jjazz.util.api.ResUtil;
+import org.jjazz.util.api.Utilities;
 
 /**
  * Methods to convert a Song into Phrases and Midi sequence.
@@ -101,7 +108,22 @@ public class SongSequenceBuilder
     }
 
 
+    /**
+     * Name of the music generation stage in getStageTimings().
+     */
+    public static final String GENERATION_STAGE_NAME = "Generation";
+    /**
+     * Name of the instrument settings/drums rerouting/shift stage in getStageTimings().
+     */
+    public static final String FINAL_STAGE_NAME = "Instrument settings, rerouting, shift";
+    /**
+     * Max number of threads used to generate the rhythms phrases, or to post-process the SongParts, in parallel.
+     */
+    public static final int MAX_GENERATION_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
     private SongContext songContext;
+    private boolean parallelGeneration = false;
+    private SongPartGenerationCache songPartCache;
+    private final Map<String, Long> stageTimings = new LinkedHashMap<>();
 
     private static final Logger LOGGER = Logger.getLogger(SongSequenceBuilder.class.getSimpleName());
 
@@ -143,7 +165,22 @@ public class SongSequenceBuilder
      */
     public SongSequence buildAll(boolean silent) throws MusicGenerationException
     {
-        AllBuilderTask task = new AllBuilderTask();
+        return buildAll(silent, false, true);
+    }
+
+    /**
+     * Call buildMapRvPhrase() then buildSongSequence(), optionally directly building an exportable sequence.
+     *
+     * @param silent
+     * @param exportable If true JJazzLab-specific events are not added, and instrument initialization events are added at the
+     * beginning of each RhythmVoice track.
+     * @param ignoreMidiMixMute Used only if exportable is true. If false, muted RhythmVoice tracks contain no notes.
+     * @return
+     * @throws MusicGenerationException
+     */
+    private SongSequence buildAll(boolean silent, boolean exportable, boolean ignoreMidiMixMute) throws MusicGenerationException
+    {
+        AllBuilderTask task = new AllBuilderTask(exportable, ignoreMidiMixMute);
         if (silent)
         {
             task.run();
@@ -199,6 +236,67 @@ public class SongSequenceBuilder
         return task.rvPhrases;
     }
 
+    /**
+     * Build the RhythmVoice phrases for a part of the defined context.
+     * <p>
+     * Same as buildMapRvPhrase(true) but music is generated only for the specified bars, which lets a caller build a sequence
+     * progressively, e.g. SongPart by SongPart in playback order.
+     * <p>
+     * Rhythms are asked to generate music for a context reduced to barRange plus the next bar (if in the context), then only the
+     * notes starting in barRange are kept: notes can ring past the end of barRange and rhythms can anticipate the next chord. The
+     * result may still differ from buildMapRvPhrase(true) if a rhythm generates music which depends on the bars before barRange,
+     * or on more than one bar after barRange.
+     * <p>
+     * Parallel generation and SongPart cache settings of this builder are used. getStageTimings() is updated.
+     *
+     * @param barRange Must be contained in the context bar range
+     * @return The phrases are positioned like with buildMapRvPhrase(boolean): beat 0 is the start of the context, not the start of
+     * barRange. Only notes starting within barRange are present.
+     * @throws MusicGenerationException
+     * @see #buildMapRvPhrase(boolean)
+     */
+    public Map<RhythmVoice, Phrase> buildMapRvPhrase(IntRange barRange) throws MusicGenerationException
+    {
+        if (barRange == null || !songContext.getBarRange().contains(barRange))
+        {
+            throw new IllegalArgumentException("barRange=" + barRange + " songContext=" + songContext);   //NOI18N
+        }
+
+        // Also generate the next bar so that rhythms can manage the transition (ringing notes, anticipation of the next chord)
+        IntRange genBarRange = barRange;
+        if (songContext.getBarRange().contains(barRange.to + 1))
+        {
+            genBarRange = new IntRange(barRange.from, barRange.to + 1);
+        }
+        SongContext subContext = new SongContext(songContext, genBarRange);
+        SongSequenceBuilder subBuilder = new SongSequenceBuilder(subContext);
+        subBuilder.setParallelGeneration(parallelGeneration);
+        subBuilder.setSongPartCache(songPartCache);
+        Map<RhythmVoice, Phrase> res = subBuilder.buildMapRvPhrase();          // Possible MusicGenerationException here
+
+
+        // Phrases start at the beginning of subContext, make them relative to our context
+        float shift = subContext.getBeatRange().from - songContext.getBeatRange().from;
+        if (shift != 0)
+        {
+            res.values().forEach(p -> p.shiftEvents(shift));
+        }
+
+
+        // Keep only the notes starting in barRange
+        if (genBarRange != barRange)
+        {
+            FloatRange beatRange = songContext.getSong().getSongStructure().getBeatRange(barRange);
+            FloatRange relBeatRange = new FloatRange(beatRange.from - songContext.getBeatRange().from, beatRange.to - songContext.getBeatRange().from);
+            res.replaceAll((rv, p) -> p.getFilteredPhrase(ne -> relBeatRange.contains(ne.getPositionInBeats(), true)));
+        }
+
+        stageTimings.clear();
+        stageTimings.putAll(subBuilder.getStageTimings());
+
+        return res;
+    }
+
 
     /**
      * Build the SongSequence from the specified RhythmVoice phrases for the defined context.
@@ -209,7 +307,8 @@ public class SongSequenceBuilder
      * <p>
      * If songContext range start bar is &gt; 0, the Midi events are shifted to start at sequence tick 0.
      *
-     * @param rvPhrases The RhythmVoice phrases such as produced by buildMapRvPhrase(boolean), must start at beat 0.
+     * @param rvPhrases The RhythmVoice phrases such as produced by buildMapRvPhrase(boolean), must start at beat 0. If a
+     * RhythmVoice has no phrase, its track is created empty.
      * @param silent If true do not show a progress dialog
      * @return A Sequence containing accompaniment tracks for the songContext, including time signature change Midi meta events
      * and JJazz custom Midi controller messages (MidiConst.CTRL_CHG_JJAZZ_TEMPO_FACTOR) for tempo factor changes.
@@ -256,13 +355,13 @@ public class SongSequenceBuilder
     public SongSequence buildExportableSequence(boolean silent, boolean ignoreMidiMixMute) throws MusicGenerationException
     {
 
-        var songSequence = buildAll(silent);     // throws MusicGenerationException
+        // RhythmVoice tracks are directly built in their exportable form: no JJazzLab-specific events, instrument settings events
+        // at the beginning, no notes for muted tracks
+        var songSequence = buildAll(silent, true, ignoreMidiMixMute);     // throws MusicGenerationException
 
 
         Sequence sequence = songSequence.sequence;
-        MidiMix midiMix = songContext.getMidiMix();
-        Track[] tracks = sequence.getTracks();
-        Track track0 = tracks[0];
+        Track track0 = sequence.getTracks()[0];
 
 
         if (!MidiUtilities.checkMidiFileTypeSupport(sequence, 1, true))
@@ -272,29 +371,13 @@ public class SongSequenceBuilder
 
 
         // ========== Track 0 settings =============
-        // Copyright
-        MidiMessage mmCopyright = MidiUtilities.getCopyrightMetaMessage("JJazzLab Midi Export file");
-        MidiEvent me = new MidiEvent(mmCopyright, 0);
-        track0.add(me);
+        // Events are collected then added in one pass
+        List<MidiEvent> track0Events = new ArrayList<>();
 
 
-        // Clean track0 from JJazzLab internal Midi events
-        int i = 0;
-        while (i < track0.size())
-        {
-            me = track0.get(i);
-            MidiMessage mm = me.getMessage();
-            if (mm instanceof ShortMessage)
-            {
-                ShortMessage sm = (ShortMessage) mm;
-                if (sm.getCommand() == ShortMessage.CONTROL_CHANGE && sm.getData1() == MidiConst.CTRL_CHG_JJAZZ_TEMPO_FACTOR)
-                {
-                    track0.remove(me);
-                    i--;
-                }
-            }
-            i++;
-        }
+        // Copyright
+        MidiMessage mmCopyright = MidiUtilities.getCopyrightMetaMessage("JJazzLab Midi Export file");
+        track0Events.add(new MidiEvent(mmCopyright, 0));
 
 
         // Add markers at each chord symbol position
@@ -307,8 +390,7 @@ public class SongSequenceBuilder
 
                 Position absPos = ss.getSptItemPosition(spt, cliCs);
                 long tickPos = songContext.getRelativeTick(absPos);
-                me = new MidiEvent(MidiUtilities.getMarkerMetaMessage(cliCs.getData().getName()), tickPos);
-                track0.add(me);
+                track0Events.add(new MidiEvent(MidiUtilities.getMarkerMetaMessage(cliCs.getData().getName()), tickPos));
             }
         }
 
@@ -323,14 +405,13 @@ public class SongSequenceBuilder
             tempoFactor = spt0.getRPValue(rp);
             tempo = Math.round(tempoFactor / 100f * tempo);
         }
-        me = new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), 0);
-        track0.add(me);
+        track0Events.add(new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), 0));
 
 
         // Add additional song part tempo changes
         int lastTempoFactor = tempoFactor;
         var spts = songContext.getSongParts();
-        for (i = 1; i < spts.size(); i++)
+        for (int i = 1; i < spts.size(); i++)
         {
             SongPart spt = spts.get(i);
             rp = RP_SYS_TempoFactor.getTempoFactorRp(spt.getRhythm());
@@ -342,8 +423,7 @@ public class SongSequenceBuilder
                     tempo = Math.round(tempoFactor / 100f * songContext.getSong().getTempo());
                     float beatPos = songContext.getSptBeatRange(spt).from - songContext.getBeatRange().from;
                     long tickPos = Math.round(beatPos * MidiConst.PPQ_RESOLUTION);
-                    me = new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), tickPos);
-                    track0.add(me);
+                    track0Events.add(new MidiEvent(MidiUtilities.getTempoMessage(0, tempo), tickPos));
                     lastTempoFactor = tempoFactor;
                 }
             }
@@ -372,55 +452,98 @@ public class SongSequenceBuilder
         }
         if (sxm != null)
         {
-            me = new MidiEvent(sxm, 0);
-            track0.add(me);
+            track0Events.add(new MidiEvent(sxm, 0));
         }
 
-        // ========== RhythmVoice tracks settings =============
+        MidiUtilities.addMidiEvents(track0, track0Events);
 
-        // Remove elements from muted tracks (don't remove the muted tracks because it would impact mapRvTrack)
-        if (!ignoreMidiMixMute)
-        {
-            for (RhythmVoice rv : midiMix.getRhythmVoices())
-            {
-                if (midiMix.getInstrumentMixFromKey(rv).isMute())
-                {
-                    Track track = sequence.getTracks()[songSequence.mapRvTrackId.get(rv)];
-                    MidiUtilities.clearTrack(track);
-                }
-            }
-        }
+        return songSequence;
+    }
 
 
-        // For each RhythmVoice :
-        // - reset all controllers
-        // - add instruments initialization messages for each track
-        for (RhythmVoice rv : songSequence.mapRvTrackId.keySet())
-        {
-            Track track = tracks[songSequence.mapRvTrackId.get(rv)];
-            int channel = songContext.getMidiMix().getChannel(rv);
+    public SongContext getSongContext()
+    {
+        return songContext;
+    }
 
-            // Reset all controllers
-            MidiMessage mmReset = MidiUtilities.getResetAllControllersMessage(channel);
-            me = new MidiEvent(mmReset, 0);
-            track.add(me);
+    /**
+     * Force the parallel generation of all the rhythms phrases.
+     * <p>
+     * The rhythms of the context are grouped by source rhythm (an AdaptedRhythm shares the resources of its source rhythm). By
+     * default, each group whose MusicGenerators return true for isConcurrentGenerationSupported() is generated in its own task,
+     * and the other groups are generated one after the other in a single task. The rhythms of a group are always generated one
+     * after the other in the same thread.
+     * <p>
+     * When enabled, each group is generated in its own task whatever isConcurrentGenerationSupported(), and the SongPart-based
+     * post-processing (custom phrases, phrase transforms, etc.) of the different SongParts is also done in parallel. Only enable
+     * it if all the rhythms of the context and all the used PhraseTransforms support concurrent calls. The result is identical to
+     * a sequential generation.
+     *
+     * @param b
+     * @see MusicGenerator#isConcurrentGenerationSupported()
+     */
+    public void setParallelGeneration(boolean b)
+    {
+        parallelGeneration = b;
+    }
 
-            // Instrument + volume + pan etc.
-            InstrumentMix insMix = midiMix.getInstrumentMixFromKey(rv);
-            for (MidiMessage mm : insMix.getAllMidiMessages(channel))
-            {
-                me = new MidiEvent(mm, 0);
-                track.add(me);
-            }
-        }
+    /**
+     * @return False by default
+     * @see #setParallelGeneration(boolean)
+     */
+    public boolean isParallelGeneration()
+    {
+        return parallelGeneration;
+    }
 
-        return songSequence;
+    /**
+     * Set a cache to reuse the phrases generated for identical SongParts.
+     * <p>
+     * When a cache is set, the rhythms whose MusicGenerator returns true for isSongPartGenerationSupported() are asked to generate
+     * music SongPart by SongPart instead of once for the whole context. The
+     * phrases generated for a SongPart are reused (time-shifted) for the other SongParts with the same content, and for the next
+     * generations which use the same cache instance.
+     * <p>
+     * Each SongPart is generated in a sub-context made of the SongPart bars plus the first bar of the next SongPart (if in the
+     * context), then only the notes starting in the SongPart are kept: notes can ring past the SongPart end and the rhythm can
+     * anticipate the next chord. The result may still differ from a whole context generation:<br>
+     * - the rhythm does not see the previous SongParts, e.g. it can't continue a fill or a pattern started before the
+     * SongPart<br>
+     * - the rhythm only sees the first bar of the next SongPart<br>
+     * - a rhythm generating music with random variations will produce the same music for identical SongParts.
+     * <p>
+     * This is why the other rhythms are always generated for the whole context. The JJazzLab playback sessions set a cache which
+     * is kept for the session lifetime.
+     *
+     * @param cache If null (default) no cache is used
+     * @see SongPartGenerationCache
+     * @see MusicGenerator#isSongPartGenerationSupported()
+     */
+    public void setSongPartCache(SongPartGenerationCache cache)
+    {
+        songPartCache = cache;
     }
 
+    /**
+     * @return Can be null
+     * @see #setSongPartCache(org.jjazz.rhythmmusicgeneration.api.SongPartGenerationCache)
+     */
+    public SongPartGenerationCache getSongPartCache()
+    {
+        return songPartCache;
+    }
 
-    public SongContext getSongContext()
+    /**
+     * Get the processing time of each stage of the last RhythmVoice phrases build.
+     * <p>
+     * Stage names include GENERATION_STAGE_NAME, the names of the SongPart-based post-processing stages (one per RP_SYS_XXX
+     * parameter), PhrasePipeline.DISPATCH_MERGE_STAGE_NAME, and FINAL_STAGE_NAME.
+     *
+     * @return A map stage name =&gt; duration in nanoseconds. Empty if no phrases were built yet.
+     */
+    public Map<String, Long> getStageTimings()
     {
-        return songContext;
+        return Collections.unmodifiableMap(stageTimings);
     }
 
     @Override
@@ -436,6 +559,9 @@ public class SongSequenceBuilder
     {
         Map<RhythmVoice, Phrase> res = new HashMap<>();
 
+        stageTimings.clear();
+        long startTime = System.nanoTime();
+
         checkEmptyRange(songContext);       // throws MusicGenerationException
 
         // Check that there is a valid starting chord at the beginning on each section
@@ -445,34 +571,42 @@ public class SongSequenceBuilder
         checkChordsAtSamePosition(songContext);            // throws MusicGenerationException        
 
 
-        for (Rhythm r : songContext.getUniqueRhythms())
-        {
+        // Generate the phrases of each rhythm
+        List<Rhythm> rhythms = songContext.getUniqueRhythms();
+        Map<Rhythm, Map<RhythmVoice, Phrase>> mapRhythmPhrases = generateAllRhythmsPhrases(rhythms);        // Possible MusicGenerationException here
+
 
-            // Generate the phrase
-            Map<RhythmVoice, Phrase> rMap = generateRhythmPhrases(r);                       // Possible MusicGenerationException here
+        // Merge in the context rhythms order to get the same result whatever the generation order
+        for (Rhythm r : rhythms)
+        {
+            Map<RhythmVoice, Phrase> rMap = mapRhythmPhrases.get(r);
 
-            if (songContext.getUniqueRhythms().size() > 1)
+            if (rhythms.size() > 1)
             {
                 checkRhythmPhrasesScope(songContext, r, rMap);                              // Possible MusicGenerationException here
             }
 
             // Merge into the final result
             res.putAll(rMap);
-
         }
 
 
-        // Handle the RP_SYS_CustomPhrase changes
-        processCustomPhrases(songContext, res);
-
-        // Handle the RP_SYS_DrumsTransform changes
-        processDrumsTransforms(songContext, res);
+        stageTimings.put(GENERATION_STAGE_NAME, System.nanoTime() - startTime);
 
-        // Handle the RP_SYS_PhraseTransform changes
-        processPhraseTransforms(songContext, res);
 
-        // Handle muted instruments via the SongPart's RP_SYS_Mute parameter
-        processMutedInstruments(songContext, res);
+        // SongPart-based processing, each phrase is walked only once:
+        // - RP_SYS_CustomPhrase changes
+        // - RP_SYS_DrumsTransform changes
+        // - RP_SYS_PhraseTransform changes
+        // - Muted instruments via the SongPart's RP_SYS_Mute parameter
+        PhrasePipeline pipeline = new PhrasePipeline(songContext, Arrays.asList(
+                new CustomPhraseStage(),
+                new DrumsTransformStage(),
+                new PhraseTransformStage(),
+                new MuteStage()));
+        pipeline.setMaxThreads(parallelGeneration ? MAX_GENERATION_THREADS : 1);
+        pipeline.process(res);
+        stageTimings.putAll(pipeline.getStageTimings());
 
 
         // Merge the phrases from delegate RhythmVoices to the source phrase, then remove the delegate phrases        
@@ -530,24 +664,34 @@ public class SongSequenceBuilder
         }
 
 
-        // Handle instrument settings which impact the phrases: transposition, velocity shift, ...
-        processInstrumentsSettings(songContext, res);
-
-
-        // Process the drums rerouting
-        processDrumsRerouting(songContext, res);
+        // Handle instrument settings which impact the phrases (transposition, velocity shift), drums rerouting, and shift phrases
+        // to start at position 0
+        startTime = System.nanoTime();
+        processInstrumentsSettingsAndShift(songContext, res);
+        stageTimings.put(FINAL_STAGE_NAME, System.nanoTime() - startTime);
 
 
-        // Shift phrases to start at position 0
-        for (Phrase p : res.values())
-        {
-            p.shiftEvents(-songContext.getBeatRange().from);
-        }
+        LOGGER.log(Level.FINE, "buildMapRvPhrase() stageTimings={0}", stageTimings);
 
         return res;
     }
 
     private SongSequence buildSongSequence(Map<RhythmVoice, Phrase> rvPhrases) throws MusicGenerationException
+    {
+        return buildSongSequence(rvPhrases, false, true);
+    }
+
+    /**
+     * Build the SongSequence.
+     *
+     * @param rvPhrases
+     * @param exportable If true do not add JJazzLab-specific events in track 0, and add the instrument initialization events
+     * (reset controllers, bank/program, volume, effects...) at the beginning of each RhythmVoice track.
+     * @param ignoreMidiMixMute Used only if exportable is true. If false, tracks of muted RhythmVoices contain no notes.
+     * @return
+     * @throws MusicGenerationException
+     */
+    private SongSequence buildSongSequence(Map<RhythmVoice, Phrase> rvPhrases, boolean exportable, boolean ignoreMidiMixMute) throws MusicGenerationException
     {
         SongSequence res = new SongSequence();
         res.mapRvPhrase = new HashMap<>(rvPhrases);
@@ -566,7 +710,10 @@ public class SongSequenceBuilder
         Track track0 = res.sequence.createTrack();
         MidiUtilities.addTrackNameEvent(track0, songContext.getSong().getName() + " (JJazzLab song)");
         addTimeSignatureChanges(songContext, track0);
-        addTempoFactorChanges(songContext, track0);
+        if (!exportable)
+        {
+            addTempoFactorChanges(songContext, track0);
+        }
 
 
         // Other tracks : create one per RhythmVoice
@@ -613,9 +760,25 @@ public class SongSequenceBuilder
             String name = buildTrackName(rv, channel);
             MidiUtilities.addTrackNameEvent(track, name);
 
-            // Fill the track
+            // Fill the track, use an empty phrase if rv has no phrase yet
             Phrase p = rvPhrases.get(rv);
-            p.fillTrack(track);
+            if (p == null)
+            {
+                p = new Phrase(channel);
+                res.mapRvPhrase.put(rv, p);
+            }
+            if (exportable)
+            {
+                InstrumentMix insMix = songContext.getMidiMix().getInstrumentMixFromKey(rv);
+                addInstrumentInitEvents(track, insMix, channel);
+                if (ignoreMidiMixMute || !insMix.isMute())
+                {
+                    p.fillTrack(track);
+                }
+            } else
+            {
+                p.fillTrack(track);
+            }
 
             // Store the track with the RhythmVoice
             res.mapRvTrackId.put(rv, trackId);
@@ -628,6 +791,144 @@ public class SongSequenceBuilder
     }
 
 
+    /**
+     * Ask each rhythm to generate music, possibly in parallel.
+     * <p>
+     * Rhythms are grouped by source rhythm (an AdaptedRhythm shares the resources of its source rhythm). One task is submitted per
+     * group which supports concurrent generation (all groups if parallel generation is forced): the task generates the rhythms of
+     * the group one after the other. The other rhythms are generated one after the other in one more task.
+     *
+     * @param rhythms
+     * @return A map with one entry per rhythm
+     * @throws MusicGenerationException The exception of the first failing rhythm in the rhythms order
+     */
+    private Map<Rhythm, Map<RhythmVoice, Phrase>> generateAllRhythmsPhrases(List<Rhythm> rhythms) throws MusicGenerationException
+    {
+        Map<Rhythm, Map<RhythmVoice, Phrase>> res = new HashMap<>();
+
+
+        // Group the rhythms which share the same resources
+        Map<Rhythm, List<Rhythm>> mapSourceRhythms = new LinkedHashMap<>();
+        for (Rhythm r : rhythms)
+        {
+            Rhythm sr = (r instanceof AdaptedRhythm) ? ((AdaptedRhythm) r).getSourceRhythm() : r;
+            mapSourceRhythms.computeIfAbsent(sr, k -> new ArrayList<>()).add(r);
+        }
+
+
+        // One task per group which supports concurrent generation, one task for all the other rhythms (in the rhythms order)
+        List<List<Rhythm>> tasksRhythms = new ArrayList<>();
+        List<Rhythm> sequentialRhythms = new ArrayList<>();
+        for (List<Rhythm> group : mapSourceRhythms.values())
+        {
+            if (parallelGeneration || group.stream().allMatch(r -> isConcurrentGenerationSupported(r)))
+            {
+                tasksRhythms.add(group);
+            }
+        }
+        for (Rhythm r : rhythms)
+        {
+            if (tasksRhythms.stream().noneMatch(group -> group.contains(r)))
+            {
+                sequentialRhythms.add(r);
+            }
+        }
+        if (!sequentialRhythms.isEmpty())
+        {
+            tasksRhythms.add(sequentialRhythms);
+        }
+
+
+        if (tasksRhythms.size() == 1 || MAX_GENERATION_THREADS == 1)
+        {
+            for (Rhythm r : rhythms)
+            {
+                res.put(r, generateRhythmPhrases(r));          // Possible MusicGenerationException here
+            }
+            return res;
+        }
+
+
+        int nbThreads = Math.min(tasksRhythms.size(), MAX_GENERATION_THREADS);
+        LOGGER.log(Level.FINE, "generateAllRhythmsPhrases() nbThreads={0} tasksRhythms={1}", new Object[]
+        {
+            nbThreads, tasksRhythms
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        Map<Rhythm, Map<RhythmVoice, Phrase>> mapRhythmPhrases = Collections.synchronizedMap(new HashMap<>());
+        Map<Rhythm, Throwable> mapRhythmException = Collections.synchronizedMap(new HashMap<>());
+        List<Future<?>> futures = new ArrayList<>();
+        try
+        {
+            for (List<Rhythm> group : tasksRhythms)
+            {
+                // Rhythms of a task are generated one after the other in the same thread
+                futures.add(executor.submit(() ->
+                {
+                    for (Rhythm r : group)
+                    {
+                        try
+                        {
+                            mapRhythmPhrases.put(r, generateRhythmPhrases(r));
+                        } catch (MusicGenerationException | RuntimeException | Error ex)
+                        {
+                            // Stop here, the next rhythms of the task would not be reached by a sequential generation
+                            mapRhythmException.put(r, ex);
+                            break;
+                        }
+                    }
+                }));
+            }
+
+
+            for (Future<?> f : futures)
+            {
+                try
+                {
+                    f.get();
+                } catch (ExecutionException ex)
+                {
+                    // Should never happen, exceptions are caught by the task
+                    throw new IllegalStateException(ex);   //NOI18N
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new MusicGenerationException("Music generation was interrupted");
+                }
+            }
+        } finally
+        {
+            futures.forEach(f -> f.cancel(true));
+            Utilities.shutdownAndAwaitTermination(executor, 1000, 100);
+        }
+
+
+        // Report the exception of the first failing rhythm in the rhythms order, as a sequential generation would do. If a rhythm
+        // has no result, a previous rhythm of its task (hence a previous rhythm in the rhythms order) has failed.
+        for (Rhythm r : rhythms)
+        {
+            Throwable t = mapRhythmException.get(r);
+            if (t instanceof MusicGenerationException)
+            {
+                throw (MusicGenerationException) t;
+            } else if (t instanceof RuntimeException)
+            {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error)
+            {
+                throw (Error) t;
+            }
+            res.put(r, mapRhythmPhrases.get(r));
+        }
+
+        return res;
+    }
+
+    private boolean isConcurrentGenerationSupported(Rhythm r)
+    {
+        return (r instanceof MusicGenerator) && ((MusicGenerator) r).isConcurrentGenerationSupported();
+    }
+
     /**
      * Ask specified rhythm to generate music.
      *
@@ -642,6 +943,10 @@ public class SongSequenceBuilder
                 r.getName(), Objects.hashCode(r)
             });
             r.loadResources();
+            if (songPartCache != null && ((MusicGenerator) r).isSongPartGenerationSupported())
+            {
+                return generateRhythmPhrasesPerSongPart(r);
+            }
             return ((MusicGenerator) r).generateMusic(songContext);
         } else
         {
@@ -650,6 +955,61 @@ public class SongSequenceBuilder
         }
     }
 
+    /**
+     * Ask specified rhythm to generate music SongPart by SongPart, reusing the songPartCache when possible.
+     *
+     * @param r A MusicGenerator whose resources are loaded
+     * @return
+     * @throws MusicGenerationException
+     */
+    private Map<RhythmVoice, Phrase> generateRhythmPhrasesPerSongPart(Rhythm r) throws MusicGenerationException
+    {
+        Map<RhythmVoice, Phrase> res = new HashMap<>();
+
+        for (SongPart spt : songContext.getSongParts())
+        {
+            if (spt.getRhythm() != r)
+            {
+                continue;
+            }
+
+            var key = new SongPartGenerationCache.Key(songContext, spt);
+            FloatRange sptBeatRange = songContext.getSptBeatRange(spt);
+            Map<RhythmVoice, Phrase> sptRvPhrases = songPartCache.get(key, sptBeatRange.from);
+            if (sptRvPhrases == null)
+            {
+                // Also generate the first bar after the SongPart (if in the context) so that the rhythm can manage the transition
+                // (notes ringing past the SongPart end, anticipation of the next chord), then keep only the SongPart notes
+                IntRange sptBarRange = songContext.getSptBarRange(spt);
+                if (songContext.getBarRange().contains(sptBarRange.to + 1))
+                {
+                    sptBarRange = new IntRange(sptBarRange.from, sptBarRange.to + 1);
+                }
+                SongContext sptContext = new SongContext(songContext, sptBarRange);
+                Map<RhythmVoice, Phrase> rvPhrases = ((MusicGenerator) r).generateMusic(sptContext);
+                sptRvPhrases = new HashMap<>();
+                for (RhythmVoice rv : rvPhrases.keySet())
+                {
+                    sptRvPhrases.put(rv, rvPhrases.get(rv).getFilteredPhrase(ne -> sptBeatRange.contains(ne.getPositionInBeats(), true)));
+                }
+                songPartCache.put(key, sptBeatRange.from, sptRvPhrases);
+            } else
+            {
+                LOGGER.log(Level.FINE, "generateRhythmPhrasesPerSongPart() reusing cached phrases for spt={0}", spt);
+            }
+
+
+            // SongParts are ordered, no need for addOrdered()
+            for (RhythmVoice rv : sptRvPhrases.keySet())
+            {
+                Phrase p = sptRvPhrases.get(rv);
+                res.computeIfAbsent(rv, k -> new Phrase(p.getChannel())).addAll(p);
+            }
+        }
+
+        return res;
+    }
+
     /**
      * Check that there is a starting chord symbol for each section used in the specified context.
      *
@@ -719,277 +1079,59 @@ public class SongSequenceBuilder
     }
 
     /**
-     * For each SongPart remove notes for muted RhythmVoices depending on the RP_SYS_Mute value.<br>
-     *
-     * @param context
-     * @param rvPhrases Keys can include RhythmVoiceDelegates
-     */
-    private void processMutedInstruments(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
-    {
-        for (SongPart spt : context.getSongParts())
-        {
-            Rhythm r = spt.getRhythm();
-            RP_SYS_Mute rpMute = RP_SYS_Mute.getMuteRp(r);
-            if (rpMute == null)
-            {
-                continue;
-            }
-
-
-            Set<String> muteValues = spt.getRPValue(rpMute);
-            if (muteValues.isEmpty())
-            {
-                // There is a MuteRp but nothing is muted, 
-                continue;
-            }
-
-
-            // At least one RhythmVoice/Track is muted
-            FloatRange sptRange = context.getSptBeatRange(spt);
-            List<RhythmVoice> mutedRvs = RP_SYS_Mute.getMutedRhythmVoices(r, muteValues);
-            for (RhythmVoice rv : mutedRvs)
-            {
-                Phrase p = rvPhrases.get(rv);
-                if (p == null)
-                {
-                    LOGGER.warning("muteNotes() Unexpected null phase. rv=" + rv + " rvPhrases=" + rvPhrases);   //NOI18N
-                    continue;
-                }
-                p.split(sptRange, true, false);
-            }
-        }
-    }
-
-     /**
-     * Replace phrases by custom phrases depending on the RP_SYS_CustomPhrase value.
-     *
-     * @param context
-     * @param rvPhrases Keys can include RhythmVoiceDelegates
-     */
-    private void processCustomPhrases(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
-    {
-        for (SongPart spt : context.getSongParts())
-        {
-            FloatRange sptBeatRange = context.getSptBeatRange(spt);
-
-
-            // Get the RhythmParameter
-            Rhythm r = spt.getRhythm();
-            RP_SYS_CustomPhrase rpCustomPhrase = RP_SYS_CustomPhrase.getCustomPhraseRp(r);
-            if (rpCustomPhrase == null)
-            {
-                continue;
-            }
-
-
-            // Get the RP value and process each customized phrase
-            RP_SYS_CustomPhraseValue rpValue = spt.getRPValue(rpCustomPhrase);
-            for (RhythmVoice rv : rpValue.getCustomizedRhythmVoices())
-            {
-
-                // Remove a slice for the current songpart            
-                Phrase p = rvPhrases.get(rv);
-                p.split(sptBeatRange, true, false);
-
-
-                // Get the custom phrase, starts at beat 0
-                SizedPhrase spCustom = rpValue.getCustomizedPhrase(rv);
-                float sizeInBeats = spCustom.getBeatRange().size();
-                TimeSignature ts = spCustom.getTimeSignature();
-
-
-                // If custom phrase is at least one bar shorter than current song part, duplicate the custom phrase to fill the remaining space
-                if (sizeInBeats <= sptBeatRange.size() - ts.getNbNaturalBeats())
-                {
-                    float offset = sizeInBeats;
-                    List<NoteEvent> toAdd = new ArrayList<>();
-                    while (offset < sptBeatRange.size())
-                    {
-                        for (NoteEvent ne : spCustom)
-                        {
-                            float newPosInBeats = ne.getPositionInBeats() + offset;
-                            if (newPosInBeats >= sptBeatRange.size())
-                            {
-                                break;
-                            }
-                            toAdd.add(new NoteEvent(ne, ne.getDurationInBeats(), newPosInBeats));
-                        }
-                        offset += sizeInBeats;
-                    }
-
-                    toAdd.forEach(ne -> spCustom.add(ne));  // No need for addOrdered() here
-                }
-
-
-                // Make sure it's not too long 
-                spCustom.silenceAfter(sptBeatRange.size());
-
-
-                // Shift to fit the current song part position
-                spCustom.shiftEvents(sptBeatRange.from);
-
-                // Update the current phrase
-                p.add(spCustom);
-            }
-        }
-    }
-
-    /**
-     * Transform rhythm phrases depending on the RP_SYS_PhraseTransform value.
-     *
-     * @param context
-     * @param rvPhrases Keys can include RhythmVoiceDelegates
-     */
-    private void processPhraseTransforms(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
-    {
-        LOGGER.log(Level.FINE, "processPhraseTransforms() -- context={0}", context);
-        for (SongPart spt : context.getSongParts())
-        {
-            FloatRange sptBeatRange = context.getSptBeatRange(spt);     // Might be smaller than spt.getBeatRange()
-            IntRange sptBarRange = context.getSptBarRange(spt);         // Might be smaller than spt.getBarRange()
-            SongPartContext sptContext = new SongPartContext(context.getSong(), context.getMidiMix(), sptBarRange);
-
-            // Get the RhythmParameter
-            Rhythm r = spt.getRhythm();
-            RP_SYS_PhraseTransform rpCustomPhrase = RP_SYS_PhraseTransform.getPhraseTransformRp(r);
-            if (rpCustomPhrase == null)
-            {
-                continue;
-            }
-
-
-            // Get the RP value and transform phrases as needed
-            RP_SYS_PhraseTransformValue rpValue = spt.getRPValue(rpCustomPhrase);
-            LOGGER.log(Level.FINE, "processPhraseTransforms() rpValue={0}", rpValue);
-            for (RhythmVoice rv : rpValue.getChainRhythmVoices())
-            {
-
-                // Keep the slice only for the current songpart
-                Phrase p = rvPhrases.get(rv);
-                Phrase tp = p.clone();
-                tp.slice(sptBeatRange.from, sptBeatRange.to, false, true);
-
-
-                // Make it a SizedPhrase and transform it
-                SizedPhrase inSp = new SizedPhrase(tp.getChannel(), sptBeatRange, r.getTimeSignature());
-                inSp.add(tp);
-                var chain = rpValue.getTransformChain(rv);
-                var outSp = chain.transform(inSp, sptContext);
-
-
-                // Replace the old song part phrase by the transformed one
-                p.split(sptBeatRange, true, false);
-                p.add(outSp);
-            }
-        }
-    }
-
-    /**
-     * Transform the drums phrase depending on the RP_SYS_DrumsTransform value.
+     * Apply in one pass on each phrase:<br>
+     * - transposition/velocity offset to match the InstrumentSettings of each RhythmVoice<br>
+     * - drums rerouting: phrases of rerouted channels are replaced by new phrases for the GM Drums channel<br>
+     * - shift the notes so that phrases start at beat 0<br>
      *
      * @param context
-     * @param rvPhrases Keys can include RhythmVoiceDelegates
-     */
-    private void processDrumsTransforms(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
-    {
-        LOGGER.log(Level.FINE, "processDrumsTransforms() -- context={0}", context);
-
-
-        for (SongPart spt : context.getSongParts())
-        {
-            FloatRange sptBeatRange = context.getSptBeatRange(spt);     // Might be smaller than spt.getBeatRange()
-            IntRange sptBarRange = context.getSptBarRange(spt);         // Might be smaller than spt.getBarRange()
-            SongPartContext sptContext = new SongPartContext(context.getSong(), context.getMidiMix(), sptBarRange);
-
-
-            // Get the RhythmParameter
-            Rhythm r = spt.getRhythm();
-            RP_SYS_DrumsTransform rpDrumsTransform = RP_SYS_DrumsTransform.getDrumsTransformRp(r);
-            if (rpDrumsTransform == null)
-            {
-                continue;
-            }
-
-
-            // Get the RP value and transform phrases as needed
-            RP_SYS_DrumsTransformValue rpValue = spt.getRPValue(rpDrumsTransform);
-            RhythmVoice rvDrums = rpValue.getRhythmVoice();
-            LOGGER.log(Level.FINE, "processDrumsTransforms() rpValue={0} rvDrums={1}", new Object[]
-            {
-                rpValue, rvDrums
-            });
-
-
-            // Keep the slice only for the current songpart
-            Phrase p = rvPhrases.get(rvDrums);
-            Phrase tp = p.clone();
-            tp.slice(sptBeatRange.from, sptBeatRange.to, false, true);
-
-
-            // Make it a SizedPhrase and transform it
-            SizedPhrase inSp = new SizedPhrase(tp.getChannel(), sptBeatRange, r.getTimeSignature());
-            inSp.add(tp);
-            var chain = rpValue.getTransformChain(false);
-            var outSp = chain.transform(inSp, sptContext);
-
-
-            // Replace the old song part phrase by the transformed one
-            p.split(sptBeatRange, true, false);
-            p.add(outSp);
-        }
-    }
-
-    /**
-     * Apply transposition/velocity offset to match the InstrumentSettings of each RhythmVoice.
-     *
      * @param rvPhrases
      */
-    private void processInstrumentsSettings(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
+    private void processInstrumentsSettingsAndShift(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
     {
-        LOGGER.fine("processInstrumentsSettings() -- ");   //NOI18N
+        LOGGER.fine("processInstrumentsSettingsAndShift() -- ");   //NOI18N
         MidiMix midiMix = context.getMidiMix();
-        for (RhythmVoice rv : rvPhrases.keySet())
+        List<Integer> reroutedChannels = midiMix.getDrumsReroutedChannels();
+        float shift = -context.getBeatRange().from;
+
+        for (RhythmVoice rv : rvPhrases.keySet().toArray(new RhythmVoice[0]))
         {
             Phrase p = rvPhrases.get(rv);
+            int transposition = 0;
+            int velocityShift = 0;
             InstrumentMix insMix = midiMix.getInstrumentMixFromKey(rv);
             if (insMix == null)
             {
-                LOGGER.warning("applyInstrumentsSettings() Unexpected null InstrumentMix for rv=" + rv + " midMix=" + midiMix);   //NOI18N
-                continue;
-            }
-            InstrumentSettings insSet = insMix.getSettings();
-            if (insSet.getTransposition() != 0)
+                LOGGER.warning("processInstrumentsSettingsAndShift() Unexpected null InstrumentMix for rv=" + rv + " midMix=" + midiMix);   //NOI18N
+            } else
             {
-                p.processPitch(pitch -> pitch + insSet.getTransposition());
-                LOGGER.fine("processInstrumentsSettings()    Adjusting transposition=" + insSet.getTransposition() + " for rv=" + rv);   //NOI18N
+                InstrumentSettings insSet = insMix.getSettings();
+                transposition = insSet.getTransposition();
+                velocityShift = insSet.getVelocityShift();
+                LOGGER.log(Level.FINE, "processInstrumentsSettingsAndShift()    transposition={0} velocityShift={1} for rv={2}", new Object[]
+                {
+                    transposition, velocityShift, rv
+                });
             }
-            if (insSet.getVelocityShift() != 0)
+
+            boolean rerouted = reroutedChannels.contains(midiMix.getChannel(rv));
+            Phrase newPhrase = new Phrase(rerouted ? MidiConst.CHANNEL_DRUMS : p.getChannel());
+            for (NoteEvent ne : p)
             {
-                p.processVelocity(v -> v + insSet.getVelocityShift());
-                LOGGER.fine("processInstrumentsSettings()    Adjusting velocity=" + insSet.getVelocityShift() + " for rv=" + rv);   //NOI18N
+                int pitch = transposition == 0 ? ne.getPitch() : MidiUtilities.limit(ne.getPitch() + transposition);
+                int velocity = velocityShift == 0 ? ne.getVelocity() : MidiUtilities.limit(ne.getVelocity() + velocityShift);
+                float pos = ne.getPositionInBeats() + shift;
+                if (pos < 0)
+                {
+                    throw new IllegalArgumentException("ne=" + ne + " shiftInBeats=" + shift);   //NOI18N
+                }
+                NoteEvent newNe = new NoteEvent(pitch, ne.getDurationInBeats(), velocity, pos);
+                newNe.setClientProperties(ne);
+                newPhrase.add(newNe);       // Phrase is already ordered, no need for addOrdered()
             }
-        }
-    }
-
-    /**
-     * Substitute phrases of rerouted channels with new phrases for the GM Drums channel.
-     *
-     * @param rvPhrases
-     */
-    private void processDrumsRerouting(SongContext context, Map<RhythmVoice, Phrase> rvPhrases)
-    {
-        LOGGER.fine("processDrumsRerouting() -- ");   //NOI18N
 
-        MidiMix midiMix = context.getMidiMix();
-        for (int channel : midiMix.getDrumsReroutedChannels())
-        {
-            RhythmVoice rv = midiMix.getRhythmVoice(channel);
-            Phrase oldPhrase = rvPhrases.get(rv);
-            Phrase reroutedPhrase = new Phrase(MidiConst.CHANNEL_DRUMS);
-            reroutedPhrase.add(oldPhrase);
-            rvPhrases.put(rv, reroutedPhrase);
+            rvPhrases.put(rv, newPhrase);
         }
-
     }
 
     private void checkEmptyRange(SongContext context) throws UserErrorGenerationException
@@ -1123,6 +1265,25 @@ public class SongSequenceBuilder
     }
 
 
+    /**
+     * Add the events to reset all controllers and to initialize the instrument (bank/program, volume, panoramic...) at the
+     * beginning of a track.
+     *
+     * @param track
+     * @param insMix
+     * @param channel
+     */
+    private void addInstrumentInitEvents(Track track, InstrumentMix insMix, int channel)
+    {
+        List<MidiEvent> events = new ArrayList<>();
+        events.add(new MidiEvent(MidiUtilities.getResetAllControllersMessage(channel), 0));
+        for (MidiMessage mm : insMix.getAllMidiMessages(channel))
+        {
+            events.add(new MidiEvent(mm, 0));
+        }
+        MidiUtilities.addMidiEvents(track, events);
+    }
+
     /**
      * Adjust the EndOfTrack Midi marker for all tracks.
      *
@@ -1145,6 +1306,167 @@ public class SongSequenceBuilder
     // Private classes
     // ====================================================================================================
 
+    /**
+     * Replace phrases by custom phrases depending on the RP_SYS_CustomPhrase value.
+     */
+    private class CustomPhraseStage implements PhrasePipeline.SongPartStage
+    {
+
+        @Override
+        public String getName()
+        {
+            return "RP_SYS_CustomPhrase";
+        }
+
+        @Override
+        public boolean isApplicable(RhythmVoice rv, SongPart spt)
+        {
+            RP_SYS_CustomPhrase rpCustomPhrase = RP_SYS_CustomPhrase.getCustomPhraseRp(spt.getRhythm());
+            return rpCustomPhrase != null && spt.getRPValue(rpCustomPhrase).getCustomizedRhythmVoices().contains(rv);
+        }
+
+        @Override
+        public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+        {
+            FloatRange sptBeatRange = sptPhrase.getBeatRange();
+            RP_SYS_CustomPhraseValue rpValue = spt.getRPValue(RP_SYS_CustomPhrase.getCustomPhraseRp(spt.getRhythm()));
+
+
+            // Get the custom phrase, starts at beat 0
+            SizedPhrase spCustom = rpValue.getCustomizedPhrase(rv);
+            float sizeInBeats = spCustom.getBeatRange().size();
+            TimeSignature ts = spCustom.getTimeSignature();
+
+
+            // If custom phrase is at least one bar shorter than current song part, duplicate the custom phrase to fill the remaining space
+            if (sizeInBeats <= sptBeatRange.size() - ts.getNbNaturalBeats())
+            {
+                float offset = sizeInBeats;
+                List<NoteEvent> toAdd = new ArrayList<>();
+                while (offset < sptBeatRange.size())
+                {
+                    for (NoteEvent ne : spCustom)
+                    {
+                        float newPosInBeats = ne.getPositionInBeats() + offset;
+                        if (newPosInBeats >= sptBeatRange.size())
+                        {
+                            break;
+                        }
+                        toAdd.add(new NoteEvent(ne, ne.getDurationInBeats(), newPosInBeats));
+                    }
+                    offset += sizeInBeats;
+                }
+
+                toAdd.forEach(ne -> spCustom.add(ne));  // No need for addOrdered() here
+            }
+
+
+            // Make sure it's not too long 
+            spCustom.silenceAfter(sptBeatRange.size());
+
+
+            // Shift to fit the current song part position
+            spCustom.shiftEvents(sptBeatRange.from);
+
+            return spCustom;
+        }
+    }
+
+    /**
+     * Transform the drums phrase depending on the RP_SYS_DrumsTransform value.
+     */
+    private class DrumsTransformStage implements PhrasePipeline.SongPartStage
+    {
+
+        @Override
+        public String getName()
+        {
+            return "RP_SYS_DrumsTransform";
+        }
+
+        @Override
+        public boolean isApplicable(RhythmVoice rv, SongPart spt)
+        {
+            RP_SYS_DrumsTransform rpDrumsTransform = RP_SYS_DrumsTransform.getDrumsTransformRp(spt.getRhythm());
+            return rpDrumsTransform != null && spt.getRPValue(rpDrumsTransform).getRhythmVoice() == rv;
+        }
+
+        @Override
+        public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+        {
+            RP_SYS_DrumsTransformValue rpValue = spt.getRPValue(RP_SYS_DrumsTransform.getDrumsTransformRp(spt.getRhythm()));
+            LOGGER.log(Level.FINE, "DrumsTransformStage.process() rpValue={0} rvDrums={1}", new Object[]
+            {
+                rpValue, rv
+            });
+            SongPartContext sptContext = new SongPartContext(songContext.getSong(), songContext.getMidiMix(), songContext.getSptBarRange(spt));
+            var chain = rpValue.getTransformChain(false);
+            return chain.transform(sptPhrase, sptContext);
+        }
+    }
+
+    /**
+     * Transform rhythm phrases depending on the RP_SYS_PhraseTransform value.
+     */
+    private class PhraseTransformStage implements PhrasePipeline.SongPartStage
+    {
+
+        @Override
+        public String getName()
+        {
+            return "RP_SYS_PhraseTransform";
+        }
+
+        @Override
+        public boolean isApplicable(RhythmVoice rv, SongPart spt)
+        {
+            RP_SYS_PhraseTransform rpPhraseTransform = RP_SYS_PhraseTransform.getPhraseTransformRp(spt.getRhythm());
+            return rpPhraseTransform != null && spt.getRPValue(rpPhraseTransform).getChainRhythmVoices().contains(rv);
+        }
+
+        @Override
+        public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+        {
+            RP_SYS_PhraseTransformValue rpValue = spt.getRPValue(RP_SYS_PhraseTransform.getPhraseTransformRp(spt.getRhythm()));
+            LOGGER.log(Level.FINE, "PhraseTransformStage.process() rpValue={0}", rpValue);
+            SongPartContext sptContext = new SongPartContext(songContext.getSong(), songContext.getMidiMix(), songContext.getSptBarRange(spt));
+            var chain = rpValue.getTransformChain(rv);
+            return chain.transform(sptPhrase, sptContext);
+        }
+    }
+
+    /**
+     * Remove notes for muted RhythmVoices depending on the RP_SYS_Mute value.
+     */
+    private class MuteStage implements PhrasePipeline.SongPartStage
+    {
+
+        @Override
+        public String getName()
+        {
+            return "RP_SYS_Mute";
+        }
+
+        @Override
+        public boolean isApplicable(RhythmVoice rv, SongPart spt)
+        {
+            Rhythm r = spt.getRhythm();
+            RP_SYS_Mute rpMute = RP_SYS_Mute.getMuteRp(r);
+            if (rpMute == null)
+            {
+                return false;
+            }
+            Set<String> muteValues = spt.getRPValue(rpMute);
+            return !muteValues.isEmpty() && RP_SYS_Mute.getMutedRhythmVoices(r, muteValues).contains(rv);
+        }
+
+        @Override
+        public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+        {
+            return new Phrase(sptPhrase.getChannel());
+        }
+    }
+
     /**
      * A runnable to generate all data.
      * <p>
@@ -1156,6 +1478,14 @@ public class SongSequenceBuilder
         // The generated sequence from the phrases
         private SongSequence songSequence;
         private MusicGenerationException musicException = null;
+        private final boolean exportable;
+        private final boolean ignoreMidiMixMute;
+
+        private AllBuilderTask(boolean exportable, boolean ignoreMidiMixMute)
+        {
+            this.exportable = exportable;
+            this.ignoreMidiMixMute = ignoreMidiMixMute;
+        }
 
         @Override
         public void run()
@@ -1163,7 +1493,7 @@ public class SongSequenceBuilder
             try
             {
                 var rvPhrases = buildMapRvPhrase();
-                songSequence = buildSongSequence(rvPhrases);
+                songSequence = buildSongSequence(rvPhrases, exportable, ignoreMidiMixMute);
             } catch (MusicGenerationException ex)
             {
                 musicException = ex;
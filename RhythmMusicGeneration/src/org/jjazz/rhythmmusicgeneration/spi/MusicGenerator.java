@@ -59,6 +59,9 @@ public interface MusicGenerator
      * - Handling of the channel's specific velocity shift<br>
      * - Handling of the instrument's specific transposition<br>
      * - Drums rerouting<br>
+     * <p>
+     * Thread-safety: the framework calls generateMusic() and Rhythm.loadResources() of the different rhythms one after the other,
+     * unless isConcurrentGenerationSupported() returns true, see below.
      *
      * @param context The information to be used for music generation
      * @return One Phrase per rhythm voice/channel.
@@ -68,4 +71,40 @@ public interface MusicGenerator
      *
      */
     Map<RhythmVoice, Phrase> generateMusic(SongContext context) throws MusicGenerationException;
+
+    /**
+     * Tell the framework if this generator can generate music while other rhythms are generating music in other threads.
+     * <p>
+     * If true, SongSequenceBuilder may call generateMusic() and Rhythm.loadResources() in a dedicated thread, concurrently with
+     * the generation of the other rhythms of the song. An AdaptedRhythm and its source rhythm are always generated one after the
+     * other in the same thread. The implementation must not share unsynchronized mutable state with other rhythm instances (static
+     * caches, shared resource objects, etc.).
+     * <p>
+     * The built-in implementations which return true are the DummyGenerator and the RhythmStub rhythms.
+     *
+     * @return False by default
+     * @see org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder#setParallelGeneration(boolean)
+     */
+    default boolean isConcurrentGenerationSupported()
+    {
+        return false;
+    }
+
+    /**
+     * Tell the framework if this generator produces the same music for a SongPart whether it is generated alone or as part of the
+     * whole song.
+     * <p>
+     * If true, SongSequenceBuilder may generate the music SongPart by SongPart and reuse the phrases of a SongPart for the other
+     * SongParts with the same content, see SongPartGenerationCache. This is not possible if the generator depends on the previous
+     * bars (e.g. a pattern or a fill continued across SongParts) or if it introduces random variations.
+     * <p>
+     * The built-in implementations which return true are the DummyGenerator and the RhythmStub rhythms.
+     *
+     * @return False by default
+     * @see org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder#setSongPartCache(org.jjazz.rhythmmusicgeneration.api.SongPartGenerationCache)
+     */
+    default boolean isSongPartGenerationSupported()
+    {
+        return false;
+    }
 }
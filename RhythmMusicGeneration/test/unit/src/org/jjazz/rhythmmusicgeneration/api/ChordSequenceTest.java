@@ -0,0 +1,375 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Factory;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check the ChordSequence indexed lookups against linear scans.
+ */
+public class ChordSequenceTest
+{
+
+    private static final String[] CHORD_SYMBOLS = new String[]
+    {
+        "Cm7", "F7", "Bb7M", "Eb7M", "Am7b5", "D7b9", "Gm7", "C7"
+    };
+    private static final int NB_BEATS = 4;
+    private int chordCounter;
+
+    public ChordSequenceTest()
+    {
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        System.out.println("testEmpty() --");
+        ChordSequence cSeq = new ChordSequence(2, 4);
+        checkQueries(cSeq);
+        for (int bar = 0; bar < 10; bar++)
+        {
+            assertEquals(-1, cSeq.indexOfFirstFromBar(bar));
+            assertNull(cSeq.getChordSymbol(new Position(bar, 0)));
+        }
+        assertTrue(cSeq.subSequence(3, 5, true).isEmpty());
+
+        ChordSequence cSeq0 = new ChordSequence(0, 0);
+        checkQueries(cSeq0);
+        assertEquals(-1, cSeq0.indexOfFirstFromBar(0));
+    }
+
+    @Test
+    public void testOutOfRange() throws ParseException
+    {
+        System.out.println("testOutOfRange() --");
+        ChordSequence cSeq = new ChordSequence(4, 6);
+        cSeq.add(createChord(4, 0));
+        cSeq.add(createChord(4, 2));
+        cSeq.add(createChord(6, 1.5f));
+        cSeq.add(createChord(7, 0));
+        cSeq.add(createChord(9, 3));
+        checkQueries(cSeq);
+
+        assertEquals(0, cSeq.indexOfFirstFromBar(0));
+        assertEquals(-1, cSeq.indexOfFirstFromBar(10));
+        assertEquals(-1, cSeq.indexOfFirstFromBar(Integer.MAX_VALUE));
+        assertNull(cSeq.getChordSymbol(new Position(3, 3)));
+        assertSame(cSeq.get(4), cSeq.getChordSymbol(new Position(50, 0)));
+        assertEquals(4, cSeq.indexOfLastBeforeBar(100));
+
+        for (int[] range : new int[][]
+        {
+            {
+                3, 5
+            },
+            {
+                4, 10
+            }
+        })
+        {
+            try
+            {
+                cSeq.subSequence(range[0], range[1], true);
+                fail("range=" + range[0] + "-" + range[1]);
+            } catch (IllegalArgumentException ex)
+            {
+                // OK
+            }
+        }
+    }
+
+    /**
+     * Chords not starting on the first bar, several chords per bar and empty bars.
+     */
+    @Test
+    public void testQueries() throws ParseException
+    {
+        System.out.println("testQueries() --");
+        Random rnd = new Random(33);
+        for (int i = 0; i < 50; i++)
+        {
+            int startBar = rnd.nextInt(5);
+            ChordSequence cSeq = new ChordSequence(startBar, 1 + rnd.nextInt(12));
+            for (Position pos : randomPositions(rnd, cSeq, rnd.nextInt(20)))
+            {
+                cSeq.add(createChord(pos.getBar(), pos.getBeat()));
+            }
+            checkQueries(cSeq);
+        }
+    }
+
+    /**
+     * Queries must reflect the list modifications made after a previous query.
+     */
+    @Test
+    public void testQueriesAfterModification() throws ParseException
+    {
+        System.out.println("testQueriesAfterModification() --");
+        Random rnd = new Random(35);
+        ChordSequence cSeq = new ChordSequence(2, 8);
+        checkQueries(cSeq);
+
+        for (int i = 0; i < 500; i++)
+        {
+            int op = rnd.nextInt(7);
+            int size = cSeq.size();
+            switch (op)
+            {
+                case 0:
+                case 1:
+                    // Insert at a random position
+                    Position pos = randomPositions(rnd, cSeq, 1).get(0);
+                    if (!containsPosition(cSeq, pos))
+                    {
+                        int index = 0;
+                        while (index < size && cSeq.get(index).getPosition().compareTo(pos) < 0)
+                        {
+                            index++;
+                        }
+                        cSeq.add(index, createChord(pos.getBar(), pos.getBeat()));
+                    }
+                    break;
+                case 2:
+                    // Append
+                    Position last = size == 0 ? null : cSeq.get(size - 1).getPosition();
+                    Position end = new Position(cSeq.getStartBar() + cSeq.getNbBars() - 1, NB_BEATS - 0.5f);
+                    if (last == null)
+                    {
+                        cSeq.add(createChord(cSeq.getStartBar(), 0));
+                    } else if (last.compareTo(end) < 0)
+                    {
+                        Position next = last.getBeat() < NB_BEATS - 0.5f ? new Position(last.getBar(), last.getBeat() + 0.5f)
+                                : new Position(last.getBar() + 1, 0);
+                        cSeq.add(createChord(next.getBar(), next.getBeat()));
+                    }
+                    break;
+                case 3:
+                    // Replace with a chord at a different position between the neighbours
+                    if (size > 0)
+                    {
+                        int index = rnd.nextInt(size);
+                        Position low = index == 0 ? new Position(cSeq.getStartBar(), 0) : cSeq.get(index - 1).getPosition();
+                        Position high = index == size - 1 ? new Position(cSeq.getStartBar() + cSeq.getNbBars() - 1, NB_BEATS - 0.5f)
+                                : cSeq.get(index + 1).getPosition();
+                        List<Position> candidates = new ArrayList<>();
+                        for (Position p : allPositions(cSeq))
+                        {
+                            if (p.compareTo(low) >= 0 && p.compareTo(high) <= 0 && (p.equals(cSeq.get(index).getPosition()) || !containsPosition(cSeq, p)))
+                            {
+                                candidates.add(p);
+                            }
+                        }
+                        Position p = candidates.get(rnd.nextInt(candidates.size()));
+                        cSeq.set(index, createChord(p.getBar(), p.getBeat()));
+                    }
+                    break;
+                case 4:
+                    if (size > 0)
+                    {
+                        cSeq.remove(rnd.nextInt(size));
+                    }
+                    break;
+                case 5:
+                    if (size > 0)
+                    {
+                        cSeq.remove(cSeq.get(rnd.nextInt(size)));
+                    }
+                    break;
+                case 6:
+                    if (rnd.nextInt(20) == 0)
+                    {
+                        cSeq.clear();
+                    } else
+                    {
+                        int bar = cSeq.getStartBar() + rnd.nextInt(cSeq.getNbBars());
+                        cSeq.removeIf(cliCs -> cliCs.getPosition().getBar() == bar);
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("op=" + op);
+            }
+            checkQueries(cSeq);
+        }
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Compare all queries with the linear scan implementations, including bars and positions outside of the sequence range.
+     */
+    private void checkQueries(ChordSequence cSeq)
+    {
+        int startBar = cSeq.getStartBar();
+        int endBar = startBar + cSeq.getNbBars() - 1;
+
+        for (int bar = 0; bar <= endBar + 3; bar++)
+        {
+            assertEquals("bar=" + bar + " cSeq=" + cSeq, indexOfFirstFromBarLinear(cSeq, bar), cSeq.indexOfFirstFromBar(bar));
+            if (bar >= 1)
+            {
+                assertEquals("bar=" + bar + " cSeq=" + cSeq, indexOfLastBeforeBarLinear(cSeq, bar), cSeq.indexOfLastBeforeBar(bar));
+            }
+            for (float beat = 0; beat < NB_BEATS; beat += 0.25f)
+            {
+                Position pos = new Position(bar, beat);
+                assertSame("pos=" + pos + " cSeq=" + cSeq, getChordSymbolLinear(cSeq, pos), cSeq.getChordSymbol(pos));
+            }
+        }
+
+        for (int subStartBar = startBar; subStartBar <= endBar; subStartBar++)
+        {
+            for (int subEndBar = subStartBar; subEndBar <= endBar; subEndBar++)
+            {
+                ChordSequence sub = cSeq.subSequence(subStartBar, subEndBar, true);
+                assertEquals(subStartBar, sub.getStartBar());
+                assertEquals(subEndBar - subStartBar + 1, sub.getNbBars());
+                List<CLI_ChordSymbol> expected = subSequenceLinear(cSeq, subStartBar, subEndBar);
+                String msg = "sub=" + subStartBar + "-" + subEndBar + " cSeq=" + cSeq;
+                int offset = sub.size() - expected.size();
+                assertTrue(msg, offset == 0 || offset == 1);
+                if (offset == 1)
+                {
+                    // Init copy of the last chord before subStartBar
+                    CLI_ChordSymbol initCs = sub.get(0);
+                    assertEquals(msg, new Position(subStartBar, 0), initCs.getPosition());
+                    assertEquals(msg, cSeq.get(indexOfLastBeforeBarLinear(cSeq, subStartBar)).getData().getName(), initCs.getData().getName());
+                }
+                for (int i = 0; i < expected.size(); i++)
+                {
+                    assertSame(msg, expected.get(i), sub.get(i + offset));
+                }
+            }
+        }
+    }
+
+    private int indexOfFirstFromBarLinear(ChordSequence cSeq, int absoluteBarIndex)
+    {
+        for (int i = 0; i < cSeq.size(); i++)
+        {
+            if (cSeq.get(i).getPosition().getBar() >= absoluteBarIndex)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfLastBeforeBarLinear(ChordSequence cSeq, int absoluteBarIndex)
+    {
+        int index = -1;
+        for (int i = 0; i < cSeq.size(); i++)
+        {
+            if (cSeq.get(i).getPosition().getBar() < absoluteBarIndex)
+            {
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private CLI_ChordSymbol getChordSymbolLinear(ChordSequence cSeq, Position pos)
+    {
+        for (int i = cSeq.size() - 1; i >= 0; i--)
+        {
+            CLI_ChordSymbol cliCs = cSeq.get(i);
+            if (cliCs.getPosition().compareTo(pos) <= 0)
+            {
+                return cliCs;
+            }
+        }
+        return null;
+    }
+
+    private List<CLI_ChordSymbol> subSequenceLinear(ChordSequence cSeq, int subStartBar, int subEndBar)
+    {
+        List<CLI_ChordSymbol> res = new ArrayList<>();
+        for (CLI_ChordSymbol cliCs : cSeq)
+        {
+            int bar = cliCs.getPosition().getBar();
+            if (bar >= subStartBar && bar <= subEndBar)
+            {
+                res.add(cliCs);
+            }
+        }
+        return res;
+    }
+
+    private CLI_ChordSymbol createChord(int bar, float beat) throws ParseException
+    {
+        ExtChordSymbol ecs = new ExtChordSymbol(CHORD_SYMBOLS[chordCounter++ % CHORD_SYMBOLS.length]);
+        return CLI_Factory.getDefault().createChordSymbol(null, ecs, new Position(bar, beat));
+    }
+
+    /**
+     * All the half-beat positions in the sequence range.
+     */
+    private List<Position> allPositions(ChordSequence cSeq)
+    {
+        List<Position> res = new ArrayList<>();
+        for (int bar = cSeq.getStartBar(); bar < cSeq.getStartBar() + cSeq.getNbBars(); bar++)
+        {
+            for (float beat = 0; beat < NB_BEATS; beat += 0.5f)
+            {
+                res.add(new Position(bar, beat));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Distinct sorted random positions in the sequence range.
+     */
+    private List<Position> randomPositions(Random rnd, ChordSequence cSeq, int n)
+    {
+        List<Position> all = allPositions(cSeq);
+        List<Position> res = new ArrayList<>();
+        for (Position pos : all)
+        {
+            if (res.size() < n && rnd.nextInt(all.size()) < n)
+            {
+                res.add(pos);
+            }
+        }
+        if (res.isEmpty() && n > 0)
+        {
+            res.add(all.get(rnd.nextInt(all.size())));
+        }
+        return res;
+    }
+
+    private boolean containsPosition(ChordSequence cSeq, Position pos)
+    {
+        return cSeq.stream().anyMatch(cliCs -> cliCs.getPosition().equals(pos));
+    }
+}
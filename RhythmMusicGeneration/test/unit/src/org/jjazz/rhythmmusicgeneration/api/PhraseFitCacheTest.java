@@ -0,0 +1,171 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import static org.jjazz.phrase.api.Phrase.PARENT_NOTE;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check that PhraseFitCache results are identical to the Phrases.fitXXX() results.
+ */
+public class PhraseFitCacheTest
+{
+
+    private static final String[] DEST_CHORD_SYMBOLS = new String[]
+    {
+        "C7M", "F7", "Bb7M", "Eb", "Am7b5", "D7b9", "Gm7", "C7", "F#m", "Ab7#11", "E7/G#", "Dsus"
+    };
+
+    @Test
+    public void testSameAsPhrases() throws ParseException
+    {
+        System.out.println("testSameAsPhrases() --");
+        PhraseFitCache cache = new PhraseFitCache();
+        Random rnd = new Random(1);
+        for (int t = 0; t < 3; t++)
+        {
+            SourcePhrase pSrc = getRandomSourcePhrase(rnd, "C7");
+            for (String s : DEST_CHORD_SYMBOLS)
+            {
+                ExtChordSymbol ecsDest = new ExtChordSymbol(s);
+
+                // Twice: first call is a miss, second call is a hit
+                for (int i = 0; i < 2; i++)
+                {
+                    assertSamePhrase(pSrc, Phrases.fitMelodyPhrase2ChordSymbol(pSrc, ecsDest, false), cache.fitMelodyPhrase2ChordSymbol(pSrc, ecsDest, false));
+                    assertSamePhrase(pSrc, Phrases.fitMelodyPhrase2ChordSymbol(pSrc, ecsDest, true), cache.fitMelodyPhrase2ChordSymbol(pSrc, ecsDest, true));
+                    assertSamePhrase(pSrc, Phrases.fitBassPhrase2ChordSymbol(pSrc, ecsDest), cache.fitBassPhrase2ChordSymbol(pSrc, ecsDest));
+                    assertSamePhrase(pSrc, Phrases.fitChordPhrase2ChordSymbol(pSrc, ecsDest), cache.fitChordPhrase2ChordSymbol(pSrc, ecsDest));
+                }
+            }
+        }
+        System.out.println(" cache=" + cache);
+        assertTrue(cache.getHitCount() > 0);
+    }
+
+    @Test
+    public void testHitRate() throws ParseException
+    {
+        System.out.println("testHitRate() --");
+        PhraseFitCache cache = new PhraseFitCache();
+        SourcePhrase pSrc = getRandomSourcePhrase(new Random(2), "Cm7");
+        ExtChordSymbol ecs1 = new ExtChordSymbol("Fm7");
+        ExtChordSymbol ecs2 = new ExtChordSymbol("Bb7");
+
+        int nbRepeats = 10;
+        for (int i = 0; i < nbRepeats; i++)
+        {
+            cache.fitMelodyPhrase2ChordSymbol(pSrc, ecs1, false);
+            cache.fitMelodyPhrase2ChordSymbol(pSrc, ecs2, false);
+        }
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2 * nbRepeats - 2, cache.getHitCount());
+        assertEquals(0.9f, cache.getHitRate(), 0.0001f);
+        assertEquals(2, cache.size());
+
+
+        // A different source phrase with the same notes is a hit, a different source chord symbol is a miss
+        SourcePhrase pSrc2 = new SourcePhrase(pSrc, pSrc.getSourceChordSymbol());
+        cache.fitMelodyPhrase2ChordSymbol(pSrc2, ecs1, false);
+        assertEquals(2, cache.getMissCount());
+        SourcePhrase pSrc3 = new SourcePhrase(pSrc, new ExtChordSymbol("C7"));
+        cache.fitMelodyPhrase2ChordSymbol(pSrc3, ecs1, false);
+        assertEquals(3, cache.getMissCount());
+
+
+        // Size is bounded
+        PhraseFitCache smallCache = new PhraseFitCache(1);
+        smallCache.fitBassPhrase2ChordSymbol(pSrc, ecs1);
+        smallCache.fitBassPhrase2ChordSymbol(pSrc, ecs2);
+        smallCache.fitBassPhrase2ChordSymbol(pSrc, ecs1);
+        assertEquals(1, smallCache.size());
+        assertEquals(0, smallCache.getHitCount());
+
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitRate(), 0);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Check notes and PARENT_NOTE client properties.
+     * <p>
+     * When a fit method reworks the source phrase (e.g. too many degrees for a chord phrase) the PARENT_NOTE properties refer to
+     * the notes of a reworked copy: they can only be compared by value.
+     */
+    private void assertSamePhrase(SourcePhrase pSrc, Phrase expected, Phrase actual)
+    {
+        Set<NoteEvent> srcNotes = Collections.newSetFromMap(new IdentityHashMap<>());
+        srcNotes.addAll(pSrc);
+        assertEquals(expected.getChannel(), actual.getChannel());
+        assertEquals(expected, actual);
+        Iterator<NoteEvent> itExpected = expected.iterator();
+        Iterator<NoteEvent> itActual = actual.iterator();
+        while (itExpected.hasNext())
+        {
+            NoteEvent neExpected = itExpected.next();
+            NoteEvent neActual = itActual.next();
+            Object parentExpected = neExpected.getClientProperty(PARENT_NOTE);
+            Object parentActual = neActual.getClientProperty(PARENT_NOTE);
+            if (srcNotes.contains(parentExpected))
+            {
+                assertSame(parentExpected, parentActual);
+            } else
+            {
+                assertEquals(parentExpected, parentActual);
+            }
+        }
+    }
+
+    private SourcePhrase getRandomSourcePhrase(Random rnd, String srcChordSymbol) throws ParseException
+    {
+        SourcePhrase p = new SourcePhrase(0, new ExtChordSymbol(srcChordSymbol));
+        float pos = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            int pitch = 36 + rnd.nextInt(48);
+            float duration = 0.25f + rnd.nextInt(4) * 0.25f;
+            p.add(new NoteEvent(pitch, duration, 30 + rnd.nextInt(90), pos));
+            if (rnd.nextBoolean())
+            {
+                // Chord note at same position
+                p.add(new NoteEvent(Math.min(127, pitch + 3 + rnd.nextInt(5)), duration, 30 + rnd.nextInt(90), pos));
+            }
+            pos += duration;
+        }
+        return p;
+    }
+}
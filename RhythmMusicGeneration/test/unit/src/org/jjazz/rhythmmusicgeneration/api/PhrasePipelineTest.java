@@ -0,0 +1,197 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.phrase.api.NoteEvent;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.phrase.api.SizedPhrase;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.util.api.FloatRange;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Check that processing SongParts in parallel gives the same result than a sequential processing.
+ */
+public class PhrasePipelineTest
+{
+
+    private static final int NB_SONG_PARTS = 48;
+    private static final int NB_BEATS_PER_SONG_PART = 16;
+    private static final int NB_THREADS = 4;
+    private final List<SongPart> songParts = new ArrayList<>();
+    private final FloatRange[] sptRanges = new FloatRange[NB_SONG_PARTS];
+    private final TimeSignature[] sptTimeSignatures = new TimeSignature[NB_SONG_PARTS];
+
+    public PhrasePipelineTest()
+    {
+        for (int i = 0; i < NB_SONG_PARTS; i++)
+        {
+            final String name = "spt" + i;
+            SongPart spt = (SongPart) Proxy.newProxyInstance(SongPart.class.getClassLoader(), new Class<?>[]
+            {
+                SongPart.class
+            }, (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "equals":
+                        return proxy == args[0];
+                    case "toString":
+                        return name;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+            songParts.add(spt);
+            sptRanges[i] = new FloatRange(i * NB_BEATS_PER_SONG_PART, (i + 1) * NB_BEATS_PER_SONG_PART);
+            sptTimeSignatures[i] = TimeSignature.FOUR_FOUR;
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential()
+    {
+        System.out.println("testParallelSameAsSequential() --");
+        Random rnd = new Random(1);
+        for (int t = 0; t < 20; t++)
+        {
+            Phrase p = getRandomPhrase(rnd);
+
+            PhrasePipeline sequential = createPipeline();
+            Phrase pSequential = sequential.process(null, p);
+
+            PhrasePipeline parallel = createPipeline();
+            parallel.setMaxThreads(NB_THREADS);
+            Phrase pParallel = parallel.process(null, p);
+
+            assertEquals(pSequential.getChannel(), pParallel.getChannel());
+            assertEquals(pSequential, pParallel);
+            assertEquals(sequential.getStageTimings().keySet(), parallel.getStageTimings().keySet());
+        }
+    }
+
+    @Test
+    public void testStageException()
+    {
+        System.out.println("testStageException() --");
+        PhrasePipeline pipeline = new PhrasePipeline(null, songParts, sptRanges, sptTimeSignatures, Arrays.asList(new TestStage("Failing", 5)
+        {
+            @Override
+            public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+            {
+                throw new IllegalStateException(spt.toString());
+            }
+        }));
+        pipeline.setMaxThreads(NB_THREADS);
+        try
+        {
+            pipeline.process(null, getRandomPhrase(new Random(2)));
+            fail("No exception thrown");
+        } catch (IllegalStateException ex)
+        {
+            // Exception from the first failing SongPart
+            assertEquals("spt0", ex.getMessage());
+        }
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private PhrasePipeline createPipeline()
+    {
+        return new PhrasePipeline(null, songParts, sptRanges, sptTimeSignatures, Arrays.asList(
+                new TestStage("Transpose", 2),
+                new TestStage("Velocity", 3)));
+    }
+
+    /**
+     * A phrase with notes possibly ringing over the next SongParts.
+     */
+    private Phrase getRandomPhrase(Random rnd)
+    {
+        Phrase p = new Phrase(rnd.nextInt(16));
+        float pos = 0;
+        while (pos < NB_SONG_PARTS * NB_BEATS_PER_SONG_PART)
+        {
+            float dur = rnd.nextInt(8) == 0 ? 4 + rnd.nextFloat() * 20 : 0.1f + rnd.nextFloat();
+            p.addOrdered(new NoteEvent(30 + rnd.nextInt(60), dur, 1 + rnd.nextInt(126), pos));
+            pos += rnd.nextFloat();
+        }
+        return p;
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * A stage applicable every modulo SongParts, which modifies notes and adds a note at the SongPart start.
+     */
+    private class TestStage implements PhrasePipeline.SongPartStage
+    {
+
+        private final String name;
+        private final int modulo;
+
+        TestStage(String name, int modulo)
+        {
+            this.name = name;
+            this.modulo = modulo;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public boolean isApplicable(RhythmVoice rv, SongPart spt)
+        {
+            return songParts.indexOf(spt) % modulo == 0;
+        }
+
+        @Override
+        public Phrase process(RhythmVoice rv, SongPart spt, SizedPhrase sptPhrase)
+        {
+            Phrase res = new Phrase(sptPhrase.getChannel());
+            for (NoteEvent ne : sptPhrase)
+            {
+                int pitch = Math.min(127, ne.getPitch() + modulo);
+                int velocity = Math.max(1, ne.getVelocity() - modulo);
+                res.addOrdered(new NoteEvent(pitch, ne.getDurationInBeats(), velocity, ne.getPositionInBeats()));
+            }
+            res.addOrdered(new NoteEvent(60 + modulo, 0.5f, 64, sptPhrase.getBeatRange().from));
+            return res;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.rhythmmusicgeneration.api;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Track;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheet;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheetFactory;
+import org.jjazz.leadsheet.chordleadsheet.api.UnsupportedEditException;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_ChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Factory;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.jjazz.midi.api.DrumKit;
+import org.jjazz.midi.api.keymap.KeyMapGM;
+import org.jjazz.midi.api.synths.StdSynth;
+import org.jjazz.midimix.api.MidiMixManager;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythm.stubs.api.DummyRhythm;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongFactory;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.songstructure.api.SongStructure;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * SongSequenceBuilder tests using a synthesized song with DummyGenerator-based rhythms.
+ */
+public class SongSequenceBuilderTest
+{
+
+    private static final int NB_SECTIONS = 4;
+    private static final int NB_BARS_PER_SECTION = 4;
+    private static final String[] CHORD_SYMBOLS = new String[]
+    {
+        "Cm7", "F7", "Bb7M", "Eb7M", "Am7b5", "D7b9", "Gm7", "C7"
+    };
+    private final List<Rhythm> rhythms = new ArrayList<>();
+    private Song song;
+
+    @Before
+    public void setUp()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            rhythms.add(new TestRhythm("TestRhythm" + i));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        if (song != null)
+        {
+            song.close(false);
+            song = null;
+        }
+    }
+
+    @Test
+    public void testParallelSameAsSequential() throws MusicGenerationException, UnsupportedEditException, MidiUnavailableException, ParseException
+    {
+        System.out.println("testParallelSameAsSequential() --");
+        song = createSong(rhythms);
+        SongContext context = new SongContext(song, MidiMixManager.getInstance().createMix(song));
+
+        SongSequenceBuilder sequential = new SongSequenceBuilder(context);
+        assertFalse(sequential.isParallelGeneration());
+        SongSequenceBuilder.SongSequence seqSequential = sequential.buildAll(true);
+
+        SongSequenceBuilder parallel = new SongSequenceBuilder(context);
+        parallel.setParallelGeneration(true);
+        SongSequenceBuilder.SongSequence seqParallel = parallel.buildAll(true);
+
+        assertSamePhrases(seqSequential.mapRvPhrase, seqParallel.mapRvPhrase);
+        assertSameSequence(seqSequential.sequence, seqParallel.sequence);
+    }
+
+    /**
+     * Rhythms are generated concurrently by default only if they support it.
+     */
+    @Test
+    public void testConcurrentGenerationSupported() throws MusicGenerationException, UnsupportedEditException, MidiUnavailableException, ParseException
+    {
+        System.out.println("testConcurrentGenerationSupported() --");
+        song = createSong(rhythms);
+        SongContext context = new SongContext(song, MidiMixManager.getInstance().createMix(song));
+        Map<RhythmVoice, Phrase> expected = new SongSequenceBuilder(context).buildMapRvPhrase(true);
+        for (Rhythm r : rhythms)
+        {
+            assertEquals(Set.of(Thread.currentThread()), ((TestRhythm) r).generationThreads);
+            ((TestRhythm) r).generationThreads.clear();
+        }
+
+
+        // Same rhythms but supporting concurrent generation
+        for (Rhythm r : rhythms)
+        {
+            ((TestRhythm) r).concurrentGenerationSupported = true;
+        }
+        assertSamePhrases(expected, new SongSequenceBuilder(context).buildMapRvPhrase(true));
+        if (SongSequenceBuilder.MAX_GENERATION_THREADS > 1)
+        {
+            for (Rhythm r : rhythms)
+            {
+                assertFalse(((TestRhythm) r).generationThreads.contains(Thread.currentThread()));
+            }
+        }
+    }
+
+    /**
+     * Use a single rhythm song whose sections have the same chord progression, except the initial chord symbol of the first
+     * section. SongParts 1 and 2 have the same content and the same next SongPart first bar: SongPart 2 is a cache hit.
+     */
+    @Test
+    public void testSongPartCache() throws MusicGenerationException, UnsupportedEditException, MidiUnavailableException, ParseException
+    {
+        System.out.println("testSongPartCache() --");
+        song = createSong(rhythms.subList(0, 1));
+        SongContext context = new SongContext(song, MidiMixManager.getInstance().createMix(song));
+        Map<RhythmVoice, Phrase> expected = new SongSequenceBuilder(context).buildMapRvPhrase(true);
+
+
+        // First generation
+        SongPartGenerationCache cache = new SongPartGenerationCache();
+        SongSequenceBuilder builder = new SongSequenceBuilder(context);
+        builder.setSongPartCache(cache);
+        assertSamePhrases(expected, builder.buildMapRvPhrase(true));
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.size());
+
+
+        // Regeneration: all SongParts are hits
+        assertSamePhrases(expected, builder.buildMapRvPhrase(true));
+        assertEquals(3, cache.getMissCount());
+        assertEquals(5, cache.getHitCount());
+
+
+        // Different tempo: no hit from the previous generations
+        song.setTempo(song.getTempo() + 10);
+        expected = new SongSequenceBuilder(context).buildMapRvPhrase(true);
+        assertSamePhrases(expected, builder.buildMapRvPhrase(true));
+        assertEquals(6, cache.getMissCount());
+        assertEquals(6, cache.getHitCount());
+    }
+
+    /**
+     * Cached generation of a multi-rhythm song, as done by the playback sessions: compare with a whole song generation.
+     */
+    @Test
+    public void testSongPartCacheSameAsWholeSong() throws MusicGenerationException, UnsupportedEditException, MidiUnavailableException, ParseException
+    {
+        System.out.println("testSongPartCacheSameAsWholeSong() --");
+        song = createSong(rhythms.subList(0, 2));
+        SongContext context = new SongContext(song, MidiMixManager.getInstance().createMix(song));
+        SongSequenceBuilder.SongSequence expected = new SongSequenceBuilder(context).buildAll(true);
+
+
+        SongPartGenerationCache cache = new SongPartGenerationCache();
+        SongSequenceBuilder builder = new SongSequenceBuilder(context);
+        builder.setSongPartCache(cache);
+        SongSequenceBuilder.SongSequence actual = builder.buildAll(true);
+        assertSamePhrases(expected.mapRvPhrase, actual.mapRvPhrase);
+        assertSameSequence(expected.sequence, actual.sequence);
+        assertEquals(4, cache.getMissCount());
+
+
+        // Change a chord symbol in the 2nd bar of the last section: only the last SongPart is regenerated
+        ChordLeadSheet cls = song.getChordLeadSheet();
+        var cliCs = cls.getItems(cls.getSection(NB_SECTIONS * NB_BARS_PER_SECTION - 1), CLI_ChordSymbol.class).get(3);
+        cls.changeItem(cliCs, new ExtChordSymbol("E7"));
+        expected = new SongSequenceBuilder(context).buildAll(true);
+        actual = builder.buildAll(true);
+        assertSamePhrases(expected.mapRvPhrase, actual.mapRvPhrase);
+        assertSameSequence(expected.sequence, actual.sequence);
+        assertEquals(5, cache.getMissCount());
+        assertEquals(3, cache.getHitCount());
+
+
+        // A rhythm which does not support SongPart generation is generated for the whole song
+        cache.clear();
+        ((TestRhythm) rhythms.get(1)).songPartGenerationSupported = false;
+        actual = builder.buildAll(true);
+        assertSamePhrases(expected.mapRvPhrase, actual.mapRvPhrase);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    /**
+     * Build the phrases SongPart by SongPart in a playback order starting in the middle of the song, as done by
+     * ProgressiveSongSession.
+     */
+    @Test
+    public void testProgressiveSameAsWholeContext() throws MusicGenerationException, UnsupportedEditException, MidiUnavailableException, ParseException
+    {
+        System.out.println("testProgressiveSameAsWholeContext() --");
+        song = createSong(rhythms);
+        SongContext context = new SongContext(song, MidiMixManager.getInstance().createMix(song));
+        SongSequenceBuilder builder = new SongSequenceBuilder(context);
+        Map<RhythmVoice, Phrase> expected = builder.buildMapRvPhrase(true);
+
+        List<SongPart> spts = song.getSongStructure().getSongParts();
+        Map<RhythmVoice, Phrase> actual = new HashMap<>();
+        for (int i = 0; i < spts.size(); i++)
+        {
+            SongPart spt = spts.get((i + 2) % spts.size());
+            Map<RhythmVoice, Phrase> sptRvPhrases = builder.buildMapRvPhrase(spt.getBarRange());
+            for (RhythmVoice rv : sptRvPhrases.keySet())
+            {
+                Phrase p = sptRvPhrases.get(rv);
+                actual.computeIfAbsent(rv, k -> new Phrase(p.getChannel())).add(p);
+            }
+        }
+
+        assertSamePhrases(expected, actual);
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    private void assertSamePhrases(Map<RhythmVoice, Phrase> expected, Map<RhythmVoice, Phrase> actual)
+    {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (RhythmVoice rv : expected.keySet())
+        {
+            Phrase pExpected = expected.get(rv);
+            assertFalse(rv.getName(), pExpected.isEmpty());
+            assertEquals(rv.getName(), pExpected.getChannel(), actual.get(rv).getChannel());
+            assertEquals(rv.getName(), pExpected, actual.get(rv));
+        }
+    }
+
+    private void assertSameSequence(Sequence expected, Sequence actual)
+    {
+        assertEquals(expected.getResolution(), actual.getResolution());
+        Track[] expectedTracks = expected.getTracks();
+        Track[] actualTracks = actual.getTracks();
+        assertEquals(expectedTracks.length, actualTracks.length);
+        for (int t = 0; t < expectedTracks.length; t++)
+        {
+            assertEquals("track " + t, expectedTracks[t].size(), actualTracks[t].size());
+            for (int i = 0; i < expectedTracks[t].size(); i++)
+            {
+                MidiEvent me = expectedTracks[t].get(i);
+                MidiEvent ma = actualTracks[t].get(i);
+                assertEquals("track " + t + " event " + i, me.getTick(), ma.getTick());
+                assertArrayEquals("track " + t + " event " + i, me.getMessage().getMessage(), ma.getMessage().getMessage());
+            }
+        }
+    }
+
+    /**
+     * A 4/4 song with NB_SECTIONS sections of NB_BARS_PER_SECTION bars, 2 chord symbols per bar.
+     * <p>
+     * Rhythms are used in turn for each SongPart.
+     */
+    private Song createSong(List<Rhythm> rhythms) throws UnsupportedEditException, ParseException
+    {
+        TimeSignature ts = TimeSignature.FOUR_FOUR;
+        int nbBars = NB_SECTIONS * NB_BARS_PER_SECTION;
+        CLI_Factory clif = CLI_Factory.getDefault();
+        ChordLeadSheet cls = ChordLeadSheetFactory.getDefault().createEmptyLeadSheet("S0", ts, nbBars);
+        for (int i = 1; i < NB_SECTIONS; i++)
+        {
+            cls.addSection(clif.createSection(cls, "S" + i, ts, i * NB_BARS_PER_SECTION));
+        }
+        int index = 0;
+        for (int bar = 0; bar < nbBars; bar++)
+        {
+            for (int beat = 0; beat < 4; beat += 2)
+            {
+                if (bar > 0 || beat > 0)
+                {
+                    // Leadsheet already has a chord symbol at bar 0 beat 0
+                    ExtChordSymbol ecs = new ExtChordSymbol(CHORD_SYMBOLS[index % CHORD_SYMBOLS.length]);
+                    cls.addItem(clif.createChordSymbol(cls, ecs, new Position(bar, beat)));
+                }
+                index++;
+            }
+        }
+
+        Song sg = SongFactory.getInstance().createSong("SongSequenceBuilderTest", cls);
+        SongStructure sgs = sg.getSongStructure();
+        List<SongPart> oldSpts = sgs.getSongParts();
+        List<SongPart> newSpts = new ArrayList<>();
+        for (int i = 0; i < oldSpts.size(); i++)
+        {
+            SongPart spt = oldSpts.get(i);
+            newSpts.add(spt.clone(rhythms.get(i % rhythms.size()), spt.getStartBarIndex(), spt.getNbBars(), spt.getParentSection()));
+        }
+        sgs.replaceSongParts(oldSpts, newSpts);
+
+        return sg;
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * A deterministic 4/4 rhythm with a drums and a bass voice, music is generated by the DummyGenerator.
+     */
+    private static class TestRhythm extends DummyRhythm implements MusicGenerator
+    {
+
+        private volatile boolean concurrentGenerationSupported;
+        private volatile boolean songPartGenerationSupported = true;
+        private final Set<Thread> generationThreads = ConcurrentHashMap.newKeySet();
+
+        public TestRhythm(String name)
+        {
+            super(name, TimeSignature.FOUR_FOUR);
+            rhythmVoices.add(0, new RhythmVoice(new DrumKit(DrumKit.Type.STANDARD, KeyMapGM.getInstance()), this, RhythmVoice.Type.DRUMS, "Drums", StdSynth.getInstance().getVoidInstrument(), 9));
+        }
+
+        @Override
+        public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context) throws MusicGenerationException
+        {
+            generationThreads.add(Thread.currentThread());
+            return new DummyGenerator(this).generateMusic(context);
+        }
+
+        @Override
+        public boolean isConcurrentGenerationSupported()
+        {
+            return concurrentGenerationSupported;
+        }
+
+        @Override
+        public boolean isSongPartGenerationSupported()
+        {
+            return songPartGenerationSupported;
+        }
+    }
+}
@@ -99,6 +99,18 @@ public class RhythmStub implements Rhythm, MusicGenerator
         return new DummyGenerator(this).generateMusic(context);
     }
 
+    @Override
+    public boolean isConcurrentGenerationSupported()
+    {
+        return true;
+    }
+
+    @Override
+    public boolean isSongPartGenerationSupported()
+    {
+        return true;
+    }
+
     @Override
     public boolean equals(Object o)
     {
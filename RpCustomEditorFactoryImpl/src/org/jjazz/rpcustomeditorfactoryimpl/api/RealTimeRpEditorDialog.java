@@ -30,6 +30,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.midi.Sequencer;
@@ -37,15 +42,18 @@ import javax.swing.AbstractAction;
 import javax.swing.JComponent;
 import javax.swing.JRootPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheet;
 import org.jjazz.leadsheet.chordleadsheet.api.UnsupportedEditException;
 import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Section;
 import org.jjazz.musiccontrol.api.MusicController;
 import org.jjazz.musiccontrol.api.MusicController.State;
-import org.jjazz.musiccontrol.api.playbacksession.DynamicSongSession;
+import org.jjazz.musiccontrol.api.PlaybackListenerAdapter;
 import org.jjazz.musiccontrol.api.playbacksession.PlaybackSession;
 import org.jjazz.musiccontrol.api.playbacksession.SongContextProvider;
+import org.jjazz.musiccontrol.api.playbacksession.StaticSongSession;
 import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession;
+import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession.Update;
 import org.jjazz.rhythm.api.MusicGenerationException;
 import org.jjazz.rhythm.api.RhythmParameter;
 import org.jjazz.song.api.Song;
@@ -56,6 +64,7 @@ import org.jjazz.songstructure.api.SongStructure;
 import org.jjazz.ui.rpviewer.spi.RpCustomEditor;
 import org.jjazz.util.api.IntRange;
 import org.jjazz.util.api.ResUtil;
+import org.jjazz.util.api.Utilities;
 import org.openide.*;
 import org.openide.util.Exceptions;
 
@@ -65,6 +74,10 @@ import org.openide.util.Exceptions;
  * <p>
  * The dialog can be customized for a given RhythmParameter via the RealTimeRpEditorPanel panel which provides the RP value
  * editing capability.
+ * <p>
+ * The dialog keeps the phrases generated for the compare value (the RP default value) and for the last edited value: switching
+ * between them does not require a regeneration, the playing sequence is updated at the next bar. Phrases for a new edited value
+ * are generated in the background while user is editing, the most recent value wins.
  *
  * @param <E> RhythmParameter value class
  */
@@ -82,6 +95,23 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
     private E saveRpValue;
     private GlobalKeyActionListener globalKeyListener;
     private PlaybackSession previousPlaybackSession;
+    /**
+     * Phrases generated for rpDefaultValue.
+     */
+    private Update compareUpdate;
+    /**
+     * Phrases generated for editedUpdateRpValue.
+     */
+    private Update editedUpdate;
+    private E editedUpdateRpValue;
+    private int editedUpdateRequestId;
+    /**
+     * The update to be applied at the next bar.
+     */
+    private Update pendingUpdate;
+    private final AtomicInteger lastEditRequestId = new AtomicInteger();
+    private ExecutorService generationExecutor;
+    private final BarListener barListener = new BarListener();
     private static final Logger LOGGER = Logger.getLogger(RealTimeRpEditorDialog.class.getSimpleName());  //NOI18N
 
     public RealTimeRpEditorDialog(RealTimeRpEditorComponent<E> comp)
@@ -115,6 +145,7 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
         LOGGER.fine("preset() -- rpValue=" + rpValue + " sptContext=" + sptContext);
 
         songPartContextOriginal = sptContext;
+        clearUpdates();
 
 
         var spt = sptContext.getSongPart();
@@ -234,7 +265,7 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
             LOGGER.log(Level.FINE, "propertyChange() evt={0}", evt);
             if (tbtn_hear.isSelected() && !tbtn_compare.isSelected())
             {
-                updateRpValueInPreviewContext((E) evt.getNewValue());
+                previewRpValue((E) evt.getNewValue());
             }
         }
     }
@@ -283,28 +314,30 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
      */
     private void startPlayback()
     {
-        // Prepare the dynamic session
+        // Prepare the session
         if (session != null)
         {
             session.close();
         }
+        clearUpdates();
+
 
         // Build song context with the original RP value or edited one
-        E rpValue = tbtn_compare.isSelected() ? rpDefaultValue : editor.getEditedRpValue();
+        boolean compare = tbtn_compare.isSelected();
+        E rpValue = compare ? rpDefaultValue : editor.getEditedRpValue();
         songPartContextpreview = buildPreviewContext(songPartContextOriginal, getRhythmParameter(), rpValue);
 
 
-        // DynamicSongSession automatically generates updates if a RhythmParameter value changes
-        var dynSession = DynamicSongSession.getSession(songPartContextpreview,
+        // Value changes are applied by ourselves using the pre-generated phrases
+        var staticSession = StaticSongSession.getSession(songPartContextpreview,
                 true,
                 false,
                 false,
                 true,
-                false,
                 Sequencer.LOOP_CONTINUOUSLY,
                 null);
 
-        session = UpdatableSongSession.getSession(dynSession);
+        session = UpdatableSongSession.getSession(staticSession);
         try
         {
             session.generate(false);
@@ -319,6 +352,27 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
         }
 
 
+        // Save the generated phrases and prepare the other ones in the background
+        Update update = new Update(session.getOriginalRvPhraseMap(), null);
+        if (compare)
+        {
+            compareUpdate = update;
+            generateUpdate(editor.getEditedRpValue(), false);
+        } else
+        {
+            editedUpdate = update;
+            editedUpdateRpValue = rpValue;
+            editedUpdateRequestId = lastEditRequestId.get();
+            if (!Objects.equals(rpValue, rpDefaultValue))
+            {
+                generateUpdate(rpDefaultValue, true);
+            } else
+            {
+                compareUpdate = update;
+            }
+        }
+
+
         // Play
         MusicController mc = MusicController.getInstance();
         try
@@ -336,17 +390,161 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
 
     }
 
+    /**
+     * Make the playing session use the specified RP value.
+     * <p>
+     * Use the pre-generated phrases if available, otherwise start a background generation.
+     *
+     * @param rpValue
+     */
+    private void previewRpValue(E rpValue)
+    {
+        if (session == null)
+        {
+            return;
+        }
+        if (compareUpdate != null && Objects.equals(rpValue, rpDefaultValue))
+        {
+            scheduleUpdate(compareUpdate);
+        } else if (editedUpdate != null && Objects.equals(rpValue, editedUpdateRpValue))
+        {
+            scheduleUpdate(editedUpdate);
+        } else
+        {
+            generateUpdate(rpValue, Objects.equals(rpValue, rpDefaultValue));
+        }
+    }
+
+    /**
+     * Generate in the background the phrases for the specified RP value.
+     * <p>
+     * Generation tasks are executed one at a time. A task for an edited value is skipped if a more recent edited value is waiting.
+     *
+     * @param rpValue
+     * @param compare True if rpValue is the compare value
+     */
+    private void generateUpdate(E rpValue, boolean compare)
+    {
+        if (generationExecutor == null)
+        {
+            generationExecutor = Executors.newSingleThreadExecutor();
+        }
+        final int requestId = compare ? -1 : lastEditRequestId.incrementAndGet();
+        final UpdatableSongSession targetSession = session;
+        final SongPartContext sptContext = buildPreviewContext(songPartContextOriginal, getRhythmParameter(), rpValue);
+
+        Runnable task = () ->
+        {
+            if (!compare && requestId != lastEditRequestId.get())
+            {
+                // A more recent value will be generated
+                return;
+            }
+
+            LOGGER.log(Level.FINE, "generateUpdate() task start rpValue={0} compare={1}", new Object[]
+            {
+                rpValue, compare
+            });
+            var tmpSession = StaticSongSession.getSession(sptContext, true, false, false, false, Sequencer.LOOP_CONTINUOUSLY, null);
+            try
+            {
+                if (tmpSession.getState().equals(PlaybackSession.State.NEW))
+                {
+                    tmpSession.generate(true);          // This can block for some time, possibly a few seconds on slow computers/complex rhythms
+                }
+            } catch (MusicGenerationException ex)
+            {
+                LOGGER.warning("generateUpdate() ex=" + ex.getMessage());
+                tmpSession.close();
+                return;
+            }
+            Update update = new Update(tmpSession.getRvPhraseMap(), null);
+            tmpSession.close();
+
+            SwingUtilities.invokeLater(() -> updateGenerated(targetSession, update, rpValue, compare, requestId));
+        };
+
+        try
+        {
+            generationExecutor.submit(task);
+        } catch (RejectedExecutionException ex)
+        {
+            // Dialog is being closed
+        }
+    }
 
     /**
-     * Update the RhythmParameter value in the preview context.
+     * Called on the EDT when phrases were generated for a RP value.
      *
+     * @param targetSession The session which was active when generation was requested
+     * @param update
      * @param rpValue
+     * @param compare
+     * @param requestId
      */
-    private void updateRpValueInPreviewContext(E rpValue)
+    private void updateGenerated(UpdatableSongSession targetSession, Update update, E rpValue, boolean compare, int requestId)
     {
-        SongStructure ss = songPartContextpreview.getSong().getSongStructure();
-        SongPart spt = ss.getSongPart(songPartContextOriginal.getBarRange().from);
-        ss.setRhythmParameterValue(spt, (RhythmParameter) editor.getRhythmParameter(), rpValue);
+        if (targetSession != session || session == null)
+        {
+            // Obsolete
+            return;
+        }
+
+        if (compare)
+        {
+            compareUpdate = update;
+        } else
+        {
+            if (requestId < editedUpdateRequestId)
+            {
+                // A more recent value was already generated
+                return;
+            }
+            editedUpdate = update;
+            editedUpdateRpValue = rpValue;
+            editedUpdateRequestId = requestId;
+        }
+
+
+        // Use it if it matches the current state
+        if (tbtn_hear.isSelected() && compare == tbtn_compare.isSelected() && Objects.equals(rpValue, editor.getEditedRpValue()))
+        {
+            scheduleUpdate(update);
+        }
+    }
+
+    /**
+     * Apply the update at the next bar if sequence is playing, otherwise apply it immediately.
+     *
+     * @param update
+     */
+    private void scheduleUpdate(Update update)
+    {
+        pendingUpdate = update;
+        if (!MusicController.getInstance().getState().equals(State.PLAYING))
+        {
+            applyPendingUpdate();
+        }
+    }
+
+    private void applyPendingUpdate()
+    {
+        if (pendingUpdate != null && session != null && session.getState().equals(PlaybackSession.State.GENERATED))
+        {
+            LOGGER.log(Level.FINE, "applyPendingUpdate() pendingUpdate={0}", pendingUpdate);
+            session.updateSequence(pendingUpdate);
+        }
+        pendingUpdate = null;
+    }
+
+    private void clearUpdates()
+    {
+        compareUpdate = null;
+        editedUpdate = null;
+        editedUpdateRpValue = null;
+        editedUpdateRequestId = 0;
+        pendingUpdate = null;
+        lastEditRequestId.set(0);
     }
 
     /**
@@ -538,7 +736,7 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
 
         if (tbtn_hear.isSelected())
         {
-            updateRpValueInPreviewContext(editor.getEditedRpValue());
+            previewRpValue(editor.getEditedRpValue());
         }
         fbtn_reset.setEnabled(!tbtn_compare.isSelected());
 
@@ -554,7 +752,14 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
         if (session != null)
         {
             session.close();
+            session = null;
+        }
+        if (generationExecutor != null)
+        {
+            Utilities.shutdownAndAwaitTermination(generationExecutor, 1000, 100);
+            generationExecutor = null;
         }
+        MusicController.getInstance().removePlaybackListener(barListener);
         DefaultKeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventPostProcessor(globalKeyListener);
     }//GEN-LAST:event_formWindowClosed
 
@@ -597,6 +802,10 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
         }
 
 
+        // Used to switch between the pre-generated phrases on bar changes
+        MusicController.getInstance().addPlaybackListener(barListener);
+
+
         // Add our global key listener
         globalKeyListener = new GlobalKeyActionListener();
         DefaultKeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventPostProcessor(globalKeyListener);
@@ -656,4 +865,18 @@ public class RealTimeRpEditorDialog<E> extends RpCustomEditor<E> implements Prop
         }
     }
 
+
+    /**
+     * Apply the pending update when a new bar starts.
+     */
+    private class BarListener extends PlaybackListenerAdapter
+    {
+
+        @Override
+        public void barChanged(int oldBar, int newBar)
+        {
+            applyPendingUpdate();
+        }
+    }
+
 }
@@ -0,0 +1,526 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.songeditormanager.api;
+
+import java.awt.GraphicsEnvironment;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.midimix.api.MidiMixManager;
+import org.jjazz.rhythm.api.AdaptedRhythm;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongCreationException;
+import org.jjazz.song.api.SongFactory;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.startup.spi.StartupTask;
+import org.jjazz.util.api.Utilities;
+import org.netbeans.api.sendopts.CommandException;
+import org.netbeans.spi.sendopts.Env;
+import org.netbeans.spi.sendopts.Option;
+import org.netbeans.spi.sendopts.OptionProcessor;
+import org.openide.LifecycleManager;
+import org.openide.util.lookup.ServiceProvider;
+
+/**
+ * Export song files to Midi files without user interaction.
+ * <p>
+ * Each song is loaded via SongFactory, its MidiMix is obtained from MidiMixManager, then the sequence is built with
+ * SongSequenceBuilder.buildExportableSequence() and written as a Midi file type 1. Songs are exported in parallel by a pool of
+ * worker threads. A failure on a song is reported in its Result, it does not abort the batch.
+ * <p>
+ * Songs which use the same rhythm (or the same source rhythm for AdaptedRhythms) are never generated at the same time, since a
+ * rhythm instance is shared by all songs.
+ * <p>
+ * Can be used from the command line: <code>--exportmidi outputDir songFileOrDir...</code>, optionally with
+ * <code>--exportmidithreads n</code>. The export starts once rhythms are available, then the application exits.
+ * <p>
+ * Limitation: the command line export is not headless. The rhythm database is created by StartupTasks which run once the main
+ * window is showing, and which may display dialogs (rhythm scanning progress, rhythm file errors). So the export also runs as a
+ * StartupTask during the normal application startup, and the main window is displayed. When an export is requested the command
+ * line and recent song files are not opened, but the other startup tasks (e.g. the example songs copy or the fresh start Midi
+ * wizard) still run. In a headless JVM (java.awt.headless=true) the --exportmidi option is rejected, since the startup tasks would
+ * never run.
+ * <p>
+ * The export() method itself has no UI dependency, it can be called from any thread once the rhythm database is ready.
+ */
+public class MidiBatchExporter
+{
+
+    /**
+     * The result of the export of one song file.
+     */
+    static public class Result
+    {
+
+        private final File songFile;
+        private final File midiFile;
+        private final long generationTimeMs;
+        private final long totalTimeMs;
+        private final Exception exception;
+
+        private Result(File songFile, File midiFile, long generationTimeMs, long totalTimeMs, Exception exception)
+        {
+            this.songFile = songFile;
+            this.midiFile = midiFile;
+            this.generationTimeMs = generationTimeMs;
+            this.totalTimeMs = totalTimeMs;
+            this.exception = exception;
+        }
+
+        public File getSongFile()
+        {
+            return songFile;
+        }
+
+        /**
+         * @return Can be null if export failed
+         */
+        public File getMidiFile()
+        {
+            return midiFile;
+        }
+
+        /**
+         * The time spent in SongSequenceBuilder.buildExportableSequence().
+         *
+         * @return -1 if generation did not complete
+         */
+        public long getGenerationTimeMs()
+        {
+            return generationTimeMs;
+        }
+
+        /**
+         * The time spent to load, generate and write the song.
+         *
+         * @return
+         */
+        public long getTotalTimeMs()
+        {
+            return totalTimeMs;
+        }
+
+        /**
+         * @return Null if export was successful
+         */
+        public Exception getException()
+        {
+            return exception;
+        }
+
+        public boolean isSuccess()
+        {
+            return exception == null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return songFile.getName() + ": " + (isSuccess()
+                    ? "OK generation=" + generationTimeMs + "ms total=" + totalTimeMs + "ms => " + midiFile.getAbsolutePath()
+                    : "FAILED " + exception.getMessage());
+        }
+    }
+
+    public static final int DEFAULT_NB_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final String SONG_EXTENSION = "sng";
+    private static final String MIDI_EXTENSION = "mid";
+    private static final Map<String, ReentrantLock> mapRhythmIdLock = new ConcurrentHashMap<>();
+    private final int nbThreads;
+    private final boolean ignoreMidiMixMute;
+    private static final Logger LOGGER = Logger.getLogger(MidiBatchExporter.class.getSimpleName());
+
+    /**
+     * Create an exporter.
+     *
+     * @param nbThreads The number of worker threads, must be &gt; 0
+     * @param ignoreMidiMixMute If true, a track will sound even if it was muted in the song MidiMix
+     */
+    public MidiBatchExporter(int nbThreads, boolean ignoreMidiMixMute)
+    {
+        if (nbThreads < 1)
+        {
+            throw new IllegalArgumentException("nbThreads=" + nbThreads);   //NOI18N
+        }
+        this.nbThreads = nbThreads;
+        this.ignoreMidiMixMute = ignoreMidiMixMute;
+    }
+
+    public int getNbThreads()
+    {
+        return nbThreads;
+    }
+
+    public boolean isIgnoreMidiMixMute()
+    {
+        return ignoreMidiMixMute;
+    }
+
+    /**
+     * Export the specified song files.
+     * <p>
+     * The Midi file of a song uses the song file name with a .mid extension. Per-song results and the global throughput are logged.
+     *
+     * @param songFiles
+     * @param outputDir Must be an existing directory
+     * @return One result per song file, in the songFiles order
+     */
+    public List<Result> export(List<File> songFiles, File outputDir)
+    {
+        if (songFiles == null || outputDir == null || !outputDir.isDirectory())
+        {
+            throw new IllegalArgumentException("songFiles=" + songFiles + " outputDir=" + outputDir);   //NOI18N
+        }
+
+        LOGGER.log(Level.INFO, "export() exporting {0} song files to {1} with {2} threads", new Object[]
+        {
+            songFiles.size(), outputDir.getAbsolutePath(), nbThreads
+        });
+
+        long startTime = System.currentTimeMillis();
+        List<Result> res = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+        List<Future<Result>> futures = new ArrayList<>();
+        try
+        {
+            for (File songFile : songFiles)
+            {
+                futures.add(executor.submit(() -> exportSong(songFile, outputDir)));
+            }
+
+            for (int i = 0; i < songFiles.size(); i++)
+            {
+                Result r;
+                try
+                {
+                    r = futures.get(i).get();
+                } catch (ExecutionException ex)
+                {
+                    // exportSong() catches exceptions, but a RuntimeException or an Error might happen
+                    Throwable cause = ex.getCause();
+                    r = new Result(songFiles.get(i), null, -1, 0, cause instanceof Exception ? (Exception) cause : new Exception(cause));
+                } catch (InterruptedException ex)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                LOGGER.info("export() " + r);
+                res.add(r);
+            }
+        } finally
+        {
+            futures.forEach(f -> f.cancel(true));
+            Utilities.shutdownAndAwaitTermination(executor, 1000, 100);
+        }
+
+
+        // Report
+        long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        long nbOk = res.stream().filter(r -> r.isSuccess()).count();
+        long generationTime = res.stream().filter(r -> r.isSuccess()).mapToLong(r -> r.getGenerationTimeMs()).sum();
+        LOGGER.log(Level.INFO, "export() {0} songs exported, {1} failed, total time={2}ms, cumulated generation time={3}ms, throughput={4} songs/s", new Object[]
+        {
+            nbOk, res.size() - nbOk, duration, generationTime, String.format("%.2f", nbOk * 1000f / duration)
+        });
+
+        return res;
+    }
+
+    /**
+     * Check if a batch export was requested on the command line.
+     *
+     * @return True if the --exportmidi option was used
+     */
+    static public boolean isCommandLineExport()
+    {
+        return CommandLineProcessor.outputDir != null;
+    }
+
+    /**
+     * Get the song files from a list of files or directories.
+     *
+     * @param files If a file is a directory, its song files are added (not recursive)
+     * @return
+     */
+    static public List<File> getSongFiles(List<File> files)
+    {
+        List<File> res = new ArrayList<>();
+        for (File f : files)
+        {
+            if (f.isDirectory())
+            {
+                File[] dirFiles = f.listFiles((dir, name) -> Utilities.getExtension(name).equalsIgnoreCase(SONG_EXTENSION));
+                if (dirFiles != null)
+                {
+                    Arrays.sort(dirFiles);
+                    res.addAll(Arrays.asList(dirFiles));
+                }
+            } else if (Utilities.getExtension(f.getName()).equalsIgnoreCase(SONG_EXTENSION))
+            {
+                res.add(f);
+            } else
+            {
+                LOGGER.log(Level.WARNING, "getSongFiles() Not a song file, ignored: {0}", f.getAbsolutePath());
+            }
+        }
+        return res;
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Load, generate and write one song.
+     *
+     * @param songFile
+     * @param outputDir
+     * @return
+     */
+    private Result exportSong(File songFile, File outputDir)
+    {
+        long startTime = System.currentTimeMillis();
+        long generationTime = -1;
+        File midiFile = new File(outputDir, Utilities.replaceExtension(songFile.getName(), MIDI_EXTENSION));
+        Song song = null;
+        Exception exception = null;
+
+        try
+        {
+            // SongFactory and MidiMixManager are not thread-safe
+            MidiMix midiMix;
+            synchronized (MidiBatchExporter.class)
+            {
+                song = SongFactory.getInstance().createFromFile(songFile);      // throws SongCreationException
+                midiMix = MidiMixManager.getInstance().findMix(song);          // throws MidiUnavailableException
+            }
+
+
+            // Generate while holding the locks of the used rhythms
+            SongContext sgContext = new SongContext(song, midiMix);
+            List<ReentrantLock> locks = getRhythmLocks(sgContext);
+            SongSequenceBuilder.SongSequence songSequence;
+            locks.forEach(l -> l.lock());
+            try
+            {
+                long t = System.currentTimeMillis();
+                SongSequenceBuilder seqBuilder = new SongSequenceBuilder(sgContext);
+                songSequence = seqBuilder.buildExportableSequence(true, ignoreMidiMixMute);       // throws MusicGenerationException
+                generationTime = System.currentTimeMillis() - t;
+            } finally
+            {
+                for (int i = locks.size() - 1; i >= 0; i--)
+                {
+                    locks.get(i).unlock();
+                }
+            }
+
+
+            MidiSystem.write(songSequence.sequence, 1, midiFile);       // throws IOException
+
+        } catch (SongCreationException | MidiUnavailableException | MusicGenerationException | IOException ex)
+        {
+            LOGGER.log(Level.WARNING, "exportSong() songFile={0} ex={1}", new Object[]
+            {
+                songFile.getAbsolutePath(), ex.getMessage()
+            });
+            exception = ex;
+        } finally
+        {
+            if (song != null)
+            {
+                synchronized (MidiBatchExporter.class)
+                {
+                    SongFactory.getInstance().unregisterSong(song);
+                }
+            }
+        }
+
+        return new Result(songFile, exception == null ? midiFile : null, generationTime, System.currentTimeMillis() - startTime, exception);
+    }
+
+    /**
+     * Get the locks of the rhythms used by a context, in a consistent order to avoid deadlocks.
+     *
+     * @param context
+     * @return
+     */
+    private List<ReentrantLock> getRhythmLocks(SongContext context)
+    {
+        Set<String> rhythmIds = new TreeSet<>();
+        for (Rhythm r : context.getUniqueRhythms())
+        {
+            Rhythm sr = (r instanceof AdaptedRhythm) ? ((AdaptedRhythm) r).getSourceRhythm() : r;
+            rhythmIds.add(sr.getUniqueId());
+        }
+        List<ReentrantLock> res = new ArrayList<>();
+        for (String id : rhythmIds)
+        {
+            res.add(mapRhythmIdLock.computeIfAbsent(id, k -> new ReentrantLock()));
+        }
+        return res;
+    }
+
+    // =================================================================================================
+    // Command line
+    // =================================================================================================
+    /**
+     * Collect the --exportmidi command line arguments.
+     */
+    @ServiceProvider(service = OptionProcessor.class)
+    static public class CommandLineProcessor extends OptionProcessor
+    {
+
+        private static final Option exportOption = Option.additionalArguments(Option.NO_SHORT_NAME, "exportmidi");
+        private static final Option threadsOption = Option.requiredArgument(Option.NO_SHORT_NAME, "exportmidithreads");
+        private static File outputDir;
+        private static final List<File> files = Collections.synchronizedList(new ArrayList<>());
+        private static int nbThreads = DEFAULT_NB_THREADS;
+
+        @Override
+        protected Set<Option> getOptions()
+        {
+            HashSet<Option> set = new HashSet<>();
+            set.add(exportOption);
+            set.add(threadsOption);
+            return set;
+        }
+
+        @Override
+        protected void process(Env env, Map<Option, String[]> values) throws CommandException
+        {
+            LOGGER.fine("CommandLineProcessor.process() --  env=" + env + " values=" + values);   //NOI18N
+
+            if (values.containsKey(threadsOption))
+            {
+                try
+                {
+                    nbThreads = Integer.parseInt(values.get(threadsOption)[0]);
+                } catch (NumberFormatException ex)
+                {
+                    throw new CommandException(1, "Invalid --exportmidithreads value: " + values.get(threadsOption)[0]);
+                }
+                if (nbThreads < 1)
+                {
+                    throw new CommandException(1, "Invalid --exportmidithreads value: " + nbThreads);
+                }
+            }
+
+            if (values.containsKey(exportOption))
+            {
+                if (GraphicsEnvironment.isHeadless())
+                {
+                    throw new CommandException(1, "--exportmidi is not supported in headless mode, it requires the application main window");
+                }
+                String[] args = values.get(exportOption);
+                if (args.length < 2)
+                {
+                    throw new CommandException(1, "Usage: --exportmidi outputDir songFileOrDir...");
+                }
+                outputDir = getFile(env, args[0]);
+                if (!outputDir.isDirectory())
+                {
+                    throw new CommandException(1, "Output directory not found: " + outputDir.getAbsolutePath());
+                }
+                for (int i = 1; i < args.length; i++)
+                {
+                    files.add(getFile(env, args[i]));
+                }
+            }
+        }
+
+        private File getFile(Env env, String fileName)
+        {
+            File file = new File(fileName);
+            if (!file.isAbsolute())
+            {
+                file = new File(env.getCurrentDirectory(), fileName);
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Run the batch export requested on the command line once rhythms are available, then exit.
+     * <p>
+     * Runs after the rhythm database creation task, when the main window is showing.
+     */
+    @ServiceProvider(service = StartupTask.class)
+    static public class ExportAtStartupTask implements StartupTask
+    {
+
+        public final int PRIORITY = 610;            // Right after the opening of the command line files
+
+        @Override
+        public boolean run()
+        {
+            if (CommandLineProcessor.outputDir == null)
+            {
+                return true;
+            }
+
+            List<File> songFiles = getSongFiles(new ArrayList<>(CommandLineProcessor.files));
+            MidiBatchExporter exporter = new MidiBatchExporter(CommandLineProcessor.nbThreads, false);
+            Thread t = new Thread(() ->
+            {
+                exporter.export(songFiles, CommandLineProcessor.outputDir);
+                LifecycleManager.getDefault().exit();
+            }, "MidiBatchExporter");
+            t.start();
+
+            return true;
+        }
+
+        @Override
+        public int getPriority()
+        {
+            return PRIORITY;
+        }
+
+        @Override
+        public String getName()
+        {
+            return "Export command line song files to Midi";
+        }
+    }
+}
@@ -259,7 +259,11 @@ public class StartupShutdownSongManager extends OptionProcessor implements Calla
 
             // If command line arguments specified, just open them and ignore recent open files
             var instance = StartupShutdownSongManager.getInstance();
-            if (!instance.cmdLineFilesToOpen.isEmpty())
+            if (MidiBatchExporter.isCommandLineExport())
+            {
+                // Application will exit after the export, don't open songs
+                LOGGER.info("OpenFilesAtStartupTask.run() Midi batch export requested, song files are not opened");   //NOI18N
+            } else if (!instance.cmdLineFilesToOpen.isEmpty())
             {
                 var sem = SongEditorManager.getInstance();
 
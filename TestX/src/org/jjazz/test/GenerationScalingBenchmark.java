@@ -0,0 +1,365 @@
+/*
+ *  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ * 
+ *  Copyright @2019 Jerome Lelasseux. All rights reserved.
+ *
+ *  This file is part of the JJazzLabX software.
+ *   
+ *  JJazzLabX is free software: you can redistribute it and/or modify
+ *  it under the terms of the Lesser GNU General Public License (LGPLv3) 
+ *  as published by the Free Software Foundation, either version 3 of the License, 
+ *  or (at your option) any later version.
+ *
+ *  JJazzLabX is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the 
+ *  GNU Lesser General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with JJazzLabX.  If not, see <https://www.gnu.org/licenses/>
+ * 
+ *  Contributor(s): 
+ */
+package org.jjazz.test;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.midi.MidiUnavailableException;
+import org.jjazz.harmony.api.TimeSignature;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheet;
+import org.jjazz.leadsheet.chordleadsheet.api.ChordLeadSheetFactory;
+import org.jjazz.leadsheet.chordleadsheet.api.UnsupportedEditException;
+import org.jjazz.leadsheet.chordleadsheet.api.item.CLI_Factory;
+import org.jjazz.leadsheet.chordleadsheet.api.item.ExtChordSymbol;
+import org.jjazz.leadsheet.chordleadsheet.api.item.Position;
+import org.jjazz.midi.api.DrumKit;
+import org.jjazz.midi.api.keymap.KeyMapGM;
+import org.jjazz.midi.api.synths.StdSynth;
+import org.jjazz.midimix.api.MidiMix;
+import org.jjazz.midimix.api.MidiMixManager;
+import org.jjazz.musiccontrol.api.playbacksession.BaseSongSession;
+import org.jjazz.musiccontrol.api.playbacksession.UpdatableSongSession;
+import org.jjazz.phrase.api.Phrase;
+import org.jjazz.rhythm.api.MusicGenerationException;
+import org.jjazz.rhythm.api.Rhythm;
+import org.jjazz.rhythm.api.RhythmVoice;
+import org.jjazz.rhythm.stubs.api.DummyRhythm;
+import org.jjazz.rhythmmusicgeneration.api.DummyGenerator;
+import org.jjazz.rhythmmusicgeneration.api.SongSequenceBuilder;
+import org.jjazz.rhythmmusicgeneration.spi.MusicGenerator;
+import org.jjazz.song.api.Song;
+import org.jjazz.song.api.SongFactory;
+import org.jjazz.songcontext.api.SongContext;
+import org.jjazz.songstructure.api.SongPart;
+import org.jjazz.songstructure.api.SongStructure;
+import org.netbeans.api.progress.BaseProgressUtils;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.util.Exceptions;
+
+/**
+ * For debug purposes: measure how music generation time scales with the song size and the chord density.
+ * <p>
+ * Songs are synthesized in-process for each combination of nbBars, nbChordsPerBar and nbSongParts. SongParts use several
+ * deterministic benchmark rhythms (drums + one note per chord symbol bass). For each song the SongSequenceBuilder stage timings
+ * and the UpdatableSongSession.updateSequence() time (all tracks updated) are measured. Result is a CSV file, one line per
+ * song, values are the best time in milliseconds over the measured runs.
+ */
+//@ActionID(category = "JJazz", id = "org.jjazz.test.generationscalingbenchmark")
+//@ActionRegistration(displayName = "Run generation scaling benchmark")
+//@ActionReferences(
+//        {
+//            @ActionReference(path = "Menu/Edit", position = 50300),
+//        })
+public final class GenerationScalingBenchmark implements ActionListener
+{
+
+    public static final int[] DEFAULT_NB_BARS = new int[]
+    {
+        32, 64, 128, 256, 512
+    };
+    public static final int[] DEFAULT_NB_CHORDS_PER_BAR = new int[]
+    {
+        1, 2, 4
+    };
+    public static final int[] DEFAULT_NB_SONG_PARTS = new int[]
+    {
+        4, 16
+    };
+    public static final int DEFAULT_NB_RHYTHMS = 3;
+    public static final int DEFAULT_NB_RUNS = 3;
+    private static final String[] CHORD_SYMBOLS = new String[]
+    {
+        "Cm7", "F7", "Bb7M", "Eb7M", "Am7b5", "D7b9", "Gm7", "C7"
+    };
+    private static final String UPDATE_SEQUENCE_COLUMN = "updateSequence";
+    private static final String TOTAL_BUILD_COLUMN = "buildAll";
+    private static final Logger LOGGER = Logger.getLogger(GenerationScalingBenchmark.class.getSimpleName());
+
+    @Override
+    public void actionPerformed(ActionEvent ae)
+    {
+        LOGGER.info("actionPerformed() --");   //NOI18N
+        Runnable r = () ->
+        {
+            try
+            {
+                String csv = runBenchmark(DEFAULT_NB_BARS, DEFAULT_NB_CHORDS_PER_BAR, DEFAULT_NB_SONG_PARTS, DEFAULT_NB_RHYTHMS, DEFAULT_NB_RUNS);
+                File f = File.createTempFile("JJazzGenerationScaling", ".csv");
+                Files.write(f.toPath(), csv.getBytes(StandardCharsets.UTF_8));
+                LOGGER.log(Level.INFO, "actionPerformed() benchmark results saved to {0}\n{1}", new Object[]   //NOI18N
+                {
+                    f.getAbsolutePath(), csv
+                });
+            } catch (IOException | MusicGenerationException | MidiUnavailableException | UnsupportedEditException ex)
+            {
+                Exceptions.printStackTrace(ex);
+            }
+        };
+        BaseProgressUtils.showProgressDialogAndRun(r, "Running generation scaling benchmark...");
+    }
+
+    /**
+     * Run the benchmark for each combination of the specified parameters.
+     *
+     * @param nbBarsValues
+     * @param nbChordsPerBarValues
+     * @param nbSongPartsValues Combinations where nbSongParts &gt; nbBars are skipped
+     * @param nbRhythms Number of different rhythms used by the SongParts
+     * @param nbRuns Number of measured runs per song, after one warm-up run. The best time is kept.
+     * @return The CSV text, with a header line.
+     * @throws MusicGenerationException
+     * @throws MidiUnavailableException
+     * @throws UnsupportedEditException
+     */
+    public static String runBenchmark(int[] nbBarsValues, int[] nbChordsPerBarValues, int[] nbSongPartsValues, int nbRhythms, int nbRuns) throws MusicGenerationException, MidiUnavailableException, UnsupportedEditException
+    {
+        if (nbRhythms < 1 || nbRuns < 1)
+        {
+            throw new IllegalArgumentException("nbRhythms=" + nbRhythms + " nbRuns=" + nbRuns);   //NOI18N
+        }
+
+        List<Rhythm> rhythms = new ArrayList<>();
+        for (int i = 0; i < nbRhythms; i++)
+        {
+            rhythms.add(new BenchmarkRhythm("BenchmarkRhythm" + i));
+        }
+
+        List<String> stageNames = null;
+        StringBuilder sb = new StringBuilder();
+        for (int nbBars : nbBarsValues)
+        {
+            for (int nbChordsPerBar : nbChordsPerBarValues)
+            {
+                for (int nbSongParts : nbSongPartsValues)
+                {
+                    if (nbSongParts > nbBars)
+                    {
+                        continue;
+                    }
+                    Map<String, Long> timings = new LinkedHashMap<>();
+                    int[] counts = runSong(nbBars, nbChordsPerBar, nbSongParts, rhythms, nbRuns, timings);
+
+                    if (stageNames == null)
+                    {
+                        // Use the first song stages as columns
+                        stageNames = new ArrayList<>(timings.keySet());
+                        sb.append("nbBars,nbChordsPerBar,nbSongParts,nbRhythms,nbChords,nbNotes");
+                        for (String name : stageNames)
+                        {
+                            sb.append(",\"").append(name).append(" (ms)\"");
+                        }
+                        sb.append("\n");
+                    }
+
+                    sb.append(nbBars).append(',').append(nbChordsPerBar).append(',').append(nbSongParts).append(',').append(nbRhythms);
+                    sb.append(',').append(counts[0]).append(',').append(counts[1]);
+                    for (String name : stageNames)
+                    {
+                        Long ns = timings.get(name);
+                        sb.append(',').append(ns == null ? "" : String.format("%.3f", ns / 1000000d));
+                    }
+                    sb.append("\n");
+
+                    LOGGER.log(Level.INFO, "runBenchmark() nbBars={0} nbChordsPerBar={1} nbSongParts={2} timings={3}", new Object[]   //NOI18N
+                    {
+                        nbBars, nbChordsPerBar, nbSongParts, timings
+                    });
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    // =================================================================================================
+    // Private methods
+    // =================================================================================================
+    /**
+     * Create a song and measure its generation.
+     *
+     * @param timings Updated with the best time in nanoseconds of each stage
+     * @return [nbChords, nbNotes]
+     */
+    private static int[] runSong(int nbBars, int nbChordsPerBar, int nbSongParts, List<Rhythm> rhythms, int nbRuns, Map<String, Long> timings) throws MusicGenerationException, MidiUnavailableException, UnsupportedEditException
+    {
+        Song song = createSong(nbBars, nbChordsPerBar, nbSongParts, rhythms);
+        int[] res = new int[2];
+        try
+        {
+            MidiMix midiMix = MidiMixManager.getInstance().findMix(song);
+            SongContext context = new SongContext(song, midiMix);
+            res[0] = nbBars * nbChordsPerBar;
+
+            for (int run = 0; run <= nbRuns; run++)
+            {
+                Map<String, Long> runTimings = new LinkedHashMap<>();
+
+
+                // SongSequenceBuilder stages
+                SongSequenceBuilder builder = new SongSequenceBuilder(context);
+                long t = System.nanoTime();
+                SongSequenceBuilder.SongSequence songSeq = builder.buildAll(true);
+                long buildTime = System.nanoTime() - t;
+                runTimings.putAll(builder.getStageTimings());
+                runTimings.put(TOTAL_BUILD_COLUMN, buildTime);
+                res[1] = songSeq.mapRvPhrase.values().stream().mapToInt(p -> p.size()).sum();
+
+
+                // Update of all the tracks of a generated session
+                BaseSongSession baseSession = new BaseSongSession(context, false, false, false, false, 0, null);
+                UpdatableSongSession session = UpdatableSongSession.getSession(baseSession);
+                try
+                {
+                    session.generate(true);
+                    Map<RhythmVoice, Phrase> mapRvPhrases = new HashMap<>();
+                    for (var entry : session.getCurrentRvPhraseMap().entrySet())
+                    {
+                        mapRvPhrases.put(entry.getKey(), entry.getValue().getVelocityProcessedPhrase(v -> Math.max(1, v - 1)));
+                    }
+                    UpdatableSongSession.Update update = new UpdatableSongSession.Update(mapRvPhrases, null);
+                    t = System.nanoTime();
+                    session.updateSequence(update);
+                    runTimings.put(UPDATE_SEQUENCE_COLUMN, System.nanoTime() - t);
+                } finally
+                {
+                    session.close();
+                }
+
+
+                if (run > 0)
+                {
+                    // First run is a warm-up
+                    runTimings.forEach((name, ns) -> timings.merge(name, ns, Math::min));
+                }
+            }
+        } finally
+        {
+            song.close(false);
+        }
+        return res;
+    }
+
+    /**
+     * Create a 4/4 song with nbSongParts sections of equal size (last one gets the remaining bars), and nbChordsPerBar chord
+     * symbols per bar evenly spaced.
+     * <p>
+     * The rhythms are used in turn for each SongPart.
+     */
+    private static Song createSong(int nbBars, int nbChordsPerBar, int nbSongParts, List<Rhythm> rhythms) throws UnsupportedEditException
+    {
+        if (nbBars < 1 || nbChordsPerBar < 1 || nbChordsPerBar > 4 || nbSongParts < 1 || nbSongParts > nbBars)
+        {
+            throw new IllegalArgumentException("nbBars=" + nbBars + " nbChordsPerBar=" + nbChordsPerBar + " nbSongParts=" + nbSongParts);   //NOI18N
+        }
+
+        ExtChordSymbol[] chordSymbols = new ExtChordSymbol[CHORD_SYMBOLS.length];
+        for (int i = 0; i < CHORD_SYMBOLS.length; i++)
+        {
+            try
+            {
+                chordSymbols[i] = new ExtChordSymbol(CHORD_SYMBOLS[i]);
+            } catch (ParseException ex)
+            {
+                // Should never happen
+                throw new IllegalStateException(ex);   //NOI18N
+            }
+        }
+
+
+        // Leadsheet
+        TimeSignature ts = TimeSignature.FOUR_FOUR;
+        CLI_Factory clif = CLI_Factory.getDefault();
+        ChordLeadSheet cls = ChordLeadSheetFactory.getDefault().createEmptyLeadSheet("S0", ts, nbBars);
+        int sectionSize = nbBars / nbSongParts;
+        for (int i = 1; i < nbSongParts; i++)
+        {
+            cls.addSection(clif.createSection(cls, "S" + i, ts, i * sectionSize));
+        }
+        float chordDuration = ts.getNbNaturalBeats() / nbChordsPerBar;
+        int index = 0;
+        for (int bar = 0; bar < nbBars; bar++)
+        {
+            for (int i = 0; i < nbChordsPerBar; i++)
+            {
+                if (bar > 0 || i > 0)
+                {
+                    // Leadsheet already has a chord symbol at bar 0 beat 0
+                    Position pos = new Position(bar, i * chordDuration);
+                    cls.addItem(clif.createChordSymbol(cls, chordSymbols[index % chordSymbols.length], pos));
+                }
+                index++;
+            }
+        }
+
+
+        // Song with the benchmark rhythms
+        Song song = SongFactory.getInstance().createSong("GenerationScalingBenchmark-" + nbBars + "-" + nbChordsPerBar + "-" + nbSongParts, cls);
+        SongStructure sgs = song.getSongStructure();
+        List<SongPart> oldSpts = sgs.getSongParts();
+        List<SongPart> newSpts = new ArrayList<>();
+        for (int i = 0; i < oldSpts.size(); i++)
+        {
+            SongPart spt = oldSpts.get(i);
+            newSpts.add(spt.clone(rhythms.get(i % rhythms.size()), spt.getStartBarIndex(), spt.getNbBars(), spt.getParentSection()));
+        }
+        sgs.replaceSongParts(oldSpts, newSpts);
+
+        return song;
+    }
+
+    // =================================================================================================
+    // Inner classes
+    // =================================================================================================
+    /**
+     * A deterministic 4/4 rhythm with a drums and a bass voice, music is generated by the DummyGenerator.
+     */
+    private static class BenchmarkRhythm extends DummyRhythm implements MusicGenerator
+    {
+
+        public BenchmarkRhythm(String name)
+        {
+            super(name, TimeSignature.FOUR_FOUR);
+            rhythmVoices.add(0, new RhythmVoice(new DrumKit(DrumKit.Type.STANDARD, KeyMapGM.getInstance()), this, RhythmVoice.Type.DRUMS, "Drums", StdSynth.getInstance().getVoidInstrument(), 9));
+        }
+
+        @Override
+        public HashMap<RhythmVoice, Phrase> generateMusic(SongContext context) throws MusicGenerationException
+        {
+            return new DummyGenerator(this).generateMusic(context);
+        }
+    }
+}